@@ -1,11 +1,17 @@
 package de.otto.synapse.configuration.aws;
 
+import de.otto.synapse.checkpoint.CheckpointStore;
 import de.otto.synapse.compaction.aws.CompactionService;
 import de.otto.synapse.compaction.aws.SnapshotWriteService;
 import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpointFactory;
+import de.otto.synapse.eventsource.DefaultEventSource;
 import de.otto.synapse.eventsource.EventSourceBuilder;
+import de.otto.synapse.executor.SynapseExecutors;
+import de.otto.synapse.messagestore.MessageStoreFactory;
+import de.otto.synapse.messagestore.SnapshotMessageStore;
 import de.otto.synapse.state.ConcurrentHashMapStateRepository;
 import de.otto.synapse.state.StateRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -30,7 +36,14 @@ public class CompactionAutoConfiguration {
     public CompactionService compactionService(final SnapshotWriteService snapshotWriteService,
                                                final StateRepository<String> compactionStateRepository,
                                                final EventSourceBuilder eventSourceBuilder,
-                                               final MessageLogReceiverEndpointFactory messageLogReceiverEndpointFactory) {
-        return new CompactionService(snapshotWriteService, compactionStateRepository, eventSourceBuilder, messageLogReceiverEndpointFactory);
+                                               final MessageLogReceiverEndpointFactory messageLogReceiverEndpointFactory,
+                                               final MessageStoreFactory<SnapshotMessageStore> snapshotMessageStoreFactory,
+                                               final ObjectProvider<CheckpointStore> checkpointStore,
+                                               final SynapseExecutors synapseExecutors) {
+        // Compaction must always replay the snapshot, and must not overwrite the checkpoints of the application:
+        final EventSourceBuilder compactionEventSourceBuilder = checkpointStore.getIfAvailable() == null
+                ? eventSourceBuilder
+                : (messageLog) -> new DefaultEventSource(snapshotMessageStoreFactory.createMessageStoreFor(messageLog.getChannelName()), messageLog, synapseExecutors.executorFor(messageLog.getChannelName()));
+        return new CompactionService(snapshotWriteService, compactionStateRepository, compactionEventSourceBuilder, messageLogReceiverEndpointFactory);
     }
 }
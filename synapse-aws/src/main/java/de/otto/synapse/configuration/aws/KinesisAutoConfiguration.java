@@ -2,29 +2,49 @@ package de.otto.synapse.configuration.aws;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.edison.aws.configuration.AwsProperties;
+import de.otto.synapse.configuration.ExecutorConfiguration;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
+import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpointFactory;
+import de.otto.synapse.endpoint.receiver.aws.KinesisAsyncMessageLogReceiverEndpointFactory;
 import de.otto.synapse.endpoint.receiver.aws.KinesisMessageLogReceiverEndpointFactory;
+import de.otto.synapse.endpoint.receiver.aws.KinesisReadGovernor;
+import de.otto.synapse.endpoint.receiver.aws.KinesisShardDiscovery;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpointFactory;
 import de.otto.synapse.endpoint.sender.aws.KinesisMessageSenderEndpointFactory;
+import de.otto.synapse.endpoint.sender.aws.KinesisWriteGovernor;
+import de.otto.synapse.executor.SynapseExecutors;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
+import java.time.Clock;
+import java.time.Duration;
+
+import static de.otto.synapse.codec.PayloadCodecs.codecFor;
+
 @Configuration
-@EnableConfigurationProperties(AwsProperties.class)
+@EnableConfigurationProperties({AwsProperties.class, KinesisProperties.class})
+@Import(ExecutorConfiguration.class)
 public class KinesisAutoConfiguration {
 
     private final AwsProperties awsProperties;
+    private final KinesisProperties kinesisProperties;
 
     @Autowired
-    public KinesisAutoConfiguration(final AwsProperties awsProperties) {
+    public KinesisAutoConfiguration(final AwsProperties awsProperties,
+                                    final KinesisProperties kinesisProperties) {
         this.awsProperties = awsProperties;
+        this.kinesisProperties = kinesisProperties;
     }
 
     @Bean
@@ -40,21 +60,80 @@ public class KinesisAutoConfiguration {
                 .build();
     }
 
+    @Bean
+    @ConditionalOnMissingBean(KinesisAsyncClient.class)
+    @ConditionalOnProperty(prefix = "synapse.kinesis", name = "async-receiver", havingValue = "true")
+    public KinesisAsyncClient kinesisAsyncClient(final AwsCredentialsProvider credentialsProvider) {
+        System.setProperty("aws.cborEnabled", "false");
+        return KinesisAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(Region.of(awsProperties.getRegion()))
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public KinesisReadGovernor kinesisReadGovernor() {
+        return new KinesisReadGovernor(kinesisProperties.getMaxReadsPerShardPerSecond(), kinesisProperties.getMaxReadBytesPerShardPerSecond(), Clock.systemDefaultZone());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "synapse.kinesis", name = "adaptive-write-rate", havingValue = "true", matchIfMissing = true)
+    public KinesisWriteGovernor kinesisWriteGovernor() {
+        return new KinesisWriteGovernor(kinesisProperties.getMinWriteRecordsPerSecond(), KinesisWriteGovernor.DEFAULT_ADDITIVE_INCREASE, KinesisWriteGovernor.DEFAULT_DECREASE_FACTOR, Clock.systemDefaultZone());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public KinesisShardDiscovery kinesisShardDiscovery(final KinesisClient kinesisClient) {
+        return new KinesisShardDiscovery(kinesisClient, Duration.ofSeconds(kinesisProperties.getShardRefreshIntervalSeconds()));
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public MessageSenderEndpointFactory kinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
                                                                             final ObjectMapper objectMapper,
-                                                                            final KinesisClient kinesisClient) {
-        return new KinesisMessageSenderEndpointFactory(registry, objectMapper, kinesisClient);
+                                                                            final KinesisClient kinesisClient,
+                                                                            final ObjectProvider<KinesisWriteGovernor> kinesisWriteGovernor,
+                                                                            final SynapseExecutors synapseExecutors,
+                                                                            final KinesisShardDiscovery kinesisShardDiscovery) {
+        return new KinesisMessageSenderEndpointFactory(
+                registry,
+                objectMapper,
+                kinesisClient,
+                codecFor(kinesisProperties.getPayloadCodec()),
+                kinesisProperties.getCompression(),
+                kinesisProperties.isAggregation(),
+                Duration.ofMillis(kinesisProperties.getLingerMillis()),
+                kinesisProperties.getMaxPutRecordsInFlight(),
+                kinesisWriteGovernor.getIfAvailable(),
+                synapseExecutors,
+                kinesisShardDiscovery);
     }
 
     @Bean
     @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "synapse.kinesis", name = "async-receiver", havingValue = "false", matchIfMissing = true)
     public KinesisMessageLogReceiverEndpointFactory messageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
                                                                                final ObjectMapper objectMapper,
                                                                                final KinesisClient kinesisClient,
-                                                                               final ApplicationEventPublisher eventPublisher) {
-        return new KinesisMessageLogReceiverEndpointFactory(interceptorRegistry, kinesisClient, objectMapper, eventPublisher);
+                                                                               final ApplicationEventPublisher eventPublisher,
+                                                                               final SynapseExecutors synapseExecutors,
+                                                                               final KinesisReadGovernor kinesisReadGovernor,
+                                                                               final KinesisShardDiscovery kinesisShardDiscovery) {
+        return new KinesisMessageLogReceiverEndpointFactory(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, Clock.systemDefaultZone(), kinesisProperties.getDispatchParallelism(), kinesisProperties.getMaxInFlightMessagesPerShard(), synapseExecutors, kinesisReadGovernor, kinesisShardDiscovery);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(MessageLogReceiverEndpointFactory.class)
+    @ConditionalOnProperty(prefix = "synapse.kinesis", name = "async-receiver", havingValue = "true")
+    public KinesisAsyncMessageLogReceiverEndpointFactory kinesisAsyncMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                                                                 final ObjectMapper objectMapper,
+                                                                                                 final KinesisAsyncClient kinesisAsyncClient,
+                                                                                                 final ApplicationEventPublisher eventPublisher,
+                                                                                                 final KinesisReadGovernor kinesisReadGovernor) {
+        return new KinesisAsyncMessageLogReceiverEndpointFactory(interceptorRegistry, kinesisAsyncClient, objectMapper, eventPublisher, kinesisProperties.getAsyncReceiverThreads(), kinesisProperties.getDispatchParallelism(), kinesisProperties.getMaxInFlightMessagesPerShard(), kinesisReadGovernor);
     }
 
 }
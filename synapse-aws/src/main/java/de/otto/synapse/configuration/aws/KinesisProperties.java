@@ -0,0 +1,205 @@
+package de.otto.synapse.configuration.aws;
+
+import de.otto.synapse.codec.PayloadCompression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "synapse.kinesis")
+public class KinesisProperties {
+
+    /**
+     * Number of worker lanes used to dispatch the messages of a single Kinesis shard response. Messages are
+     * assigned to lanes by their key, so the order of messages having the same key is retained.
+     * A value of 1 dispatches all messages in the reading thread of the shard.
+     */
+    private int dispatchParallelism = 1;
+
+    /**
+     * Maximum number of messages per Kinesis shard that are processed by
+     * {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers} at the same time. If the limit is
+     * reached, reading from the shard is paused until earlier messages are completed.
+     */
+    private int maxInFlightMessagesPerShard = 1000;
+
+    /**
+     * Name of the {@link de.otto.synapse.codec.PayloadCodec codec} used to encode the payloads of messages sent to
+     * Kinesis: json, smile, cbor or the name of a codec registered using the ServiceLoader. Receivers are able to
+     * decode messages of all supported codecs, regardless of this setting.
+     */
+    private String payloadCodec = "json";
+
+    /**
+     * Compression of the payloads of messages sent to Kinesis. Receivers are detecting and decompressing
+     * compressed payloads, regardless of this setting.
+     */
+    private PayloadCompression compression = PayloadCompression.NONE;
+
+    /**
+     * Send batches of messages as aggregated records, using the record format of the Kinesis Producer Library.
+     * Receivers are deaggregating aggregated records, regardless of this setting.
+     */
+    private boolean aggregation = false;
+
+    /**
+     * Maximum time in milliseconds single messages are waiting for more messages, before they are sent to Kinesis
+     * as a single PutRecords request. If 0, single messages are sent immediately.
+     */
+    private long lingerMillis = 0;
+
+    /**
+     * Maximum number of PutRecords requests per batch of messages that are sent to Kinesis in parallel. Messages
+     * having the same key are always sent in order.
+     */
+    private int maxPutRecordsInFlight = 1;
+
+    /**
+     * Adapt the rate of records sent to a Kinesis stream to the capacity of the stream, after records of the stream
+     * were throttled. The rate is shared by all senders of a stream in this application.
+     */
+    private boolean adaptiveWriteRate = true;
+
+    /**
+     * Lower limit of the adaptive rate of records per second sent to a Kinesis stream.
+     */
+    private double minWriteRecordsPerSecond = 100;
+
+    /**
+     * Read Kinesis streams using the non-blocking KinesisAsyncClient. All shards of all channels are polled by a
+     * shared pool of {@link #asyncReceiverThreads} threads, instead of using dedicated threads per shard.
+     */
+    private boolean asyncReceiver = false;
+
+    /**
+     * Number of threads used to poll the shards and to dispatch the messages of all channels, if
+     * {@link #asyncReceiver} is enabled.
+     */
+    private int asyncReceiverThreads = 2;
+
+    /**
+     * Maximum number of GetRecords requests per shard and second, shared by all receivers of a stream in this
+     * application.
+     */
+    private double maxReadsPerShardPerSecond = 5;
+
+    /**
+     * Maximum number of bytes per shard and second, shared by all receivers of a stream in this application.
+     */
+    private long maxReadBytesPerShardPerSecond = 2L * 1024 * 1024;
+
+    /**
+     * Interval in seconds used to refresh the cached shards of the streams in the background.
+     */
+    private long shardRefreshIntervalSeconds = 60;
+
+    public int getDispatchParallelism() {
+        return dispatchParallelism;
+    }
+
+    public void setDispatchParallelism(int dispatchParallelism) {
+        this.dispatchParallelism = dispatchParallelism;
+    }
+
+    public int getMaxInFlightMessagesPerShard() {
+        return maxInFlightMessagesPerShard;
+    }
+
+    public void setMaxInFlightMessagesPerShard(int maxInFlightMessagesPerShard) {
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+    }
+
+    public String getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    public void setPayloadCodec(String payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    public PayloadCompression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    public boolean isAggregation() {
+        return aggregation;
+    }
+
+    public void setAggregation(boolean aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    public int getMaxPutRecordsInFlight() {
+        return maxPutRecordsInFlight;
+    }
+
+    public void setMaxPutRecordsInFlight(int maxPutRecordsInFlight) {
+        this.maxPutRecordsInFlight = maxPutRecordsInFlight;
+    }
+
+    public boolean isAdaptiveWriteRate() {
+        return adaptiveWriteRate;
+    }
+
+    public void setAdaptiveWriteRate(boolean adaptiveWriteRate) {
+        this.adaptiveWriteRate = adaptiveWriteRate;
+    }
+
+    public double getMinWriteRecordsPerSecond() {
+        return minWriteRecordsPerSecond;
+    }
+
+    public void setMinWriteRecordsPerSecond(double minWriteRecordsPerSecond) {
+        this.minWriteRecordsPerSecond = minWriteRecordsPerSecond;
+    }
+
+    public boolean isAsyncReceiver() {
+        return asyncReceiver;
+    }
+
+    public void setAsyncReceiver(boolean asyncReceiver) {
+        this.asyncReceiver = asyncReceiver;
+    }
+
+    public int getAsyncReceiverThreads() {
+        return asyncReceiverThreads;
+    }
+
+    public void setAsyncReceiverThreads(int asyncReceiverThreads) {
+        this.asyncReceiverThreads = asyncReceiverThreads;
+    }
+
+    public double getMaxReadsPerShardPerSecond() {
+        return maxReadsPerShardPerSecond;
+    }
+
+    public void setMaxReadsPerShardPerSecond(double maxReadsPerShardPerSecond) {
+        this.maxReadsPerShardPerSecond = maxReadsPerShardPerSecond;
+    }
+
+    public long getMaxReadBytesPerShardPerSecond() {
+        return maxReadBytesPerShardPerSecond;
+    }
+
+    public void setMaxReadBytesPerShardPerSecond(long maxReadBytesPerShardPerSecond) {
+        this.maxReadBytesPerShardPerSecond = maxReadBytesPerShardPerSecond;
+    }
+
+    public long getShardRefreshIntervalSeconds() {
+        return shardRefreshIntervalSeconds;
+    }
+
+    public void setShardRefreshIntervalSeconds(long shardRefreshIntervalSeconds) {
+        this.shardRefreshIntervalSeconds = shardRefreshIntervalSeconds;
+    }
+
+}
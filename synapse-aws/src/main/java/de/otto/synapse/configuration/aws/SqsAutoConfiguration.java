@@ -2,30 +2,39 @@ package de.otto.synapse.configuration.aws;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.edison.aws.configuration.AwsProperties;
+import de.otto.synapse.configuration.ExecutorConfiguration;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
 import de.otto.synapse.endpoint.receiver.MessageQueueReceiverEndpointFactory;
 import de.otto.synapse.endpoint.receiver.aws.SqsMessageQueueReceiverEndpoint;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpointFactory;
 import de.otto.synapse.endpoint.sender.aws.SqsMessageSenderEndpointFactory;
+import de.otto.synapse.executor.SynapseExecutors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sqs.SQSAsyncClient;
 
+import java.time.Duration;
+
 @Configuration
-@EnableConfigurationProperties(AwsProperties.class)
+@EnableConfigurationProperties({AwsProperties.class, SqsProperties.class})
+@Import(ExecutorConfiguration.class)
 public class SqsAutoConfiguration {
 
     private final AwsProperties awsProperties;
+    private final SqsProperties sqsProperties;
 
     @Autowired
-    public SqsAutoConfiguration(final AwsProperties awsProperties) {
+    public SqsAutoConfiguration(final AwsProperties awsProperties,
+                                final SqsProperties sqsProperties) {
         this.awsProperties = awsProperties;
+        this.sqsProperties = sqsProperties;
     }
 
     @Bean
@@ -42,7 +51,13 @@ public class SqsAutoConfiguration {
     public MessageSenderEndpointFactory sqsMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
                                                                  final ObjectMapper objectMapper,
                                                                  final SQSAsyncClient sqsAsyncClient) {
-        return new SqsMessageSenderEndpointFactory(registry, objectMapper, sqsAsyncClient);
+        return new SqsMessageSenderEndpointFactory(
+                registry,
+                objectMapper,
+                sqsAsyncClient,
+                sqsProperties.getCompression(),
+                Duration.ofMillis(sqsProperties.getLingerMillis()),
+                sqsProperties.getMaxBatchesInFlight());
     }
 
     @Bean
@@ -50,10 +65,19 @@ public class SqsAutoConfiguration {
     public MessageQueueReceiverEndpointFactory sqsMessageQueueReceiverEndpointFactory(final MessageInterceptorRegistry registry,
                                                                           final ObjectMapper objectMapper,
                                                                           final SQSAsyncClient sqsAsyncClient,
-                                                                          final ApplicationEventPublisher eventPublisher) {
+                                                                          final ApplicationEventPublisher eventPublisher,
+                                                                          final SynapseExecutors synapseExecutors) {
 
         return (String channelName) -> {
-            final SqsMessageQueueReceiverEndpoint endpoint = new SqsMessageQueueReceiverEndpoint(channelName, sqsAsyncClient, objectMapper, eventPublisher);
+            final SqsMessageQueueReceiverEndpoint endpoint = new SqsMessageQueueReceiverEndpoint(
+                    channelName,
+                    sqsAsyncClient,
+                    objectMapper,
+                    eventPublisher,
+                    synapseExecutors.executorFor(channelName),
+                    sqsProperties.getReceiverPollers(),
+                    sqsProperties.getReceiverParallelism(),
+                    sqsProperties.getVisibilityTimeoutSeconds());
             endpoint.registerInterceptorsFrom(registry);
             return endpoint;
         };
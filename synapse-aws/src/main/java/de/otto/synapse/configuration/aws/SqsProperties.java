@@ -0,0 +1,91 @@
+package de.otto.synapse.configuration.aws;
+
+import de.otto.synapse.codec.PayloadCompression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "synapse.sqs")
+public class SqsProperties {
+
+    /**
+     * Compression of the payloads of messages sent to SQS. Compressed payloads are sent as Base64 encoded
+     * message bodies. Receivers are detecting and decompressing compressed payloads, regardless of this setting.
+     */
+    private PayloadCompression compression = PayloadCompression.NONE;
+
+    /**
+     * The maximum time in milliseconds single messages are waiting for more messages before they are sent to SQS
+     * as a batch of up to 10 messages. If 0, every single message is sent using a separate request.
+     */
+    private long lingerMillis = 0;
+
+    /**
+     * The maximum number of SendMessageBatch requests per sender that are sent in parallel.
+     */
+    private int maxBatchesInFlight = 4;
+
+    /**
+     * The number of concurrent long-polling workers per SQS receiver, each fetching up to 10 messages per request.
+     */
+    private int receiverPollers = 1;
+
+    /**
+     * The number of threads per SQS receiver used to process received messages. If greater than 1, messages are
+     * not processed in the order they were received.
+     */
+    private int receiverParallelism = 1;
+
+    /**
+     * The visibility timeout of received messages. The timeout is extended while messages are processed, so
+     * messages are only received again, if the receiver has died before the messages were deleted.
+     */
+    private int visibilityTimeoutSeconds = 30;
+
+    public PayloadCompression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(PayloadCompression compression) {
+        this.compression = compression;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    public int getMaxBatchesInFlight() {
+        return maxBatchesInFlight;
+    }
+
+    public void setMaxBatchesInFlight(int maxBatchesInFlight) {
+        this.maxBatchesInFlight = maxBatchesInFlight;
+    }
+
+    public int getReceiverPollers() {
+        return receiverPollers;
+    }
+
+    public void setReceiverPollers(int receiverPollers) {
+        this.receiverPollers = receiverPollers;
+    }
+
+    public int getReceiverParallelism() {
+        return receiverParallelism;
+    }
+
+    public void setReceiverParallelism(int receiverParallelism) {
+        this.receiverParallelism = receiverParallelism;
+    }
+
+    public int getVisibilityTimeoutSeconds() {
+        return visibilityTimeoutSeconds;
+    }
+
+    public void setVisibilityTimeoutSeconds(int visibilityTimeoutSeconds) {
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+    }
+
+}
@@ -0,0 +1,89 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Determines the delay between two {@code GetRecords} requests of a single Kinesis shard.
+ * <p>
+ *     Kinesis is limiting the number of {@code GetRecords} calls to five per second and shard. Instead of
+ *     waiting one second after every request, the delay is adapted to the state of the shard:
+ * </p>
+ * <ul>
+ *     <li>While the reader is behind the tip of the shard, or if the response contained the maximum number of
+ *     records, the shard is polled at the maximum rate of five requests per second, so the reader is able to
+ *     catch up as fast as possible.</li>
+ *     <li>If the reader is at the tip of the shard and the response was empty, the delay is doubled up to
+ *     {@link #MAX_POLL_INTERVAL_MILLIS one second}.</li>
+ *     <li>If the request was throttled, the delay is doubled up to {@link #MAX_THROTTLED_POLL_INTERVAL_MILLIS},
+ *     even if the reader is still behind.</li>
+ * </ul>
+ */
+@NotThreadSafe
+class AdaptivePollScheduler {
+
+    /**
+     * Minimum interval between two requests, as Kinesis is supporting up to five {@code GetRecords} calls per
+     * second and shard.
+     */
+    static final long MIN_POLL_INTERVAL_MILLIS = 200;
+    /**
+     * Maximum interval between two requests of an idle shard.
+     */
+    static final long MAX_POLL_INTERVAL_MILLIS = 1000;
+    /**
+     * Maximum interval between two requests after requests were throttled.
+     */
+    static final long MAX_THROTTLED_POLL_INTERVAL_MILLIS = 10000;
+
+    private final int fetchRecordLimit;
+    private long pollInterval = MIN_POLL_INTERVAL_MILLIS;
+
+    /**
+     * Creates an AdaptivePollScheduler.
+     *
+     * @param fetchRecordLimit the maximum number of records returned by a single request
+     */
+    AdaptivePollScheduler(final int fetchRecordLimit) {
+        this.fetchRecordLimit = fetchRecordLimit;
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before the next request is sent.
+     *
+     * @param response the response of the last request
+     * @param throttled true, if the last request was throttled by Kinesis
+     * @return delay in milliseconds
+     */
+    long nextDelay(final @Nonnull KinesisShardResponse response,
+                   final boolean throttled) {
+        if (throttled) {
+            nextThrottledDelay();
+        } else if (isCatchingUp(response) || !response.getMessages().isEmpty()) {
+            pollInterval = MIN_POLL_INTERVAL_MILLIS;
+        } else {
+            pollInterval = Math.min(MAX_POLL_INTERVAL_MILLIS, pollInterval * 2);
+        }
+        // the interval is measured from the start of the last request:
+        return Math.max(0, pollInterval - response.getRuntime());
+    }
+
+    /**
+     * Returns the number of milliseconds to wait before a throttled request is sent again.
+     *
+     * @return delay in milliseconds
+     */
+    long nextThrottledDelay() {
+        pollInterval = Math.min(MAX_THROTTLED_POLL_INTERVAL_MILLIS, Math.max(pollInterval, MIN_POLL_INTERVAL_MILLIS) * 2);
+        return pollInterval;
+    }
+
+    long getPollInterval() {
+        return pollInterval;
+    }
+
+    private boolean isCatchingUp(final KinesisShardResponse response) {
+        return !response.getDurationBehind().isZero()
+                || response.getMessages().size() >= fetchRecordLimit;
+    }
+}
@@ -0,0 +1,227 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.channel.ShardPosition;
+import de.otto.synapse.consumer.KeyPartitionedDispatcher;
+import de.otto.synapse.endpoint.receiver.AbstractMessageLogReceiverEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static de.otto.synapse.channel.ChannelPosition.merge;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisMessageLogReceiverEndpoint.DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD;
+import static de.otto.synapse.info.MessageReceiverStatus.*;
+import static de.otto.synapse.logging.LogHelper.info;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * A {@link de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint} that is reading Kinesis streams using the
+ * non-blocking {@link KinesisAsyncClient}.
+ * <p>
+ *     In contrast to the {@link KinesisMessageLogReceiverEndpoint}, no threads are started per shard: all shards
+ *     are polled by {@link KinesisAsyncShardPoller pollers} that are running as short tasks of a
+ *     {@link ScheduledExecutorService}. The executor may be shared by all endpoints of an application, so a small
+ *     fixed number of threads is able to read all shards of all channels.
+ * </p>
+ * <p>
+ *     Messages are dispatched by the threads of the executor. Consumers should therefore not block for a long time,
+ *     or use {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers} instead. Shards having
+ *     {@code maxInFlightMessagesPerShard} messages in flight are not polled until async consumers have completed
+ *     some of them, so the threads of the executor are never blocked by a full in-flight window.
+ * </p>
+ */
+public class KinesisAsyncMessageLogReceiverEndpoint extends AbstractMessageLogReceiverEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisAsyncMessageLogReceiverEndpoint.class);
+
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final ScheduledExecutorService scheduler;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+    private final int dispatchParallelism;
+    private final int maxInFlightMessagesPerShard;
+    private final KinesisReadGovernor readGovernor;
+    private final ConcurrentMap<String, KinesisAsyncShardPoller> shardPollers = new ConcurrentHashMap<>();
+    private volatile boolean stopping;
+
+    public KinesisAsyncMessageLogReceiverEndpoint(final String channelName,
+                                                  final KinesisAsyncClient kinesisAsyncClient,
+                                                  final ObjectMapper objectMapper,
+                                                  final ApplicationEventPublisher eventPublisher,
+                                                  final ScheduledExecutorService scheduler) {
+        this(channelName, kinesisAsyncClient, objectMapper, eventPublisher, scheduler, Clock.systemDefaultZone(), 1, DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD);
+    }
+
+    /**
+     * Creates a KinesisAsyncMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisAsyncClient the KinesisAsyncClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param scheduler the executor used to poll the shards and to dispatch the messages
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     */
+    public KinesisAsyncMessageLogReceiverEndpoint(final String channelName,
+                                                  final KinesisAsyncClient kinesisAsyncClient,
+                                                  final ObjectMapper objectMapper,
+                                                  final ApplicationEventPublisher eventPublisher,
+                                                  final ScheduledExecutorService scheduler,
+                                                  final Clock clock,
+                                                  final int dispatchParallelism,
+                                                  final int maxInFlightMessagesPerShard) {
+        this(channelName, kinesisAsyncClient, objectMapper, eventPublisher, scheduler, clock, dispatchParallelism, maxInFlightMessagesPerShard, null);
+    }
+
+    /**
+     * Creates a KinesisAsyncMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisAsyncClient the KinesisAsyncClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param scheduler the executor used to poll the shards and to dispatch the messages
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     * @param readGovernor the governor used to pace the requests of all readers of the stream, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisAsyncMessageLogReceiverEndpoint(final String channelName,
+                                                  final KinesisAsyncClient kinesisAsyncClient,
+                                                  final ObjectMapper objectMapper,
+                                                  final ApplicationEventPublisher eventPublisher,
+                                                  final ScheduledExecutorService scheduler,
+                                                  final Clock clock,
+                                                  final int dispatchParallelism,
+                                                  final int maxInFlightMessagesPerShard,
+                                                  final KinesisReadGovernor readGovernor) {
+        super(channelName, objectMapper, eventPublisher);
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.scheduler = scheduler;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        this.dispatchParallelism = dispatchParallelism;
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+        this.readGovernor = readGovernor;
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull ChannelPosition startFrom,
+                                                           final @Nonnull Instant until) {
+        return consumeUntil(startFrom, until, (channelPosition) -> {});
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull ChannelPosition startFrom,
+                                                           final @Nonnull Instant until,
+                                                           final @Nonnull Consumer<ChannelPosition> positionListener) {
+        publishEvent(STARTING, "Consuming messages from Kinesis.", null);
+        final long t1 = System.currentTimeMillis();
+        stopping = false;
+        shardPollers.clear();
+        return retrieveAllShards(new ArrayList<>())
+                .thenCompose(shards -> consumeShards(new KinesisShardLineage(shards), startFrom, until, positionListener))
+                .exceptionally((throwable) -> {
+                    LOG.error("Failed to consume from Kinesis stream {}: {}", getChannelName(), throwable.getMessage());
+                    publishEvent(FAILED, "Failed to consume messages from Kinesis: " + throwable.getMessage(), null);
+                    // Stop all shards that are still running before proceeding:
+                    stop();
+                    throw new RuntimeException(throwable.getMessage(), throwable);
+                })
+                .thenApply((channelPosition -> {
+                    final long t2 = System.currentTimeMillis();
+                    info(LOG, ImmutableMap.of("runtime", (t2-t1)), "Consume events from Kinesis", null);
+                    publishEvent(FINISHED, "Finished consuming messages from Kinesis", null);
+                    return channelPosition;
+                }));
+    }
+
+    @Override
+    public void stop() {
+        LOG.info("Channel {} received stop signal.", getChannelName());
+        stopping = true;
+        shardPollers.values().forEach(KinesisAsyncShardPoller::stop);
+    }
+
+    private CompletableFuture<ChannelPosition> consumeShards(final KinesisShardLineage lineage,
+                                                             final ChannelPosition startFrom,
+                                                             final Instant until,
+                                                             final Consumer<ChannelPosition> positionListener) {
+        publishEvent(STARTED, "Received shards from Kinesis.", null);
+
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(dispatchParallelism, scheduler, getMessageDispatcher());
+        final KinesisShardResponseConsumer consumer = new KinesisShardResponseConsumer(lineage.getOpenShardNames(), startFrom, getInterceptorChain(), dispatcher, eventPublisher, maxInFlightMessagesPerShard, positionListener);
+
+        return new KinesisShardLineageTraversal(lineage, startFrom, new KinesisShardLineageTraversal.ShardConsumption() {
+            @Override
+            public CompletableFuture<ShardPosition> consume(final String shardName, final ShardPosition shardPosition) {
+                final KinesisAsyncShardPoller shardPoller = new KinesisAsyncShardPoller(kinesisAsyncClient, getChannelName(), shardPosition, until, clock, scheduler, consumer::acceptAsync, readGovernor);
+                shardPollers.put(shardName, shardPoller);
+                if (stopping) {
+                    shardPoller.stop();
+                }
+                return shardPoller.start();
+            }
+
+            @Override
+            public boolean isDrained(final String shardName) {
+                final KinesisAsyncShardPoller shardPoller = shardPollers.get(shardName);
+                return shardPoller != null && shardPoller.isDrained();
+            }
+
+            @Override
+            public CompletableFuture<KinesisShardLineage> refreshLineage(final KinesisShardLineage lineage) {
+                LOG.info("Shard of channel {} was closed, retrieving child shards.", getChannelName());
+                return retrieveAllShards(new ArrayList<>()).thenApply(KinesisShardLineage::new);
+            }
+        })
+                .start()
+                // the position of a shard is only advanced up to the messages completed by async consumers:
+                .thenCompose((channelPosition) -> consumer
+                        .whenCompleted()
+                        .thenApply((completedPosition) -> merge(channelPosition, completedPosition)));
+    }
+
+    private CompletableFuture<List<Shard>> retrieveAllShards(final List<Shard> shards) {
+        return kinesisAsyncClient.describeStream(DescribeStreamRequest
+                .builder()
+                .streamName(getChannelName())
+                .exclusiveStartShardId(shards.isEmpty() ? null : shards.get(shards.size() - 1).shardId())
+                .limit(10)
+                .build())
+                .thenCompose(response -> {
+                    shards.addAll(response.streamDescription().shards());
+                    return response.streamDescription().hasMoreShards()
+                            ? retrieveAllShards(shards)
+                            : completedFuture(shards);
+                });
+    }
+
+}
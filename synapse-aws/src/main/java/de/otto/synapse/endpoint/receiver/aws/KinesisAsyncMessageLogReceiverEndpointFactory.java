@@ -0,0 +1,132 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.otto.synapse.endpoint.MessageInterceptorRegistry;
+import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint;
+import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpointFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+
+import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+
+/**
+ * Creates {@link KinesisAsyncMessageLogReceiverEndpoint KinesisAsyncMessageLogReceiverEndpoints} sharing a single
+ * {@link ScheduledExecutorService}, so all shards of all channels are read by a small fixed number of threads.
+ * <p>
+ *     The executor is shut down, when the factory is {@link #close() closed}.
+ * </p>
+ */
+public class KinesisAsyncMessageLogReceiverEndpointFactory implements MessageLogReceiverEndpointFactory, AutoCloseable {
+
+    private final MessageInterceptorRegistry interceptorRegistry;
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private final int dispatchParallelism;
+    private final int maxInFlightMessagesPerShard;
+    private final KinesisReadGovernor readGovernor;
+
+    /**
+     * Creates a factory using a new executor with a fixed number of threads.
+     *
+     * @param interceptorRegistry registry used to register interceptors of the endpoints
+     * @param kinesisAsyncClient the KinesisAsyncClient used to access the streams
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param numberOfThreads the number of threads used to read all shards of all channels
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard processed by async consumers
+     */
+    public KinesisAsyncMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                         final KinesisAsyncClient kinesisAsyncClient,
+                                                         final ObjectMapper objectMapper,
+                                                         final ApplicationEventPublisher eventPublisher,
+                                                         final int numberOfThreads,
+                                                         final int dispatchParallelism,
+                                                         final int maxInFlightMessagesPerShard) {
+        this(interceptorRegistry, kinesisAsyncClient, objectMapper, eventPublisher, numberOfThreads, dispatchParallelism, maxInFlightMessagesPerShard, null);
+    }
+
+    /**
+     * Creates a factory using a new executor with a fixed number of threads.
+     *
+     * @param interceptorRegistry registry used to register interceptors of the endpoints
+     * @param kinesisAsyncClient the KinesisAsyncClient used to access the streams
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param numberOfThreads the number of threads used to read all shards of all channels
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard processed by async consumers
+     * @param readGovernor the governor shared by all endpoints to pace the requests to the shards, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisAsyncMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                         final KinesisAsyncClient kinesisAsyncClient,
+                                                         final ObjectMapper objectMapper,
+                                                         final ApplicationEventPublisher eventPublisher,
+                                                         final int numberOfThreads,
+                                                         final int dispatchParallelism,
+                                                         final int maxInFlightMessagesPerShard,
+                                                         final KinesisReadGovernor readGovernor) {
+        this(interceptorRegistry, kinesisAsyncClient, objectMapper, eventPublisher,
+                newScheduledThreadPool(numberOfThreads, new ThreadFactoryBuilder()
+                        .setNameFormat("kinesis-receiver-%d")
+                        .setDaemon(true)
+                        .build()),
+                Clock.systemDefaultZone(), dispatchParallelism, maxInFlightMessagesPerShard, readGovernor);
+    }
+
+    public KinesisAsyncMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                         final KinesisAsyncClient kinesisAsyncClient,
+                                                         final ObjectMapper objectMapper,
+                                                         final ApplicationEventPublisher eventPublisher,
+                                                         final ScheduledExecutorService scheduler,
+                                                         final Clock clock,
+                                                         final int dispatchParallelism,
+                                                         final int maxInFlightMessagesPerShard) {
+        this(interceptorRegistry, kinesisAsyncClient, objectMapper, eventPublisher, scheduler, clock, dispatchParallelism, maxInFlightMessagesPerShard, null);
+    }
+
+    public KinesisAsyncMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                         final KinesisAsyncClient kinesisAsyncClient,
+                                                         final ObjectMapper objectMapper,
+                                                         final ApplicationEventPublisher eventPublisher,
+                                                         final ScheduledExecutorService scheduler,
+                                                         final Clock clock,
+                                                         final int dispatchParallelism,
+                                                         final int maxInFlightMessagesPerShard,
+                                                         final KinesisReadGovernor readGovernor) {
+        this.interceptorRegistry = interceptorRegistry;
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.dispatchParallelism = dispatchParallelism;
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+        this.readGovernor = readGovernor;
+    }
+
+    @Override
+    public MessageLogReceiverEndpoint create(@Nonnull String channelName) {
+        final MessageLogReceiverEndpoint messageLog = new KinesisAsyncMessageLogReceiverEndpoint(channelName, kinesisAsyncClient, objectMapper, eventPublisher, scheduler, clock, dispatchParallelism, maxInFlightMessagesPerShard, readGovernor);
+        messageLog.registerInterceptorsFrom(interceptorRegistry);
+        return messageLog;
+    }
+
+    /**
+     * Shuts down the executor used by the created endpoints.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+}
@@ -0,0 +1,252 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import com.google.common.base.Stopwatch;
+import de.otto.synapse.channel.ShardPosition;
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.KinesisException;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.FETCH_RECORDS_LIMIT;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.POISON_SHARD_ITER;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.buildIteratorShardRequest;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Polls a single Kinesis shard using the {@link KinesisAsyncClient}, without blocking a thread while waiting for
+ * responses or for the next poll.
+ * <p>
+ *     Every step of the poller - requesting a shard iterator, sending a {@code GetRecords} request, and consuming
+ *     the response - is executed as a task of a shared {@link ScheduledExecutorService}. The delay between two
+ *     requests is determined by the {@link AdaptivePollScheduler}, and by the {@link KinesisReadGovernor}, if
+ *     the shard is read by other readers as well. Steps of a single poller never run concurrently, so the responses
+ *     of a shard are consumed in order.
+ * </p>
+ * <p>
+ *     Consuming a response never blocks a thread of the scheduler: if the consumer is not yet able to consume the
+ *     next response, for example because too many messages of the shard are still processed by async consumers,
+ *     the shard is parked and the next poll is only scheduled after the future returned by the consumer is
+ *     completed.
+ * </p>
+ * <p>
+ *     Throttled requests and other recoverable errors are retried with a back-off, expired shard iterators are
+ *     renewed at the current position.
+ * </p>
+ */
+@ThreadSafe
+class KinesisAsyncShardPoller {
+
+    private static final Logger LOG = getLogger(KinesisAsyncShardPoller.class);
+
+    private static final int RETRY_MAX_ATTEMPTS = 16;
+    private static final long RETRY_BACK_OFF_INITIAL_INTERVAL = 1000;
+    private static final long RETRY_BACK_OFF_MAX_INTERVAL = 64000;
+
+    private final KinesisAsyncClient kinesisAsyncClient;
+    private final String channelName;
+    private final Instant until;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final Function<KinesisShardResponse, CompletableFuture<Void>> responseConsumer;
+    private final KinesisReadGovernor readGovernor;
+    private final AdaptivePollScheduler pollScheduler = new AdaptivePollScheduler(FETCH_RECORDS_LIMIT);
+    private final CompletableFuture<ShardPosition> futureShardPosition = new CompletableFuture<>();
+    private volatile ShardPosition shardPosition;
+    private volatile String shardIterator;
+    private volatile int retries;
+    private volatile boolean stopping;
+    private volatile boolean drained;
+
+    /**
+     * Creates a KinesisAsyncShardPoller.
+     *
+     * @param kinesisAsyncClient the Kinesis client
+     * @param channelName the name of the Kinesis stream
+     * @param startFrom the position to start from
+     * @param until the point in time to stop polling
+     * @param clock the clock used to check the {@code until} condition
+     * @param scheduler the executor used to run the steps of the poller
+     * @param responseConsumer the consumer of the shard responses, returning a future that is completed as soon
+     *                         as the next response can be consumed
+     * @param readGovernor the governor used to pace the requests of all readers of the shard, or null, if
+     *                     requests should not be paced.
+     */
+    KinesisAsyncShardPoller(final @Nonnull KinesisAsyncClient kinesisAsyncClient,
+                            final @Nonnull String channelName,
+                            final @Nonnull ShardPosition startFrom,
+                            final @Nonnull Instant until,
+                            final @Nonnull Clock clock,
+                            final @Nonnull ScheduledExecutorService scheduler,
+                            final @Nonnull Function<KinesisShardResponse, CompletableFuture<Void>> responseConsumer,
+                            final KinesisReadGovernor readGovernor) {
+        this.kinesisAsyncClient = kinesisAsyncClient;
+        this.channelName = channelName;
+        this.shardPosition = startFrom;
+        this.until = until;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.responseConsumer = responseConsumer;
+        this.readGovernor = readGovernor;
+    }
+
+    /**
+     * Starts polling the shard.
+     *
+     * @return future that is completed with the position of the last consumed response, after the {@code until}
+     * condition is reached, the poller was stopped, or the end of a closed shard was reached.
+     */
+    CompletableFuture<ShardPosition> start() {
+        LOG.info("Reading from channel={}, shard={}, position={}", channelName, shardPosition.shardName(), shardPosition);
+        scheduler.execute(this::requestShardIterator);
+        return futureShardPosition;
+    }
+
+    void stop() {
+        stopping = true;
+    }
+
+    String getShardName() {
+        return shardPosition.shardName();
+    }
+
+    /**
+     * Returns true, if all records of a closed shard were consumed.
+     *
+     * @return boolean
+     */
+    boolean isDrained() {
+        return drained;
+    }
+
+    private void requestShardIterator() {
+        try {
+            kinesisAsyncClient
+                    .getShardIterator(buildIteratorShardRequest(channelName, shardPosition))
+                    .whenComplete((response, throwable) -> {
+                        if (throwable != null) {
+                            onError(throwable, this::requestShardIterator);
+                        } else {
+                            shardIterator = response.shardIterator();
+                            scheduler.execute(this::poll);
+                        }
+                    });
+        } catch (final RuntimeException e) {
+            onError(e, this::requestShardIterator);
+        }
+    }
+
+    private void poll() {
+        if (stopping || POISON_SHARD_ITER.equals(shardIterator)) {
+            futureShardPosition.complete(shardPosition);
+            return;
+        }
+        final long delay = readGovernor != null
+                ? readGovernor.reserveRead(channelName, shardPosition.shardName())
+                : 0;
+        if (delay > 0) {
+            scheduler.schedule(this::getRecords, delay, MILLISECONDS);
+        } else {
+            getRecords();
+        }
+    }
+
+    private void getRecords() {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            kinesisAsyncClient
+                    .getRecords(GetRecordsRequest.builder()
+                            .shardIterator(shardIterator)
+                            .limit(FETCH_RECORDS_LIMIT)
+                            .build())
+                    .whenComplete((response, throwable) -> {
+                        if (throwable != null) {
+                            onError(throwable, this::poll);
+                        } else {
+                            final long runtime = stopwatch.elapsed(MILLISECONDS);
+                            if (readGovernor != null) {
+                                readGovernor.recordBytesRead(channelName, shardPosition.shardName(), bytesOf(response));
+                            }
+                            scheduler.execute(() -> consume(response, runtime));
+                        }
+                    });
+        } catch (final RuntimeException e) {
+            onError(e, this::poll);
+        }
+    }
+
+    private void consume(final GetRecordsResponse recordsResponse, final long runtime) {
+        try {
+            retries = 0;
+            if (!recordsResponse.records().isEmpty()) {
+                shardPosition = fromPosition(
+                        shardPosition.shardName(),
+                        recordsResponse.records().get(recordsResponse.records().size() - 1).sequenceNumber());
+            }
+            final KinesisShardResponse response = new KinesisShardResponse(channelName, shardPosition, recordsResponse, runtime);
+            final CompletableFuture<Void> readyForNextResponse = responseConsumer.apply(response);
+            shardIterator = recordsResponse.nextShardIterator();
+            if (shardIterator == null) {
+                LOG.info("Reached end of closed shard {} in channel {}", shardPosition.shardName(), channelName);
+                drained = true;
+                futureShardPosition.complete(shardPosition);
+            } else if (stopping || !until.isAfter(Instant.now(clock))) {
+                futureShardPosition.complete(shardPosition);
+            } else {
+                final long delay = pollScheduler.nextDelay(response, false);
+                if (!readyForNextResponse.isDone()) {
+                    LOG.debug("Parking shard {} in channel {} until in-flight messages are completed", shardPosition.shardName(), channelName);
+                }
+                readyForNextResponse.whenComplete((ignored, throwable) -> scheduler.schedule(this::poll, delay, MILLISECONDS));
+            }
+        } catch (final RuntimeException e) {
+            LOG.error("Failed to consume from Kinesis channel={}, shard={}: {}", channelName, shardPosition.shardName(), e.getMessage());
+            futureShardPosition.completeExceptionally(e);
+        }
+    }
+
+    private void onError(final Throwable throwable, final Runnable retry) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        if (stopping) {
+            futureShardPosition.complete(shardPosition);
+        } else if (cause instanceof ExpiredIteratorException) {
+            LOG.info("Shard iterator of shard {} expired, requesting new iterator at {}", shardPosition.shardName(), shardPosition);
+            scheduler.execute(this::requestShardIterator);
+        } else if ((cause instanceof KinesisException || cause instanceof SdkClientException) && ++retries < RETRY_MAX_ATTEMPTS) {
+            if (cause instanceof ProvisionedThroughputExceededException && readGovernor != null) {
+                readGovernor.throttled(channelName, shardPosition.shardName());
+            }
+            final long delay = cause instanceof ProvisionedThroughputExceededException
+                    ? pollScheduler.nextThrottledDelay()
+                    : Math.min(RETRY_BACK_OFF_MAX_INTERVAL, RETRY_BACK_OFF_INITIAL_INTERVAL << (retries - 1));
+            LOG.warn("Failed to read from shard {} (retryCount={}): {}", shardPosition.shardName(), retries, cause.getMessage());
+            scheduler.schedule(retry, delay, MILLISECONDS);
+        } else {
+            LOG.error("Failed to consume from Kinesis channel={}, shard={}: {}", channelName, shardPosition.shardName(), cause.getMessage());
+            futureShardPosition.completeExceptionally(cause);
+        }
+    }
+
+    private static long bytesOf(final GetRecordsResponse response) {
+        return response.records()
+                .stream()
+                .mapToLong(record -> record.data() != null ? record.data().remaining() : 0)
+                .sum();
+    }
+}
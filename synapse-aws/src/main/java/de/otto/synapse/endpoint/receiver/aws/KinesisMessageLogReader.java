@@ -17,20 +17,42 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.FETCH_RECORDS_LIMIT;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardReader.DEFAULT_MAX_PREFETCH_DEPTH;
 import static java.util.Objects.isNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
-import static java.util.concurrent.Executors.newFixedThreadPool;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Reads the messages of all shards of a Kinesis stream.
+ * <p>
+ *     Resharding is supported by following the {@link KinesisShardLineage lineage} of the shards: closed parent
+ *     shards are read until the end of the shard, before their children are read starting at the position of the
+ *     child in the {@link ChannelPosition}, or at the horizon of the child. Parents are read in parallel.
+ *     If a shard is closed while it is read, the new child shards are discovered and read after the shard is
+ *     drained.
+ * </p>
+ * <p>
+ *     The resulting {@code ChannelPosition} contains the positions of parents and children, so consumption
+ *     can be continued after a restart without losing or replaying messages: closed shards are skipped, if
+ *     any of their descendants already has a position.
+ * </p>
+ * <p>
+ *     Shards are read by the threads of an {@link ExecutorService}, that is either provided by the caller, typically
+ *     the {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of the channel}, or created
+ *     and shut down by the reader itself.
+ * </p>
+ */
 public class KinesisMessageLogReader {
 
     private static final Logger LOG = getLogger(KinesisMessageLogReader.class);
@@ -38,17 +60,84 @@ public class KinesisMessageLogReader {
     private final String channelName;
     private final KinesisClient kinesisClient;
     private final Clock clock;
+    private final ExecutorService providedExecutorService;
+    private final KinesisReadGovernor readGovernor;
+    private final KinesisShardDiscovery shardDiscovery;
+    private volatile KinesisShardLineage shardLineage;
     private List<KinesisShardReader> kinesisShardReaders;
-    private ExecutorService executorService;
+    private volatile ExecutorService executorService;
 
     public static final int SKIP_NEXT_PARTS = 8;
 
     public KinesisMessageLogReader(final String channelName,
                                    final KinesisClient kinesisClient,
                                    final Clock clock) {
+        this(channelName, kinesisClient, clock, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReader.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param clock the clock used to check the {@code until} condition
+     * @param executorService the executor used to read the shards. The executor must be able to run two tasks per
+     *                        shard at the same time - one consuming and one prefetching the shard, and it is not shut down by the reader. If null, the reader
+     *                        is using an executor of its own.
+     */
+    public KinesisMessageLogReader(final String channelName,
+                                   final KinesisClient kinesisClient,
+                                   final Clock clock,
+                                   final ExecutorService executorService) {
+        this(channelName, kinesisClient, clock, executorService, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReader.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param clock the clock used to check the {@code until} condition
+     * @param executorService the executor used to read the shards. The executor must be able to run two tasks per
+     *                        shard at the same time - one consuming and one prefetching the shard, and it is not shut down by the reader. If null, the reader
+     *                        is using an executor of its own.
+     * @param readGovernor the governor used to pace the requests of all readers of the stream, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisMessageLogReader(final String channelName,
+                                   final KinesisClient kinesisClient,
+                                   final Clock clock,
+                                   final ExecutorService executorService,
+                                   final KinesisReadGovernor readGovernor) {
+        this(channelName, kinesisClient, clock, executorService, readGovernor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReader.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param clock the clock used to check the {@code until} condition
+     * @param executorService the executor used to read the shards. The executor must be able to run two tasks per
+     *                        shard at the same time - one consuming and one prefetching the shard, and it is not shut down by the reader. If null, the reader
+     *                        is using an executor of its own.
+     * @param readGovernor the governor used to pace the requests of all readers of the stream, or null, if
+     *                     requests should not be paced.
+     * @param shardDiscovery the cache of the shards shared by all readers of the stream, or null, if the reader
+     *                       should retrieve the shards using {@code DescribeStream}.
+     */
+    public KinesisMessageLogReader(final String channelName,
+                                   final KinesisClient kinesisClient,
+                                   final Clock clock,
+                                   final ExecutorService executorService,
+                                   final KinesisReadGovernor readGovernor,
+                                   final KinesisShardDiscovery shardDiscovery) {
         this.channelName = channelName;
         this.kinesisClient = kinesisClient;
         this.clock = clock;
+        this.providedExecutorService = executorService;
+        this.readGovernor = readGovernor;
+        this.shardDiscovery = shardDiscovery;
     }
 
     public String getChannelName() {
@@ -59,9 +148,47 @@ public class KinesisMessageLogReader {
         if (isNull(executorService)) {
             initExecutorService();
         }
-        return kinesisShardReaders.stream()
-                .map(KinesisShardReader::getShardName)
-                .collect(toList());
+        return shardLineage.getOpenShardNames();
+    }
+
+    /**
+     * Returns the executor used to read the shards: either the executor provided by the caller, or the executor
+     * of the reader itself.
+     *
+     * @return ExecutorService
+     */
+    public ExecutorService getExecutorService() {
+        if (isNull(executorService)) {
+            initExecutorService();
+        }
+        return executorService;
+    }
+
+    /**
+     * Prepares the consumption of the stream, so it can be started without delay.
+     * <p>
+     *     The shards of the stream are retrieved, and the readers of all shards that are consumed first when
+     *     {@link #consumeUntil(ChannelPosition, Instant, Consumer)} is called with the same {@code startFrom}
+     *     position are {@link KinesisShardReader#prepare(ShardPosition) prepared}: the shard iterators are
+     *     requested and the first responses are prefetched in the background.
+     * </p>
+     *
+     * @param startFrom the position the consumption of the stream will be started from
+     */
+    public void prepare(final ChannelPosition startFrom) {
+        if (isNull(executorService)) {
+            initExecutorService();
+        }
+        final KinesisShardLineage lineage = shardLineage;
+        final Set<String> drainedShards = lineage.getShardNames()
+                .stream()
+                .filter(shardName -> lineage.isDrained(shardName, startFrom))
+                .collect(toSet());
+        lineage.getShardNames()
+                .stream()
+                .filter(shardName -> !drainedShards.contains(shardName))
+                .filter(shardName -> drainedShards.containsAll(lineage.getParents(shardName)))
+                .forEach(shardName -> shardReaderOf(shardName).prepare(startFrom.shard(shardName)));
     }
 
     public KinesisMessageLogIterator getMessageLogIterator(final ChannelPosition channelPosition) {
@@ -69,10 +196,10 @@ public class KinesisMessageLogReader {
             initExecutorService();
         }
         try {
-            final List<CompletableFuture<KinesisShardIterator>> futureShardPositions = kinesisShardReaders
+            final List<CompletableFuture<KinesisShardIterator>> futureShardPositions = openShardReaders()
                     .stream()
                     .map(shardReader -> supplyAsync(
-                            () -> new KinesisShardIterator(kinesisClient, channelName, channelPosition.shard(shardReader.getShardName())),
+                            () -> new KinesisShardIterator(kinesisClient, channelName, channelPosition.shard(shardReader.getShardName()), FETCH_RECORDS_LIMIT, readGovernor),
                             executorService))
                     .collect(toList());
             return new KinesisMessageLogIterator(futureShardPositions
@@ -91,7 +218,7 @@ public class KinesisMessageLogReader {
         }
         try {
 
-            final List<CompletableFuture<KinesisShardResponse>> futureShardPositions = kinesisShardReaders
+            final List<CompletableFuture<KinesisShardResponse>> futureShardPositions = openShardReaders()
                     .stream()
                     .map(shardReader -> supplyAsync(
                             () -> {
@@ -113,7 +240,7 @@ public class KinesisMessageLogReader {
     private KinesisShardResponse fetchNext(final KinesisShardIterator shardIterator, int skipNextParts) {
         final String id = shardIterator.getId();
         final KinesisShardResponse shardResponse = shardIterator.next();
-        if(shardResponse.getMessages().isEmpty() && !shardIterator.isPoison() && !Objects.equals(shardIterator.getId(), id) && skipNextParts > 0) {
+        if(shardResponse.getMessages().isEmpty() && !shardIterator.isPoison() && !shardIterator.isAtShardEnd() && !Objects.equals(shardIterator.getId(), id) && skipNextParts > 0) {
             return fetchNext(shardIterator, --skipNextParts);
         }
         return shardResponse;
@@ -129,48 +256,113 @@ public class KinesisMessageLogReader {
             initExecutorService();
         }
         try {
-            final List<CompletableFuture<ShardPosition>> futureShardPositions = kinesisShardReaders
-                    .stream()
-                    .map(shard -> shard.consumeUntil(startFrom.shard(shard.getShardName()), until, consumer))
-                    .collect(toList());
-            // don't chain futureShardPositions with CompletableFuture::join as lazy execution will prevent threads from
-            // running in parallel
-            return supplyAsync(() -> channelPosition(futureShardPositions
-                    .stream()
-                    .map(CompletableFuture::join)
-                    .collect(toList()))
-            ).exceptionally((throwable -> {
-                shutdownExecutor();
-                throw new RuntimeException(throwable.getMessage(), throwable);
-            }));
+            final CompletableFuture<ChannelPosition> futureChannelPosition = new KinesisShardLineageTraversal(
+                    shardLineage,
+                    startFrom,
+                    new KinesisShardLineageTraversal.ShardConsumption() {
+                        @Override
+                        public CompletableFuture<ShardPosition> consume(final String shardName, final ShardPosition shardPosition) {
+                            return shardReaderOf(shardName).consumeUntil(shardPosition, until, consumer);
+                        }
+
+                        @Override
+                        public boolean isDrained(final String shardName) {
+                            return shardReaderOf(shardName).isDrained();
+                        }
+
+                        @Override
+                        public CompletableFuture<KinesisShardLineage> refreshLineage(final KinesisShardLineage lineage) {
+                            // the readers of the shards are running in threads of their own:
+                            return completedFuture(KinesisMessageLogReader.this.refreshLineage());
+                        }
+                    }).start();
+            if (providedExecutorService != null) {
+                return futureChannelPosition.exceptionally((throwable -> {
+                    shutdownExecutor();
+                    throw new RuntimeException(throwable.getMessage(), throwable);
+                }));
+            }
+            // an executor of our own must not be shut down by one of its own threads, so a failed consumption is
+            // completed by a short-lived thread instead of blocking a pooled thread until the consumption is done:
+            final CompletableFuture<ChannelPosition> result = new CompletableFuture<>();
+            futureChannelPosition.whenComplete((channelPosition, throwable) -> {
+                if (throwable == null) {
+                    result.complete(channelPosition);
+                } else {
+                    final Thread shutdownThread = new Thread(() -> {
+                        shutdownExecutor();
+                        result.completeExceptionally(new RuntimeException(throwable.getMessage(), throwable));
+                    }, "kinesis-message-log-shutdown-" + channelName);
+                    shutdownThread.setDaemon(true);
+                    shutdownThread.start();
+                }
+            });
+            return result;
         } catch (final RuntimeException e) {
             shutdownExecutor();
             throw e;
         }
     }
 
-    private void initExecutorService() {
-        final Set<String> openShards = retrieveAllOpenShards();
-        if (openShards.isEmpty()) {
-            this.executorService = newSingleThreadExecutor();
-        } else {
-            this.executorService = newFixedThreadPool(
-                    openShards.size() + 1,
-                    new ThreadFactoryBuilder().setNameFormat("kinesis-message-log-%d").build()
-            );
-        }
-        this.kinesisShardReaders = openShards
+    /**
+     * Retrieves the shards of the stream after a shard was closed while reading, and creates readers for the new
+     * shards.
+     */
+    private synchronized KinesisShardLineage refreshLineage() {
+        LOG.info("Shard of channel {} was closed, retrieving child shards.", channelName);
+        final KinesisShardLineage lineage = new KinesisShardLineage(shardDiscovery != null
+                ? shardDiscovery.refreshShards(channelName)
+                : retrieveAllShards());
+        lineage.getShardNames()
+                .stream()
+                .filter(name -> !shardLineage.contains(name))
+                .forEach(name -> kinesisShardReaders.add(newShardReader(name, executorService)));
+        shardLineage = lineage;
+        return lineage;
+    }
+
+    private KinesisShardReader newShardReader(final String shardName, final ExecutorService executorService) {
+        return new KinesisShardReader(channelName, shardName, kinesisClient, executorService, clock, DEFAULT_MAX_PREFETCH_DEPTH, readGovernor);
+    }
+
+    private KinesisShardReader shardReaderOf(final String shardName) {
+        return kinesisShardReaders
                 .stream()
-                .map(shardName -> new KinesisShardReader(channelName, shardName, kinesisClient, executorService, clock))
+                .filter(shardReader -> shardReader.getShardName().equals(shardName))
+                .findAny()
+                .orElseThrow(() -> new IllegalStateException("Unknown shard " + shardName));
+    }
+
+    private List<KinesisShardReader> openShardReaders() {
+        return kinesisShardReaders
+                .stream()
+                .filter(shardReader -> shardLineage.isOpen(shardReader.getShardName()))
                 .collect(toList());
     }
 
-    private Set<String> retrieveAllOpenShards() {
-        return retrieveAllShards()
+    private synchronized void initExecutorService() {
+        if (executorService != null) {
+            return;
+        }
+        final KinesisShardLineage lineage = new KinesisShardLineage(shardDiscovery != null
+                ? shardDiscovery.getShards(channelName)
+                : retrieveAllShards());
+        lineage.getShardNames()
+                .stream()
+                .filter(shardName -> !lineage.isOpen(shardName))
+                .forEach(shardName -> LOG.info("Shard with id {} is closed. Reading until end of shard before reading child shards.", shardName));
+        // The number of readers is growing if shards are split while consuming the channel:
+        final ExecutorService executorService = providedExecutorService != null
+                ? providedExecutorService
+                : newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("kinesis-message-log-%d").build());
+        this.shardLineage = lineage;
+        this.kinesisShardReaders = new CopyOnWriteArrayList<>(lineage
+                .getShardNames()
                 .stream()
-                .filter(this::isShardOpen)
-                .map(Shard::shardId)
-                .collect(toImmutableSet());
+                .map(shardName -> newShardReader(shardName, executorService))
+                .collect(toList()));
+        // assigned last, because the reader is initialized as soon as the executor is visible to other threads:
+        this.executorService = executorService;
     }
 
     private List<Shard> retrieveAllShards() {
@@ -205,17 +397,12 @@ public class KinesisMessageLogReader {
         }
     }
 
-    private boolean isShardOpen(Shard shard) {
-        if (shard.sequenceNumberRange().endingSequenceNumber() == null) {
-            return true;
-        } else {
-            LOG.warn("Shard with id {} is closed. Cannot retrieve data.", shard.shardId());
-            return false;
-        }
-    }
-
     private void shutdownExecutor() {
-        if (executorService != null) {
+        if (executorService != null && executorService == providedExecutorService) {
+            // the provided executor is shared with others, so only the readers of this channel are stopped:
+            stop();
+            executorService = null;
+        } else if (executorService != null) {
             executorService.shutdownNow();
             try {
                 boolean allThreadsSafelyTerminated = executorService.awaitTermination(30, SECONDS);
@@ -3,12 +3,9 @@ package de.otto.synapse.endpoint.receiver.aws;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
-import de.otto.synapse.channel.ChannelDurationBehind;
 import de.otto.synapse.channel.ChannelPosition;
-import de.otto.synapse.consumer.MessageDispatcher;
-import de.otto.synapse.endpoint.InterceptorChain;
+import de.otto.synapse.consumer.KeyPartitionedDispatcher;
 import de.otto.synapse.endpoint.receiver.AbstractMessageLogReceiverEndpoint;
-import de.otto.synapse.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
@@ -19,12 +16,10 @@ import java.time.Clock;
 import java.time.Instant;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
-import static de.otto.synapse.channel.ChannelDurationBehind.copyOf;
-import static de.otto.synapse.channel.ChannelDurationBehind.unknown;
-import static de.otto.synapse.info.MessageReceiverNotification.builder;
+import static de.otto.synapse.channel.ChannelPosition.merge;
 import static de.otto.synapse.info.MessageReceiverStatus.*;
 import static de.otto.synapse.logging.LogHelper.info;
 
@@ -32,54 +27,16 @@ public class KinesisMessageLogReceiverEndpoint extends AbstractMessageLogReceive
 
     private static final Logger LOG = LoggerFactory.getLogger(KinesisMessageLogReceiverEndpoint.class);
 
+    /**
+     * The default maximum number of messages per shard that are processed by async consumers at the same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD = 1000;
 
-    private static class KinesisShardResponseConsumer implements Consumer<KinesisShardResponse> {
-        private final AtomicReference<ChannelDurationBehind> channelDurationBehind = new AtomicReference<>();
-        private final InterceptorChain interceptorChain;
-        private final MessageDispatcher messageDispatcher;
-        private final ApplicationEventPublisher eventPublisher;
-
-        private KinesisShardResponseConsumer(final List<String> shardNames,
-                                             final InterceptorChain interceptorChain,
-                                             final MessageDispatcher messageDispatcher,
-                                             final ApplicationEventPublisher eventPublisher) {
-            this.interceptorChain = interceptorChain;
-            this.messageDispatcher = messageDispatcher;
-            this.eventPublisher = eventPublisher;
-            channelDurationBehind.set(unknown(shardNames));
-        }
-
-        @Override
-        public void accept(KinesisShardResponse response) {
-            response.getMessages().forEach(message -> {
-                try {
-                    final Message<String> interceptedMessage = interceptorChain.intercept(message);
-                    if (interceptedMessage != null) {
-                        messageDispatcher.accept(message);
-                    }
-                } catch (final Exception e) {
-                    LOG.error("Error processing message: " + e.getMessage(), e);
-                }
-            });
-            channelDurationBehind.updateAndGet(behind -> copyOf(behind)
-                    .with(response.getShardName(), response.getDurationBehind())
-                    .build());
-
-            if (eventPublisher != null) {
-                eventPublisher.publishEvent(builder()
-                        .withChannelName(response.getChannelName())
-                        .withChannelDurationBehind(channelDurationBehind.get())
-                        .withStatus(RUNNING)
-                        .withMessage("Reading from kinesis shard.")
-                        .build());
-            }
-
-        }
-
-    }
 
     private final KinesisMessageLogReader kinesisMessageLogReader;
     private final ApplicationEventPublisher eventPublisher;
+    private final int dispatchParallelism;
+    private final int maxInFlightMessagesPerShard;
 
 
     public KinesisMessageLogReceiverEndpoint(final String channelName,
@@ -94,15 +51,148 @@ public class KinesisMessageLogReceiverEndpoint extends AbstractMessageLogReceive
                                              final ObjectMapper objectMapper,
                                              final ApplicationEventPublisher eventPublisher,
                                              final Clock clock) {
+        this(channelName, kinesisClient, objectMapper, eventPublisher, clock, 1);
+    }
+
+    public KinesisMessageLogReceiverEndpoint(final String channelName,
+                                             final KinesisClient kinesisClient,
+                                             final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final Clock clock,
+                                             final int dispatchParallelism) {
+        this(channelName, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     */
+    public KinesisMessageLogReceiverEndpoint(final String channelName,
+                                             final KinesisClient kinesisClient,
+                                             final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final Clock clock,
+                                             final int dispatchParallelism,
+                                             final int maxInFlightMessagesPerShard) {
+        this(channelName, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     * @param executorService the executor used to read the shards, or null, if the endpoint should use an
+     *                        executor of its own.
+     */
+    public KinesisMessageLogReceiverEndpoint(final String channelName,
+                                             final KinesisClient kinesisClient,
+                                             final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final Clock clock,
+                                             final int dispatchParallelism,
+                                             final int maxInFlightMessagesPerShard,
+                                             final ExecutorService executorService) {
+        this(channelName, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, executorService, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     * @param executorService the executor used to read the shards, or null, if the endpoint should use an
+     *                        executor of its own.
+     * @param readGovernor the governor used to pace the requests of all readers of the stream, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisMessageLogReceiverEndpoint(final String channelName,
+                                             final KinesisClient kinesisClient,
+                                             final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final Clock clock,
+                                             final int dispatchParallelism,
+                                             final int maxInFlightMessagesPerShard,
+                                             final ExecutorService executorService,
+                                             final KinesisReadGovernor readGovernor) {
+        this(channelName, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, executorService, readGovernor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpoint.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param kinesisClient the KinesisClient used to access the stream
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish {@link de.otto.synapse.info.MessageReceiverNotification notifications}
+     * @param clock the clock used to check the {@code until} condition of {@link #consumeUntil(ChannelPosition, Instant)}
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel.
+     *                            Messages having the same key are always dispatched in order.
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard that are processed by
+     *                                    {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}
+     *                                    at the same time.
+     * @param executorService the executor used to read the shards, or null, if the endpoint should use an
+     *                        executor of its own.
+     * @param readGovernor the governor used to pace the requests of all readers of the stream, or null, if
+     *                     requests should not be paced.
+     * @param shardDiscovery the cache of the shards shared by all readers of the stream, or null, if the shards
+     *                       should be retrieved using {@code DescribeStream}.
+     */
+    public KinesisMessageLogReceiverEndpoint(final String channelName,
+                                             final KinesisClient kinesisClient,
+                                             final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final Clock clock,
+                                             final int dispatchParallelism,
+                                             final int maxInFlightMessagesPerShard,
+                                             final ExecutorService executorService,
+                                             final KinesisReadGovernor readGovernor,
+                                             final KinesisShardDiscovery shardDiscovery) {
         super(channelName, objectMapper, eventPublisher);
         this.eventPublisher = eventPublisher;
-        this.kinesisMessageLogReader = new KinesisMessageLogReader(channelName, kinesisClient, clock);
+        this.dispatchParallelism = dispatchParallelism;
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+        this.kinesisMessageLogReader = new KinesisMessageLogReader(channelName, kinesisClient, clock, executorService, readGovernor, shardDiscovery);
     }
 
     @Override
     @Nonnull
     public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull ChannelPosition startFrom,
                                                            final @Nonnull Instant until) {
+        return consumeUntil(startFrom, until, (channelPosition) -> {});
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull ChannelPosition startFrom,
+                                                           final @Nonnull Instant until,
+                                                           final @Nonnull Consumer<ChannelPosition> positionListener) {
         try {
             publishEvent(STARTING, "Consuming messages from Kinesis.", null);
             final long t1 = System.currentTimeMillis();
@@ -110,9 +200,12 @@ public class KinesisMessageLogReceiverEndpoint extends AbstractMessageLogReceive
 
             publishEvent(STARTED, "Received shards from Kinesis.", null);
 
-            final KinesisShardResponseConsumer consumer = new KinesisShardResponseConsumer(shards, getInterceptorChain(), getMessageDispatcher(), eventPublisher);
+            final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(dispatchParallelism, kinesisMessageLogReader.getExecutorService(), getMessageDispatcher());
+            final KinesisShardResponseConsumer consumer = new KinesisShardResponseConsumer(shards, startFrom, getInterceptorChain(), dispatcher, eventPublisher, maxInFlightMessagesPerShard, positionListener);
 
             return kinesisMessageLogReader.consumeUntil(startFrom, until, consumer)
+                    // the position of a shard is only advanced up to the messages completed by async consumers:
+                    .thenApply((channelPosition) -> merge(channelPosition, consumer.awaitCompletion()))
                     .exceptionally((throwable) -> {
                         LOG.error("Failed to consume from Kinesis stream {}: {}", getChannelName(), throwable.getMessage());
                         publishEvent(FAILED, "Failed to consume messages from Kinesis: " + throwable.getMessage(), null);
@@ -137,6 +230,25 @@ public class KinesisMessageLogReceiverEndpoint extends AbstractMessageLogReceive
         }
     }
 
+    /**
+     * Retrieves the shards of the stream, requests the shard iterators at {@code startFrom} and prefetches the
+     * first responses of the shards in the background.
+     * <p>
+     *     Failures are logged and ignored: the following call of {@link #consumeUntil(ChannelPosition, Instant)}
+     *     is retrying the requests.
+     * </p>
+     *
+     * @param startFrom the start position of the following message consumption
+     */
+    @Override
+    public void prepare(final @Nonnull ChannelPosition startFrom) {
+        try {
+            kinesisMessageLogReader.prepare(startFrom);
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to prepare consumption of Kinesis stream {}: {}", getChannelName(), e.getMessage());
+        }
+    }
+
     @Override
     public void stop() {
         LOG.info("Channel {} received stop signal.", getChannelName());
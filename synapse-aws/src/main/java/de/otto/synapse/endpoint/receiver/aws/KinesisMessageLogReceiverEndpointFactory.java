@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
 import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint;
 import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpointFactory;
+import de.otto.synapse.executor.SynapseExecutors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
@@ -11,6 +12,8 @@ import software.amazon.awssdk.services.kinesis.KinesisClient;
 import javax.annotation.Nonnull;
 import java.time.Clock;
 
+import static de.otto.synapse.endpoint.receiver.aws.KinesisMessageLogReceiverEndpoint.DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD;
+
 public class KinesisMessageLogReceiverEndpointFactory implements MessageLogReceiverEndpointFactory {
 
     private final MessageInterceptorRegistry interceptorRegistry;
@@ -18,13 +21,35 @@ public class KinesisMessageLogReceiverEndpointFactory implements MessageLogRecei
     private final ObjectMapper objectMapper;
     private final ApplicationEventPublisher eventPublisher;
     private final Clock clock;
+    private final int dispatchParallelism;
+    private final int maxInFlightMessagesPerShard;
+    private final SynapseExecutors synapseExecutors;
+    private final KinesisReadGovernor readGovernor;
+    private final KinesisShardDiscovery shardDiscovery;
 
     @Autowired
     public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
                                                     final KinesisClient kinesisClient,
                                                     final ObjectMapper objectMapper,
                                                     final ApplicationEventPublisher eventPublisher) {
-        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, Clock.systemDefaultZone());
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, Clock.systemDefaultZone(), 1);
+    }
+
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final int dispatchParallelism) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, Clock.systemDefaultZone(), dispatchParallelism);
+    }
+
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final int dispatchParallelism,
+                                                    final int maxInFlightMessagesPerShard) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, Clock.systemDefaultZone(), dispatchParallelism, maxInFlightMessagesPerShard);
     }
 
     public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
@@ -32,16 +57,122 @@ public class KinesisMessageLogReceiverEndpointFactory implements MessageLogRecei
                                                     final ObjectMapper objectMapper,
                                                     final ApplicationEventPublisher eventPublisher,
                                                     final Clock clock) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, clock, 1);
+    }
+
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final Clock clock,
+                                                    final int dispatchParallelism) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, DEFAULT_MAX_IN_FLIGHT_MESSAGES_PER_SHARD);
+    }
+
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final Clock clock,
+                                                    final int dispatchParallelism,
+                                                    final int maxInFlightMessagesPerShard) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpointFactory.
+     *
+     * @param interceptorRegistry registry used to register interceptors of the endpoints
+     * @param kinesisClient the KinesisClient used to access the streams
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param clock the clock used to check the {@code until} condition
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard processed by async consumers
+     * @param synapseExecutors the executors used to read the shards of the channels, or null, if every endpoint
+     *                         should use an executor of its own.
+     */
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final Clock clock,
+                                                    final int dispatchParallelism,
+                                                    final int maxInFlightMessagesPerShard,
+                                                    final SynapseExecutors synapseExecutors) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, synapseExecutors, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpointFactory.
+     *
+     * @param interceptorRegistry registry used to register interceptors of the endpoints
+     * @param kinesisClient the KinesisClient used to access the streams
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param clock the clock used to check the {@code until} condition
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard processed by async consumers
+     * @param synapseExecutors the executors used to read the shards of the channels, or null, if every endpoint
+     *                         should use an executor of its own.
+     * @param readGovernor the governor shared by all endpoints to pace the requests to the shards, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final Clock clock,
+                                                    final int dispatchParallelism,
+                                                    final int maxInFlightMessagesPerShard,
+                                                    final SynapseExecutors synapseExecutors,
+                                                    final KinesisReadGovernor readGovernor) {
+        this(interceptorRegistry, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard, synapseExecutors, readGovernor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageLogReceiverEndpointFactory.
+     *
+     * @param interceptorRegistry registry used to register interceptors of the endpoints
+     * @param kinesisClient the KinesisClient used to access the streams
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param clock the clock used to check the {@code until} condition
+     * @param dispatchParallelism the number of lanes used to dispatch the messages of a shard in parallel
+     * @param maxInFlightMessagesPerShard the maximum number of messages per shard processed by async consumers
+     * @param synapseExecutors the executors used to read the shards of the channels, or null, if every endpoint
+     *                         should use an executor of its own.
+     * @param readGovernor the governor shared by all endpoints to pace the requests to the shards, or null, if
+     *                     requests should not be paced.
+     * @param shardDiscovery the cache of the shards shared by all endpoints, or null, if every endpoint should
+     *                       retrieve the shards using {@code DescribeStream}.
+     */
+    public KinesisMessageLogReceiverEndpointFactory(final MessageInterceptorRegistry interceptorRegistry,
+                                                    final KinesisClient kinesisClient,
+                                                    final ObjectMapper objectMapper,
+                                                    final ApplicationEventPublisher eventPublisher,
+                                                    final Clock clock,
+                                                    final int dispatchParallelism,
+                                                    final int maxInFlightMessagesPerShard,
+                                                    final SynapseExecutors synapseExecutors,
+                                                    final KinesisReadGovernor readGovernor,
+                                                    final KinesisShardDiscovery shardDiscovery) {
         this.interceptorRegistry = interceptorRegistry;
         this.kinesisClient = kinesisClient;
         this.objectMapper = objectMapper;
         this.eventPublisher = eventPublisher;
         this.clock = clock;
+        this.dispatchParallelism = dispatchParallelism;
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+        this.synapseExecutors = synapseExecutors;
+        this.readGovernor = readGovernor;
+        this.shardDiscovery = shardDiscovery;
     }
 
     @Override
     public MessageLogReceiverEndpoint create(@Nonnull String channelName) {
-        final MessageLogReceiverEndpoint messageLog = new KinesisMessageLogReceiverEndpoint(channelName, kinesisClient, objectMapper, eventPublisher, clock);
+        final MessageLogReceiverEndpoint messageLog = new KinesisMessageLogReceiverEndpoint(channelName, kinesisClient, objectMapper, eventPublisher, clock, dispatchParallelism, maxInFlightMessagesPerShard,
+                synapseExecutors != null ? synapseExecutors.executorFor(channelName) : null, readGovernor, shardDiscovery);
         messageLog.registerInterceptorsFrom(interceptorRegistry);
         return messageLog;
     }
@@ -3,6 +3,7 @@ package de.otto.synapse.endpoint.receiver.aws;
 import com.google.common.collect.ImmutableList;
 import de.otto.synapse.channel.ChannelDurationBehind;
 import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.consumer.BatchMessageConsumer;
 import de.otto.synapse.consumer.MessageConsumer;
 import de.otto.synapse.consumer.MessageDispatcher;
 import de.otto.synapse.message.Message;
@@ -75,13 +76,26 @@ public class KinesisMessageLogResponse {
      *     final MessageConsumer&lt;TestPayload&gt; consumer = someTestMessageConsumer();
      *     response.dispatchMessages(new MessageDispatcher(new ObjectMapper(), singletonList(consumer)));
      * </code></pre>
+     * <p>
+     *     If the consumer is a {@link BatchMessageConsumer}, the messages of every shard response are
+     *     dispatched as a single batch.
+     * </p>
      * @param messageConsumer the MessageConsumer
      */
     public void dispatchMessages(final MessageConsumer<String> messageConsumer) {
-        shardResponses
-                .stream()
-                .flatMap(response -> response.getMessages().stream())
-                .forEach(messageConsumer);
+        if (messageConsumer instanceof BatchMessageConsumer) {
+            final BatchMessageConsumer<String> batchMessageConsumer = (BatchMessageConsumer<String>) messageConsumer;
+            shardResponses
+                    .stream()
+                    .map(KinesisShardResponse::getMessages)
+                    .filter(messages -> !messages.isEmpty())
+                    .forEach(batchMessageConsumer::acceptAll);
+        } else {
+            shardResponses
+                    .stream()
+                    .flatMap(response -> response.getMessages().stream())
+                    .forEach(messageConsumer);
+        }
     }
 
     public Set<String> getShardNames() {
@@ -0,0 +1,179 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Paces the {@code GetRecords} requests of all readers of a Kinesis shard, so the read limits of the shard are
+ * not exceeded.
+ * <p>
+ *     Kinesis is limiting every shard to five {@code GetRecords} requests and 2 MB of data per second. If multiple
+ *     readers in a single JVM are reading the same stream - for example several event sources and the
+ *     {@link de.otto.synapse.compaction.aws.CompactionService} - they would exceed these limits, get throttled
+ *     and back off for up to a minute. Using a shared KinesisReadGovernor, the readers are waiting for their
+ *     turn instead.
+ * </p>
+ * <p>
+ *     The governor is maintaining two token buckets per stream and shard: one for requests and one for bytes.
+ *     Every request is taking a token from the request bucket. Because the size of a response is not known in
+ *     advance, every request is also reserving its share of the byte limit - the maximum number of bytes per
+ *     second, divided by the maximum number of requests per second - from the byte bucket. After the response
+ *     was received, the byte bucket is corrected by the difference between the number of bytes actually returned
+ *     and the reserved share. The byte bucket may become negative after a large response; the following requests
+ *     of the shard are then delayed one after another until the bucket is refilled.
+ * </p>
+ */
+@ThreadSafe
+public class KinesisReadGovernor {
+
+    private static final Logger LOG = getLogger(KinesisReadGovernor.class);
+
+    /**
+     * The maximum number of {@code GetRecords} requests per shard and second supported by Kinesis.
+     */
+    public static final int DEFAULT_MAX_READS_PER_SECOND = 5;
+    /**
+     * The maximum number of bytes per shard and second that can be read from Kinesis.
+     */
+    public static final long DEFAULT_MAX_BYTES_PER_SECOND = 2L * 1024 * 1024;
+
+    private final double maxReadsPerSecond;
+    private final double maxBytesPerSecond;
+    private final long bytesPerRead;
+    private final Clock clock;
+    private final ConcurrentMap<String, ShardBuckets> shardBuckets = new ConcurrentHashMap<>();
+
+    public KinesisReadGovernor() {
+        this(DEFAULT_MAX_READS_PER_SECOND, DEFAULT_MAX_BYTES_PER_SECOND, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a KinesisReadGovernor.
+     *
+     * @param maxReadsPerSecond the maximum number of requests per shard and second
+     * @param maxBytesPerSecond the maximum number of bytes per shard and second
+     * @param clock the clock used to refill the buckets
+     */
+    public KinesisReadGovernor(final double maxReadsPerSecond,
+                               final long maxBytesPerSecond,
+                               final @Nonnull Clock clock) {
+        if (maxReadsPerSecond <= 0 || maxBytesPerSecond <= 0) {
+            throw new IllegalArgumentException("maxReadsPerSecond and maxBytesPerSecond must be greater than 0");
+        }
+        this.maxReadsPerSecond = maxReadsPerSecond;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.bytesPerRead = (long) (maxBytesPerSecond / maxReadsPerSecond);
+        this.clock = clock;
+    }
+
+    /**
+     * Reserves a request to a shard, without blocking the calling thread.
+     * <p>
+     *     The request must not be sent before the returned number of milliseconds has elapsed. The request and
+     *     its share of the byte limit are reserved immediately, so concurrent readers of the shard are delayed
+     *     after this request.
+     * </p>
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     * @return the number of milliseconds to wait before the request is sent
+     */
+    public long reserveRead(final @Nonnull String channelName,
+                            final @Nonnull String shardName) {
+        return bucketsOf(channelName, shardName).reserveRead(clock.millis());
+    }
+
+    /**
+     * Reserves a request to a shard, and blocks until the request can be sent.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquireRead(final @Nonnull String channelName,
+                            final @Nonnull String shardName) throws InterruptedException {
+        final long delay = reserveRead(channelName, shardName);
+        if (delay > 0) {
+            LOG.debug("Delaying read from channel={}, shard={} by {}ms", channelName, shardName, delay);
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Corrects the byte bucket of a shard by the difference between the number of bytes returned by a request
+     * and the share of the byte limit that was reserved by {@link #reserveRead(String, String)}.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     * @param numberOfBytes the number of bytes returned by the request
+     */
+    public void recordBytesRead(final @Nonnull String channelName,
+                                final @Nonnull String shardName,
+                                final long numberOfBytes) {
+        bucketsOf(channelName, shardName).takeBytes(clock.millis(), numberOfBytes - bytesPerRead);
+    }
+
+    /**
+     * Empties the buckets of a shard after a request was throttled by Kinesis, so the following requests of all
+     * readers are delayed until the buckets are refilled.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     */
+    public void throttled(final @Nonnull String channelName,
+                          final @Nonnull String shardName) {
+        bucketsOf(channelName, shardName).drain(clock.millis());
+    }
+
+    private ShardBuckets bucketsOf(final String channelName, final String shardName) {
+        return shardBuckets.computeIfAbsent(channelName + "/" + shardName, key -> new ShardBuckets(clock.millis()));
+    }
+
+    private class ShardBuckets {
+        private double reads;
+        private double bytes;
+        private long lastRefill;
+
+        ShardBuckets(final long now) {
+            this.reads = maxReadsPerSecond;
+            this.bytes = maxBytesPerSecond;
+            this.lastRefill = now;
+        }
+
+        synchronized long reserveRead(final long now) {
+            refill(now);
+            reads -= 1;
+            bytes -= bytesPerRead;
+            final double readDelay = reads < 0 ? -reads * 1000 / maxReadsPerSecond : 0;
+            final double byteDelay = bytes < 0 ? -bytes * 1000 / maxBytesPerSecond : 0;
+            return (long) Math.ceil(Math.max(readDelay, byteDelay));
+        }
+
+        synchronized void takeBytes(final long now, final long numberOfBytes) {
+            refill(now);
+            bytes = Math.min(maxBytesPerSecond, bytes - numberOfBytes);
+        }
+
+        synchronized void drain(final long now) {
+            refill(now);
+            reads = Math.min(reads, 0);
+            bytes = Math.min(bytes, 0);
+        }
+
+        private void refill(final long now) {
+            final long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                reads = Math.min(maxReadsPerSecond, reads + elapsed * maxReadsPerSecond / 1000);
+                bytes = Math.min(maxBytesPerSecond, bytes + elapsed * maxBytesPerSecond / 1000);
+                lastRefill = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Retrieves the shards of Kinesis streams, and caches them, so all readers of a stream are sharing a single
+ * view of the topology of the stream.
+ * <p>
+ *     {@code DescribeStream} is limited to ten requests per second and account, so retrieving the shards for every
+ *     reader of every stream is easily throttled if many channels are started at the same time. The
+ *     KinesisShardDiscovery is using {@code ListShards} instead, with pages of up to
+ *     {@value #MAX_RESULTS_PER_PAGE} shards, and retrieves the shards of a stream only once. Concurrent callers are
+ *     waiting for the first request of the stream instead of sending requests of their own.
+ * </p>
+ * <p>
+ *     After the first access, the cached shards of a stream are refreshed in the background every
+ *     {@code refreshInterval}. Failed refreshes are logged, and the previous shards are kept. Readers that are
+ *     detecting a closed shard are able to {@link #refreshShards(String) refresh} the shards immediately.
+ * </p>
+ */
+@ThreadSafe
+public class KinesisShardDiscovery implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(KinesisShardDiscovery.class);
+
+    /**
+     * The default interval used to refresh the cached shards of a stream.
+     */
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * The maximum number of shards returned by a single {@code ListShards} request.
+     */
+    static final int MAX_RESULTS_PER_PAGE = 1000;
+
+    private final KinesisClient kinesisClient;
+    private final Duration refreshInterval;
+    private final ConcurrentMap<String, StreamShards> streamShards = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public KinesisShardDiscovery(final @Nonnull KinesisClient kinesisClient) {
+        this(kinesisClient, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Creates a KinesisShardDiscovery.
+     *
+     * @param kinesisClient the KinesisClient used to retrieve the shards
+     * @param refreshInterval the interval used to refresh the cached shards in the background. If zero, the
+     *                        shards are only refreshed by calling {@link #refreshShards(String)}.
+     */
+    public KinesisShardDiscovery(final @Nonnull KinesisClient kinesisClient,
+                                 final @Nonnull Duration refreshInterval) {
+        if (refreshInterval.isNegative()) {
+            throw new IllegalArgumentException("refreshInterval must not be negative");
+        }
+        this.kinesisClient = kinesisClient;
+        this.refreshInterval = refreshInterval;
+        this.scheduler = refreshInterval.isZero()
+                ? null
+                : newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("kinesis-shard-discovery-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    /**
+     * Returns the shards of a stream, including closed shards. The shards are retrieved on first access, and taken
+     * from the cache afterwards.
+     *
+     * @param streamName the name of the Kinesis stream
+     * @return immutable list of shards
+     */
+    @Nonnull
+    public List<Shard> getShards(final @Nonnull String streamName) {
+        return streamShardsOf(streamName).get();
+    }
+
+    /**
+     * Retrieves the shards of a stream, bypassing and updating the cache.
+     *
+     * @param streamName the name of the Kinesis stream
+     * @return immutable list of shards
+     */
+    @Nonnull
+    public List<Shard> refreshShards(final @Nonnull String streamName) {
+        return streamShardsOf(streamName).refresh();
+    }
+
+    /**
+     * Stops refreshing the cached shards in the background.
+     */
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private StreamShards streamShardsOf(final String streamName) {
+        return streamShards.computeIfAbsent(streamName, name -> {
+            final StreamShards shards = new StreamShards(name);
+            if (scheduler != null) {
+                final long intervalMillis = refreshInterval.toMillis();
+                scheduler.scheduleWithFixedDelay(shards::refreshInBackground, intervalMillis, intervalMillis, MILLISECONDS);
+            }
+            return shards;
+        });
+    }
+
+    /**
+     * Retrieves all shards of a stream using {@code ListShards}, without caching.
+     *
+     * @param kinesisClient the KinesisClient used to retrieve the shards
+     * @param streamName the name of the Kinesis stream
+     * @return immutable list of shards
+     */
+    static List<Shard> listShards(final KinesisClient kinesisClient,
+                                  final String streamName) {
+        final List<Shard> shards = new ArrayList<>();
+        String nextToken = null;
+        do {
+            // the stream name must not be specified, if the next page is requested using a token:
+            final ListShardsRequest request = nextToken == null
+                    ? ListShardsRequest.builder().streamName(streamName).maxResults(MAX_RESULTS_PER_PAGE).build()
+                    : ListShardsRequest.builder().nextToken(nextToken).maxResults(MAX_RESULTS_PER_PAGE).build();
+            final ListShardsResponse response = kinesisClient.listShards(request);
+            shards.addAll(response.shards());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return ImmutableList.copyOf(shards);
+    }
+
+    private class StreamShards {
+        private final String streamName;
+        private volatile List<Shard> shards;
+
+        StreamShards(final String streamName) {
+            this.streamName = streamName;
+        }
+
+        List<Shard> get() {
+            final List<Shard> shards = this.shards;
+            if (shards != null) {
+                return shards;
+            }
+            synchronized (this) {
+                return this.shards != null
+                        ? this.shards
+                        : refresh();
+            }
+        }
+
+        synchronized List<Shard> refresh() {
+            final List<Shard> shards = listShards(kinesisClient, streamName);
+            LOG.debug("Retrieved {} shards of stream {}", shards.size(), streamName);
+            this.shards = shards;
+            return shards;
+        }
+
+        void refreshInBackground() {
+            try {
+                refresh();
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to refresh shards of stream {}: {}", streamName, e.getMessage());
+            }
+        }
+    }
+}
@@ -34,6 +34,13 @@ import static software.amazon.awssdk.services.kinesis.model.ShardIteratorType.*;
  *     coming from the Amazon Kinesis SDK as described
  *     {@link KinesisClient#getShardIterator(GetShardIteratorRequest) here}.
  * </p>
+ * <p>
+ *     Failing {@code GetRecords} requests are retried with an exponential back-off of up to
+ *     {@value #RETRY_BACK_OFF_POLICY_MAX_INTERVAL}ms. Requests throttled by Kinesis are not backed off
+ *     exponentially, because the read limits of a shard are refilled every second: throttled requests are retried
+ *     as soon as the {@link KinesisReadGovernor} grants the next read of the shard or, without a governor, after
+ *     {@value #THROTTLED_RETRY_DELAY_MILLIS}ms.
+ * </p>
  */
 public class KinesisShardIterator {
 
@@ -46,6 +53,7 @@ public class KinesisShardIterator {
     private static final int RETRY_BACK_OFF_POLICY_INITIAL_INTERVAL = 1000;
     private static final int RETRY_BACK_OFF_POLICY_MAX_INTERVAL = 64000;
     private static final double RETRY_BACK_OFF_POLICY_MULTIPLIER = 2.0;
+    private static final long THROTTLED_RETRY_DELAY_MILLIS = 1000;
 
     private final KinesisClient kinesisClient;
     private final String channelName;
@@ -53,7 +61,9 @@ public class KinesisShardIterator {
     private ShardPosition shardPosition;
     private final int fetchRecordLimit;
     private final RetryTemplate retryTemplate;
+    private final KinesisReadGovernor readGovernor;
     private final AtomicBoolean stopSignal = new AtomicBoolean(false);
+    private volatile boolean throttled;
 
     public KinesisShardIterator(final @Nonnull KinesisClient kinesisClient,
                                 final @Nonnull String channelName,
@@ -65,13 +75,32 @@ public class KinesisShardIterator {
                                 final @Nonnull String channelName,
                                 final @Nonnull ShardPosition shardPosition,
                                 final int fetchRecordLimit) {
+        this(kinesisClient, channelName, shardPosition, fetchRecordLimit, null);
+    }
+
+    /**
+     * Creates a KinesisShardIterator.
+     *
+     * @param kinesisClient the Kinesis client
+     * @param channelName the name of the Kinesis stream
+     * @param shardPosition the position to start from
+     * @param fetchRecordLimit the maximum number of records per response
+     * @param readGovernor the governor used to pace the requests of all readers of the shard, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisShardIterator(final @Nonnull KinesisClient kinesisClient,
+                                final @Nonnull String channelName,
+                                final @Nonnull ShardPosition shardPosition,
+                                final int fetchRecordLimit,
+                                final KinesisReadGovernor readGovernor) {
         this.kinesisClient = kinesisClient;
         this.fetchRecordLimit = fetchRecordLimit;
+        this.readGovernor = readGovernor;
         this.retryTemplate = createRetryTemplate();
         this.channelName = channelName;
         this.shardPosition = shardPosition;
         this.id = kinesisClient
-                .getShardIterator(buildIteratorShardRequest(shardPosition))
+                .getShardIterator(buildIteratorShardRequest(channelName, shardPosition))
                 .shardIterator();
     }
 
@@ -101,14 +130,39 @@ public class KinesisShardIterator {
      * @return true if the iterator is poisonous, false otherwise.
      */
     boolean isPoison() {
-        return this.id.equals(POISON_SHARD_ITER);
+        return POISON_SHARD_ITER.equals(this.id);
+    }
+
+    /**
+     * Returns true, if the shard is closed and all records of the shard were read. In this case, the last
+     * response has not returned a next shard iterator, and the records of the shard are continued in the
+     * child shards.
+     *
+     * @return true if the end of a closed shard is reached, false otherwise.
+     */
+    public boolean isAtShardEnd() {
+        return this.id == null;
     }
 
     public void stop() {
         stopSignal.set(true);
     }
 
+    /**
+     * Returns true, if the last call of {@link #next()} was throttled by Kinesis at least once, because the
+     * read throughput of the shard was exceeded.
+     *
+     * @return true if the last request was throttled, false otherwise
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+
     public KinesisShardResponse next() {
+        if (isAtShardEnd()) {
+            throw new IllegalStateException("Unable to read from shard " + shardPosition.shardName() + ": end of closed shard is reached");
+        }
+        throttled = false;
         try {
             final Stopwatch stopwatch = Stopwatch.createStarted();
             final GetRecordsResponse recordsResponse = retryTemplate.execute((RetryCallback<GetRecordsResponse, Throwable>) context -> {
@@ -118,12 +172,16 @@ public class KinesisShardIterator {
                 return tryNext();
             });
             return new KinesisShardResponse(channelName, shardPosition, recordsResponse, stopwatch.elapsed(MILLISECONDS));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to read from shard " + shardPosition.shardName(), e);
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
     }
 
-    private GetShardIteratorRequest buildIteratorShardRequest(final ShardPosition shardPosition) {
+    static GetShardIteratorRequest buildIteratorShardRequest(final String channelName,
+                                                             final ShardPosition shardPosition) {
         final GetShardIteratorRequest.Builder shardRequestBuilder = GetShardIteratorRequest
                 .builder()
                 .shardId(shardPosition.shardName())
@@ -150,11 +208,42 @@ public class KinesisShardIterator {
         return shardRequestBuilder.build();
     }
 
-    private GetRecordsResponse tryNext() {
-        GetRecordsResponse response = kinesisClient.getRecords(GetRecordsRequest.builder()
-                .shardIterator(id)
-                .limit(fetchRecordLimit)
-                .build());
+    private GetRecordsResponse tryNext() throws InterruptedException {
+        GetRecordsResponse response = null;
+        while (response == null) {
+            if (readGovernor != null) {
+                readGovernor.acquireRead(channelName, shardPosition.shardName());
+            }
+            try {
+                response = kinesisClient.getRecords(GetRecordsRequest.builder()
+                        .shardIterator(id)
+                        .limit(fetchRecordLimit)
+                        .build());
+            } catch (final ProvisionedThroughputExceededException e) {
+                throttled = true;
+                if (stopSignal.get()) {
+                    throw e;
+                }
+                LOG.warn("Reading from shard {} was throttled: {}", shardPosition.shardName(), e.getMessage());
+                if (readGovernor != null) {
+                    // the next acquireRead() is waiting until the limits of the shard are refilled:
+                    readGovernor.throttled(channelName, shardPosition.shardName());
+                } else {
+                    MILLISECONDS.sleep(THROTTLED_RETRY_DELAY_MILLIS);
+                }
+            } catch (final ExpiredIteratorException e) {
+                // Iterators expire after five minutes, for example if prepared responses were not consumed in time.
+                // The request is retried using a new iterator:
+                LOG.info("Shard iterator of shard {} expired, requesting new iterator at {}", shardPosition.shardName(), shardPosition);
+                this.id = kinesisClient
+                        .getShardIterator(buildIteratorShardRequest(channelName, shardPosition))
+                        .shardIterator();
+                throw e;
+            }
+        }
+        if (readGovernor != null) {
+            readGovernor.recordBytesRead(channelName, shardPosition.shardName(), bytesOf(response));
+        }
         this.id = response.nextShardIterator();
         LOG.debug("next() with id " + this.id + " returned " + response.records().size() + " records");
         if (!response.records().isEmpty()) {
@@ -166,6 +255,13 @@ public class KinesisShardIterator {
         return response;
     }
 
+    private static long bytesOf(final GetRecordsResponse response) {
+        return response.records()
+                .stream()
+                .mapToLong(record -> record.data() != null ? record.data().remaining() : 0)
+                .sum();
+    }
+
     private RetryTemplate createRetryTemplate() {
         SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy(
                 RETRY_MAX_ATTEMPTS,
@@ -188,7 +284,6 @@ public class KinesisShardIterator {
     class LogRetryListener extends RetryListenerSupport {
         @Override
         public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable t) {
-
             warn(
                     LOG,
                     ImmutableMap.of("retryCount", context.getRetryCount(), "errorMessage", Strings.nullToEmpty(t.getMessage())),
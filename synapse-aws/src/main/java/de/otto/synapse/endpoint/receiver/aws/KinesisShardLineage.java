@@ -0,0 +1,143 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.channel.StartFrom;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The lineage of the shards of a Kinesis stream.
+ * <p>
+ *     If a shard is split or two shards are merged, the parent shards are closed and new child shards are
+ *     created. Records that were written before the resharding are still available in the parents, until
+ *     they are expired. To read the records of a partition key in order, the parents must therefore be read
+ *     until the end of the shard, before the children are read.
+ * </p>
+ * <p>
+ *     The lineage only contains shards that are returned by Kinesis: parents that are already expired are
+ *     ignored.
+ * </p>
+ */
+@Immutable
+class KinesisShardLineage {
+
+    private final Map<String, Shard> shards;
+    private final Map<String, List<String>> children;
+
+    /**
+     * Creates the lineage of a list of shards.
+     *
+     * @param shards all shards of the stream, including closed shards
+     */
+    KinesisShardLineage(final @Nonnull List<Shard> shards) {
+        this.shards = new LinkedHashMap<>();
+        this.children = new LinkedHashMap<>();
+        shards.forEach(shard -> this.shards.put(shard.shardId(), shard));
+        shards.forEach(shard -> getParents(shard.shardId())
+                .forEach(parent -> children.computeIfAbsent(parent, (key) -> new ArrayList<>()).add(shard.shardId())));
+    }
+
+    /**
+     * Returns the names of all shards, including closed shards.
+     *
+     * @return list of shard names
+     */
+    @Nonnull
+    List<String> getShardNames() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    /**
+     * Returns the names of all shards that are not closed.
+     *
+     * @return list of shard names
+     */
+    @Nonnull
+    List<String> getOpenShardNames() {
+        return shards.keySet()
+                .stream()
+                .filter(this::isOpen)
+                .collect(toList());
+    }
+
+    boolean contains(final String shardName) {
+        return shards.containsKey(shardName);
+    }
+
+    /**
+     * Returns true, if the shard is open, false if the shard is closed because of a resharding.
+     *
+     * @param shardName the name of the shard
+     * @return boolean
+     */
+    boolean isOpen(final String shardName) {
+        final Shard shard = shards.get(shardName);
+        return shard != null && shard.sequenceNumberRange().endingSequenceNumber() == null;
+    }
+
+    /**
+     * Returns the parents of a shard that are part of the lineage: one parent if the shard was created by a
+     * split, two parents if the shard was created by a merge, and no parents if the shard was created with the
+     * stream, or if the parents are already expired.
+     *
+     * @param shardName the name of the shard
+     * @return list of parent shard names
+     */
+    @Nonnull
+    List<String> getParents(final String shardName) {
+        final Shard shard = shards.get(shardName);
+        if (shard == null) {
+            return Collections.emptyList();
+        }
+        final List<String> parents = new ArrayList<>(2);
+        if (shard.parentShardId() != null && shards.containsKey(shard.parentShardId())) {
+            parents.add(shard.parentShardId());
+        }
+        if (shard.adjacentParentShardId() != null && shards.containsKey(shard.adjacentParentShardId())) {
+            parents.add(shard.adjacentParentShardId());
+        }
+        return parents;
+    }
+
+    /**
+     * Returns the children of a shard.
+     *
+     * @param shardName the name of the shard
+     * @return list of child shard names, empty if the shard is open
+     */
+    @Nonnull
+    List<String> getChildren(final String shardName) {
+        return children.getOrDefault(shardName, Collections.emptyList());
+    }
+
+    /**
+     * Returns true, if the shard is closed and the channel position is proving that the shard was already read
+     * until the end of the shard: because parents are always read before their children, this is the case, if
+     * any descendant of the shard has a sequence-number position.
+     *
+     * @param shardName the name of the shard
+     * @param channelPosition the channel position
+     * @return boolean
+     */
+    boolean isDrained(final String shardName, final @Nonnull ChannelPosition channelPosition) {
+        if (isOpen(shardName)) {
+            return false;
+        }
+        for (final String child : getChildren(shardName)) {
+            final StartFrom startFrom = channelPosition.shard(child).startFrom();
+            if (startFrom == StartFrom.POSITION || startFrom == StartFrom.AT_POSITION || isDrained(child, channelPosition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
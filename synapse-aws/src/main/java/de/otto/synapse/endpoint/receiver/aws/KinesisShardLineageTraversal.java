@@ -0,0 +1,199 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.channel.ShardPosition;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Consumes the shards of a Kinesis stream in the order of their {@link KinesisShardLineage lineage}.
+ * <p>
+ *     Shards without parents, or with parents that are already drained, are consumed in parallel. If a shard
+ *     is drained, consumption of a child is started, as soon as all parents of the child are drained. If a
+ *     drained shard has no known children, because the shard was closed while it was consumed, the lineage
+ *     is {@link ShardConsumption#refreshLineage(KinesisShardLineage) refreshed} asynchronously.
+ * </p>
+ * <p>
+ *     Closed shards are skipped, if the start position proves that they are already
+ *     {@link KinesisShardLineage#isDrained(String, ChannelPosition) drained}.
+ * </p>
+ */
+@ThreadSafe
+class KinesisShardLineageTraversal {
+
+    /**
+     * The consumption of single shards.
+     */
+    interface ShardConsumption {
+
+        /**
+         * Consumes a single shard.
+         *
+         * @param shardName the name of the shard
+         * @param startFrom the position to start from
+         * @return future that is completed with the position of the last consumed record
+         */
+        CompletableFuture<ShardPosition> consume(String shardName, ShardPosition startFrom);
+
+        /**
+         * Returns true, if the last consumption of the shard has consumed all records of a closed shard.
+         *
+         * @param shardName the name of the shard
+         * @return boolean
+         */
+        boolean isDrained(String shardName);
+
+        /**
+         * Retrieves the current lineage of the stream.
+         *
+         * @param lineage the outdated lineage
+         * @return future that is completed with the current lineage
+         */
+        CompletableFuture<KinesisShardLineage> refreshLineage(KinesisShardLineage lineage);
+    }
+
+    private final ShardConsumption shardConsumption;
+    private final ChannelPosition startFrom;
+    private final ConcurrentMap<String, CompletableFuture<ShardPosition>> futureShardPositions = new ConcurrentHashMap<>();
+    private final Set<String> drainedShards = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingShards = new AtomicInteger();
+    private final CompletableFuture<ChannelPosition> futureChannelPosition = new CompletableFuture<>();
+    private volatile KinesisShardLineage lineage;
+
+    /**
+     * Creates a KinesisShardLineageTraversal.
+     *
+     * @param lineage the lineage of the stream
+     * @param startFrom the position to start from
+     * @param shardConsumption the consumption of single shards
+     */
+    KinesisShardLineageTraversal(final @Nonnull KinesisShardLineage lineage,
+                                 final @Nonnull ChannelPosition startFrom,
+                                 final @Nonnull ShardConsumption shardConsumption) {
+        this.lineage = lineage;
+        this.startFrom = startFrom;
+        this.shardConsumption = shardConsumption;
+    }
+
+    /**
+     * Starts consumption of the stream.
+     *
+     * @return future that is completed with the channel position of all shards of the lineage, after consumption
+     * of all started shards is finished, or completed exceptionally as soon as consumption of a shard failed.
+     */
+    CompletableFuture<ChannelPosition> start() {
+        final KinesisShardLineage lineage = this.lineage;
+        lineage.getShardNames()
+                .stream()
+                .filter(shardName -> lineage.isDrained(shardName, startFrom))
+                .forEach(shardName -> {
+                    drainedShards.add(shardName);
+                    futureShardPositions.put(shardName, completedFuture(startFrom.shard(shardName)));
+                });
+        // prevent completion while shards are still started:
+        pendingShards.incrementAndGet();
+        lineage.getShardNames()
+                .stream()
+                .filter(shardName -> drainedShards.containsAll(lineage.getParents(shardName)))
+                .forEach(this::consumeShard);
+        shardFinished();
+        return futureChannelPosition;
+    }
+
+    private void consumeShard(final String shardName) {
+        final CompletableFuture<ShardPosition> futureShardPosition = new CompletableFuture<>();
+        if (futureShardPositions.putIfAbsent(shardName, futureShardPosition) != null) {
+            return;
+        }
+        pendingShards.incrementAndGet();
+        try {
+            shardConsumption
+                    .consume(shardName, startFrom.shard(shardName))
+                    .whenComplete((shardPosition, throwable) -> {
+                        if (throwable != null) {
+                            fail(futureShardPosition, throwable);
+                            return;
+                        }
+                        try {
+                            if (shardConsumption.isDrained(shardName)) {
+                                drainedShards.add(shardName);
+                                lineageWithChildrenOf(shardName)
+                                        .whenComplete((lineage, lineageThrowable) -> {
+                                            if (lineageThrowable != null) {
+                                                fail(futureShardPosition, lineageThrowable);
+                                                return;
+                                            }
+                                            try {
+                                                // children must be started before the shard is finished:
+                                                lineage.getChildren(shardName)
+                                                        .stream()
+                                                        .filter(child -> drainedShards.containsAll(lineage.getParents(child)))
+                                                        .forEach(this::consumeShard);
+                                                finishShard(futureShardPosition, shardPosition);
+                                            } catch (final RuntimeException e) {
+                                                fail(futureShardPosition, e);
+                                            }
+                                        });
+                            } else {
+                                finishShard(futureShardPosition, shardPosition);
+                            }
+                        } catch (final RuntimeException e) {
+                            fail(futureShardPosition, e);
+                        }
+                    });
+        } catch (final RuntimeException e) {
+            fail(futureShardPosition, e);
+        }
+    }
+
+    private synchronized CompletableFuture<KinesisShardLineage> lineageWithChildrenOf(final String shardName) {
+        final KinesisShardLineage lineage = this.lineage;
+        if (!lineage.getChildren(shardName).isEmpty()) {
+            return completedFuture(lineage);
+        }
+        return shardConsumption
+                .refreshLineage(lineage)
+                .thenApply(this::updateLineage);
+    }
+
+    private synchronized KinesisShardLineage updateLineage(final KinesisShardLineage refreshedLineage) {
+        // refreshes of several closed shards may complete out of order:
+        if (refreshedLineage.getShardNames().size() >= lineage.getShardNames().size()) {
+            lineage = refreshedLineage;
+        }
+        return refreshedLineage;
+    }
+
+    private void finishShard(final CompletableFuture<ShardPosition> futureShardPosition,
+                             final ShardPosition shardPosition) {
+        futureShardPosition.complete(shardPosition);
+        shardFinished();
+    }
+
+    private void shardFinished() {
+        if (pendingShards.decrementAndGet() == 0) {
+            final KinesisShardLineage lineage = this.lineage;
+            futureChannelPosition.complete(channelPosition(lineage.getShardNames()
+                    .stream()
+                    .map(shardName -> futureShardPositions.containsKey(shardName)
+                            ? futureShardPositions.get(shardName).join()
+                            : startFrom.shard(shardName))
+                    .collect(toList())));
+        }
+    }
+
+    private void fail(final CompletableFuture<ShardPosition> futureShardPosition, final Throwable throwable) {
+        futureShardPosition.completeExceptionally(throwable);
+        futureChannelPosition.completeExceptionally(throwable);
+    }
+}
@@ -11,9 +11,13 @@ import java.time.Clock;
 import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.FETCH_RECORDS_LIMIT;
+
 /**
  * @deprecated to be removed soon
  */
@@ -21,23 +25,78 @@ import java.util.function.Consumer;
 public class KinesisShardReader {
     private static final Logger LOG = LoggerFactory.getLogger(KinesisShardReader.class);
 
+    /**
+     * The default maximum number of responses per shard that are fetched ahead of the consumer.
+     */
+    public static final int DEFAULT_MAX_PREFETCH_DEPTH = 3;
+
     private final String shardName;
     private final String channelName;
     private final KinesisClient kinesisClient;
     private final ExecutorService executorService;
     private final Clock clock;
+    private final int maxPrefetchDepth;
+    private final KinesisReadGovernor readGovernor;
     private final AtomicBoolean stopSignal = new AtomicBoolean(false);
+    private final AtomicBoolean drained = new AtomicBoolean(false);
+    private final AtomicReference<KinesisShardResponseQueue> responseQueue = new AtomicReference<>();
+    private final AtomicReference<Prefetch> preparedPrefetch = new AtomicReference<>();
 
     public KinesisShardReader(final String channelName,
                               final String shardName,
                               final KinesisClient kinesisClient,
                               final ExecutorService executorService,
                               final Clock clock) {
+        this(channelName, shardName, kinesisClient, executorService, clock, DEFAULT_MAX_PREFETCH_DEPTH);
+    }
+
+    /**
+     * Creates a KinesisShardReader.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     * @param kinesisClient the Kinesis client
+     * @param executorService the executor used to consume and to prefetch the shard, running up to two tasks at the
+     *                        same time
+     * @param clock the clock used to determine the end of consumption
+     * @param maxPrefetchDepth the maximum number of responses that are fetched ahead of the consumer
+     */
+    public KinesisShardReader(final String channelName,
+                              final String shardName,
+                              final KinesisClient kinesisClient,
+                              final ExecutorService executorService,
+                              final Clock clock,
+                              final int maxPrefetchDepth) {
+        this(channelName, shardName, kinesisClient, executorService, clock, maxPrefetchDepth, null);
+    }
+
+    /**
+     * Creates a KinesisShardReader.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param shardName the name of the shard
+     * @param kinesisClient the Kinesis client
+     * @param executorService the executor used to consume and to prefetch the shard, running up to two tasks at the
+     *                        same time
+     * @param clock the clock used to determine the end of consumption
+     * @param maxPrefetchDepth the maximum number of responses that are fetched ahead of the consumer
+     * @param readGovernor the governor used to pace the requests of all readers of the shard, or null, if
+     *                     requests should not be paced.
+     */
+    public KinesisShardReader(final String channelName,
+                              final String shardName,
+                              final KinesisClient kinesisClient,
+                              final ExecutorService executorService,
+                              final Clock clock,
+                              final int maxPrefetchDepth,
+                              final KinesisReadGovernor readGovernor) {
         this.shardName = shardName;
         this.channelName = channelName;
         this.kinesisClient = kinesisClient;
         this.executorService = executorService;
         this.clock = clock;
+        this.maxPrefetchDepth = maxPrefetchDepth;
+        this.readGovernor = readGovernor;
     }
 
     public String getChannelName() {
@@ -48,6 +107,28 @@ public class KinesisShardReader {
         return shardName;
     }
 
+    /**
+     * Consumes the shard until the specified point in time, or until the reader is stopped.
+     * <p>
+     *     Records are read by a pipeline of two stages: a prefetching stage is fetching records from the shard
+     *     into a bounded {@link KinesisShardResponseQueue queue}, while the messages of earlier responses are
+     *     dispatched to the consumer. Fetching the next response is therefore overlapping with consuming the
+     *     current one.
+     * </p>
+     * <p>
+     *     The shard is polled back-to-back while the reader is behind, and less often if the reader has caught up.
+     *     See {@link AdaptivePollScheduler} for details.
+     * </p>
+     * <p>
+     *     If the shard is closed, consumption ends after all records of the shard are consumed. The reader is
+     *     {@link #isDrained() drained} afterwards.
+     * </p>
+     *
+     * @param startFrom the position to start from
+     * @param until the point in time to stop consumption
+     * @param responseConsumer the consumer of the shard responses
+     * @return the position of the last response that was consumed
+     */
     public CompletableFuture<ShardPosition> consumeUntil(final ShardPosition startFrom,
                                                          final Instant until,
                                                          final Consumer<KinesisShardResponse> responseConsumer) {
@@ -56,56 +137,190 @@ public class KinesisShardReader {
             MDC.put("channelName", channelName);
             MDC.put("shardName", shardName);
             LOG.info("Reading from channel={}, shard={}, position={}", channelName, shardName, startFrom);
+            final Prefetch prefetch = preparedOrNewPrefetch(startFrom);
+            final KinesisShardResponseQueue queue = prefetch.queue;
+            responseQueue.set(queue);
+            drained.set(false);
             try {
-                final KinesisShardIterator kinesisShardIterator = new KinesisShardIterator(kinesisClient, channelName, startFrom);
-                boolean stopRetrieval;
-                do {
-                /*
-                Poison-Pill injected by a test. This is helpful, if you want to write tests that should terminate
-                after a number of iterated shards.
-                 */
-                    if (kinesisShardIterator.isPoison()) {
-                        LOG.warn("Received Poison-Pill - This should only happen during tests!");
+                ShardPosition shardPosition = startFrom;
+                KinesisShardResponse response;
+                while ((response = queue.take()) != null) {
+                    responseConsumer.accept(response);
+                    shardPosition = response.getShardPosition();
+                    if (!until.isAfter(Instant.now(clock)) || isStopping()) {
                         break;
                     }
+                }
+                if (response == null && prefetch.shardEndReached.get()) {
+                    LOG.info("Reached end of closed shard {} in channel {}", shardName, channelName);
+                    drained.set(true);
+                }
+                return shardPosition;
 
-                    final KinesisShardResponse response = kinesisShardIterator.next();
-                    responseConsumer.accept(response);
-
-                    stopRetrieval = !until.isAfter(Instant.now(clock)) || isStopping() || waitABit();
-
-                } while (!stopRetrieval);
-                return kinesisShardIterator.getShardPosition();
-
+            } catch (final InterruptedException e) {
+                LOG.warn("Thread got interrupted");
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while consuming Kinesis shard " + shardName, e);
             } catch (final RuntimeException e) {
                 LOG.error("Failed to consume from Kinesis shard {}: {}", channelName, shardName, e.getMessage());
                 // Stop all shards and shutdown if this shard is failing:
                 stop();
                 throw e;
             } finally {
+                prefetch.cancel();
+                responseQueue.compareAndSet(queue, null);
                 MDC.remove("channelName");
                 MDC.remove("shardName");
             }
         }, executorService);
     }
 
-    private boolean waitABit() {
+    /**
+     * Prepares the consumption of the shard, without blocking the calling thread.
+     * <p>
+     *     The shard iterator is requested and the prefetching stage of the pipeline is started, so the first
+     *     responses of the shard are already buffered when {@link #consumeUntil(ShardPosition, Instant, Consumer)}
+     *     is called with the same {@code startFrom} position. The buffer is bounded by {@code maxPrefetchDepth}.
+     *     If consumption is started at a different position, the prepared responses are discarded.
+     * </p>
+     *
+     * @param startFrom the position the consumption of the shard will be started from
+     */
+    public void prepare(final ShardPosition startFrom) {
+        LOG.info("Preparing consumption of channel={}, shard={}, position={}", channelName, shardName, startFrom);
+        final Prefetch previous = preparedPrefetch.getAndSet(startPrefetch(startFrom));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private Prefetch preparedOrNewPrefetch(final ShardPosition startFrom) {
+        final Prefetch prepared = preparedPrefetch.getAndSet(null);
+        if (prepared != null) {
+            if (prepared.startFrom.equals(startFrom)) {
+                LOG.info("Using prepared responses of channel={}, shard={}", channelName, shardName);
+                return prepared;
+            }
+            LOG.info("Discarding prepared responses of channel={}, shard={}: prepared for {}", channelName, shardName, prepared.startFrom);
+            prepared.cancel();
+        }
+        return startPrefetch(startFrom);
+    }
+
+    /**
+     * Starts the prefetching stage of the pipeline using the executor of the reader, so the executor is running
+     * up to two tasks per shard: the consumption and the prefetching of the shard. If the executor rejects the
+     * prefetching stage, the following consumption of the shard fails.
+     */
+    private Prefetch startPrefetch(final ShardPosition startFrom) {
+        final Prefetch prefetch = new Prefetch(startFrom, new KinesisShardResponseQueue(maxPrefetchDepth));
+        try {
+            executorService.execute(() -> prefetch(startFrom, prefetch.queue, prefetch.shardEndReached));
+        } catch (final RejectedExecutionException e) {
+            LOG.error("Failed to start prefetching of channel={}, shard={}: {}", channelName, shardName, e.getMessage());
+            prefetch.queue.fail(e);
+        }
+        return prefetch;
+    }
+
+    /**
+     * The prefetching stage of the pipeline: requests a shard iterator, fetches responses from the shard and adds
+     * them to the queue, until the queue is finished, the reader is stopped, or the end of the shard is reached.
+     */
+    private void prefetch(final ShardPosition startFrom,
+                          final KinesisShardResponseQueue queue,
+                          final AtomicBoolean shardEndReached) {
+        MDC.put("channelName", channelName);
+        MDC.put("shardName", shardName);
         try {
-            /*Wait one second as documented by amazon: https://docs.aws.amazon.com/kinesis/latest/APIReference/API_GetRecords.html*/
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
+            final KinesisShardIterator kinesisShardIterator = new KinesisShardIterator(kinesisClient, channelName, startFrom, FETCH_RECORDS_LIMIT, readGovernor);
+            final AdaptivePollScheduler pollScheduler = new AdaptivePollScheduler(kinesisShardIterator.getFetchRecordLimit());
+            boolean stopRetrieval;
+            do {
+                /*
+                Poison-Pill injected by a test. This is helpful, if you want to write tests that should terminate
+                after a number of iterated shards.
+                 */
+                if (kinesisShardIterator.isPoison()) {
+                    LOG.warn("Received Poison-Pill - This should only happen during tests!");
+                    break;
+                }
+
+                final KinesisShardResponse response = kinesisShardIterator.next();
+
+                stopRetrieval = !queue.put(response)
+                        || kinesisShardIterator.isAtShardEnd()
+                        || isStopping()
+                        || waitABit(queue, pollScheduler.nextDelay(response, kinesisShardIterator.isThrottled()));
+
+            } while (!stopRetrieval);
+            shardEndReached.set(kinesisShardIterator.isAtShardEnd());
+            queue.finish();
+        } catch (final InterruptedException e) {
             LOG.warn("Thread got interrupted");
-            return true;
+            queue.finish();
+        } catch (final RuntimeException e) {
+            queue.fail(e);
+        } finally {
+            MDC.remove("channelName");
+            MDC.remove("shardName");
         }
-        return false;
+    }
+
+    private boolean waitABit(final KinesisShardResponseQueue queue,
+                             final long delayMillis) throws InterruptedException {
+        /*
+        Kinesis supports up to five GetRecords calls per second and shard:
+        https://docs.aws.amazon.com/kinesis/latest/APIReference/API_GetRecords.html
+        The delay is determined by the AdaptivePollScheduler.
+         */
+        queue.pause(delayMillis);
+        return isStopping() || queue.isFinished();
     }
 
     public void stop() {
         LOG.info("Shard {} received stop signal.", shardName);
         stopSignal.set(true);
+        final Prefetch prepared = preparedPrefetch.getAndSet(null);
+        if (prepared != null) {
+            prepared.cancel();
+        }
+        final KinesisShardResponseQueue queue = responseQueue.get();
+        if (queue != null) {
+            queue.wakeUp();
+        }
     }
 
     public boolean isStopping() {
         return stopSignal.get();
     }
+
+    /**
+     * Returns true, if the last call of {@link #consumeUntil(ShardPosition, Instant, Consumer)} has consumed
+     * all records of a closed shard.
+     *
+     * @return boolean
+     */
+    public boolean isDrained() {
+        return drained.get();
+    }
+
+    /**
+     * A running prefetching stage of the pipeline. The stage is terminated after the queue is finished.
+     */
+    private static final class Prefetch {
+        private final ShardPosition startFrom;
+        private final KinesisShardResponseQueue queue;
+        private final AtomicBoolean shardEndReached = new AtomicBoolean(false);
+
+        private Prefetch(final ShardPosition startFrom,
+                         final KinesisShardResponseQueue queue) {
+            this.startFrom = startFrom;
+            this.queue = queue;
+        }
+
+        private void cancel() {
+            queue.finish();
+        }
+    }
 }
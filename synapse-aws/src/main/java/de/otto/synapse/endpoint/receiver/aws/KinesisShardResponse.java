@@ -8,7 +8,7 @@ import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 
-import static de.otto.synapse.message.aws.KinesisMessage.kinesisMessage;
+import static de.otto.synapse.message.aws.KinesisMessage.kinesisMessages;
 import static java.time.Duration.ofMillis;
 import static java.util.stream.Collectors.toList;
 
@@ -29,7 +29,7 @@ public class KinesisShardResponse {
         this.durationBehind = ofMillis(recordsResponse.millisBehindLatest());
         this.messages = recordsResponse.records()
                 .stream()
-                .map(record -> kinesisMessage(shardPosition.shardName(), record))
+                .flatMap(record -> kinesisMessages(shardPosition.shardName(), record).stream())
                 .collect(toList());
     }
 
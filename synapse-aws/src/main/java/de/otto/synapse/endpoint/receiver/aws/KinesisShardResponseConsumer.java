@@ -0,0 +1,181 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import de.otto.synapse.channel.ChannelDurationBehind;
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.consumer.KeyPartitionedDispatcher;
+import de.otto.synapse.endpoint.InterceptorChain;
+import de.otto.synapse.endpoint.receiver.InFlightWindow;
+import de.otto.synapse.message.Message;
+import org.slf4j.Logger;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static de.otto.synapse.channel.ChannelDurationBehind.copyOf;
+import static de.otto.synapse.channel.ChannelDurationBehind.unknown;
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static de.otto.synapse.channel.ChannelPosition.merge;
+import static de.otto.synapse.info.MessageReceiverNotification.builder;
+import static de.otto.synapse.info.MessageReceiverStatus.RUNNING;
+import static java.util.stream.Collectors.toList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Consumes the {@link KinesisShardResponse responses} of all shards of a Kinesis stream: the messages of a
+ * response are intercepted and dispatched to the consumers of the receiver endpoint, and a notification about the
+ * {@link ChannelDurationBehind} of the channel is published.
+ * <p>
+ *     The messages of every shard are tracked by an {@link InFlightWindow} that is seeded with the start position of
+ *     the shard, so the {@link #getCompletedPosition() completed position} of the channel only contains positions
+ *     whose messages, and all earlier messages, have been processed by all consumers - including
+ *     {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}.
+ * </p>
+ * <p>
+ *     If the window of a shard is full, {@link #accept(KinesisShardResponse)} is blocking the calling thread, while
+ *     {@link #acceptAsync(KinesisShardResponse)} returns a future the caller has to wait for before the next response
+ *     of the shard is read.
+ * </p>
+ * <p>
+ *     After every response, the start position, updated by the completed positions of the shards, is reported to
+ *     the optional {@code positionListener}.
+ * </p>
+ */
+@ThreadSafe
+class KinesisShardResponseConsumer implements Consumer<KinesisShardResponse> {
+
+    private static final Logger LOG = getLogger(KinesisShardResponseConsumer.class);
+
+    private final AtomicReference<ChannelDurationBehind> channelDurationBehind = new AtomicReference<>();
+    private final InterceptorChain interceptorChain;
+    private final KeyPartitionedDispatcher dispatcher;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxInFlightMessagesPerShard;
+    private final ChannelPosition startFrom;
+    private final Consumer<ChannelPosition> positionListener;
+    private final ConcurrentMap<String, InFlightWindow> inFlightWindows = new ConcurrentHashMap<>();
+
+    KinesisShardResponseConsumer(final List<String> shardNames,
+                                 final ChannelPosition startFrom,
+                                 final InterceptorChain interceptorChain,
+                                 final KeyPartitionedDispatcher dispatcher,
+                                 final ApplicationEventPublisher eventPublisher,
+                                 final int maxInFlightMessagesPerShard) {
+        this(shardNames, startFrom, interceptorChain, dispatcher, eventPublisher, maxInFlightMessagesPerShard, null);
+    }
+
+    KinesisShardResponseConsumer(final List<String> shardNames,
+                                 final ChannelPosition startFrom,
+                                 final InterceptorChain interceptorChain,
+                                 final KeyPartitionedDispatcher dispatcher,
+                                 final ApplicationEventPublisher eventPublisher,
+                                 final int maxInFlightMessagesPerShard,
+                                 final Consumer<ChannelPosition> positionListener) {
+        this.interceptorChain = interceptorChain;
+        this.dispatcher = dispatcher;
+        this.eventPublisher = eventPublisher;
+        this.maxInFlightMessagesPerShard = maxInFlightMessagesPerShard;
+        this.startFrom = startFrom;
+        this.positionListener = positionListener;
+        channelDurationBehind.set(unknown(shardNames));
+    }
+
+    @Override
+    public void accept(KinesisShardResponse response) {
+        consume(response, true);
+    }
+
+    /**
+     * Consumes a response without blocking the calling thread, if the in-flight window of the shard is full.
+     *
+     * @param response the response of a shard
+     * @return future that is completed as soon as the next response of the shard can be consumed
+     */
+    CompletableFuture<Void> acceptAsync(final KinesisShardResponse response) {
+        return consume(response, false).whenAvailable();
+    }
+
+    private InFlightWindow consume(final KinesisShardResponse response, final boolean waitForCapacity) {
+        final List<Message<String>> interceptedMessages = new ArrayList<>(response.getMessages().size());
+        response.getMessages().forEach(message -> {
+            try {
+                final Message<String> interceptedMessage = interceptorChain.intercept(message);
+                if (interceptedMessage != null) {
+                    interceptedMessages.add(interceptedMessage);
+                }
+            } catch (final Exception e) {
+                LOG.error("Error processing message: " + e.getMessage(), e);
+            }
+        });
+        final CompletableFuture<Void> completion = dispatcher.dispatchAsync(interceptedMessages);
+        final InFlightWindow inFlightWindow = inFlightWindows
+                .computeIfAbsent(response.getShardName(), (shardName) -> new InFlightWindow(maxInFlightMessagesPerShard, startFrom.shard(shardName)));
+        if (waitForCapacity) {
+            inFlightWindow.add(completion, interceptedMessages.size(), response.getShardPosition());
+        } else {
+            inFlightWindow.addWithoutWaiting(completion, interceptedMessages.size(), response.getShardPosition());
+        }
+        channelDurationBehind.updateAndGet(behind -> copyOf(behind)
+                .with(response.getShardName(), response.getDurationBehind())
+                .build());
+
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(builder()
+                    .withChannelName(response.getChannelName())
+                    .withChannelDurationBehind(channelDurationBehind.get())
+                    .withStatus(RUNNING)
+                    .withMessage("Reading from kinesis shard.")
+                    .build());
+        }
+        if (positionListener != null) {
+            positionListener.accept(merge(startFrom, getCompletedPosition()));
+        }
+        return inFlightWindow;
+    }
+
+    /**
+     * Returns the positions of all shards up to which all messages are completely processed. Shards that did not
+     * receive any response are not contained.
+     *
+     * @return ChannelPosition
+     */
+    ChannelPosition getCompletedPosition() {
+        return channelPosition(inFlightWindows
+                .values()
+                .stream()
+                .map(InFlightWindow::getCompletedPosition)
+                .collect(toList()));
+    }
+
+    /**
+     * Waits until all messages that are processed by async consumers are completed.
+     *
+     * @return the completed positions of all shards that received a response
+     */
+    ChannelPosition awaitCompletion() {
+        inFlightWindows.values().forEach(InFlightWindow::awaitCompletion);
+        return getCompletedPosition();
+    }
+
+    /**
+     * Returns a future that is completed as soon as all messages that are processed by async consumers are completed.
+     *
+     * @return future that is completed with the completed positions of all shards that received a response
+     */
+    CompletableFuture<ChannelPosition> whenCompleted() {
+        return CompletableFuture
+                .allOf(inFlightWindows
+                        .values()
+                        .stream()
+                        .map(InFlightWindow::whenCompleted)
+                        .toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> getCompletedPosition());
+    }
+
+}
@@ -0,0 +1,130 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded queue of prefetched {@link KinesisShardResponse responses}, used to decouple fetching records
+ * from a Kinesis shard from dispatching the messages of the responses.
+ * <p>
+ *     The depth of the queue adapts to the speed of the consumer: whenever the consumer has to wait for the next
+ *     response, the depth is increased up to the maximum depth, so more responses are prefetched. Whenever the
+ *     producer has to wait because the queue is full, the depth is decreased down to a single response, so
+ *     a slow consumer does not cause responses to pile up in memory.
+ * </p>
+ */
+@ThreadSafe
+class KinesisShardResponseQueue {
+
+    private final int maxDepth;
+    private final Deque<KinesisShardResponse> responses = new ArrayDeque<>();
+    private int depth = 1;
+    private boolean finished;
+    private RuntimeException failure;
+
+    KinesisShardResponseQueue(final int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be greater than zero");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Adds a response to the queue. Blocks while the queue is full.
+     *
+     * @param response the response fetched from the shard
+     * @return true if the response was added, false if the queue is already finished
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    synchronized boolean put(final @Nonnull KinesisShardResponse response) throws InterruptedException {
+        if (responses.size() >= depth) {
+            depth = Math.max(1, depth - 1);
+        }
+        while (!finished && responses.size() >= depth) {
+            wait();
+        }
+        if (finished) {
+            return false;
+        }
+        responses.addLast(response);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the next response from the queue. Blocks while the queue is empty and not finished.
+     *
+     * @return the next response, or null if the queue is finished and all responses are taken
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @throws RuntimeException the exception the queue {@link #fail(RuntimeException) failed} with
+     */
+    @Nullable
+    synchronized KinesisShardResponse take() throws InterruptedException {
+        if (responses.isEmpty() && !finished) {
+            depth = Math.min(maxDepth, depth + 1);
+        }
+        while (responses.isEmpty() && !finished) {
+            wait();
+        }
+        if (!responses.isEmpty()) {
+            final KinesisShardResponse response = responses.removeFirst();
+            notifyAll();
+            return response;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the timeout elapsed, or until the queue is {@link #finish() finished} or
+     * {@link #wakeUp() woken up}.
+     *
+     * @param millis the maximum time to wait in milliseconds
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    synchronized void pause(final long millis) throws InterruptedException {
+        if (!finished && millis > 0) {
+            wait(millis);
+        }
+    }
+
+    /**
+     * Wakes up all waiting threads, so they are able to check for stop signals.
+     */
+    synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * Finishes the queue. Responses that are already in the queue can still be taken, further responses are
+     * rejected.
+     */
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Finishes the queue with an exception that is thrown to the consumer, after all responses that are already
+     * in the queue are taken.
+     *
+     * @param e the exception
+     */
+    synchronized void fail(final @Nonnull RuntimeException e) {
+        failure = e;
+        finish();
+    }
+
+    synchronized int getDepth() {
+        return depth;
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+}
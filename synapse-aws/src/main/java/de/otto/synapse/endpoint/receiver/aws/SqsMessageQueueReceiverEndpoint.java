@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.otto.synapse.endpoint.receiver.AbstractMessageReceiverEndpoint;
 import de.otto.synapse.endpoint.receiver.MessageQueueReceiverEndpoint;
 import de.otto.synapse.message.Message;
+import de.otto.synapse.message.aws.SqsMessage;
 import org.slf4j.Logger;
 import org.springframework.context.ApplicationEventPublisher;
 import software.amazon.awssdk.services.sqs.SQSAsyncClient;
@@ -11,40 +12,150 @@ import software.amazon.awssdk.services.sqs.model.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
-import static de.otto.synapse.message.Message.message;
-import static java.lang.String.format;
+import static de.otto.synapse.executor.SynapseExecutors.defaultExecutorFor;
+import static java.lang.String.valueOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Receiver-side endpoint of an SQS queue.
+ * <p>
+ *     Messages are received by {@code numberOfPollers} concurrent long-polling workers, fetching up to
+ *     {@value #MAX_NUMBER_OF_MESSAGES} messages per {@code ReceiveMessage} request. Received messages are processed
+ *     by {@code parallelism} workers. A poller only fetches more messages, if fewer than
+ *     {@code numberOfPollers * 10 + parallelism} messages are in flight, so received messages are not waiting
+ *     for longer than necessary.
+ * </p>
+ * <p>
+ *     Pollers, workers and the heartbeat extending the visibility timeout are long-running tasks of the executor of
+ *     the endpoint, typically the {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of
+ *     the channel}: a consumption requires {@code numberOfPollers + parallelism + 1} threads of the executor.
+ * </p>
+ * <p>
+ *     After all messages of a response are processed, the successfully processed messages are deleted using a
+ *     single {@code DeleteMessageBatch} request. Messages whose consumers are throwing an exception are not
+ *     deleted, so they are received again after the visibility timeout has expired. Until messages are deleted,
+ *     their visibility timeout is extended every {@code visibilityTimeout / 2} seconds, so neither slow messages,
+ *     nor processed messages waiting for a slow message of the same response, are received a second time.
+ * </p>
+ * <p>
+ *     Using a single thread to process messages, messages are processed in the order of their responses. If the
+ *     receiving or deleting of messages fails, the endpoint is stopped, and the future returned by
+ *     {@link #consume()} is completed exceptionally.
+ * </p>
+ */
 public class SqsMessageQueueReceiverEndpoint extends AbstractMessageReceiverEndpoint implements MessageQueueReceiverEndpoint {
 
     private static final Logger LOG = getLogger(SqsMessageQueueReceiverEndpoint.class);
 
-    // TODO: should be configurable!
-
     /**
-     * The visibility timeout should be high enough to process the message, otherwise messages
-     * might be processed multiple times, if more than one consumer is listening to the channel.
+     * The default number of concurrent long-polling workers.
+     */
+    public static final int DEFAULT_NUMBER_OF_POLLERS = 1;
+    /**
+     * The default number of threads used to process messages.
+     */
+    public static final int DEFAULT_PARALLELISM = 1;
+    /**
+     * The default visibility timeout of received messages. The timeout is extended while messages are processed.
+     */
+    public static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+    /**
+     * The maximum number of messages received or deleted by a single request.
      */
-    private static final int VISIBILITY_TIMEOUT = 5;
+    static final int MAX_NUMBER_OF_MESSAGES = 10;
     /**
      * Duration for long-polling calls to the SQS service
      */
     private static final int WAIT_TIME_SECONDS = 10;
 
+    private static final long STOP_TIMEOUT_SECONDS = 30;
+
+    private static final long WORKER_POLL_MILLIS = 100;
+
     @Nonnull
     private final SQSAsyncClient sqsAsyncClient;
     private final String queueUrl;
     private final AtomicBoolean stopSignal = new AtomicBoolean(false);
+    private final Executor executor;
+    private final int numberOfPollers;
+    private final int parallelism;
+    private final int visibilityTimeoutSeconds;
 
     public SqsMessageQueueReceiverEndpoint(final @Nonnull String channelName,
                                            final @Nonnull SQSAsyncClient sqsAsyncClient,
                                            final @Nonnull ObjectMapper objectMapper,
                                            final @Nullable ApplicationEventPublisher eventPublisher) {
+        this(channelName, sqsAsyncClient, objectMapper, eventPublisher, defaultExecutorFor(channelName));
+    }
+
+    /**
+     * Creates a SqsMessageQueueReceiverEndpoint.
+     *
+     * @param channelName the name of the SQS queue
+     * @param sqsAsyncClient the client used to access the queue
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param executor the executor used to run the pollers, workers and heartbeat of {@link #consume()}
+     */
+    public SqsMessageQueueReceiverEndpoint(final @Nonnull String channelName,
+                                           final @Nonnull SQSAsyncClient sqsAsyncClient,
+                                           final @Nonnull ObjectMapper objectMapper,
+                                           final @Nullable ApplicationEventPublisher eventPublisher,
+                                           final @Nonnull Executor executor) {
+        this(channelName, sqsAsyncClient, objectMapper, eventPublisher, executor,
+                DEFAULT_NUMBER_OF_POLLERS, DEFAULT_PARALLELISM, DEFAULT_VISIBILITY_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Creates a SqsMessageQueueReceiverEndpoint.
+     *
+     * @param channelName the name of the SQS queue
+     * @param sqsAsyncClient the client used to access the queue
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param executor the executor used to run the pollers, workers and heartbeat of {@link #consume()}. The
+     *                 executor must be able to run {@code numberOfPollers + parallelism + 1} tasks at the same time.
+     * @param numberOfPollers the number of concurrent long-polling workers
+     * @param parallelism the number of workers used to process received messages
+     * @param visibilityTimeoutSeconds the visibility timeout of received messages
+     */
+    public SqsMessageQueueReceiverEndpoint(final @Nonnull String channelName,
+                                           final @Nonnull SQSAsyncClient sqsAsyncClient,
+                                           final @Nonnull ObjectMapper objectMapper,
+                                           final @Nullable ApplicationEventPublisher eventPublisher,
+                                           final @Nonnull Executor executor,
+                                           final int numberOfPollers,
+                                           final int parallelism,
+                                           final int visibilityTimeoutSeconds) {
         super(channelName, objectMapper, eventPublisher);
+        if (numberOfPollers < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("numberOfPollers and parallelism must be greater than 0");
+        }
+        if (visibilityTimeoutSeconds < 2) {
+            throw new IllegalArgumentException("visibilityTimeoutSeconds must be at least 2");
+        }
         this.sqsAsyncClient = sqsAsyncClient;
+        this.executor = executor;
+        this.numberOfPollers = numberOfPollers;
+        this.parallelism = parallelism;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
         try {
             this.queueUrl = sqsAsyncClient.getQueueUrl(GetQueueUrlRequest
                     .builder()
@@ -65,70 +176,307 @@ public class SqsMessageQueueReceiverEndpoint extends AbstractMessageReceiverEndp
                 throw new IllegalStateException("Unable to select messages using key pattern");
             }
         });
-        return CompletableFuture.runAsync(() -> {
+        return new QueueConsumption().start();
+    }
+
+    /**
+     * Stops consumption of messages and shuts down the {@code MessageQueueReceiverEndpoint}.
+     * <p>
+     *     Pollers are stopped after their current long-polling request. Messages that are already received are
+     *     processed and deleted before the future returned by {@link #consume()} is completed.
+     * </p>
+     */
+    @Override
+    public void stop() {
+        LOG.info("Channel {} received stop signal.", getChannelName());
+        stopSignal.set(true);
+    }
+
+    /**
+     * A single consumption of the queue, started by {@link #consume()}.
+     */
+    private class QueueConsumption {
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final Semaphore messagesInFlight = new Semaphore(numberOfPollers * MAX_NUMBER_OF_MESSAGES + parallelism);
+        private final Set<ReceivedMessages> inProgress = ConcurrentHashMap.newKeySet();
+        private final BlockingQueue<Runnable> pendingMessages = new LinkedBlockingQueue<>();
+        private final CountDownLatch pollersFinished = new CountDownLatch(1);
+        private final CountDownLatch workersFinished = new CountDownLatch(1);
+
+        CompletableFuture<Void> start() {
+            try {
+                final CompletableFuture<?>[] workers = new CompletableFuture<?>[parallelism];
+                for (int i = 0; i < parallelism; ++i) {
+                    workers[i] = runAsync(this::work, executor);
+                }
+                CompletableFuture.allOf(workers).whenComplete((r, throwable) -> workersFinished.countDown());
+                runAsync(this::heartbeat, executor);
+                final CompletableFuture<?>[] pollers = new CompletableFuture<?>[numberOfPollers];
+                for (int i = 0; i < numberOfPollers; ++i) {
+                    pollers[i] = runAsync(this::poll, executor).whenComplete((r, throwable) -> {
+                        if (throwable != null) {
+                            fail(throwable.getCause() != null ? throwable.getCause() : throwable);
+                        }
+                    });
+                }
+                CompletableFuture.allOf(pollers).whenComplete((r, throwable) -> {
+                    shutdown();
+                    result.complete(null);
+                });
+            } catch (final RejectedExecutionException e) {
+                LOG.error("Failed to start consumption of channel {}: {}", getChannelName(), e.getMessage());
+                fail(e);
+                pollersFinished.countDown();
+            }
+            return result;
+        }
+
+        private void poll() {
             do {
-                LOG.debug("Sending receiveMessage request...");
-                receiveAndProcess();
+                final int permits = acquirePermits();
+                if (permits > 0) {
+                    LOG.debug("Sending receiveMessage request...");
+                    final List<software.amazon.awssdk.services.sqs.model.Message> messages;
+                    try {
+                        messages = receive(permits);
+                    } catch (final RuntimeException e) {
+                        messagesInFlight.release(permits);
+                        throw e;
+                    }
+                    messagesInFlight.release(permits - messages.size());
+                    dispatch(messages);
+                }
             } while (!stopSignal.get());
-        });
-    }
+        }
 
-    private void receiveAndProcess() {
-        try {
-            sqsAsyncClient.receiveMessage(ReceiveMessageRequest.builder()
-                    .queueUrl(queueUrl)
-                    .visibilityTimeout(VISIBILITY_TIMEOUT)
-                    .waitTimeSeconds(WAIT_TIME_SECONDS)
-                    .build()
-            ).thenAccept(this::processResponse).get();
-        } catch (Exception e) {
-            LOG.error(e.getMessage(), e);
-            throw new RuntimeException(e);
+        private int acquirePermits() {
+            try {
+                while (!messagesInFlight.tryAcquire(WAIT_TIME_SECONDS, SECONDS)) {
+                    if (stopSignal.get()) {
+                        return 0;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for messages in flight", e);
+            }
+            int permits = 1;
+            while (permits < MAX_NUMBER_OF_MESSAGES && messagesInFlight.tryAcquire()) {
+                ++permits;
+            }
+            return permits;
+        }
+
+        private List<software.amazon.awssdk.services.sqs.model.Message> receive(final int maxNumberOfMessages) {
+            try {
+                final ReceiveMessageResponse response = sqsAsyncClient.receiveMessage(ReceiveMessageRequest.builder()
+                        .queueUrl(queueUrl)
+                        .maxNumberOfMessages(maxNumberOfMessages)
+                        .visibilityTimeout(visibilityTimeoutSeconds)
+                        .waitTimeSeconds(WAIT_TIME_SECONDS)
+                        .messageAttributeNames(SqsMessage.COMPRESSION_ATTRIBUTE)
+                        .build()
+                ).get();
+                final List<software.amazon.awssdk.services.sqs.model.Message> messages = response.messages() != null
+                        ? response.messages()
+                        : new ArrayList<>();
+                LOG.debug("Received {} messages from SQS.", messages.size());
+                return messages;
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void dispatch(final List<software.amazon.awssdk.services.sqs.model.Message> messages) {
+            if (messages.isEmpty()) {
+                return;
+            }
+            final ReceivedMessages receivedMessages = new ReceivedMessages(messages);
+            inProgress.add(receivedMessages);
+            for (final software.amazon.awssdk.services.sqs.model.Message sqsMessage : messages) {
+                pendingMessages.add(() -> process(receivedMessages, sqsMessage));
+            }
+        }
+
+        /**
+         * Processes received messages until all pollers are finished and no more messages are pending.
+         */
+        private void work() {
+            try {
+                while (pollersFinished.getCount() > 0 || !pendingMessages.isEmpty()) {
+                    final Runnable pendingMessage = pendingMessages.poll(WORKER_POLL_MILLIS, MILLISECONDS);
+                    if (pendingMessage != null) {
+                        pendingMessage.run();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-    }
 
-    private void processResponse(ReceiveMessageResponse response) {
-        LOG.debug("Received {} messages from SQS.", response.messages().size());
-        if (response.messages() != null) {
-            response.messages()
-                    .forEach(this::processMessage);
+        private void process(final ReceivedMessages receivedMessages,
+                             final software.amazon.awssdk.services.sqs.model.Message sqsMessage) {
+            boolean processed = false;
+            try {
+                processMessage(sqsMessage);
+                processed = true;
+            } catch (final RuntimeException e) {
+                LOG.error("Failed to process message from channel={}: messageId={}", getChannelName(), sqsMessage.messageId(), e);
+            } finally {
+                messagesInFlight.release();
+                if (receivedMessages.finished(sqsMessage, processed)) {
+                    inProgress.remove(receivedMessages);
+                    deleteMessages(receivedMessages.processed());
+                }
+            }
+        }
+
+        private void deleteMessages(final List<software.amazon.awssdk.services.sqs.model.Message> sqsMessages) {
+            if (sqsMessages.isEmpty() || result.isCompletedExceptionally()) {
+                return;
+            }
+            try {
+                LOG.debug("Deleting {} messages from channel={}", sqsMessages.size(), getChannelName());
+                sqsAsyncClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                        .queueUrl(queueUrl)
+                        .entries(batchEntries(sqsMessages, (id, sqsMessage) -> DeleteMessageBatchRequestEntry.builder()
+                                .id(id)
+                                .receiptHandle(sqsMessage.receiptHandle())
+                                .build()))
+                        .build()
+                ).whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        LOG.error("Error deleting messages: " + throwable.getMessage(), throwable);
+                        fail(throwable);
+                    } else if (response.failed() != null && !response.failed().isEmpty()) {
+                        LOG.warn("Failed to delete messages from channel={}: {}", getChannelName(), response.failed());
+                    }
+                });
+            } catch (final RuntimeException e) {
+                LOG.error("Error deleting messages: " + e.getMessage(), e);
+                fail(e);
+            }
+        }
+
+        /**
+         * Extends the visibility timeout of the messages in progress every {@code visibilityTimeout / 2} seconds,
+         * until all workers are finished.
+         */
+        private void heartbeat() {
+            final long heartbeatMillis = SECONDS.toMillis(visibilityTimeoutSeconds) / 2;
+            try {
+                while (!workersFinished.await(heartbeatMillis, MILLISECONDS)) {
+                    extendVisibility();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void extendVisibility() {
+            try {
+                final List<software.amazon.awssdk.services.sqs.model.Message> undeleted = new ArrayList<>();
+                inProgress.forEach(receivedMessages -> undeleted.addAll(receivedMessages.undeleted()));
+                for (int from = 0; from < undeleted.size(); from += MAX_NUMBER_OF_MESSAGES) {
+                    final List<software.amazon.awssdk.services.sqs.model.Message> chunk = undeleted
+                            .subList(from, Math.min(from + MAX_NUMBER_OF_MESSAGES, undeleted.size()));
+                    sqsAsyncClient.changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+                            .queueUrl(queueUrl)
+                            .entries(batchEntries(chunk, (id, sqsMessage) -> ChangeMessageVisibilityBatchRequestEntry.builder()
+                                    .id(id)
+                                    .receiptHandle(sqsMessage.receiptHandle())
+                                    .visibilityTimeout(visibilityTimeoutSeconds)
+                                    .build()))
+                            .build()
+                    ).whenComplete((response, throwable) -> {
+                        if (throwable != null) {
+                            LOG.warn("Failed to extend visibility timeout of messages from channel={}: {}", getChannelName(), throwable.getMessage());
+                        }
+                    });
+                }
+            } catch (final RuntimeException e) {
+                // the heartbeat must not be cancelled:
+                LOG.warn("Failed to extend visibility timeout of messages from channel={}: {}", getChannelName(), e.getMessage());
+            }
+        }
+
+        private void fail(final Throwable throwable) {
+            stopSignal.set(true);
+            result.completeExceptionally(throwable);
+        }
+
+        private void shutdown() {
+            pollersFinished.countDown();
+            try {
+                if (!workersFinished.await(STOP_TIMEOUT_SECONDS, SECONDS)) {
+                    LOG.warn("Failed to wait for messages of channel {} to be processed", getChannelName());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
     private void processMessage(software.amazon.awssdk.services.sqs.model.Message sqsMessage) {
         LOG.debug("Processing message from channel={}: messageId={} receiptHandle={}, attributes={}, messageAttributes={}", getChannelName(), sqsMessage.messageId(), sqsMessage.receiptHandle(), sqsMessage.attributesAsStrings());
-        final Message<String> message = message("", sqsMessage.body());
+        final Message<String> message = SqsMessage.sqsMessage("", sqsMessage.body(), sqsMessage.messageAttributes());
 
         final Message<String> interceptedMessage = intercept(message);
         if (interceptedMessage != null) {
             LOG.debug("Dispatching message {} ", interceptedMessage);
             getMessageDispatcher().accept(interceptedMessage);
         }
-        deleteMessage(sqsMessage);
     }
 
-    private void deleteMessage(software.amazon.awssdk.services.sqs.model.Message sqsMessage) {
-        try {
-            LOG.debug("Deleting message with receiptHandle={}", sqsMessage.receiptHandle());
-            sqsAsyncClient.deleteMessage(
-                    DeleteMessageRequest.builder()
-                            .queueUrl(queueUrl)
-                            .receiptHandle(sqsMessage.receiptHandle())
-                            .build()
-            );
-        } catch (final RuntimeException e) {
-            LOG.error("Error deleting message: " + e.getMessage(), e);
-            throw e;
+    private static <T> List<T> batchEntries(final List<software.amazon.awssdk.services.sqs.model.Message> sqsMessages,
+                                            final BiFunction<String, software.amazon.awssdk.services.sqs.model.Message, T> entryFactory) {
+        final List<T> entries = new ArrayList<>(sqsMessages.size());
+        for (int i = 0; i < sqsMessages.size(); ++i) {
+            // ids only have to be unique within a batch:
+            entries.add(entryFactory.apply(valueOf(i), sqsMessages.get(i)));
         }
+        return entries;
     }
 
     /**
-     * Stops consumption of messages and shuts down the {@code MessageQueueReceiverEndpoint}.
+     * The messages of a single {@code ReceiveMessage} response.
      */
-    @Override
-    public void stop() {
-        LOG.info("Channel {} received stop signal.", getChannelName());
-        stopSignal.set(true);
+    private static class ReceivedMessages {
+        private final List<software.amazon.awssdk.services.sqs.model.Message> unfinished;
+        private final List<software.amazon.awssdk.services.sqs.model.Message> processed = new ArrayList<>();
+
+        ReceivedMessages(final List<software.amazon.awssdk.services.sqs.model.Message> messages) {
+            this.unfinished = new ArrayList<>(messages);
+        }
+
+        /**
+         * Marks a message as finished.
+         *
+         * @return true, if all messages are finished
+         */
+        synchronized boolean finished(final software.amazon.awssdk.services.sqs.model.Message sqsMessage,
+                                      final boolean successfullyProcessed) {
+            unfinished.remove(sqsMessage);
+            if (successfullyProcessed) {
+                processed.add(sqsMessage);
+            }
+            return unfinished.isEmpty();
+        }
+
+        /**
+         * Returns the messages that are still processed, and the processed messages waiting to be deleted. Messages
+         * failed by their consumers are not returned, so they are received again after the visibility timeout.
+         */
+        synchronized List<software.amazon.awssdk.services.sqs.model.Message> undeleted() {
+            final List<software.amazon.awssdk.services.sqs.model.Message> undeleted = new ArrayList<>(unfinished);
+            undeleted.addAll(processed);
+            return undeleted;
+        }
+
+        synchronized List<software.amazon.awssdk.services.sqs.model.Message> processed() {
+            return new ArrayList<>(processed);
+        }
     }
 
 }
@@ -0,0 +1,91 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The hash key ranges of the open shards of a Kinesis stream, used to determine the shard a partition key is
+ * written to.
+ * <p>
+ *     Kinesis is mapping partition keys to shards using the MD5 hash of the key, interpreted as unsigned 128 bit
+ *     integer. Every open shard is covering a range of hash keys.
+ * </p>
+ */
+@Immutable
+class KinesisHashKeyRanges {
+
+    private static final KinesisHashKeyRanges EMPTY = new KinesisHashKeyRanges(new BigInteger[0]);
+
+    private final BigInteger[] startingHashKeys;
+
+    private KinesisHashKeyRanges(final BigInteger[] startingHashKeys) {
+        this.startingHashKeys = startingHashKeys;
+    }
+
+    /**
+     * Creates the hash key ranges of the open shards in a list of shards.
+     *
+     * @param shards the shards of the stream, including closed shards
+     * @return KinesisHashKeyRanges
+     */
+    static KinesisHashKeyRanges of(final @Nonnull List<Shard> shards) {
+        return new KinesisHashKeyRanges(shards
+                .stream()
+                .filter(shard -> shard.sequenceNumberRange().endingSequenceNumber() == null)
+                .map(shard -> new BigInteger(shard.hashKeyRange().startingHashKey()))
+                .sorted()
+                .toArray(BigInteger[]::new));
+    }
+
+    static KinesisHashKeyRanges empty() {
+        return EMPTY;
+    }
+
+    boolean isEmpty() {
+        return startingHashKeys.length == 0;
+    }
+
+    /**
+     * Returns the index of the open shard a partition key is written to, in the order of the hash key ranges.
+     *
+     * @param partitionKey the partition key
+     * @return index of the shard, or -1 if the ranges are empty
+     */
+    int shardIndexOf(final @Nonnull String partitionKey) {
+        if (isEmpty()) {
+            return -1;
+        }
+        final int index = Arrays.binarySearch(startingHashKeys, hashKeyOf(partitionKey));
+        return index >= 0
+                ? index
+                : Math.max(0, -index - 2);
+    }
+
+    /**
+     * Returns the starting hash key of an open shard. The key is used as explicit hash key of records that must be
+     * written to the shard, independent of their partition key.
+     *
+     * @param shardIndex the index of the shard, as returned by {@link #shardIndexOf(String)}
+     * @return decimal representation of the hash key
+     */
+    String startingHashKeyOf(final int shardIndex) {
+        return startingHashKeys[shardIndex].toString();
+    }
+
+    static BigInteger hashKeyOf(final @Nonnull String partitionKey) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("MD5").digest(partitionKey.getBytes(UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -1,81 +1,442 @@
 package de.otto.synapse.endpoint.sender.aws;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.otto.synapse.codec.PayloadCompression;
+import de.otto.synapse.endpoint.receiver.aws.KinesisShardDiscovery;
 import de.otto.synapse.endpoint.sender.AbstractMessageSenderEndpoint;
+import de.otto.synapse.message.BinaryMessage;
 import de.otto.synapse.message.Message;
+import de.otto.synapse.message.aws.KinesisAggregatedRecord;
 import de.otto.synapse.translator.MessageTranslator;
+import org.slf4j.Logger;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
 
 import javax.annotation.Nonnull;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Supplier;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
-import static com.google.common.collect.Lists.partition;
+import static de.otto.synapse.codec.PayloadCompression.NONE;
 import static java.nio.ByteBuffer.wrap;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.stream.Collectors.toCollection;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.slf4j.LoggerFactory.getLogger;
 
-public class KinesisMessageSender extends AbstractMessageSenderEndpoint {
+/**
+ * Sender-side endpoint of a Kinesis stream.
+ * <p>
+ *     The payloads of {@link BinaryMessage binary messages} are sent as-is, so payloads encoded by some
+ *     {@link de.otto.synapse.codec.PayloadCodec} keep their encoding. All other payloads are sent as UTF-8
+ *     encoded Strings.
+ * </p>
+ * <p>
+ *     If a {@link PayloadCompression} is configured, payloads are compressed before they are sent.
+ * </p>
+ * <p>
+ *     If aggregation is enabled, {@link #sendBatch(Stream) batches} of messages are packed into
+ *     {@link KinesisAggregatedRecord aggregated records} of up to {@value #MAX_AGGREGATED_RECORD_SIZE} bytes, using
+ *     the record format of the Kinesis Producer Library. Only messages that are written to the same shard are
+ *     aggregated, so the messages of a partition key are still written to a single shard, in order. Like the
+ *     Kinesis Producer Library, aggregated records are routed to their shard using an explicit hash key inside
+ *     the hash key range of the shard. Receivers are deaggregating the records transparently. The shards of the
+ *     stream are taken from the {@link KinesisShardDiscovery} shared with the receivers of the application, if
+ *     one is configured.
+ * </p>
+ * <p>
+ *     Batches are streamed into {@code PutRecords} requests of up to 500 records and 5 MB, without collecting
+ *     the whole batch in memory. If more than one request in flight is configured, requests are sent in parallel.
+ *     The records of a partition key (or of a shard, if aggregation is enabled) are always sent by the same
+ *     request lane, so they are written in order.
+ * </p>
+ * <p>
+ *     If a linger time is configured, single messages are not sent immediately. Instead, the records of
+ *     {@link #sendAsync(Message)} and {@link #send(Message)} are collected by a {@link KinesisRecordBatcher} and
+ *     sent in batches of up to 500 records and 5 MB, after the linger time has elapsed or as soon as a batch is
+ *     full. {@code send()} is still blocking until the message was sent, so only concurrent senders are profiting
+ *     from batching, while {@code sendAsync()} returns immediately.
+ * </p>
+ */
+public class KinesisMessageSender extends AbstractMessageSenderEndpoint implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(KinesisMessageSender.class);
 
     private static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocateDirect(0);
-    private static final int PUT_RECORDS_BATCH_SIZE = 500;
+    /**
+     * The maximum size of aggregated records, as used by the Kinesis Producer Library.
+     */
+    static final int MAX_AGGREGATED_RECORD_SIZE = 51200;
+    private static final long HASH_KEY_RANGES_MAX_AGE_MILLIS = 60000;
 
     private final RetryPutRecordsKinesisClient retryPutRecordsKinesisClient;
+    private final PayloadCompression compression;
+    private final boolean aggregation;
+    private final KinesisRecordBatcher recordBatcher;
+    private final int maxRequestsInFlight;
+    private final Executor requestExecutor;
+    private final ExecutorService ownRequestExecutor;
+    private final KinesisShardDiscovery shardDiscovery;
+    private final boolean ownShardDiscovery;
+    private volatile KinesisHashKeyRanges hashKeyRanges = KinesisHashKeyRanges.empty();
+    private volatile long hashKeyRangesTimestamp;
 
     public KinesisMessageSender(final String channelName,
                                 final MessageTranslator<String> messageTranslator,
                                 final KinesisClient kinesisClient) {
+        this(channelName, messageTranslator, kinesisClient, NONE);
+    }
+
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression) {
+        this(channelName, messageTranslator, kinesisClient, compression, false);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation) {
+        this(channelName, messageTranslator, kinesisClient, compression, aggregation, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation,
+                                final Duration lingerTime) {
+        this(channelName, messageTranslator, kinesisClient, compression, aggregation, lingerTime, 1);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation,
+                                final Duration lingerTime,
+                                final int maxRequestsInFlight) {
+        this(channelName, messageTranslator, kinesisClient, compression, aggregation, lingerTime, maxRequestsInFlight, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor used to adapt the rate of requests to the capacity of the stream, or null,
+     *                      if requests should not be paced.
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation,
+                                final Duration lingerTime,
+                                final int maxRequestsInFlight,
+                                final KinesisWriteGovernor writeGovernor) {
+        this(channelName, messageTranslator, kinesisClient, compression, aggregation, lingerTime, maxRequestsInFlight, writeGovernor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor used to adapt the rate of requests to the capacity of the stream, or null,
+     *                      if requests should not be paced.
+     * @param requestExecutor the executor used to send the requests of a batch in parallel, typically the
+     *                        {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of the
+     *                        channel}. Requests rejected by the executor are sent by the calling thread. If null,
+     *                        the sender is using {@code maxRequestsInFlight} threads of its own. Retries and
+     *                        delayed requests are sent using the same executor.
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation,
+                                final Duration lingerTime,
+                                final int maxRequestsInFlight,
+                                final KinesisWriteGovernor writeGovernor,
+                                final Executor requestExecutor) {
+        this(channelName, messageTranslator, kinesisClient, compression, aggregation, lingerTime, maxRequestsInFlight, writeGovernor, requestExecutor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSender.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param kinesisClient the Kinesis client
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor used to adapt the rate of requests to the capacity of the stream, or null,
+     *                      if requests should not be paced.
+     * @param requestExecutor the executor used to send the requests of a batch in parallel, typically the
+     *                        {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of the
+     *                        channel}. Requests rejected by the executor are sent by the calling thread. If null,
+     *                        the sender is using {@code maxRequestsInFlight} threads of its own. Retries and
+     *                        delayed requests are sent using the same executor.
+     * @param shardDiscovery the discovery used to retrieve the shards of the stream, if aggregation is enabled, or
+     *                       null, if the sender should retrieve the shards itself.
+     */
+    public KinesisMessageSender(final String channelName,
+                                final MessageTranslator<String> messageTranslator,
+                                final KinesisClient kinesisClient,
+                                final PayloadCompression compression,
+                                final boolean aggregation,
+                                final Duration lingerTime,
+                                final int maxRequestsInFlight,
+                                final KinesisWriteGovernor writeGovernor,
+                                final Executor requestExecutor,
+                                final KinesisShardDiscovery shardDiscovery) {
         super(channelName, messageTranslator);
-        this.retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient);
+        if (maxRequestsInFlight < 1) {
+            throw new IllegalArgumentException("maxRequestsInFlight must be greater than 0");
+        }
+        // a discovery of our own is not refreshing the shards in the background, so they are refreshed on demand:
+        this.shardDiscovery = shardDiscovery != null ? shardDiscovery : new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+        this.ownShardDiscovery = shardDiscovery == null;
+        this.compression = compression;
+        this.aggregation = aggregation;
+        this.maxRequestsInFlight = maxRequestsInFlight;
+        this.ownRequestExecutor = maxRequestsInFlight > 1 && requestExecutor == null
+                ? newFixedThreadPool(maxRequestsInFlight, new ThreadFactoryBuilder()
+                        .setNameFormat("kinesis-sender-" + channelName + "-%d")
+                        .setDaemon(true)
+                        .build())
+                : null;
+        this.retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient, writeGovernor,
+                requestExecutor != null ? requestExecutor : ownRequestExecutor);
+        this.recordBatcher = lingerTime != null && !lingerTime.isZero()
+                ? new KinesisRecordBatcher(channelName, retryPutRecordsKinesisClient, lingerTime)
+                : null;
+        if (maxRequestsInFlight == 1) {
+            this.requestExecutor = null;
+        } else if (requestExecutor != null) {
+            this.requestExecutor = callerRunsIfRejected(requestExecutor);
+        } else {
+            this.requestExecutor = ownRequestExecutor;
+        }
     }
 
     @Override
     protected void doSend(@Nonnull Message<String> message) {
-        retryPutRecordsKinesisClient.putRecords(() -> createPutRecordRequest(message));
+        if (recordBatcher != null) {
+            try {
+                recordBatcher.add(requestEntryFor(message)).join();
+            } catch (final CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        } else {
+            retryPutRecordsKinesisClient.putRecords(() -> createPutRecordRequest(message));
+        }
+    }
+
+    @Override
+    protected CompletableFuture<Void> doSendAsync(@Nonnull Message<String> message) {
+        return recordBatcher != null
+                ? recordBatcher.add(requestEntryFor(message))
+                : super.doSendAsync(message);
     }
 
     @Override
     protected void doSendBatch(@Nonnull Stream<Message<String>> messageStream) {
-        final List<PutRecordsRequestEntry> entries = createPutRecordRequestEntries(messageStream);
-        partition(entries, PUT_RECORDS_BATCH_SIZE)
-                .forEach(batch -> retryPutRecordsKinesisClient.putRecords(() -> createPutRecordRequest(batch))
-                );
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline(getChannelName(), retryPutRecordsKinesisClient, maxRequestsInFlight, requestExecutor);
+        if (aggregation) {
+            aggregate(messageStream, pipeline::add);
+        } else {
+            messageStream.forEach(message -> pipeline.add(requestEntryFor(message), message.getKey()));
+        }
+        pipeline.finish();
     }
 
-    private PutRecordsRequest createPutRecordRequest(final List<PutRecordsRequestEntry> batch) {
-        return PutRecordsRequest.builder()
-                .streamName(getChannelName())
-                .records(batch)
+    private PutRecordsRequestEntry requestEntryFor(final Message<String> message) {
+        return PutRecordsRequestEntry.builder()
+                .partitionKey(message.getKey())
+                .data(dataOf(message))
                 .build();
     }
 
-    private ArrayList<PutRecordsRequestEntry> createPutRecordRequestEntries(final @Nonnull Stream<Message<String>> messageStream) {
-        return messageStream
-                .map(entry -> requestEntryFor(entry.getKey(), entry.getPayload()))
-                .collect(toCollection(ArrayList::new));
+    /**
+     * Packs the messages into aggregated records. Messages are grouped by the shard they are written to; the
+     * records of a shard are created in the order of the messages. Records are passed to the consumer, together
+     * with their shard, as soon as they are full, so only a single record per shard is kept in memory.
+     */
+    private void aggregate(final @Nonnull Stream<Message<String>> messageStream,
+                           final BiConsumer<PutRecordsRequestEntry, Object> recordConsumer) {
+        final KinesisHashKeyRanges hashKeyRanges = currentHashKeyRanges();
+        final Map<Object, KinesisAggregatedRecord.Builder> recordsPerShard = new LinkedHashMap<>();
+        messageStream.forEach(message -> {
+            final byte[] data = bytesOf(message);
+            // without hash key ranges, only messages having the same key are aggregated:
+            final Object shard = hashKeyRanges.isEmpty()
+                    ? message.getKey()
+                    : hashKeyRanges.shardIndexOf(message.getKey());
+            final KinesisAggregatedRecord.Builder record = recordsPerShard.get(shard);
+            if (record != null && record.sizeWith(message.getKey(), data.length) > MAX_AGGREGATED_RECORD_SIZE) {
+                recordConsumer.accept(requestEntryFor(record, explicitHashKeyOf(hashKeyRanges, shard)), shard);
+                recordsPerShard.remove(shard);
+            }
+            recordsPerShard.computeIfAbsent(shard, s -> KinesisAggregatedRecord.builder()).add(message.getKey(), data);
+        });
+        recordsPerShard.forEach((shard, record) -> recordConsumer.accept(requestEntryFor(record, explicitHashKeyOf(hashKeyRanges, shard)), shard));
     }
 
-    private PutRecordsRequestEntry requestEntryFor(final String key,
-                                                   final String payload) {
-        final ByteBuffer byteBufferPayload = payload != null
-                ? wrap(payload.getBytes(UTF_8))
-                : EMPTY_BYTE_BUFFER;
+    /**
+     * Returns the explicit hash key of the records of a shard, or null if the records are grouped by key.
+     */
+    private static String explicitHashKeyOf(final KinesisHashKeyRanges hashKeyRanges, final Object shard) {
+        return hashKeyRanges.isEmpty()
+                ? null
+                : hashKeyRanges.startingHashKeyOf((Integer) shard);
+    }
+
+    private PutRecordsRequestEntry requestEntryFor(final KinesisAggregatedRecord.Builder record,
+                                                   final String explicitHashKey) {
+        final KinesisAggregatedRecord.UserRecord first = record.getUserRecords().get(0);
+        if (record.getNumberOfUserRecords() == 1) {
+            return PutRecordsRequestEntry.builder()
+                    .partitionKey(first.getPartitionKey())
+                    .data(first.getData().length > 0 ? wrap(first.getData()) : EMPTY_BYTE_BUFFER)
+                    .build();
+        }
+        // the explicit hash key is routing the record to the shard of all user records; the partition key is only
+        // used to route records of messages having the same key:
         return PutRecordsRequestEntry.builder()
-                .partitionKey(key)
-                .data(byteBufferPayload)
+                .partitionKey(first.getPartitionKey())
+                .explicitHashKey(explicitHashKey)
+                .data(wrap(record.build()))
                 .build();
     }
 
+    private KinesisHashKeyRanges currentHashKeyRanges() {
+        final long now = System.currentTimeMillis();
+        if (now - hashKeyRangesTimestamp > HASH_KEY_RANGES_MAX_AGE_MILLIS) {
+            try {
+                hashKeyRanges = KinesisHashKeyRanges.of(ownShardDiscovery
+                        ? shardDiscovery.refreshShards(getChannelName())
+                        : shardDiscovery.getShards(getChannelName()));
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to retrieve shards of channel {}, aggregating messages by key: {}", getChannelName(), e.getMessage());
+                hashKeyRanges = KinesisHashKeyRanges.empty();
+            }
+            hashKeyRangesTimestamp = now;
+        }
+        return hashKeyRanges;
+    }
+
+    private ByteBuffer dataOf(final Message<String> message) {
+        final byte[] payloadBytes = bytesOf(message);
+        return payloadBytes.length > 0
+                ? wrap(payloadBytes)
+                : EMPTY_BYTE_BUFFER;
+    }
+
+    private byte[] bytesOf(final Message<String> message) {
+        final byte[] payloadBytes;
+        if (message instanceof BinaryMessage) {
+            payloadBytes = ((BinaryMessage) message).getPayloadBytes();
+        } else {
+            payloadBytes = message.getPayload() != null
+                    ? message.getPayload().getBytes(UTF_8)
+                    : null;
+        }
+        return payloadBytes != null
+                ? compression.compress(payloadBytes)
+                : new byte[0];
+    }
+
     private PutRecordsRequest createPutRecordRequest(final @Nonnull Message<String> message) {
         return PutRecordsRequest.builder()
                 .streamName(getChannelName())
-                .records(requestEntryFor(message.getKey(), message.getPayload()))
+                .records(requestEntryFor(message))
                 .build();
     }
 
+    /**
+     * Sends the messages that are waiting for the linger time to elapse, waits until they are sent, and stops the
+     * threads of the sender used to send requests in parallel. A provided request executor is not shut down.
+     */
+    @Override
+    public void close() {
+        if (recordBatcher != null) {
+            recordBatcher.close();
+        }
+        if (ownRequestExecutor != null) {
+            ownRequestExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Wraps a shared executor, so tasks are executed by the calling thread if all threads of the executor are busy.
+     */
+    private static Executor callerRunsIfRejected(final Executor executor) {
+        return task -> {
+            try {
+                executor.execute(task);
+            } catch (final RejectedExecutionException e) {
+                task.run();
+            }
+        };
+    }
 
 }
@@ -1,32 +1,230 @@
 package de.otto.synapse.endpoint.sender.aws;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.codec.PayloadCodec;
+import de.otto.synapse.codec.PayloadCompression;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
+import de.otto.synapse.endpoint.receiver.aws.KinesisShardDiscovery;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpoint;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpointFactory;
+import de.otto.synapse.executor.SynapseExecutors;
+import de.otto.synapse.translator.BinaryMessageTranslator;
 import de.otto.synapse.translator.JsonStringMessageTranslator;
 import de.otto.synapse.translator.MessageTranslator;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
+
+import static de.otto.synapse.codec.PayloadCodecs.JSON;
+import static de.otto.synapse.codec.PayloadCompression.NONE;
 
 public class KinesisMessageSenderEndpointFactory implements MessageSenderEndpointFactory {
 
     private final MessageInterceptorRegistry registry;
     private final MessageTranslator<String> messageTranslator;
     private final KinesisClient kinesisClient;
+    private final PayloadCompression compression;
+    private final boolean aggregation;
+    private final Duration lingerTime;
+    private final int maxRequestsInFlight;
+    private final KinesisWriteGovernor writeGovernor;
+    private final SynapseExecutors synapseExecutors;
+    private final KinesisShardDiscovery shardDiscovery;
 
     public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
                                                final ObjectMapper objectMapper,
                                                final KinesisClient kinesisClient) {
+        this(registry, objectMapper, kinesisClient, JSON, NONE);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, false);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, aggregation, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation,
+                                               final Duration lingerTime) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, aggregation, lingerTime, 1);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation,
+                                               final Duration lingerTime,
+                                               final int maxRequestsInFlight) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, aggregation, lingerTime, maxRequestsInFlight, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor shared by all created senders to adapt their rate to the capacity of the
+     *                      streams, or null, if requests should not be paced.
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation,
+                                               final Duration lingerTime,
+                                               final int maxRequestsInFlight,
+                                               final KinesisWriteGovernor writeGovernor) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, aggregation, lingerTime, maxRequestsInFlight, writeGovernor, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor shared by all created senders to adapt their rate to the capacity of the
+     *                      streams, or null, if requests should not be paced.
+     * @param synapseExecutors the executors of the channels, used to send the requests of a batch in parallel, or
+     *                         null, if every sender should use threads of its own.
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation,
+                                               final Duration lingerTime,
+                                               final int maxRequestsInFlight,
+                                               final KinesisWriteGovernor writeGovernor,
+                                               final SynapseExecutors synapseExecutors) {
+        this(registry, objectMapper, kinesisClient, payloadCodec, compression, aggregation, lingerTime, maxRequestsInFlight, writeGovernor, synapseExecutors, null);
+    }
+
+    /**
+     * Creates a KinesisMessageSenderEndpointFactory.
+     *
+     * @param registry the registry used to register interceptors at the created senders
+     * @param objectMapper the ObjectMapper used to serialize message payloads
+     * @param kinesisClient the Kinesis client
+     * @param payloadCodec the codec used to encode message payloads
+     * @param compression the compression of encoded message payloads
+     * @param aggregation true, if batches of messages should be sent as aggregated records
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxRequestsInFlight the maximum number of PutRecords requests of a batch that are sent in parallel
+     * @param writeGovernor the governor shared by all created senders to adapt their rate to the capacity of the
+     *                      streams, or null, if requests should not be paced.
+     * @param synapseExecutors the executors of the channels, used to send the requests of a batch in parallel, or
+     *                         null, if every sender should use threads of its own.
+     * @param shardDiscovery the discovery shared by all created senders to retrieve the shards of aggregating
+     *                       senders, or null, if every sender should retrieve the shards itself.
+     */
+    public KinesisMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                               final ObjectMapper objectMapper,
+                                               final KinesisClient kinesisClient,
+                                               final PayloadCodec payloadCodec,
+                                               final PayloadCompression compression,
+                                               final boolean aggregation,
+                                               final Duration lingerTime,
+                                               final int maxRequestsInFlight,
+                                               final KinesisWriteGovernor writeGovernor,
+                                               final SynapseExecutors synapseExecutors,
+                                               final KinesisShardDiscovery shardDiscovery) {
         this.registry = registry;
-        this.messageTranslator = new JsonStringMessageTranslator(objectMapper);
+        this.messageTranslator = payloadCodec == JSON
+                ? new JsonStringMessageTranslator(objectMapper)
+                : new BinaryMessageTranslator(objectMapper, payloadCodec);
         this.kinesisClient = kinesisClient;
+        this.compression = compression;
+        this.aggregation = aggregation;
+        this.lingerTime = lingerTime;
+        this.maxRequestsInFlight = maxRequestsInFlight;
+        this.writeGovernor = writeGovernor;
+        this.synapseExecutors = synapseExecutors;
+        this.shardDiscovery = shardDiscovery;
     }
 
     @Override
     public MessageSenderEndpoint create(final @Nonnull String channelName) {
-        final MessageSenderEndpoint messageSender = new KinesisMessageSender(channelName, messageTranslator, kinesisClient);
+        final MessageSenderEndpoint messageSender = new KinesisMessageSender(channelName, messageTranslator, kinesisClient, compression, aggregation, lingerTime, maxRequestsInFlight, writeGovernor,
+                synapseExecutors != null ? synapseExecutors.executorFor(channelName) : null, shardDiscovery);
         messageSender.registerInterceptorsFrom(registry);
         return messageSender;
     }
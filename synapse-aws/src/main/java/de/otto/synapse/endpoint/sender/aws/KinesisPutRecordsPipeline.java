@@ -0,0 +1,222 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sends a stream of records to Kinesis using {@code PutRecords} requests of up to
+ * {@value #MAX_RECORDS_PER_REQUEST} records and {@value #MAX_BYTES_PER_REQUEST} bytes.
+ * <p>
+ *     Records are {@link #add(PutRecordsRequestEntry, Object) added} one after another, and requests are sent as
+ *     soon as they are full, so the records of the stream do not have to be kept in memory.
+ * </p>
+ * <p>
+ *     If an executor is given, up to {@code parallelism} requests are sent in parallel. Records are assigned to
+ *     one of {@code parallelism} lanes by their ordering key, and every lane has at most one request in flight. The
+ *     records of an ordering key are therefore sent in order, and the caller is blocked if the next request of a
+ *     lane is full while the previous one is still in flight. Requests are sent using the executor, and retries of
+ *     failed requests are scheduled by the {@link RetryPutRecordsKinesisClient}, so the executor is not blocked
+ *     while a retry is delayed.
+ * </p>
+ * <p>
+ *     A pipeline is used to send a single stream of records, and must be {@link #finish() finished} afterwards.
+ * </p>
+ */
+@NotThreadSafe
+class KinesisPutRecordsPipeline {
+
+    /**
+     * The maximum number of records of a single {@code PutRecords} request.
+     */
+    static final int MAX_RECORDS_PER_REQUEST = 500;
+    /**
+     * The maximum size of a single {@code PutRecords} request, including partition keys.
+     */
+    static final long MAX_BYTES_PER_REQUEST = 5L * 1024 * 1024;
+    /**
+     * The maximum size of a single record, including the partition key.
+     */
+    static final long MAX_BYTES_PER_RECORD = 1024L * 1024;
+
+    private final String channelName;
+    private final RetryPutRecordsKinesisClient retryPutRecordsKinesisClient;
+    private final Executor executor;
+    private final Lane[] lanes;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * Creates a pipeline that is sending the requests in the calling thread, one after another.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param retryPutRecordsKinesisClient the client used to send the requests
+     */
+    KinesisPutRecordsPipeline(final @Nonnull String channelName,
+                              final @Nonnull RetryPutRecordsKinesisClient retryPutRecordsKinesisClient) {
+        this(channelName, retryPutRecordsKinesisClient, 1, null);
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param retryPutRecordsKinesisClient the client used to send the requests
+     * @param parallelism the maximum number of requests in flight
+     * @param executor the executor used to send requests in parallel. If null, requests are sent in the calling
+     *                 thread, one after another.
+     */
+    KinesisPutRecordsPipeline(final @Nonnull String channelName,
+                              final @Nonnull RetryPutRecordsKinesisClient retryPutRecordsKinesisClient,
+                              final int parallelism,
+                              final Executor executor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+        this.channelName = channelName;
+        this.retryPutRecordsKinesisClient = retryPutRecordsKinesisClient;
+        this.executor = executor;
+        this.lanes = new Lane[executor != null ? parallelism : 1];
+        for (int i = 0; i < lanes.length; ++i) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Adds a record to the pipeline. The request of the record is sent, if it is full.
+     *
+     * @param entry the record
+     * @param orderingKey the key used to keep the order of records, typically the partition key or the shard
+     *                    of the record.
+     * @throws IllegalArgumentException if the record is exceeding the maximum size of Kinesis records
+     * @throws RuntimeException if a previous request of this pipeline has failed
+     */
+    void add(final @Nonnull PutRecordsRequestEntry entry,
+             final @Nonnull Object orderingKey) {
+        throwIfFailed();
+        final long size = sizeOf(entry);
+        checkRecordSize(entry, size);
+        final Lane lane = lanes[Math.floorMod(orderingKey.hashCode(), lanes.length)];
+        if (!lane.records.isEmpty() && lane.bytes + size > MAX_BYTES_PER_REQUEST) {
+            send(lane);
+        }
+        lane.records.add(entry);
+        lane.bytes += size;
+        if (lane.records.size() >= MAX_RECORDS_PER_REQUEST || lane.bytes >= MAX_BYTES_PER_REQUEST) {
+            send(lane);
+        }
+    }
+
+    /**
+     * Sends the remaining records and waits until all requests are completed.
+     *
+     * @throws RuntimeException the first exception of a failed request
+     */
+    void finish() {
+        for (final Lane lane : lanes) {
+            if (!lane.records.isEmpty() && failure.get() == null) {
+                send(lane);
+            }
+        }
+        for (final Lane lane : lanes) {
+            lane.inFlight.handle((result, throwable) -> null).join();
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Returns the size of a record, including the partition key.
+     *
+     * @param entry the record
+     * @return size in bytes
+     */
+    static long sizeOf(final @Nonnull PutRecordsRequestEntry entry) {
+        final long dataSize = entry.data() != null ? entry.data().remaining() : 0;
+        return dataSize + entry.partitionKey().getBytes(UTF_8).length;
+    }
+
+    /**
+     * Checks that a record is not exceeding {@link #MAX_BYTES_PER_RECORD}.
+     *
+     * @param entry the record
+     * @param size the size of the record
+     * @throws IllegalArgumentException if the record is too large
+     */
+    static void checkRecordSize(final @Nonnull PutRecordsRequestEntry entry, final long size) {
+        if (size > MAX_BYTES_PER_RECORD) {
+            throw new IllegalArgumentException(format(
+                    "Record with partition key %s has %d bytes, exceeding the maximum of %d bytes",
+                    entry.partitionKey(), size, MAX_BYTES_PER_RECORD));
+        }
+    }
+
+    private void send(final Lane lane) {
+        final List<PutRecordsRequestEntry> records = lane.records;
+        lane.records = new ArrayList<>();
+        lane.bytes = 0;
+        final Supplier<PutRecordsRequest> request = () -> PutRecordsRequest.builder()
+                .streamName(channelName)
+                .records(records)
+                .build();
+        if (executor == null) {
+            try {
+                retryPutRecordsKinesisClient.putRecords(request);
+            } catch (final RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        } else {
+            // keeps the order of the lane and limits the number of requests in flight:
+            await(lane.inFlight);
+            throwIfFailed();
+            lane.inFlight = lane.inFlight
+                    .thenComposeAsync(previous -> retryPutRecordsKinesisClient.putRecordsAsync(request), executor)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            failure.compareAndSet(null, unwrap(throwable));
+                        }
+                    });
+        }
+    }
+
+    private void throwIfFailed() {
+        final RuntimeException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static void await(final CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (final CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        return cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new CompletionException(cause);
+    }
+
+    private static class Lane {
+        private List<PutRecordsRequestEntry> records = new ArrayList<>();
+        private long bytes;
+        private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    }
+}
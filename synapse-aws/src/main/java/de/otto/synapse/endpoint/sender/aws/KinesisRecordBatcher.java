@@ -0,0 +1,202 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import static de.otto.synapse.endpoint.sender.aws.KinesisPutRecordsPipeline.MAX_BYTES_PER_REQUEST;
+import static de.otto.synapse.endpoint.sender.aws.KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST;
+import static de.otto.synapse.endpoint.sender.aws.KinesisPutRecordsPipeline.checkRecordSize;
+import static de.otto.synapse.endpoint.sender.aws.KinesisPutRecordsPipeline.sizeOf;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Collects the records of single messages into batches that are sent to Kinesis using a single {@code PutRecords}
+ * request.
+ * <p>
+ *     A batch is sent as soon as it contains {@value KinesisPutRecordsPipeline#MAX_RECORDS_PER_REQUEST} records
+ *     or {@value KinesisPutRecordsPipeline#MAX_BYTES_PER_REQUEST} bytes, or if the linger time has elapsed after
+ *     the first record was added to the batch. Batches are sent one after another, in the order of the records.
+ *     Delayed retries of a batch are scheduled by the {@link RetryPutRecordsKinesisClient}, without blocking the
+ *     background thread of the batcher. If more than {@value #MAX_QUEUED_BATCHES} batches are waiting to be sent,
+ *     adding records blocks until the sender has caught up.
+ * </p>
+ */
+@ThreadSafe
+class KinesisRecordBatcher implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(KinesisRecordBatcher.class);
+
+    /**
+     * The maximum number of batches waiting to be sent before {@link #add(PutRecordsRequestEntry)} is blocking.
+     */
+    static final int MAX_QUEUED_BATCHES = 10;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final String channelName;
+    private final RetryPutRecordsKinesisClient retryPutRecordsKinesisClient;
+    private final long lingerMillis;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private List<PendingRecord> pendingRecords = new ArrayList<>();
+    private long pendingBytes;
+    private long batchNumber;
+    private int queuedBatches;
+    private boolean closed;
+    private CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+
+    /**
+     * Creates a KinesisRecordBatcher.
+     *
+     * @param channelName the name of the Kinesis stream
+     * @param retryPutRecordsKinesisClient the client used to send the batches
+     * @param lingerTime the maximum time a record is waiting for more records before the batch is sent
+     */
+    KinesisRecordBatcher(final @Nonnull String channelName,
+                         final @Nonnull RetryPutRecordsKinesisClient retryPutRecordsKinesisClient,
+                         final @Nonnull Duration lingerTime) {
+        if (lingerTime.isZero() || lingerTime.isNegative()) {
+            throw new IllegalArgumentException("lingerTime must be positive");
+        }
+        this.channelName = channelName;
+        this.retryPutRecordsKinesisClient = retryPutRecordsKinesisClient;
+        this.lingerMillis = lingerTime.toMillis();
+        // a timer of its own, because the executor of the channel is not able to schedule tasks:
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("kinesis-linger-" + channelName + "-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Adds a record to the current batch.
+     *
+     * @param entry the record
+     * @return future that is completed after the batch containing the record was sent, or completed exceptionally,
+     * if sending the batch failed
+     */
+    synchronized CompletableFuture<Void> add(final @Nonnull PutRecordsRequestEntry entry) {
+        if (closed) {
+            throw new IllegalStateException("Unable to send message: sender of channel " + channelName + " is closed");
+        }
+        final long size = sizeOf(entry);
+        checkRecordSize(entry, size);
+        awaitQueuedBatches();
+        if (!pendingRecords.isEmpty() && pendingBytes + size > MAX_BYTES_PER_REQUEST) {
+            dispatch();
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingRecords.add(new PendingRecord(entry, future));
+        pendingBytes += size;
+        if (pendingRecords.size() >= MAX_RECORDS_PER_REQUEST || pendingBytes >= MAX_BYTES_PER_REQUEST) {
+            dispatch();
+        } else if (pendingRecords.size() == 1) {
+            final long lingeringBatch = batchNumber;
+            executor.schedule(() -> dispatchLingering(lingeringBatch), lingerMillis, MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the current batch and waits until all batches are sent. Records that are added afterwards are rejected.
+     */
+    @Override
+    public void close() {
+        final CompletableFuture<Void> lastBatch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!pendingRecords.isEmpty()) {
+                dispatch();
+            }
+            lastBatch = this.lastBatch;
+        }
+        try {
+            lastBatch.get(CLOSE_TIMEOUT_SECONDS, SECONDS);
+        } catch (final TimeoutException | ExecutionException e) {
+            LOG.warn("Failed to wait for pending records of channel {} to be sent: {}", channelName, e.getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized void dispatchLingering(final long lingeringBatch) {
+        if (lingeringBatch == batchNumber && !pendingRecords.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        final List<PendingRecord> batch = pendingRecords;
+        pendingRecords = new ArrayList<>();
+        pendingBytes = 0;
+        ++batchNumber;
+        ++queuedBatches;
+        // the next batch is sent after the previous one, including its retries, is completed:
+        lastBatch = lastBatch.thenComposeAsync(previous -> send(batch), executor);
+    }
+
+    private CompletableFuture<Void> send(final List<PendingRecord> batch) {
+        final List<PutRecordsRequestEntry> entries = batch.stream().map(r -> r.entry).collect(toList());
+        return retryPutRecordsKinesisClient
+                .putRecordsAsync(() -> PutRecordsRequest.builder()
+                        .streamName(channelName)
+                        .records(entries)
+                        .build())
+                .handle((result, throwable) -> {
+                    if (throwable == null) {
+                        batch.forEach(r -> r.future.complete(null));
+                    } else {
+                        LOG.error("Failed to send batch of {} records to channel {}: {}", batch.size(), channelName, throwable.getMessage());
+                        batch.forEach(r -> r.future.completeExceptionally(throwable));
+                    }
+                    synchronized (this) {
+                        --queuedBatches;
+                        notifyAll();
+                    }
+                    return null;
+                });
+    }
+
+    private void awaitQueuedBatches() {
+        try {
+            while (queuedBatches >= MAX_QUEUED_BATCHES) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for queued batches of channel " + channelName, e);
+        }
+    }
+
+    private static class PendingRecord {
+        private final PutRecordsRequestEntry entry;
+        private final CompletableFuture<Void> future;
+
+        PendingRecord(final PutRecordsRequestEntry entry,
+                      final CompletableFuture<Void> future) {
+            this.entry = entry;
+            this.future = future;
+        }
+    }
+}
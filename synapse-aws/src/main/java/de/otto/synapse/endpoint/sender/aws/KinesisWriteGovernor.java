@@ -0,0 +1,227 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Adapts the rate of records written to a Kinesis stream by all senders of the application to the capacity of the
+ * stream, using additive increase and multiplicative decrease (AIMD).
+ * <p>
+ *     Without a governor, senders are writing at full speed, even if the stream is already throttling requests, and
+ *     throttled records are retried until the retries are exhausted. Using a shared KinesisWriteGovernor, the
+ *     senders of a stream are pacing their requests just below the capacity of the stream instead.
+ * </p>
+ * <p>
+ *     Writes to a stream are not limited until the first records of the stream are throttled. The rate is then set
+ *     to the number of records written during the last second, multiplied by the {@code decreaseFactor}. Every
+ *     request without throttled records is increasing the rate by {@code additiveIncrease} records per second, and
+ *     every further throttling is decreasing it again, at most once per {@value #DECREASE_INTERVAL_MILLIS}ms. The
+ *     rate is never lower than {@code minRecordsPerSecond}.
+ * </p>
+ */
+@ThreadSafe
+public class KinesisWriteGovernor {
+
+    private static final Logger LOG = getLogger(KinesisWriteGovernor.class);
+
+    /**
+     * The default lower limit of the rate of a stream.
+     */
+    public static final double DEFAULT_MIN_RECORDS_PER_SECOND = 100;
+    /**
+     * The default number of records per second the rate is increased after every successful request.
+     */
+    public static final double DEFAULT_ADDITIVE_INCREASE = 50;
+    /**
+     * The default factor the rate is multiplied with after records were throttled.
+     */
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+    /**
+     * The minimum interval between two decreases of the rate, so the responses of requests that were sent before
+     * the rate was decreased are not decreasing the rate again.
+     */
+    static final long DECREASE_INTERVAL_MILLIS = 1000;
+
+    private final double minRecordsPerSecond;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+    private final Clock clock;
+    private final ConcurrentMap<String, StreamRate> streamRates = new ConcurrentHashMap<>();
+
+    public KinesisWriteGovernor() {
+        this(DEFAULT_MIN_RECORDS_PER_SECOND, DEFAULT_ADDITIVE_INCREASE, DEFAULT_DECREASE_FACTOR, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a KinesisWriteGovernor.
+     *
+     * @param minRecordsPerSecond the lower limit of the rate of a stream
+     * @param additiveIncrease the number of records per second the rate is increased after a successful request
+     * @param decreaseFactor the factor the rate is multiplied with after records were throttled
+     * @param clock the clock used to pace the requests
+     */
+    public KinesisWriteGovernor(final double minRecordsPerSecond,
+                                final double additiveIncrease,
+                                final double decreaseFactor,
+                                final @Nonnull Clock clock) {
+        if (minRecordsPerSecond <= 0 || additiveIncrease <= 0) {
+            throw new IllegalArgumentException("minRecordsPerSecond and additiveIncrease must be greater than 0");
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("decreaseFactor must be greater than 0 and less than 1");
+        }
+        this.minRecordsPerSecond = minRecordsPerSecond;
+        this.additiveIncrease = additiveIncrease;
+        this.decreaseFactor = decreaseFactor;
+        this.clock = clock;
+    }
+
+    /**
+     * Reserves a request to a stream, without blocking the calling thread.
+     * <p>
+     *     The request must not be sent before the returned number of milliseconds has elapsed.
+     * </p>
+     *
+     * @param streamName the name of the Kinesis stream
+     * @param numberOfRecords the number of records of the request
+     * @return the number of milliseconds to wait before the request is sent
+     */
+    public long reserveWrite(final @Nonnull String streamName,
+                             final int numberOfRecords) {
+        return rateOf(streamName).reserve(clock.millis(), numberOfRecords);
+    }
+
+    /**
+     * Adapts the rate of a stream to the response of a request.
+     *
+     * @param streamName the name of the Kinesis stream
+     * @param numberOfThrottledRecords the number of records of the request that were throttled
+     */
+    public void recordResponse(final @Nonnull String streamName,
+                               final int numberOfThrottledRecords) {
+        if (numberOfThrottledRecords > 0) {
+            throttled(streamName);
+        } else {
+            rateOf(streamName).increase();
+        }
+    }
+
+    /**
+     * Decreases the rate of a stream after a request or some of its records were throttled.
+     *
+     * @param streamName the name of the Kinesis stream
+     */
+    public void throttled(final @Nonnull String streamName) {
+        rateOf(streamName).decrease(streamName, clock.millis());
+    }
+
+    /**
+     * Returns the current rate of a stream.
+     *
+     * @param streamName the name of the Kinesis stream
+     * @return records per second, or {@link Double#POSITIVE_INFINITY}, if the stream is not limited
+     */
+    double getRecordsPerSecond(final @Nonnull String streamName) {
+        return rateOf(streamName).getRecordsPerSecond();
+    }
+
+    private StreamRate rateOf(final String streamName) {
+        return streamRates.computeIfAbsent(streamName, key -> new StreamRate(clock.millis()));
+    }
+
+    private class StreamRate {
+        private double recordsPerSecond = Double.POSITIVE_INFINITY;
+        private double tokens;
+        private long lastRefill;
+        private long lastDecrease;
+        private long windowStart;
+        private long windowRecords;
+        private long previousWindowRecords;
+
+        StreamRate(final long now) {
+            this.lastRefill = now;
+            this.lastDecrease = now - DECREASE_INTERVAL_MILLIS;
+            this.windowStart = now;
+        }
+
+        synchronized long reserve(final long now, final int numberOfRecords) {
+            countRecords(now, numberOfRecords);
+            if (Double.isInfinite(recordsPerSecond)) {
+                return 0;
+            }
+            refill(now);
+            tokens -= numberOfRecords;
+            return tokens < 0
+                    ? (long) Math.ceil(-tokens * 1000 / recordsPerSecond)
+                    : 0;
+        }
+
+        synchronized void increase() {
+            if (!Double.isInfinite(recordsPerSecond)) {
+                recordsPerSecond += additiveIncrease;
+            }
+        }
+
+        synchronized void decrease(final String streamName, final long now) {
+            if (now - lastDecrease < DECREASE_INTERVAL_MILLIS) {
+                return;
+            }
+            lastDecrease = now;
+            if (Double.isInfinite(recordsPerSecond)) {
+                recordsPerSecond = Math.max(minRecordsPerSecond, observedRecordsPerSecond(now) * decreaseFactor);
+                tokens = 0;
+                lastRefill = now;
+            } else {
+                refill(now);
+                recordsPerSecond = Math.max(minRecordsPerSecond, recordsPerSecond * decreaseFactor);
+                tokens = Math.min(tokens, 0);
+            }
+            LOG.info("Records of stream {} were throttled, limiting writes to {} records per second", streamName, (long) recordsPerSecond);
+        }
+
+        synchronized double getRecordsPerSecond() {
+            return recordsPerSecond;
+        }
+
+        private void refill(final long now) {
+            final long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(recordsPerSecond, tokens + elapsed * recordsPerSecond / 1000);
+                lastRefill = now;
+            }
+        }
+
+        private void countRecords(final long now, final int numberOfRecords) {
+            rotateWindow(now);
+            windowRecords += numberOfRecords;
+        }
+
+        private double observedRecordsPerSecond(final long now) {
+            rotateWindow(now);
+            if (previousWindowRecords > 0) {
+                return previousWindowRecords;
+            }
+            return windowRecords * 1000.0 / Math.max(1, now - windowStart);
+        }
+
+        private void rotateWindow(final long now) {
+            final long elapsed = now - windowStart;
+            if (elapsed >= 2000) {
+                previousWindowRecords = 0;
+                windowRecords = 0;
+                windowStart = now;
+            } else if (elapsed >= 1000) {
+                previousWindowRecords = windowRecords;
+                windowRecords = 0;
+                windowStart += 1000;
+            }
+        }
+    }
+}
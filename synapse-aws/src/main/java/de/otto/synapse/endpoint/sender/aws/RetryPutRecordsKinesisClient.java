@@ -1,107 +1,381 @@
 package de.otto.synapse.endpoint.sender.aws;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.otto.synapse.logging.LogHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
 
+import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static de.otto.synapse.logging.LogHelper.trace;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Sends {@code PutRecords} requests to Kinesis, retrying failed requests and records.
+ * <p>
+ *     Requests failing with an {@link SdkServiceException} or {@link SdkClientException} are sent again. If only
+ *     some records of a request are failing with one of the {@link #RETRYABLE_ERROR_CODES retryable error codes},
+ *     only these records are sent again. Records failing with other error codes can not be written by retrying,
+ *     so the request fails immediately. After {@value #MAX_RETRY_COUNT} attempts, the request fails with an
+ *     {@link IllegalStateException}.
+ * </p>
+ * <p>
+ *     Retries are not waiting in the calling thread: they are delayed using a {@link ScheduledExecutorService},
+ *     using decorrelated jitter: every delay is a random value between {@value #BASE_DELAY_MILLIS}ms and three
+ *     times the previous delay, capped at {@value #MAX_DELAY_MILLIS}ms.
+ * </p>
+ * <p>
+ *     The scheduler is only used to wait for the delay: the blocking {@code PutRecords} requests of retries and
+ *     delayed attempts are handed over to the request {@link Executor}, so a slow request to one stream is not
+ *     holding back the retries of other streams sharing the scheduler. If the request executor rejects a request,
+ *     the request is handed over again after {@value #BASE_DELAY_MILLIS}ms.
+ * </p>
+ * <p>
+ *     If a {@link KinesisWriteGovernor} is configured, every attempt is reserved at the governor first, and delayed
+ *     using the scheduler, if the stream is limited. The responses of all attempts are reported to the governor, so
+ *     the rate of the stream is adapted to its capacity.
+ * </p>
+ */
 public class RetryPutRecordsKinesisClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(RetryPutRecordsKinesisClient.class);
 
     private static final int MAX_RETRY_COUNT = 3;
+    /**
+     * The minimum delay between two attempts.
+     */
+    static final long BASE_DELAY_MILLIS = 100;
+    /**
+     * The maximum delay between two attempts.
+     */
+    static final long MAX_DELAY_MILLIS = 5000;
+    /**
+     * Error codes of failed records that are sent again.
+     */
+    static final Set<String> RETRYABLE_ERROR_CODES = ImmutableSet.of(
+            "ProvisionedThroughputExceededException",
+            "InternalFailure",
+            "KMSThrottlingException");
+
+    /**
+     * Error codes of failed records that are reported as throttled to the {@link KinesisWriteGovernor}.
+     */
+    static final Set<String> THROTTLING_ERROR_CODES = ImmutableSet.of(
+            "ProvisionedThroughputExceededException",
+            "KMSThrottlingException");
+
+    private static final int DEFAULT_SCHEDULER_THREADS = 1;
 
     private final KinesisClient kinesisClient;
     private final boolean waitBeforeRetry;
+    private final ScheduledExecutorService scheduler;
+    private final KinesisWriteGovernor writeGovernor;
+    private final Executor requestExecutor;
 
     public RetryPutRecordsKinesisClient(KinesisClient kinesisClient) {
         this(kinesisClient, true);
     }
 
+    public RetryPutRecordsKinesisClient(KinesisClient kinesisClient, KinesisWriteGovernor writeGovernor) {
+        this(kinesisClient, true, DefaultScheduler.INSTANCE, writeGovernor);
+    }
+
+    /**
+     * Creates a RetryPutRecordsKinesisClient, delaying retries using a shared scheduler.
+     *
+     * @param kinesisClient the Kinesis client
+     * @param writeGovernor the governor used to pace the requests, or null, if requests should not be paced
+     * @param requestExecutor the executor used to send retries and delayed attempts, or null, if a shared
+     *                        cached thread pool should be used
+     */
+    public RetryPutRecordsKinesisClient(final @Nonnull KinesisClient kinesisClient,
+                                        final KinesisWriteGovernor writeGovernor,
+                                        final Executor requestExecutor) {
+        this(kinesisClient, true, DefaultScheduler.INSTANCE, writeGovernor, requestExecutor);
+    }
+
     public RetryPutRecordsKinesisClient(KinesisClient kinesisClient, boolean waitBeforeRetry) {
+        this(kinesisClient, waitBeforeRetry, DefaultScheduler.INSTANCE);
+    }
+
+    /**
+     * Creates a RetryPutRecordsKinesisClient.
+     *
+     * @param kinesisClient the Kinesis client
+     * @param waitBeforeRetry true, if retries should be delayed
+     * @param scheduler the scheduler used to delay retries
+     */
+    public RetryPutRecordsKinesisClient(final @Nonnull KinesisClient kinesisClient,
+                                        final boolean waitBeforeRetry,
+                                        final @Nonnull ScheduledExecutorService scheduler) {
+        this(kinesisClient, waitBeforeRetry, scheduler, null);
+    }
+
+    /**
+     * Creates a RetryPutRecordsKinesisClient.
+     *
+     * @param kinesisClient the Kinesis client
+     * @param waitBeforeRetry true, if retries should be delayed
+     * @param scheduler the scheduler used to delay retries and paced attempts
+     * @param writeGovernor the governor used to pace the requests, or null, if requests should not be paced
+     */
+    public RetryPutRecordsKinesisClient(final @Nonnull KinesisClient kinesisClient,
+                                        final boolean waitBeforeRetry,
+                                        final @Nonnull ScheduledExecutorService scheduler,
+                                        final KinesisWriteGovernor writeGovernor) {
+        this(kinesisClient, waitBeforeRetry, scheduler, writeGovernor, null);
+    }
+
+    /**
+     * Creates a RetryPutRecordsKinesisClient.
+     *
+     * @param kinesisClient the Kinesis client
+     * @param waitBeforeRetry true, if retries should be delayed
+     * @param scheduler the scheduler used to delay retries and paced attempts
+     * @param writeGovernor the governor used to pace the requests, or null, if requests should not be paced
+     * @param requestExecutor the executor used to send retries and delayed attempts, or null, if a shared
+     *                        cached thread pool should be used
+     */
+    public RetryPutRecordsKinesisClient(final @Nonnull KinesisClient kinesisClient,
+                                        final boolean waitBeforeRetry,
+                                        final @Nonnull ScheduledExecutorService scheduler,
+                                        final KinesisWriteGovernor writeGovernor,
+                                        final Executor requestExecutor) {
         this.kinesisClient = kinesisClient;
         this.waitBeforeRetry = waitBeforeRetry;
+        this.scheduler = scheduler;
+        this.writeGovernor = writeGovernor;
+        this.requestExecutor = requestExecutor != null ? requestExecutor : DefaultRequestExecutor.INSTANCE;
     }
 
+    /**
+     * Sends a {@code PutRecords} request and waits until all records are written, or sending the records has
+     * finally failed.
+     *
+     * @param putRecordsRequestSupplier supplies the request. The supplier is called again to retry failed requests.
+     * @throws IllegalStateException if the records could not be written
+     */
     public void putRecords(Supplier<PutRecordsRequest> putRecordsRequestSupplier) {
-        int retryStep = 0;
-        PutRecordsRequest putRecordsRequest = putRecordsRequestSupplier.get();
-        while (retryStep++ < MAX_RETRY_COUNT) {
-            final long t1 = System.currentTimeMillis();
+        try {
+            putRecordsAsync(putRecordsRequestSupplier).join();
+        } catch (final CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Sends a {@code PutRecords} request without waiting for retries.
+     * <p>
+     *     The first attempt is executed in the calling thread, unless it is delayed by the
+     *     {@link KinesisWriteGovernor}. Retries and delayed attempts are delayed by the scheduler and sent using
+     *     the request executor.
+     * </p>
+     *
+     * @param putRecordsRequestSupplier supplies the request. The supplier is called again to retry failed requests.
+     * @return future that is completed after all records are written, or completed exceptionally with an
+     * {@link IllegalStateException}, if the records could not be written
+     */
+    public CompletableFuture<Void> putRecordsAsync(final @Nonnull Supplier<PutRecordsRequest> putRecordsRequestSupplier) {
+        final PutRecordsAttempts attempts = new PutRecordsAttempts(putRecordsRequestSupplier);
+        attempts.attempt(putRecordsRequestSupplier);
+        return attempts.result;
+    }
+
+    private List<String> getShardIds(final List<PutRecordsResultEntry> records) {
+        return records.stream().map(e->e.shardId()).collect(Collectors.toList());
+    }
+
+    private long getRecordsSize(final List<PutRecordsRequestEntry> records) {
+        return records.stream().map(e -> e.data().position()).mapToInt(Number::intValue).sum();
+    }
+
+    private List<PutRecordsRequestEntry> findRetryableRecords(PutRecordsRequest putRecordsRequest, PutRecordsResponse response) {
+        List<PutRecordsRequestEntry> retryRecords = new ArrayList<>();
+        for (int i = 0; i < response.records().size(); ++i) {
+            PutRecordsResultEntry record = response.records().get(i);
+            if (RETRYABLE_ERROR_CODES.contains(record.errorCode())) {
+                retryRecords.add(putRecordsRequest.records().get(i));
+            }
+        }
+        return retryRecords;
+    }
+
+    private int countThrottledRecords(PutRecordsResponse response) {
+        return (int) response.records().stream()
+                .filter(record -> THROTTLING_ERROR_CODES.contains(record.errorCode()))
+                .count();
+    }
+
+    private Set<String> findNonRetryableErrorCodes(PutRecordsResponse response) {
+        return response.records().stream()
+                .map(PutRecordsResultEntry::errorCode)
+                .filter(errorCode -> errorCode != null && !RETRYABLE_ERROR_CODES.contains(errorCode))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * The attempts to send a single request, including the retries of failed records.
+     */
+    private class PutRecordsAttempts {
+        private final Supplier<PutRecordsRequest> putRecordsRequestSupplier;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int retryStep = 0;
+        private long previousDelayMillis = BASE_DELAY_MILLIS;
+
+        PutRecordsAttempts(final Supplier<PutRecordsRequest> putRecordsRequestSupplier) {
+            this.putRecordsRequestSupplier = putRecordsRequestSupplier;
+        }
+
+        void attempt(final Supplier<PutRecordsRequest> requestSupplier) {
+            final PutRecordsRequest putRecordsRequest;
             try {
+                putRecordsRequest = requestSupplier.get();
+            } catch (final RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            final long delayMillis = isGoverned(putRecordsRequest)
+                    ? writeGovernor.reserveWrite(putRecordsRequest.streamName(), putRecordsRequest.records().size())
+                    : 0;
+            if (delayMillis > 0) {
+                schedule(() -> send(putRecordsRequest), delayMillis);
+            } else {
+                send(putRecordsRequest);
+            }
+        }
+
+        private void send(final PutRecordsRequest putRecordsRequest) {
+            ++retryStep;
+            try {
+                final long t1 = System.currentTimeMillis();
                 final PutRecordsResponse response = kinesisClient.putRecords(putRecordsRequest);
                 final long t2 = System.currentTimeMillis();
+                if (isGoverned(putRecordsRequest)) {
+                    writeGovernor.recordResponse(putRecordsRequest.streamName(), countThrottledRecords(response));
+                }
                 if (response.failedRecordCount() == 0) {
                     trace(LOG, ImmutableMap.of("runtime", (t2 - t1), "shardName", String.join(",", getShardIds(response.records()))), "Write events to Kinesis", null);
+                    result.complete(null);
+                    return;
+                }
+                LOG.warn("Failed to write events to Kinesis: {}", response.toString());
+                final Set<String> nonRetryableErrorCodes = findNonRetryableErrorCodes(response);
+                if (!nonRetryableErrorCodes.isEmpty()) {
+                    LOG.error("Failed to write events to Kinesis: {}", response.toString());
+                    fail(String.format("failed to send records: %s", nonRetryableErrorCodes));
                     return;
-                } else {
-                    LOG.warn("Failed to write events to Kinesis: {}", response.toString());
-                    List<PutRecordsRequestEntry> retryRecords = findFailedRecords(putRecordsRequest, response);
-                    putRecordsRequest = PutRecordsRequest.builder()
-                            .records(retryRecords)
-                            .streamName(putRecordsRequest.streamName())
-                            .build();
-                    if (waitBeforeRetry) {
-                        waitDependingOnRetryStep(retryStep);
-                    }
                 }
                 if (retryStep == MAX_RETRY_COUNT) {
                     LOG.error("Failed to write events to Kinesis: {}", response.toString());
-                    throw new IllegalStateException(String.format("failed to send records after %s retries", MAX_RETRY_COUNT));
+                    fail(String.format("failed to send records after %s retries", MAX_RETRY_COUNT));
+                    return;
                 }
+                final PutRecordsRequest retryRequest = PutRecordsRequest.builder()
+                        .records(findRetryableRecords(putRecordsRequest, response))
+                        .streamName(putRecordsRequest.streamName())
+                        .build();
+                scheduleRetry(() -> retryRequest);
             } catch (SdkServiceException | SdkClientException e) {
+                if (e instanceof ProvisionedThroughputExceededException && isGoverned(putRecordsRequest)) {
+                    writeGovernor.throttled(putRecordsRequest.streamName());
+                }
                 LogHelper.warn(LOG, ImmutableMap.of("records", String.valueOf(putRecordsRequest.records()), "recordsSize", String.valueOf(getRecordsSize(putRecordsRequest.records()))), "Failed to write events to Kinesis: %s", new Object[]{e.getMessage()});
                 if (retryStep == MAX_RETRY_COUNT) {
                     LOG.error("Failed to write events to Kinesis: {}", e);
-                    throw new IllegalStateException(String.format("failed to send records after %s retries", MAX_RETRY_COUNT));
+                    fail(String.format("failed to send records after %s retries", MAX_RETRY_COUNT));
+                    return;
                 }
-                putRecordsRequest = putRecordsRequestSupplier.get();
-                if (waitBeforeRetry) {
-                    waitDependingOnRetryStep(retryStep);
+                scheduleRetry(putRecordsRequestSupplier);
+            } catch (final RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void scheduleRetry(final Supplier<PutRecordsRequest> requestSupplier) {
+            schedule(() -> attempt(requestSupplier), waitBeforeRetry ? nextDelayMillis() : 0);
+        }
+
+        private void schedule(final Runnable runnable, final long delayMillis) {
+            try {
+                scheduler.schedule(() -> execute(runnable), delayMillis, MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                result.completeExceptionally(new IllegalStateException("failed to schedule retry: " + e.getMessage(), e));
+            }
+        }
+
+        private void execute(final Runnable runnable) {
+            try {
+                requestExecutor.execute(runnable);
+            } catch (final RejectedExecutionException e) {
+                if (requestExecutor instanceof ExecutorService && ((ExecutorService) requestExecutor).isShutdown()) {
+                    result.completeExceptionally(new IllegalStateException("failed to execute retry: " + e.getMessage(), e));
+                } else {
+                    LOG.debug("Request executor is busy, handing over retry again in {}ms", BASE_DELAY_MILLIS);
+                    schedule(runnable, BASE_DELAY_MILLIS);
                 }
             }
+        }
 
+        private boolean isGoverned(final PutRecordsRequest putRecordsRequest) {
+            return writeGovernor != null && putRecordsRequest.streamName() != null;
         }
-    }
 
-    private List<String> getShardIds(final List<PutRecordsResultEntry> records) {
-        return records.stream().map(e->e.shardId()).collect(Collectors.toList());
-    }
+        private long nextDelayMillis() {
+            final long delayMillis = Math.min(MAX_DELAY_MILLIS,
+                    ThreadLocalRandom.current().nextLong(BASE_DELAY_MILLIS, previousDelayMillis * 3 + 1));
+            previousDelayMillis = delayMillis;
+            return delayMillis;
+        }
 
-    private long getRecordsSize(final List<PutRecordsRequestEntry> records) {
-        return records.stream().map(e -> e.data().position()).mapToInt(Number::intValue).sum();
+        private void fail(final String message) {
+            result.completeExceptionally(new IllegalStateException(message));
+        }
     }
 
-    private List<PutRecordsRequestEntry> findFailedRecords(PutRecordsRequest putRecordsRequest, PutRecordsResponse response) {
-        List<PutRecordsRequestEntry> retryRecords = new ArrayList<>();
-        for (int i = 0; i < response.records().size(); ++i) {
-            PutRecordsResultEntry record = response.records().get(i);
-            if ("ProvisionedThroughputExceededException".equals(record.errorCode())) {
-                retryRecords.add(putRecordsRequest.records().get(i));
-            }
-        }
-        return retryRecords;
+    /**
+     * The scheduler shared by all clients that are not configured with a scheduler: the executors of the channels
+     * are not able to schedule delayed tasks. The scheduler is only handing over tasks to the request executor, so a
+     * single thread is sufficient.
+     */
+    private static class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = newScheduledThreadPool(DEFAULT_SCHEDULER_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("kinesis-put-records-retry-%d")
+                .setDaemon(true)
+                .build());
     }
 
-    private void waitDependingOnRetryStep(int retryStep) {
-        try {
-            Thread.sleep((long) Math.pow(2, retryStep) * 1000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * The executor shared by all clients that are not configured with a request executor. Idle threads are
+     * terminated after 60 seconds.
+     */
+    private static class DefaultRequestExecutor {
+        private static final ExecutorService INSTANCE = newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("kinesis-put-records-%d")
+                .setDaemon(true)
+                .build());
     }
 }
@@ -0,0 +1,269 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.sqs.SQSAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.String.format;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Sends {@code SendMessageBatch} requests to SQS, retrying failed requests and entries.
+ * <p>
+ *     At most {@code maxBatchesInFlight} batches, including their retries, are in flight at the same time. If the
+ *     limit is reached, {@link #sendMessageBatch(String, List)} is blocking the caller until a previous batch is
+ *     completed.
+ * </p>
+ * <p>
+ *     Requests failing with an {@link SdkServiceException} or {@link SdkClientException} are sent again. If only
+ *     some entries of a request are failing, the entries that did not fail because of the sender are sent again.
+ *     Entries failing because of the sender, and entries still failing after {@value #MAX_RETRY_COUNT} attempts,
+ *     are returned to the caller. Retries are scheduled using a {@link ScheduledExecutorService}, with decorrelated
+ *     jitter between {@value #BASE_DELAY_MILLIS}ms and {@value #MAX_DELAY_MILLIS}ms.
+ * </p>
+ */
+@ThreadSafe
+class RetrySendMessageBatchSqsClient {
+
+    private static final Logger LOG = getLogger(RetrySendMessageBatchSqsClient.class);
+
+    /**
+     * The maximum number of entries of a single {@code SendMessageBatch} request.
+     */
+    static final int MAX_ENTRIES_PER_BATCH = 10;
+    /**
+     * The maximum size of the message bodies of a single {@code SendMessageBatch} request, and of a single message.
+     */
+    static final long MAX_BYTES_PER_BATCH = 256L * 1024;
+
+    private static final int MAX_RETRY_COUNT = 3;
+    /**
+     * The minimum delay between two attempts.
+     */
+    static final long BASE_DELAY_MILLIS = 100;
+    /**
+     * The maximum delay between two attempts.
+     */
+    static final long MAX_DELAY_MILLIS = 5000;
+
+    private static final int DEFAULT_SCHEDULER_THREADS = 2;
+
+    private final SQSAsyncClient sqsAsyncClient;
+    private final Semaphore batchesInFlight;
+    private final boolean waitBeforeRetry;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a RetrySendMessageBatchSqsClient.
+     *
+     * @param sqsAsyncClient the SQS client
+     * @param maxBatchesInFlight the maximum number of batches sent in parallel
+     */
+    RetrySendMessageBatchSqsClient(final @Nonnull SQSAsyncClient sqsAsyncClient,
+                                   final int maxBatchesInFlight) {
+        this(sqsAsyncClient, maxBatchesInFlight, true, DefaultScheduler.INSTANCE);
+    }
+
+    /**
+     * Creates a RetrySendMessageBatchSqsClient.
+     *
+     * @param sqsAsyncClient the SQS client
+     * @param maxBatchesInFlight the maximum number of batches sent in parallel
+     * @param waitBeforeRetry true, if retries should be delayed
+     * @param scheduler the scheduler used to execute the retries
+     */
+    RetrySendMessageBatchSqsClient(final @Nonnull SQSAsyncClient sqsAsyncClient,
+                                   final int maxBatchesInFlight,
+                                   final boolean waitBeforeRetry,
+                                   final @Nonnull ScheduledExecutorService scheduler) {
+        if (maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("maxBatchesInFlight must be greater than 0");
+        }
+        this.sqsAsyncClient = sqsAsyncClient;
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+        this.waitBeforeRetry = waitBeforeRetry;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sends a batch of messages, blocking until fewer than {@code maxBatchesInFlight} batches are in flight.
+     *
+     * @param queueUrl the URL of the SQS queue
+     * @param entries up to {@value #MAX_ENTRIES_PER_BATCH} entries having unique ids
+     * @return future that is completed with the entries that could not be sent, or completed exceptionally with
+     * an {@link IllegalStateException}, if the request finally failed
+     */
+    CompletableFuture<List<BatchResultErrorEntry>> sendMessageBatch(final @Nonnull String queueUrl,
+                                                                    final @Nonnull List<SendMessageBatchRequestEntry> entries) {
+        if (entries.size() > MAX_ENTRIES_PER_BATCH) {
+            throw new IllegalArgumentException(format("Unable to send %d entries in a single batch", entries.size()));
+        }
+        try {
+            batchesInFlight.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for batches in flight to " + queueUrl, e);
+        }
+        final SendMessageBatchAttempts attempts = new SendMessageBatchAttempts(queueUrl);
+        // the permit is released before dependent stages of the returned future are executed:
+        final CompletableFuture<List<BatchResultErrorEntry>> result = attempts.result
+                .whenComplete((failedEntries, throwable) -> batchesInFlight.release());
+        attempts.attempt(entries);
+        return result;
+    }
+
+    /**
+     * Checks that a message body is not exceeding {@link #MAX_BYTES_PER_BATCH}.
+     *
+     * @param size the size of the message body
+     * @throws IllegalArgumentException if the message is too large
+     */
+    static void checkMessageSize(final long size) {
+        if (size > MAX_BYTES_PER_BATCH) {
+            throw new IllegalArgumentException(format(
+                    "Message has %d bytes, exceeding the maximum of %d bytes", size, MAX_BYTES_PER_BATCH));
+        }
+    }
+
+    /**
+     * Returns the ids of error entries.
+     *
+     * @param errorEntries the error entries of failed messages
+     * @return list of ids
+     */
+    static List<String> idsOf(final @Nonnull List<BatchResultErrorEntry> errorEntries) {
+        return errorEntries.stream().map(BatchResultErrorEntry::id).collect(toList());
+    }
+
+    /**
+     * The attempts to send a single batch, including the retries of failed entries.
+     */
+    private class SendMessageBatchAttempts {
+        private final String queueUrl;
+        private final CompletableFuture<List<BatchResultErrorEntry>> result = new CompletableFuture<>();
+        private final List<BatchResultErrorEntry> failedEntries = new ArrayList<>();
+        private int retryStep = 0;
+        private long previousDelayMillis = BASE_DELAY_MILLIS;
+
+        SendMessageBatchAttempts(final String queueUrl) {
+            this.queueUrl = queueUrl;
+        }
+
+        void attempt(final List<SendMessageBatchRequestEntry> entries) {
+            ++retryStep;
+            try {
+                sqsAsyncClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                        .queueUrl(queueUrl)
+                        .entries(entries)
+                        .build()
+                ).whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        failed(entries, throwable);
+                    } else {
+                        completed(entries, response);
+                    }
+                });
+            } catch (final RuntimeException e) {
+                failed(entries, e);
+            }
+        }
+
+        private void completed(final List<SendMessageBatchRequestEntry> entries,
+                               final SendMessageBatchResponse response) {
+            final List<BatchResultErrorEntry> failed = response.failed() != null
+                    ? response.failed()
+                    : Collections.emptyList();
+            if (failed.isEmpty()) {
+                result.complete(failedEntries);
+                return;
+            }
+            LOG.warn("Failed to send {} of {} messages to {}: {}", failed.size(), entries.size(), queueUrl, failed);
+            final Map<String, SendMessageBatchRequestEntry> entriesById = entries.stream()
+                    .collect(toMap(SendMessageBatchRequestEntry::id, identity()));
+            final List<SendMessageBatchRequestEntry> retryEntries = new ArrayList<>();
+            for (final BatchResultErrorEntry errorEntry : failed) {
+                final SendMessageBatchRequestEntry entry = entriesById.get(errorEntry.id());
+                if (entry != null && !Boolean.TRUE.equals(errorEntry.senderFault()) && retryStep < MAX_RETRY_COUNT) {
+                    retryEntries.add(entry);
+                } else {
+                    failedEntries.add(errorEntry);
+                }
+            }
+            if (retryEntries.isEmpty()) {
+                LOG.error("Failed to send messages to {}: {}", queueUrl, failedEntries);
+                result.complete(failedEntries);
+            } else {
+                scheduleRetry(retryEntries);
+            }
+        }
+
+        private void failed(final List<SendMessageBatchRequestEntry> entries,
+                            final Throwable throwable) {
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            if (!(cause instanceof SdkServiceException || cause instanceof SdkClientException)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            LOG.warn("Failed to send {} messages to {}: {}", entries.size(), queueUrl, cause.getMessage());
+            if (retryStep >= MAX_RETRY_COUNT) {
+                LOG.error("Failed to send messages to {}", queueUrl, cause);
+                result.completeExceptionally(new IllegalStateException(
+                        format("failed to send messages after %s retries", MAX_RETRY_COUNT), cause));
+                return;
+            }
+            scheduleRetry(entries);
+        }
+
+        private void scheduleRetry(final List<SendMessageBatchRequestEntry> entries) {
+            try {
+                scheduler.schedule(() -> attempt(entries), waitBeforeRetry ? nextDelayMillis() : 0, MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                result.completeExceptionally(new IllegalStateException("failed to schedule retry: " + e.getMessage(), e));
+            }
+        }
+
+        private long nextDelayMillis() {
+            final long delayMillis = Math.min(MAX_DELAY_MILLIS,
+                    ThreadLocalRandom.current().nextLong(BASE_DELAY_MILLIS, previousDelayMillis * 3 + 1));
+            previousDelayMillis = delayMillis;
+            return delayMillis;
+        }
+    }
+
+    /**
+     * The scheduler shared by all clients that are not configured with a scheduler: the executors of the channels
+     * are not able to schedule delayed tasks.
+     */
+    private static class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = newScheduledThreadPool(DEFAULT_SCHEDULER_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("sqs-send-message-batch-retry-%d")
+                .setDaemon(true)
+                .build());
+    }
+}
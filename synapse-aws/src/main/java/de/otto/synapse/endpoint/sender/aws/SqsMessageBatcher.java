@@ -0,0 +1,203 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.otto.synapse.message.aws.SqsMessageBody;
+import org.slf4j.Logger;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.MAX_BYTES_PER_BATCH;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.MAX_ENTRIES_PER_BATCH;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.checkMessageSize;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.idsOf;
+import static java.lang.String.valueOf;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Collects the bodies of single messages into batches that are sent to SQS using a single
+ * {@code SendMessageBatch} request.
+ * <p>
+ *     A batch is sent as soon as it contains {@value RetrySendMessageBatchSqsClient#MAX_ENTRIES_PER_BATCH}
+ *     messages or {@value RetrySendMessageBatchSqsClient#MAX_BYTES_PER_BATCH} bytes, or if the linger time has
+ *     elapsed after the first message was added to the batch. Batches are sent in parallel, as limited by the
+ *     {@link RetrySendMessageBatchSqsClient}: if the maximum number of batches is in flight, adding messages
+ *     blocks until a batch is completed.
+ * </p>
+ */
+@ThreadSafe
+class SqsMessageBatcher implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(SqsMessageBatcher.class);
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final String channelName;
+    private final String queueUrl;
+    private final RetrySendMessageBatchSqsClient retrySendMessageBatchSqsClient;
+    private final long lingerMillis;
+    private final ScheduledThreadPoolExecutor executor;
+
+    private List<PendingMessage> pendingMessages = new ArrayList<>();
+    private long pendingBytes;
+    private long batchNumber;
+    private int batchesInFlight;
+    private boolean closed;
+
+    /**
+     * Creates a SqsMessageBatcher.
+     *
+     * @param channelName the name of the channel
+     * @param queueUrl the URL of the SQS queue
+     * @param retrySendMessageBatchSqsClient the client used to send the batches
+     * @param lingerTime the maximum time a message is waiting for more messages before the batch is sent
+     */
+    SqsMessageBatcher(final @Nonnull String channelName,
+                      final @Nonnull String queueUrl,
+                      final @Nonnull RetrySendMessageBatchSqsClient retrySendMessageBatchSqsClient,
+                      final @Nonnull Duration lingerTime) {
+        if (lingerTime.isZero() || lingerTime.isNegative()) {
+            throw new IllegalArgumentException("lingerTime must be positive");
+        }
+        this.channelName = channelName;
+        this.queueUrl = queueUrl;
+        this.retrySendMessageBatchSqsClient = retrySendMessageBatchSqsClient;
+        this.lingerMillis = lingerTime.toMillis();
+        // a timer of its own, because the executor of the channel is not able to schedule tasks:
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("sqs-linger-" + channelName + "-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Adds a message to the current batch.
+     *
+     * @param messageBody the body of the message, including its message attributes
+     * @return future that is completed after the message was sent, or completed exceptionally, if sending the
+     * message failed
+     */
+    synchronized CompletableFuture<Void> add(final SqsMessageBody messageBody) {
+        if (closed) {
+            throw new IllegalStateException("Unable to send message: sender of channel " + channelName + " is closed");
+        }
+        final long size = messageBody.size();
+        checkMessageSize(size);
+        if (!pendingMessages.isEmpty() && pendingBytes + size > MAX_BYTES_PER_BATCH) {
+            dispatch();
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingMessages.add(new PendingMessage(messageBody, future));
+        pendingBytes += size;
+        if (pendingMessages.size() >= MAX_ENTRIES_PER_BATCH || pendingBytes >= MAX_BYTES_PER_BATCH) {
+            dispatch();
+        } else if (pendingMessages.size() == 1) {
+            final long lingeringBatch = batchNumber;
+            executor.schedule(() -> dispatchLingering(lingeringBatch), lingerMillis, MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the current batch and waits until all batches are sent. Messages that are added afterwards are
+     * rejected.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!pendingMessages.isEmpty()) {
+                dispatch();
+            }
+            try {
+                final long deadline = System.currentTimeMillis() + SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS);
+                long remaining;
+                while (batchesInFlight > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    wait(remaining);
+                }
+                if (batchesInFlight > 0) {
+                    LOG.warn("Failed to wait for {} pending batches of channel {} to be sent", batchesInFlight, channelName);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private synchronized void dispatchLingering(final long lingeringBatch) {
+        if (lingeringBatch == batchNumber && !pendingMessages.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        final List<PendingMessage> batch = pendingMessages;
+        pendingMessages = new ArrayList<>();
+        pendingBytes = 0;
+        ++batchNumber;
+        // ids only have to be unique within a batch:
+        final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); ++i) {
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(valueOf(i))
+                    .messageBody(batch.get(i).messageBody.getBody())
+                    .messageAttributes(batch.get(i).messageBody.getMessageAttributes())
+                    .build());
+        }
+        ++batchesInFlight;
+        final CompletableFuture<List<BatchResultErrorEntry>> result;
+        try {
+            result = retrySendMessageBatchSqsClient.sendMessageBatch(queueUrl, entries);
+        } catch (final RuntimeException e) {
+            --batchesInFlight;
+            batch.forEach(m -> m.future.completeExceptionally(e));
+            throw e;
+        }
+        result.whenComplete((failedEntries, throwable) -> {
+            if (throwable != null) {
+                LOG.error("Failed to send batch of {} messages to channel {}: {}", batch.size(), channelName, throwable.getMessage());
+                batch.forEach(m -> m.future.completeExceptionally(throwable));
+            } else {
+                final List<String> failedIds = idsOf(failedEntries);
+                for (int i = 0; i < batch.size(); ++i) {
+                    if (failedIds.contains(valueOf(i))) {
+                        batch.get(i).future.completeExceptionally(new IllegalStateException(
+                                "Failed to send message to channel " + channelName + ": " + failedEntries));
+                    } else {
+                        batch.get(i).future.complete(null);
+                    }
+                }
+            }
+            synchronized (this) {
+                --batchesInFlight;
+                notifyAll();
+            }
+        });
+    }
+
+    private static class PendingMessage {
+        private final SqsMessageBody messageBody;
+        private final CompletableFuture<Void> future;
+
+        PendingMessage(final SqsMessageBody messageBody,
+                       final CompletableFuture<Void> future) {
+            this.messageBody = messageBody;
+            this.future = future;
+        }
+    }
+}
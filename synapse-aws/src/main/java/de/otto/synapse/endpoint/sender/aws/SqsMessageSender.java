@@ -1,74 +1,217 @@
 package de.otto.synapse.endpoint.sender.aws;
 
+import de.otto.synapse.codec.PayloadCompression;
 import de.otto.synapse.endpoint.sender.AbstractMessageSenderEndpoint;
 import de.otto.synapse.message.Message;
+import de.otto.synapse.message.aws.SqsMessageBody;
 import de.otto.synapse.translator.MessageTranslator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.sqs.SQSAsyncClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Stream;
 
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.MAX_BYTES_PER_BATCH;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.MAX_ENTRIES_PER_BATCH;
+import static de.otto.synapse.endpoint.sender.aws.RetrySendMessageBatchSqsClient.checkMessageSize;
+import static de.otto.synapse.message.aws.SqsMessage.sqsMessageBody;
 import static java.lang.String.valueOf;
-import static java.util.stream.Collectors.toList;
 
-public class SqsMessageSender extends AbstractMessageSenderEndpoint {
+/**
+ * Sender-side endpoint of an SQS queue.
+ * <p>
+ *     {@link #sendBatch(Stream) Batches} of messages are streamed into {@code SendMessageBatch} requests of up to
+ *     {@value RetrySendMessageBatchSqsClient#MAX_ENTRIES_PER_BATCH} messages and
+ *     {@value RetrySendMessageBatchSqsClient#MAX_BYTES_PER_BATCH} bytes. Up to {@code maxBatchesInFlight} requests
+ *     are sent in parallel, and failed messages are sent again. Sending a batch fails with an
+ *     {@link IllegalStateException}, if some messages could not be sent.
+ * </p>
+ * <p>
+ *     If a linger time is configured, single messages are collected into batches, too. Otherwise, every single
+ *     message is sent using a {@code SendMessage} request.
+ * </p>
+ */
+public class SqsMessageSender extends AbstractMessageSenderEndpoint implements AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(SqsMessageSender.class);
 
+    /**
+     * The default maximum number of {@code SendMessageBatch} requests in flight.
+     */
+    public static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 4;
+
     private final String queueUrl;
     private final SQSAsyncClient sqsAsyncClient;
+    private final PayloadCompression compression;
+    private final RetrySendMessageBatchSqsClient retrySendMessageBatchSqsClient;
+    private final SqsMessageBatcher messageBatcher;
 
     public SqsMessageSender(final String channelName,
                             final String queueUrl,
                             final MessageTranslator<String> messageTranslator,
                             final SQSAsyncClient sqsAsyncClient) {
+        this(channelName, queueUrl, messageTranslator, sqsAsyncClient, NONE);
+    }
+
+    public SqsMessageSender(final String channelName,
+                            final String queueUrl,
+                            final MessageTranslator<String> messageTranslator,
+                            final SQSAsyncClient sqsAsyncClient,
+                            final PayloadCompression compression) {
+        this(channelName, queueUrl, messageTranslator, sqsAsyncClient, compression, null, DEFAULT_MAX_BATCHES_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a SqsMessageSender.
+     *
+     * @param channelName the name of the channel
+     * @param queueUrl the URL of the SQS queue
+     * @param messageTranslator the translator used to translate messages before they are sent
+     * @param sqsAsyncClient the SQS client
+     * @param compression the compression of message payloads
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxBatchesInFlight the maximum number of SendMessageBatch requests that are sent in parallel
+     */
+    public SqsMessageSender(final String channelName,
+                            final String queueUrl,
+                            final MessageTranslator<String> messageTranslator,
+                            final SQSAsyncClient sqsAsyncClient,
+                            final PayloadCompression compression,
+                            final Duration lingerTime,
+                            final int maxBatchesInFlight) {
         super(channelName, messageTranslator);
         this.queueUrl = queueUrl;
         this.sqsAsyncClient = sqsAsyncClient;
+        this.compression = compression;
+        this.retrySendMessageBatchSqsClient = new RetrySendMessageBatchSqsClient(sqsAsyncClient, maxBatchesInFlight);
+        this.messageBatcher = lingerTime != null && !lingerTime.isZero()
+                ? new SqsMessageBatcher(channelName, queueUrl, retrySendMessageBatchSqsClient, lingerTime)
+                : null;
     }
 
     @Override
     protected void doSend(@Nonnull Message<String> message) {
-        if (!message.getKey().isEmpty()) {
-            // TODO: key als message attribute o.ä. senden - bug in localstack
-            throw new IllegalArgumentException("Unable to send messages with a message-key");
+        checkKey(message);
+        if (messageBatcher != null) {
+            try {
+                messageBatcher.add(sqsMessageBody(message, compression)).join();
+            } catch (final CompletionException e) {
+                throw unwrap(e);
+            }
+        } else {
+            sendMessage(message).whenComplete((result, exception) -> {
+                if (exception != null) {
+                    LOG.error(String.format("Failed to send message %s", message), exception);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected CompletableFuture<Void> doSendAsync(@Nonnull Message<String> message) {
+        checkKey(message);
+        return messageBatcher != null
+                ? messageBatcher.add(sqsMessageBody(message, compression))
+                : sendMessage(message).thenApply(response -> null);
+    }
+
+    @Override
+    protected void doSendBatch(@Nonnull Stream<Message<String>> messageStream) {
+        final List<CompletableFuture<List<BatchResultErrorEntry>>> results = new ArrayList<>();
+        final List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+        long bytes = 0;
+        for (final Iterator<Message<String>> messages = messageStream.iterator(); messages.hasNext(); ) {
+            final SqsMessageBody messageBody = sqsMessageBody(messages.next(), compression);
+            final long size = messageBody.size();
+            checkMessageSize(size);
+            if (!entries.isEmpty() && bytes + size > MAX_BYTES_PER_BATCH) {
+                results.add(sendMessageBatch(entries));
+                bytes = 0;
+            }
+            entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(valueOf(entries.size()))
+/*                    .messageGroupId(getChannelName())
+                    .messageAttributes(of("key", MessageAttributeValue
+                            .builder()
+                            .stringValue(message.getKey())
+                            .build()))
+                            */
+                    .messageBody(messageBody.getBody())
+                    .messageAttributes(messageBody.getMessageAttributes())
+                    .build());
+            bytes += size;
+            if (entries.size() >= MAX_ENTRIES_PER_BATCH || bytes >= MAX_BYTES_PER_BATCH) {
+                results.add(sendMessageBatch(entries));
+                bytes = 0;
+            }
+        }
+        if (!entries.isEmpty()) {
+            results.add(sendMessageBatch(entries));
+        }
+        final List<BatchResultErrorEntry> failedEntries = new ArrayList<>();
+        try {
+            results.forEach(result -> failedEntries.addAll(result.join()));
+        } catch (final CompletionException e) {
+            throw unwrap(e);
+        }
+        if (!failedEntries.isEmpty()) {
+            throw new IllegalStateException(String.format("Failed to send %d messages to channel %s: %s", failedEntries.size(), getChannelName(), failedEntries));
+        }
+    }
+
+    /**
+     * Sends the messages that are waiting for the linger time to elapse, and waits until they are sent.
+     */
+    @Override
+    public void close() {
+        if (messageBatcher != null) {
+            messageBatcher.close();
         }
-        sqsAsyncClient.sendMessage(
+    }
+
+    private CompletableFuture<List<BatchResultErrorEntry>> sendMessageBatch(final List<SendMessageBatchRequestEntry> entries) {
+        final List<SendMessageBatchRequestEntry> batch = new ArrayList<>(entries);
+        entries.clear();
+        return retrySendMessageBatchSqsClient.sendMessageBatch(queueUrl, batch);
+    }
+
+    private CompletableFuture<SendMessageResponse> sendMessage(final Message<String> message) {
+        final SqsMessageBody messageBody = sqsMessageBody(message, compression);
+        return sqsAsyncClient.sendMessage(
                 SendMessageRequest.builder()
                         .queueUrl(queueUrl)
-                        .messageBody(message.getPayload())
+                        .messageBody(messageBody.getBody())
+                        .messageAttributes(messageBody.getMessageAttributes())
                         .build()
-        ).whenComplete((result, exception) -> {
-            if (exception != null) {
-                LOG.error(String.format("Failed to send message %s", message), exception);
-            }
-        });
+        );
     }
 
-    @Override
-    protected void doSendBatch(@Nonnull Stream<Message<String>> messageStream) {
-        final AtomicInteger id = new AtomicInteger(0);
-        sqsAsyncClient.sendMessageBatch(SendMessageBatchRequest.builder()
-                .queueUrl(queueUrl)
-                .entries(
-                        messageStream.map(message -> SendMessageBatchRequestEntry.builder()
-                                .id(valueOf(id.getAndIncrement()))
-/*                                .messageGroupId(getChannelName())
-                                .messageAttributes(of("key", MessageAttributeValue
-                                        .builder()
-                                        .stringValue(message.getKey())
-                                        .build()))
-                                        */
-                                .messageBody(message.getPayload())
-                                .build()).collect(toList())
-                )
-                .build());
+    private static void checkKey(final Message<String> message) {
+        if (!message.getKey().isEmpty()) {
+            // TODO: key als message attribute o.ä. senden - bug in localstack
+            throw new IllegalArgumentException("Unable to send messages with a message-key");
+        }
+    }
+
+    private static RuntimeException unwrap(final CompletionException e) {
+        Throwable cause = e;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : e;
     }
 
 }
@@ -1,6 +1,7 @@
 package de.otto.synapse.endpoint.sender.aws;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.codec.PayloadCompression;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpoint;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpointFactory;
@@ -10,19 +11,56 @@ import software.amazon.awssdk.services.sqs.SQSAsyncClient;
 import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
+
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.endpoint.sender.aws.SqsMessageSender.DEFAULT_MAX_BATCHES_IN_FLIGHT;
 
 public class SqsMessageSenderEndpointFactory implements MessageSenderEndpointFactory {
 
     private final MessageInterceptorRegistry registry;
     private final MessageTranslator<String> messageTranslator;
     private final SQSAsyncClient sqsAsyncClient;
+    private final PayloadCompression compression;
+    private final Duration lingerTime;
+    private final int maxBatchesInFlight;
 
     public SqsMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
                                            final ObjectMapper objectMapper,
                                            final SQSAsyncClient sqsAsyncClient) {
+        this(registry, objectMapper, sqsAsyncClient, NONE);
+    }
+
+    public SqsMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                           final ObjectMapper objectMapper,
+                                           final SQSAsyncClient sqsAsyncClient,
+                                           final PayloadCompression compression) {
+        this(registry, objectMapper, sqsAsyncClient, compression, null, DEFAULT_MAX_BATCHES_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a SqsMessageSenderEndpointFactory.
+     *
+     * @param registry the registry of message interceptors
+     * @param objectMapper the object mapper used to serialize message payloads
+     * @param sqsAsyncClient the SQS client
+     * @param compression the compression of message payloads
+     * @param lingerTime the maximum time single messages are waiting for more messages before they are sent
+     *                   as a batch. If null or zero, single messages are sent immediately.
+     * @param maxBatchesInFlight the maximum number of SendMessageBatch requests per sender that are sent in parallel
+     */
+    public SqsMessageSenderEndpointFactory(final MessageInterceptorRegistry registry,
+                                           final ObjectMapper objectMapper,
+                                           final SQSAsyncClient sqsAsyncClient,
+                                           final PayloadCompression compression,
+                                           final Duration lingerTime,
+                                           final int maxBatchesInFlight) {
         this.registry = registry;
         this.messageTranslator = new JsonStringMessageTranslator(objectMapper);
         this.sqsAsyncClient = sqsAsyncClient;
+        this.compression = compression;
+        this.lingerTime = lingerTime;
+        this.maxBatchesInFlight = maxBatchesInFlight;
     }
 
     @Override
@@ -34,7 +72,7 @@ public class SqsMessageSenderEndpointFactory implements MessageSenderEndpointFac
                     .build())
                     .get()
                     .queueUrl();
-            final MessageSenderEndpoint messageSender = new SqsMessageSender(channelName, queueUrl, messageTranslator, sqsAsyncClient);
+            final MessageSenderEndpoint messageSender = new SqsMessageSender(channelName, queueUrl, messageTranslator, sqsAsyncClient, compression, lingerTime, maxBatchesInFlight);
             messageSender.registerInterceptorsFrom(registry);
             return messageSender;
         } catch (Exception e) {
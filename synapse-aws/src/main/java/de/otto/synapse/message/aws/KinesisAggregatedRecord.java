@@ -0,0 +1,350 @@
+package de.otto.synapse.message.aws;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Kinesis records in the aggregated record format of the Kinesis Producer Library (KPL).
+ * <p>
+ *     An aggregated record contains multiple user records, each having a partition key and some data. The
+ *     data of the Kinesis record is starting with the {@link #MAGIC magic bytes}, followed by the Protocol
+ *     Buffers encoding of the user records and the MD5 checksum of the encoded user records:
+ * </p>
+ * <pre><code>
+ * message AggregatedRecord {
+ *     repeated string partition_key_table = 1;
+ *     repeated string explicit_hash_key_table = 2;
+ *     repeated Record records = 3;
+ * }
+ * message Record {
+ *     required uint64 partition_key_index = 1;
+ *     optional uint64 explicit_hash_key_index = 2;
+ *     required bytes data = 3;
+ *     repeated Tag tags = 4;
+ * }
+ * </code></pre>
+ * <p>
+ *     Explicit hash keys and tags are ignored when records are {@link #deaggregate(ByteBuffer) deaggregated}.
+ *     Aggregated records are therefore compatible with the KPL and the Kinesis Client Library.
+ * </p>
+ */
+public final class KinesisAggregatedRecord {
+
+    /**
+     * The magic bytes identifying aggregated records.
+     */
+    public static final byte[] MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2};
+
+    private static final int CHECKSUM_LENGTH = 16;
+    private static final int FIELD_PARTITION_KEY_TABLE = 1;
+    private static final int FIELD_RECORDS = 3;
+    private static final int FIELD_PARTITION_KEY_INDEX = 1;
+    private static final int FIELD_DATA = 3;
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
+    /**
+     * A user record contained in an aggregated record.
+     */
+    public static final class UserRecord {
+        private final String partitionKey;
+        private final byte[] data;
+
+        public UserRecord(final @Nonnull String partitionKey, final @Nonnull byte[] data) {
+            this.partitionKey = partitionKey;
+            this.data = data;
+        }
+
+        @Nonnull
+        public String getPartitionKey() {
+            return partitionKey;
+        }
+
+        @Nonnull
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private KinesisAggregatedRecord() {
+    }
+
+    /**
+     * Returns true, if the data of a Kinesis record is starting with the {@link #MAGIC magic bytes} of
+     * aggregated records. The position of the buffer is not changed.
+     *
+     * @param data the data of a Kinesis record
+     * @return boolean
+     */
+    public static boolean isAggregated(final @Nullable ByteBuffer data) {
+        if (data == null || data.remaining() < MAGIC.length + CHECKSUM_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (data.get(data.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the user records from the data of an aggregated Kinesis record. The position of the buffer is
+     * not changed.
+     *
+     * @param data the data of a Kinesis record
+     * @return the user records, or null, if the data is not an aggregated record or the checksum does not match
+     */
+    @Nullable
+    public static List<UserRecord> deaggregate(final @Nullable ByteBuffer data) {
+        if (!isAggregated(data)) {
+            return null;
+        }
+        final byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        final int protobufLength = bytes.length - MAGIC.length - CHECKSUM_LENGTH;
+        final byte[] checksum = md5().digest(Arrays.copyOfRange(bytes, MAGIC.length, MAGIC.length + protobufLength));
+        if (!Arrays.equals(checksum, Arrays.copyOfRange(bytes, bytes.length - CHECKSUM_LENGTH, bytes.length))) {
+            return null;
+        }
+        try {
+            return parseAggregatedRecord(ByteBuffer.wrap(bytes, MAGIC.length, protobufLength));
+        } catch (final RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new {@link Builder} used to aggregate user records.
+     *
+     * @return Builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builds the data of an aggregated record. User records sharing the same partition key are sharing an
+     * entry of the partition key table.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> partitionKeyIndexes = new LinkedHashMap<>();
+        private final List<UserRecord> userRecords = new ArrayList<>();
+        private int protobufLength;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a user record.
+         *
+         * @param partitionKey the partition key of the user record
+         * @param data the data of the user record
+         * @return this
+         */
+        public Builder add(final @Nonnull String partitionKey, final @Nonnull byte[] data) {
+            protobufLength += additionalLength(partitionKey, data.length);
+            partitionKeyIndexes.putIfAbsent(partitionKey, partitionKeyIndexes.size());
+            userRecords.add(new UserRecord(partitionKey, data));
+            return this;
+        }
+
+        /**
+         * Returns the size of the aggregated record in bytes, after a user record is added.
+         *
+         * @param partitionKey the partition key of the user record
+         * @param dataLength the number of bytes of the data of the user record
+         * @return number of bytes
+         */
+        public int sizeWith(final @Nonnull String partitionKey, final int dataLength) {
+            return size() + additionalLength(partitionKey, dataLength);
+        }
+
+        /**
+         * Returns the size of the aggregated record in bytes.
+         *
+         * @return number of bytes
+         */
+        public int size() {
+            return MAGIC.length + protobufLength + CHECKSUM_LENGTH;
+        }
+
+        public int getNumberOfUserRecords() {
+            return userRecords.size();
+        }
+
+        public boolean isEmpty() {
+            return userRecords.isEmpty();
+        }
+
+        @Nonnull
+        public List<UserRecord> getUserRecords() {
+            return unmodifiableList(userRecords);
+        }
+
+        /**
+         * Builds the data of the aggregated record.
+         *
+         * @return data of the Kinesis record
+         */
+        @Nonnull
+        public byte[] build() {
+            final ByteArrayOutputStream protobuf = new ByteArrayOutputStream(protobufLength);
+            partitionKeyIndexes.keySet().forEach(partitionKey -> writeBytes(protobuf, FIELD_PARTITION_KEY_TABLE, partitionKey.getBytes(UTF_8)));
+            userRecords.forEach(userRecord -> {
+                final ByteArrayOutputStream record = new ByteArrayOutputStream(userRecord.getData().length + 16);
+                writeTag(record, FIELD_PARTITION_KEY_INDEX, WIRE_TYPE_VARINT);
+                writeVarint(record, partitionKeyIndexes.get(userRecord.getPartitionKey()));
+                writeBytes(record, FIELD_DATA, userRecord.getData());
+                writeBytes(protobuf, FIELD_RECORDS, record.toByteArray());
+            });
+            final byte[] protobufBytes = protobuf.toByteArray();
+            final ByteArrayOutputStream result = new ByteArrayOutputStream(size());
+            result.write(MAGIC, 0, MAGIC.length);
+            result.write(protobufBytes, 0, protobufBytes.length);
+            final byte[] checksum = md5().digest(protobufBytes);
+            result.write(checksum, 0, checksum.length);
+            return result.toByteArray();
+        }
+
+        private int additionalLength(final String partitionKey, final int dataLength) {
+            int length = 0;
+            Integer partitionKeyIndex = partitionKeyIndexes.get(partitionKey);
+            if (partitionKeyIndex == null) {
+                partitionKeyIndex = partitionKeyIndexes.size();
+                length += lengthDelimitedFieldLength(partitionKey.getBytes(UTF_8).length);
+            }
+            final int recordLength = 1 + varintLength(partitionKeyIndex) + lengthDelimitedFieldLength(dataLength);
+            return length + lengthDelimitedFieldLength(recordLength);
+        }
+    }
+
+    private static List<UserRecord> parseAggregatedRecord(final ByteBuffer buffer) {
+        final List<String> partitionKeys = new ArrayList<>();
+        final List<ByteBuffer> records = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            final int tag = (int) readVarint(buffer);
+            if (tag >>> 3 == FIELD_PARTITION_KEY_TABLE && (tag & 7) == WIRE_TYPE_LENGTH_DELIMITED) {
+                partitionKeys.add(new String(readBytes(buffer), UTF_8));
+            } else if (tag >>> 3 == FIELD_RECORDS && (tag & 7) == WIRE_TYPE_LENGTH_DELIMITED) {
+                records.add(ByteBuffer.wrap(readBytes(buffer)));
+            } else {
+                skipField(buffer, tag & 7);
+            }
+        }
+        final List<UserRecord> userRecords = new ArrayList<>(records.size());
+        records.forEach(record -> {
+            int partitionKeyIndex = -1;
+            byte[] data = null;
+            while (record.hasRemaining()) {
+                final int tag = (int) readVarint(record);
+                if (tag >>> 3 == FIELD_PARTITION_KEY_INDEX && (tag & 7) == WIRE_TYPE_VARINT) {
+                    partitionKeyIndex = (int) readVarint(record);
+                } else if (tag >>> 3 == FIELD_DATA && (tag & 7) == WIRE_TYPE_LENGTH_DELIMITED) {
+                    data = readBytes(record);
+                } else {
+                    skipField(record, tag & 7);
+                }
+            }
+            if (partitionKeyIndex < 0 || partitionKeyIndex >= partitionKeys.size() || data == null) {
+                throw new IllegalArgumentException("Invalid user record in aggregated record");
+            }
+            userRecords.add(new UserRecord(partitionKeys.get(partitionKeyIndex), data));
+        });
+        return userRecords;
+    }
+
+    private static void writeTag(final ByteArrayOutputStream out, final int field, final int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeBytes(final ByteArrayOutputStream out, final int field, final byte[] bytes) {
+        writeTag(out, field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(final ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in aggregated record");
+    }
+
+    private static byte[] readBytes(final ByteBuffer buffer) {
+        final int length = (int) readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length in aggregated record");
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void skipField(final ByteBuffer buffer, final int wireType) {
+        switch (wireType) {
+            case WIRE_TYPE_VARINT:
+                readVarint(buffer);
+                break;
+            case WIRE_TYPE_FIXED64:
+                buffer.position(buffer.position() + 8);
+                break;
+            case WIRE_TYPE_LENGTH_DELIMITED:
+                readBytes(buffer);
+                break;
+            case WIRE_TYPE_FIXED32:
+                buffer.position(buffer.position() + 4);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported wire type " + wireType + " in aggregated record");
+        }
+    }
+
+    private static int lengthDelimitedFieldLength(final int length) {
+        return 1 + varintLength(length) + length;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            ++length;
+            value >>>= 7;
+        }
+        return length;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
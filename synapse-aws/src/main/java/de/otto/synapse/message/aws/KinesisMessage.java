@@ -1,40 +1,71 @@
 package de.otto.synapse.message.aws;
 
+import de.otto.synapse.channel.ShardPosition;
+import de.otto.synapse.message.Header;
 import de.otto.synapse.message.Message;
 import software.amazon.awssdk.services.kinesis.model.Record;
 
 import javax.annotation.Nonnull;
-import java.nio.ByteBuffer;
-import java.util.function.Function;
+import java.util.List;
 
 import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.message.BinaryMessage.binaryMessage;
 import static de.otto.synapse.message.Header.responseHeader;
-import static de.otto.synapse.message.Message.message;
-import static java.nio.ByteBuffer.allocateDirect;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static de.otto.synapse.message.aws.KinesisAggregatedRecord.deaggregate;
+import static java.nio.ByteBuffer.wrap;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 
 public class KinesisMessage {
 
-    private static final ByteBuffer EMPTY_BYTE_BUFFER = allocateDirect(0);
-
-    private static final Function<ByteBuffer, String> BYTE_BUFFER_STRING = byteBuffer -> {
-        if (byteBuffer == null || byteBuffer.equals(EMPTY_BYTE_BUFFER)) {
-            return null;
-        } else {
-            return UTF_8.decode(byteBuffer).toString();
-        }
-
-    };
-
+    /**
+     * Creates a {@link Message} from a Kinesis {@link Record}.
+     * <p>
+     *     The message is backed by the bytes of the record. The payload is decoded into a String only if it
+     *     is accessed, so messages that are filtered or that are not consumed at all are never decoded.
+     * </p>
+     *
+     * @param shard the name of the shard the record was read from
+     * @param record the Kinesis record
+     * @return message
+     */
     public static Message<String> kinesisMessage(final @Nonnull String shard,
                                                  final @Nonnull Record record) {
-        return message(
+        return binaryMessage(
                 record.partitionKey(),
                 responseHeader(
                         fromPosition(shard, record.sequenceNumber()),
                         record.approximateArrivalTimestamp()
                 ),
-                BYTE_BUFFER_STRING.apply(record.data()));
+                record.data());
+    }
+
+    /**
+     * Creates the {@link Message messages} contained in a Kinesis {@link Record}.
+     * <p>
+     *     Records {@link KinesisAggregatedRecord aggregated} by the KPL or by an aggregating
+     *     {@link de.otto.synapse.endpoint.sender.aws.KinesisMessageSender} are deaggregated into one message
+     *     per user record, all other records into a single message. Messages of an aggregated record share the
+     *     {@link ShardPosition} of the record, so consumption is always continued after the whole record.
+     * </p>
+     *
+     * @param shard the name of the shard the record was read from
+     * @param record the Kinesis record
+     * @return messages
+     */
+    public static List<Message<String>> kinesisMessages(final @Nonnull String shard,
+                                                        final @Nonnull Record record) {
+        final List<KinesisAggregatedRecord.UserRecord> userRecords = deaggregate(record.data());
+        if (userRecords == null) {
+            return singletonList(kinesisMessage(shard, record));
+        }
+        final Header header = responseHeader(
+                fromPosition(shard, record.sequenceNumber()),
+                record.approximateArrivalTimestamp());
+        return userRecords
+                .stream()
+                .map(userRecord -> (Message<String>) binaryMessage(userRecord.getPartitionKey(), header, wrap(userRecord.getData())))
+                .collect(toList());
     }
 
 }
@@ -0,0 +1,101 @@
+package de.otto.synapse.message.aws;
+
+import de.otto.synapse.codec.PayloadCompression;
+import de.otto.synapse.message.BinaryMessage;
+import de.otto.synapse.message.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Base64;
+import java.util.Map;
+
+import static de.otto.synapse.codec.PayloadCompression.isCompressed;
+import static de.otto.synapse.message.BinaryMessage.binaryMessage;
+import static de.otto.synapse.message.Header.emptyHeader;
+import static de.otto.synapse.message.Message.message;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class SqsMessage {
+
+    /**
+     * The name of the message attribute marking Base64 encoded bodies of compressed messages. The value of the
+     * attribute is the name of the {@link PayloadCompression}.
+     */
+    public static final String COMPRESSION_ATTRIBUTE = "synapse_compression";
+
+    /**
+     * Creates a {@link Message} from the body of a SQS message that is not carrying any message attributes.
+     * The body is returned as-is.
+     *
+     * @param key the key of the message
+     * @param body the body of the SQS message
+     * @return message
+     */
+    public static Message<String> sqsMessage(final @Nonnull String key,
+                                             final @Nullable String body) {
+        return sqsMessage(key, body, null);
+    }
+
+    /**
+     * Creates a {@link Message} from the body and message attributes of a SQS message.
+     * <p>
+     *     SQS message bodies must be text, so {@link PayloadCompression compressed} payloads are sent as Base64
+     *     encoded bodies, marked using the {@link #COMPRESSION_ATTRIBUTE compression attribute}. Only marked bodies
+     *     are decoded and returned as {@link BinaryMessage} that is decompressing the payload. All other bodies are
+     *     returned as-is.
+     * </p>
+     *
+     * @param key the key of the message
+     * @param body the body of the SQS message
+     * @param messageAttributes the message attributes of the SQS message, or null
+     * @return message
+     * @throws IllegalStateException if the body is marked as compressed, but is not a Base64 encoded, compressed
+     * payload
+     */
+    public static Message<String> sqsMessage(final @Nonnull String key,
+                                             final @Nullable String body,
+                                             final @Nullable Map<String, MessageAttributeValue> messageAttributes) {
+        if (body != null && messageAttributes != null && messageAttributes.containsKey(COMPRESSION_ATTRIBUTE)) {
+            final byte[] payload = decodeBase64(body);
+            if (!isCompressed(payload)) {
+                throw new IllegalStateException("Unable to decompress message: body is not a compressed payload");
+            }
+            return binaryMessage(key, emptyHeader(), payload);
+        }
+        return message(key, body);
+    }
+
+    /**
+     * Creates the body of a SQS message from a {@link Message}, compressing the payload using the specified
+     * compression. Compressed payloads are Base64 encoded and need to be sent with the
+     * {@link SqsMessageBody#getMessageAttributes() message attributes} of the body.
+     *
+     * @param message the message
+     * @param compression the compression of the message payload
+     * @return message body
+     */
+    @Nonnull
+    public static SqsMessageBody sqsMessageBody(final @Nonnull Message<String> message,
+                                                final @Nonnull PayloadCompression compression) {
+        final String payload = message.getPayload();
+        if (payload == null || compression == PayloadCompression.NONE) {
+            return new SqsMessageBody(payload, PayloadCompression.NONE);
+        }
+        final byte[] payloadBytes = message instanceof BinaryMessage
+                ? ((BinaryMessage) message).getPayloadBytes()
+                : payload.getBytes(UTF_8);
+        final byte[] compressed = compression.compress(payloadBytes);
+        return isCompressed(compressed)
+                ? new SqsMessageBody(Base64.getEncoder().encodeToString(compressed), compression)
+                : new SqsMessageBody(payload, PayloadCompression.NONE);
+    }
+
+    private static byte[] decodeBase64(final String body) {
+        try {
+            return Base64.getDecoder().decode(body);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalStateException("Unable to decompress message: body is not Base64 encoded", e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package de.otto.synapse.message.aws;
+
+import de.otto.synapse.codec.PayloadCompression;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static de.otto.synapse.message.aws.SqsMessage.COMPRESSION_ATTRIBUTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+
+/**
+ * The body of a SQS message, together with the message attributes that need to be sent with the body.
+ * <p>
+ *     Bodies of {@link PayloadCompression compressed} payloads are marked using the
+ *     {@link SqsMessage#COMPRESSION_ATTRIBUTE compression attribute}, so receivers are only decoding bodies
+ *     that were actually compressed by the sender.
+ * </p>
+ */
+public final class SqsMessageBody {
+
+    private static final String STRING_DATA_TYPE = "String";
+
+    private final String body;
+    private final PayloadCompression compression;
+
+    SqsMessageBody(final @Nullable String body,
+                   final @Nonnull PayloadCompression compression) {
+        this.body = body;
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the body of the SQS message.
+     *
+     * @return message body, or null
+     */
+    @Nullable
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the compression of the body, or {@link PayloadCompression#NONE}, if the body is not compressed.
+     *
+     * @return compression
+     */
+    @Nonnull
+    public PayloadCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the message attributes that need to be sent with the body.
+     *
+     * @return message attributes
+     */
+    @Nonnull
+    public Map<String, MessageAttributeValue> getMessageAttributes() {
+        if (compression == PayloadCompression.NONE) {
+            return emptyMap();
+        }
+        return singletonMap(COMPRESSION_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType(STRING_DATA_TYPE)
+                .stringValue(compression.name())
+                .build());
+    }
+
+    /**
+     * Returns the number of bytes counting against the size limit of SQS messages: the size of the body, plus
+     * the names, types and values of the message attributes.
+     *
+     * @return size in bytes
+     */
+    public long size() {
+        long size = body != null ? body.getBytes(UTF_8).length : 0;
+        if (compression != PayloadCompression.NONE) {
+            size += COMPRESSION_ATTRIBUTE.length() + STRING_DATA_TYPE.length() + compression.name().length();
+        }
+        return size;
+    }
+}
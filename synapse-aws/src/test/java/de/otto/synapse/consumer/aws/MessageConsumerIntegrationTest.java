@@ -20,6 +20,8 @@ import org.springframework.test.context.junit4.SpringRunner;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamRequest;
 import software.amazon.awssdk.services.kinesis.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
 import software.amazon.awssdk.services.kinesis.model.StreamDescription;
 
 import java.io.File;
@@ -140,6 +142,13 @@ public class MessageConsumerIntegrationTest {
                                     .build())
                             .build();
                 }
+
+                @Override
+                public ListShardsResponse listShards(ListShardsRequest listShardsRequest) {
+                    return ListShardsResponse.builder()
+                            .shards(Collections.emptyList())
+                            .build();
+                }
             };
         }
 
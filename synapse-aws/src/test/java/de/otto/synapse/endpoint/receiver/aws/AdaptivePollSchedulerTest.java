@@ -0,0 +1,112 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+import static de.otto.synapse.channel.ShardPosition.fromHorizon;
+import static de.otto.synapse.endpoint.receiver.aws.AdaptivePollScheduler.MAX_POLL_INTERVAL_MILLIS;
+import static de.otto.synapse.endpoint.receiver.aws.AdaptivePollScheduler.MAX_THROTTLED_POLL_INTERVAL_MILLIS;
+import static de.otto.synapse.endpoint.receiver.aws.AdaptivePollScheduler.MIN_POLL_INTERVAL_MILLIS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class AdaptivePollSchedulerTest {
+
+    @Test
+    public void shouldPollAtMaximumRateWhileBehind() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(10000);
+        // when
+        final long delay = scheduler.nextDelay(response(emptyList(), 5000L, 50), false);
+        // then
+        assertThat(delay, is(MIN_POLL_INTERVAL_MILLIS - 50));
+    }
+
+    @Test
+    public void shouldPollImmediatelyIfRequestTookLongerThanMinimumInterval() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(10000);
+        // when
+        final long delay = scheduler.nextDelay(response(emptyList(), 5000L, 500), false);
+        // then
+        assertThat(delay, is(0L));
+    }
+
+    @Test
+    public void shouldPollAtMaximumRateForFullResponses() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1);
+        // when
+        final long delay = scheduler.nextDelay(response(singletonList(someRecord()), 0L, 0), false);
+        // then
+        assertThat(delay, is(MIN_POLL_INTERVAL_MILLIS));
+    }
+
+    @Test
+    public void shouldBackOffWhenTailingIdleShard() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(10000);
+        // when
+        scheduler.nextDelay(response(emptyList(), 0L, 0), false);
+        scheduler.nextDelay(response(emptyList(), 0L, 0), false);
+        scheduler.nextDelay(response(emptyList(), 0L, 0), false);
+        // then
+        assertThat(scheduler.getPollInterval(), is(MAX_POLL_INTERVAL_MILLIS));
+    }
+
+    @Test
+    public void shouldResetIntervalWhenRecordsArrive() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(10000);
+        scheduler.nextDelay(response(emptyList(), 0L, 0), false);
+        scheduler.nextDelay(response(emptyList(), 0L, 0), false);
+        // when
+        final long delay = scheduler.nextDelay(response(singletonList(someRecord()), 0L, 0), false);
+        // then
+        assertThat(delay, is(MIN_POLL_INTERVAL_MILLIS));
+    }
+
+    @Test
+    public void shouldBackOffIfThrottled() {
+        // given
+        final AdaptivePollScheduler scheduler = new AdaptivePollScheduler(10000);
+        // when
+        for (int i = 0; i < 10; ++i) {
+            scheduler.nextDelay(response(emptyList(), 5000L, 0), true);
+        }
+        // then
+        assertThat(scheduler.getPollInterval(), is(MAX_THROTTLED_POLL_INTERVAL_MILLIS));
+        // and when no longer throttled:
+        assertThat(scheduler.nextDelay(response(emptyList(), 5000L, 0), false), is(MIN_POLL_INTERVAL_MILLIS));
+    }
+
+    private KinesisShardResponse response(final List<Record> records,
+                                          final long millisBehindLatest,
+                                          final long runtime) {
+        return new KinesisShardResponse(
+                "some-channel",
+                fromHorizon("some-shard"),
+                GetRecordsResponse.builder()
+                        .records(records)
+                        .millisBehindLatest(millisBehindLatest)
+                        .build(),
+                runtime);
+    }
+
+    private Record someRecord() {
+        return Record.builder()
+                .partitionKey("some-key")
+                .sequenceNumber("1")
+                .approximateArrivalTimestamp(Instant.now())
+                .data(ByteBuffer.wrap("{}".getBytes(UTF_8)))
+                .build();
+    }
+}
@@ -0,0 +1,356 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.consumer.AsyncMessageConsumer;
+import de.otto.synapse.consumer.MessageConsumer;
+import de.otto.synapse.message.Message;
+import de.otto.synapse.testsupport.TestClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import software.amazon.awssdk.services.kinesis.KinesisAsyncClient;
+import software.amazon.awssdk.services.kinesis.model.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static de.otto.synapse.channel.ChannelPosition.fromHorizon;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.POISON_SHARD_ITER;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KinesisAsyncMessageLogReceiverEndpointTest {
+
+    private static final Pattern MATCH_ALL = Pattern.compile(".*");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TestClock clock = TestClock.now();
+
+    @Mock
+    private KinesisAsyncClient kinesisAsyncClient;
+
+    @Captor
+    private ArgumentCaptor<Message<String>> messageArgumentCaptor;
+    @Mock
+    private MessageConsumer<String> messageConsumer;
+
+    private ScheduledExecutorService scheduler;
+    private KinesisAsyncMessageLogReceiverEndpoint kinesisMessageLog;
+    private AtomicInteger nextKey = new AtomicInteger(0);
+
+    @Before
+    public void setUp() {
+        scheduler = newScheduledThreadPool(2);
+        when(messageConsumer.keyPattern()).thenReturn(MATCH_ALL);
+        when(messageConsumer.payloadType()).thenReturn(String.class);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldConsumeAllEventsFromKinesis() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true)));
+        describeRecordsForShard("shard1", true);
+
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler);
+        kinesisMessageLog.register(messageConsumer);
+
+        // when
+        ChannelPosition finalChannelPosition = kinesisMessageLog.consume(fromHorizon()).get();
+
+        // then
+        verify(messageConsumer, times(3)).accept(messageArgumentCaptor.capture());
+        List<Message<String>> messages = messageArgumentCaptor.getAllValues();
+
+        assertThat(messages.get(0).getPayload(), is("{\"data\":\"blue\"}"));
+        assertThat(messages.get(1).getPayload(), is(nullValue()));
+        assertThat(messages.get(2).getPayload(), is("{\"data\":\"green\"}"));
+        assertThat(finalChannelPosition.shard("shard1").position(), is("2"));
+    }
+
+    @Test
+    public void shouldConsumeAllMessagesFromMultipleShardsWithSingleThread() throws ExecutionException, InterruptedException {
+        // given
+        scheduler.shutdownNow();
+        scheduler = newScheduledThreadPool(1);
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true),
+                        someShard("shard2", true),
+                        someShard("shard3", true))
+        );
+        describeRecordsForShard("shard1", true);
+        describeRecordsForShard("shard2", true);
+        describeRecordsForShard("shard3", true);
+
+        // when
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler);
+        kinesisMessageLog.register(messageConsumer);
+
+        kinesisMessageLog.consume(fromHorizon()).get();
+
+        // then
+        verify(messageConsumer, times(9)).accept(messageArgumentCaptor.capture());
+    }
+
+    @Test
+    public void shouldConsumeChildShardAfterParentShardIsDrained() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", false),
+                        someChildShard("shard2", "shard1")));
+        describeRecordsForClosedShard("shard1");
+        describeRecordsForShard("shard2", true);
+
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler);
+        kinesisMessageLog.register(messageConsumer);
+
+        // when
+        final ChannelPosition finalChannelPosition = kinesisMessageLog.consume(fromHorizon()).get();
+
+        // then
+        verify(messageConsumer, times(4)).accept(messageArgumentCaptor.capture());
+        List<Message<String>> messages = messageArgumentCaptor.getAllValues();
+        assertThat(messages.get(0).getPayload(), is("{\"data\":\"red\"}"));
+        assertThat(finalChannelPosition.shard("shard1").position(), is("0"));
+        assertThat(finalChannelPosition.shard("shard2").position(), is("3"));
+    }
+
+    @Test
+    public void shouldStopPollingOnStop() throws InterruptedException, ExecutionException, TimeoutException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true)));
+        describeRecordsForShard("shard1", false);
+
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler);
+        kinesisMessageLog.register(messageConsumer);
+
+        // when
+        final CompletableFuture<ChannelPosition> futureChannelPosition = kinesisMessageLog.consume(fromHorizon());
+        Thread.sleep(200);
+        kinesisMessageLog.stop();
+
+        // then
+        futureChannelPosition.get(2, TimeUnit.SECONDS);
+        assertThat(futureChannelPosition.isDone(), is(true));
+    }
+
+    @Test
+    public void shouldParkShardWithoutBlockingSchedulerIfInFlightWindowIsFull() throws Exception {
+        // given
+        scheduler.shutdownNow();
+        scheduler = newScheduledThreadPool(1);
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true)));
+        describeRecordsForShard("shard1", true);
+        final CompletableFuture<Void> firstMessage = new CompletableFuture<>();
+        final AtomicInteger asyncMessages = new AtomicInteger();
+
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler, Clock.systemDefaultZone(), 1, 1);
+        kinesisMessageLog.register(messageConsumer);
+        kinesisMessageLog.register(asyncConsumer(message -> asyncMessages.incrementAndGet() == 1
+                ? firstMessage
+                : completedFuture(null)));
+
+        // when
+        final CompletableFuture<ChannelPosition> futureChannelPosition = kinesisMessageLog.consume(fromHorizon());
+        await().atMost(2, SECONDS).until(() -> asyncMessages.get() == 1);
+        scheduler.submit(() -> null).get(1, SECONDS);
+
+        // then
+        verify(kinesisAsyncClient, times(2)).getRecords(any(GetRecordsRequest.class));
+        assertThat(futureChannelPosition.isDone(), is(false));
+
+        // when
+        firstMessage.complete(null);
+
+        // then
+        final ChannelPosition finalChannelPosition = futureChannelPosition.get(2, SECONDS);
+        assertThat(asyncMessages.get(), is(3));
+        assertThat(finalChannelPosition.shard("shard1").position(), is("2"));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void shouldShutdownOnException() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true),
+                        someShard("failing-shard2", true))
+        );
+        describeRecordsForShard("shard1", true);
+        describeRecordsForShard("failing-shard2", true);
+        kinesisMessageLog = new KinesisAsyncMessageLogReceiverEndpoint("channelName", kinesisAsyncClient, objectMapper, null, scheduler);
+
+        kinesisMessageLog.register(messageConsumer);
+
+        // when
+        kinesisMessageLog.consume(fromHorizon()).get();
+    }
+
+    private static AsyncMessageConsumer<String> asyncConsumer(final Function<Message<String>, CompletionStage<Void>> consumer) {
+        return new AsyncMessageConsumer<String>() {
+            @Override
+            public CompletionStage<Void> acceptAsync(final Message<String> message) {
+                return consumer.apply(message);
+            }
+
+            @Override
+            public Class<String> payloadType() {
+                return String.class;
+            }
+
+            @Override
+            public Pattern keyPattern() {
+                return MATCH_ALL;
+            }
+        };
+    }
+
+    private Shard someShard(String shardId, boolean open) {
+        return Shard.builder()
+                .shardId(shardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(open ? null : "1111")
+                        .build())
+                .build();
+    }
+
+    private Shard someChildShard(String shardId, String parentShardId) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("2222")
+                        .build())
+                .build();
+    }
+
+    private void describeStreamResponse(List<Shard> shards) {
+        DescribeStreamResponse response = DescribeStreamResponse.builder()
+                .streamDescription(StreamDescription.builder()
+                        .shards(shards)
+                        .hasMoreShards(false)
+                        .build())
+                .build();
+
+        when(kinesisAsyncClient.describeStream(any(DescribeStreamRequest.class))).thenReturn(completedFuture(response));
+    }
+
+    private void describeShardIterator(final String shardName) {
+        when(kinesisAsyncClient
+                .getShardIterator(argThat((GetShardIteratorRequest req) -> req != null && req.shardId().equals(shardName))))
+                .thenReturn(completedFuture(GetShardIteratorResponse.builder().shardIterator(shardName + "-iter").build()));
+    }
+
+    private void describeRecordsForClosedShard(final String shardName) {
+        describeShardIterator(shardName);
+
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(createRecord("red"))
+                .millisBehindLatest(0L)
+                .nextShardIterator(null)
+                .build();
+
+        when(kinesisAsyncClient.getRecords(argThat((GetRecordsRequest req) -> isShardIter(shardName, req))))
+                .thenReturn(completedFuture(response));
+    }
+
+    private void describeRecordsForShard(final String shardName, boolean withPoison) {
+        describeShardIterator(shardName);
+
+        GetRecordsResponse response0 = GetRecordsResponse.builder()
+                .records(emptyList())
+                .millisBehindLatest(555L)
+                .nextShardIterator(shardName + "-pos1")
+                .build();
+        GetRecordsResponse response1 = GetRecordsResponse.builder()
+                .records(
+                        createRecord("blue"))
+                .millisBehindLatest(1234L)
+                .nextShardIterator(shardName + "-pos2")
+                .build();
+        GetRecordsResponse response2 = GetRecordsResponse.builder()
+                .records(
+                        createEmptyRecord(),
+                        createRecord("green"))
+                .millisBehindLatest(0L)
+                .nextShardIterator(shardName + "-pos3")
+                .build();
+        GetRecordsResponse response3 = withPoison
+                ? GetRecordsResponse.builder().records(emptyList()).millisBehindLatest(0L).nextShardIterator(POISON_SHARD_ITER).build()
+                : GetRecordsResponse.builder().records(emptyList()).millisBehindLatest(0L).nextShardIterator(shardName + "-pos4").build();
+
+        when(kinesisAsyncClient.getRecords(argThat((GetRecordsRequest req) -> isFailingShardIter(shardName, req))))
+                .thenThrow(new RuntimeException("boo!"));
+
+        when(kinesisAsyncClient.getRecords(argThat((GetRecordsRequest req) -> isShardIter(shardName, req))))
+                .thenReturn(completedFuture(response0), completedFuture(response1), completedFuture(response2), completedFuture(response3));
+    }
+
+    private boolean isShardIter(String shardName, GetRecordsRequest req) {
+        return req != null && req.shardIterator().contains(shardName) && !req.shardIterator().contains("failing");
+    }
+
+    private boolean isFailingShardIter(String shardName, GetRecordsRequest req) {
+        return req != null && req.shardIterator().contains(shardName) && req.shardIterator().contains("failing");
+    }
+
+    private Record createRecord(String data) {
+        String json = "{\"data\":\"" + data + "\"}";
+        return Record.builder()
+                .partitionKey(data)
+                .approximateArrivalTimestamp(clock.instant())
+                .data(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)))
+                .sequenceNumber(String.valueOf(nextKey.getAndIncrement()))
+                .build();
+    }
+
+    private Record createEmptyRecord() {
+        return Record.builder()
+                .partitionKey("empty")
+                .approximateArrivalTimestamp(clock.instant())
+                .data(ByteBuffer.allocateDirect(0))
+                .sequenceNumber(String.valueOf(nextKey.getAndIncrement()))
+                .build();
+    }
+
+}
@@ -17,6 +17,7 @@ import software.amazon.awssdk.services.kinesis.model.*;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +36,7 @@ import static de.otto.synapse.channel.ShardPosition.fromPosition;
 import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.POISON_SHARD_ITER;
 import static java.time.Duration.ofMillis;
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.core.IsNull.nullValue;
@@ -91,6 +93,27 @@ public class KinesisMessageLogReaderTest {
         assertThat(shards.get(0).getShardName(), is("shard1"));
     }
 
+    @Test
+    public void shouldRetrieveShardsFromSharedShardDiscovery() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(ListShardsResponse.builder()
+                .shards(someShard("shard1", true), someShard("shard2", false))
+                .build());
+        final KinesisShardDiscovery shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+        final KinesisMessageLogReader firstReader = new KinesisMessageLogReader("channelName", kinesisClient, clock, null, null, shardDiscovery);
+        final KinesisMessageLogReader secondReader = new KinesisMessageLogReader("channelName", kinesisClient, clock, null, null, shardDiscovery);
+
+        // when
+        final List<String> firstShards = firstReader.getOpenShards();
+        final List<String> secondShards = secondReader.getOpenShards();
+
+        // then
+        assertThat(firstShards, contains("shard1"));
+        assertThat(secondShards, contains("shard1"));
+        verify(kinesisClient, times(1)).listShards(any(ListShardsRequest.class));
+        verify(kinesisClient, never()).describeStream(any(DescribeStreamRequest.class));
+    }
+
     @Test
     public void shouldGetOpenShards() {
         // given
@@ -110,7 +133,7 @@ public class KinesisMessageLogReaderTest {
     }
 
     @Test
-    public void shouldRetrieveOnlyOpenShards() {
+    public void shouldRetrieveOpenAndClosedShards() {
         // given
         describeStreamResponse(
                 ImmutableList.of(
@@ -123,9 +146,53 @@ public class KinesisMessageLogReaderTest {
         List<KinesisShardReader> shards = logReader.getCurrentKinesisShards();
 
         // then
-        assertThat(shards, hasSize(2));
+        assertThat(shards, hasSize(3));
         assertThat(shards.get(0).getShardName(), is("shard1"));
-        assertThat(shards.get(1).getShardName(), is("shard3"));
+        assertThat(shards.get(1).getShardName(), is("shard2"));
+        assertThat(shards.get(2).getShardName(), is("shard3"));
+    }
+
+    @Test
+    public void shouldConsumeChildShardAfterParentShardIsDrained() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("parent", false),
+                        someChildShard("child", "parent")));
+        describeRecordsForClosedShard("parent");
+        describeRecordsForShard("child", true);
+        logReader = new KinesisMessageLogReader("channelName", kinesisClient, clock);
+
+        // when
+        final ChannelPosition channelPosition = logReader.consumeUntil(fromHorizon(), Instant.MAX, responseConsumer).get();
+
+        // then
+        verify(responseConsumer, times(5)).accept(responseArgumentCaptor.capture());
+        final List<String> shardNames = responseArgumentCaptor.getAllValues()
+                .stream()
+                .map(KinesisShardResponse::getShardName)
+                .collect(toList());
+        assertThat(shardNames, contains("parent", "child", "child", "child", "child"));
+        assertThat(channelPosition.shards(), containsInAnyOrder("parent", "child"));
+        assertThat(channelPosition.shard("parent").position(), is(not("")));
+    }
+
+    @Test
+    public void shouldNotConsumeDrainedParentShard() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("parent", false),
+                        someChildShard("child", "parent")));
+        describeRecordsForShard("child", true);
+        logReader = new KinesisMessageLogReader("channelName", kinesisClient, clock);
+
+        // when
+        logReader.consumeUntil(channelPosition(fromPosition("child", "42")), Instant.MAX, responseConsumer).get();
+
+        // then
+        verify(kinesisClient, never()).getShardIterator(argThat((GetShardIteratorRequest req) -> req != null && req.shardId().equals("parent")));
+        verify(responseConsumer, times(4)).accept(responseArgumentCaptor.capture());
     }
 
     @Test
@@ -421,6 +488,16 @@ public class KinesisMessageLogReaderTest {
                 .build();
     }
 
+    private Shard someChildShard(String shardId, String parentShardId) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("2222")
+                        .build())
+                .build();
+    }
+
     private void describeStreamResponse(List<Shard> shards) {
         DescribeStreamResponse response = createResponseForShards(shards, false);
 
@@ -468,6 +545,21 @@ public class KinesisMessageLogReaderTest {
                 .thenReturn(response0, response1, response2, response3);
     }
 
+    private void describeRecordsForClosedShard(final String shardName) {
+        when(kinesisClient
+                .getShardIterator(argThat((GetShardIteratorRequest req1) -> req1 != null && req1.shardId().equals(shardName))))
+                .thenReturn(GetShardIteratorResponse.builder().shardIterator(shardName + "-iter").build());
+
+        GetRecordsResponse lastResponse = GetRecordsResponse.builder()
+                .records(
+                        createRecord("red"))
+                .millisBehindLatest(0L)
+                .build();
+
+        when(kinesisClient.getRecords(argThat((GetRecordsRequest req) -> isShardIter(shardName, req))))
+                .thenReturn(lastResponse);
+    }
+
     private boolean isShardIter(String shardName, GetRecordsRequest req) {
         return req != null && req.shardIterator().contains(shardName) && !req.shardIterator().contains("failing");
     }
@@ -101,7 +101,7 @@ public class KinesisMessageLogReceiverEndpointTest {
     }
 
     @Test
-    public void shouldRetrieveOnlyOpenShards() {
+    public void shouldRetrieveOpenAndClosedShards() {
         // given
         describeStreamResponse(
                 ImmutableList.of(
@@ -114,9 +114,10 @@ public class KinesisMessageLogReceiverEndpointTest {
         List<KinesisShardReader> shards = kinesisMessageLog.getCurrentKinesisShards();
 
         // then
-        assertThat(shards, hasSize(2));
+        assertThat(shards, hasSize(3));
         assertThat(shards.get(0).getShardName(), is("shard1"));
-        assertThat(shards.get(1).getShardName(), is("shard3"));
+        assertThat(shards.get(1).getShardName(), is("shard2"));
+        assertThat(shards.get(2).getShardName(), is("shard3"));
     }
 
     @Test
@@ -158,9 +159,11 @@ public class KinesisMessageLogReceiverEndpointTest {
         List<KinesisShardReader> shards = kinesisMessageLog.getCurrentKinesisShards();
 
         // then
-        assertThat(shards, hasSize(2));
-        assertThat(shards.get(0).getShardName(), is("shard3"));
-        assertThat(shards.get(1).getShardName(), is("shard4"));
+        assertThat(shards, hasSize(4));
+        assertThat(shards.get(0).getShardName(), is("shard1"));
+        assertThat(shards.get(1).getShardName(), is("shard2"));
+        assertThat(shards.get(2).getShardName(), is("shard3"));
+        assertThat(shards.get(3).getShardName(), is("shard4"));
     }
 
     @Test
@@ -213,6 +216,29 @@ public class KinesisMessageLogReceiverEndpointTest {
     }
 
 
+    @Test
+    public void shouldConsumeAllMessagesFromMultipleShardsWithParallelDispatch() throws ExecutionException, InterruptedException {
+        // given
+        describeStreamResponse(
+                ImmutableList.of(
+                        someShard("shard1", true),
+                        someShard("shard2", true))
+        );
+        describeRecordsForShard("shard1", true);
+        describeRecordsForShard("shard2", true);
+
+        // when
+        kinesisMessageLog = new KinesisMessageLogReceiverEndpoint("channelName", kinesisClient, objectMapper, null, clock, 4);
+        kinesisMessageLog.register(messageConsumer);
+
+        final ChannelPosition finalChannelPosition = kinesisMessageLog.consume(fromHorizon()).get();
+
+        // then
+        verify(messageConsumer, times(6)).accept(messageArgumentCaptor.capture());
+        assertThat(finalChannelPosition.shard("shard1").position(), is("2"));
+        assertThat(finalChannelPosition.shard("shard2").position(), is("2"));
+    }
+
     @Test
     public void shouldInterceptMessages() throws ExecutionException, InterruptedException {
         // given
@@ -0,0 +1,108 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import de.otto.synapse.testsupport.TestClock;
+import org.junit.Test;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KinesisReadGovernorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final TestClock clock = TestClock.now();
+    private final KinesisReadGovernor readGovernor = new KinesisReadGovernor(5, 2 * MB, clock);
+
+    @Test
+    public void shouldNotDelayFirstFiveReadsOfShard() {
+        // when
+        for (int i = 0; i < 5; ++i) {
+            // then
+            assertThat(readGovernor.reserveRead("some-stream", "shard1"), is(0L));
+        }
+    }
+
+    @Test
+    public void shouldPaceReadsOfShardAfterFiveReads() {
+        // given
+        for (int i = 0; i < 5; ++i) {
+            readGovernor.reserveRead("some-stream", "shard1");
+        }
+
+        // when
+        final long firstDelay = readGovernor.reserveRead("some-stream", "shard1");
+        final long secondDelay = readGovernor.reserveRead("some-stream", "shard1");
+
+        // then
+        assertThat(firstDelay, is(200L));
+        assertThat(secondDelay, is(400L));
+    }
+
+    @Test
+    public void shouldRefillReadsOverTime() {
+        // given
+        for (int i = 0; i < 5; ++i) {
+            readGovernor.reserveRead("some-stream", "shard1");
+        }
+
+        // when
+        clock.proceed(200, MILLIS);
+
+        // then
+        assertThat(readGovernor.reserveRead("some-stream", "shard1"), is(0L));
+        assertThat(readGovernor.reserveRead("some-stream", "shard1"), is(200L));
+    }
+
+    @Test
+    public void shouldDelayReadsAfterLargeResponses() {
+        // given
+        readGovernor.reserveRead("some-stream", "shard1");
+        readGovernor.recordBytesRead("some-stream", "shard1", 10 * MB);
+
+        // when
+        final long delay = readGovernor.reserveRead("some-stream", "shard1");
+
+        // then
+        assertThat(delay, is(4200L));
+    }
+
+    @Test
+    public void shouldDelayConcurrentReadsOneAfterAnotherAfterLargeResponses() {
+        // given
+        readGovernor.reserveRead("some-stream", "shard1");
+        readGovernor.recordBytesRead("some-stream", "shard1", 10 * MB);
+
+        // when
+        final long firstDelay = readGovernor.reserveRead("some-stream", "shard1");
+        final long secondDelay = readGovernor.reserveRead("some-stream", "shard1");
+
+        // then
+        assertThat(firstDelay, is(4200L));
+        assertThat(secondDelay, is(4400L));
+    }
+
+    @Test
+    public void shouldGovernShardsAndStreamsIndependently() {
+        // given
+        for (int i = 0; i < 5; ++i) {
+            readGovernor.reserveRead("some-stream", "shard1");
+        }
+
+        // then
+        assertThat(readGovernor.reserveRead("some-stream", "shard2"), is(0L));
+        assertThat(readGovernor.reserveRead("other-stream", "shard1"), is(0L));
+    }
+
+    @Test
+    public void shouldDelayReadsAfterThrottling() {
+        // given
+        readGovernor.reserveRead("some-stream", "shard1");
+
+        // when
+        readGovernor.throttled("some-stream", "shard1");
+
+        // then
+        assertThat(readGovernor.reserveRead("some-stream", "shard1"), is(200L));
+    }
+}
@@ -0,0 +1,152 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import org.junit.After;
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.KinesisException;
+import software.amazon.awssdk.services.kinesis.model.ListShardsRequest;
+import software.amazon.awssdk.services.kinesis.model.ListShardsResponse;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class KinesisShardDiscoveryTest {
+
+    private final KinesisClient kinesisClient = mock(KinesisClient.class);
+    private KinesisShardDiscovery shardDiscovery;
+
+    @After
+    public void tearDown() {
+        if (shardDiscovery != null) {
+            shardDiscovery.close();
+        }
+    }
+
+    @Test
+    public void shouldRetrieveShardsUsingListShards() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(listShardsResponse(null, someShard("shard1"), someShard("shard2")));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+
+        // when
+        final List<Shard> shards = shardDiscovery.getShards("some-stream");
+
+        // then
+        assertThat(shardNamesOf(shards), contains("shard1", "shard2"));
+        verify(kinesisClient).listShards(ListShardsRequest.builder()
+                .streamName("some-stream")
+                .maxResults(KinesisShardDiscovery.MAX_RESULTS_PER_PAGE)
+                .build());
+    }
+
+    @Test
+    public void shouldRetrieveAllPagesOfShards() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(
+                listShardsResponse("next-page", someShard("shard1")),
+                listShardsResponse(null, someShard("shard2")));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+
+        // when
+        final List<Shard> shards = shardDiscovery.getShards("some-stream");
+
+        // then
+        assertThat(shardNamesOf(shards), contains("shard1", "shard2"));
+        verify(kinesisClient).listShards(ListShardsRequest.builder()
+                .nextToken("next-page")
+                .maxResults(KinesisShardDiscovery.MAX_RESULTS_PER_PAGE)
+                .build());
+    }
+
+    @Test
+    public void shouldCacheShardsOfStream() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(listShardsResponse(null, someShard("shard1")));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+
+        // when
+        shardDiscovery.getShards("some-stream");
+        final List<Shard> shards = shardDiscovery.getShards("some-stream");
+
+        // then
+        assertThat(shardNamesOf(shards), contains("shard1"));
+        verify(kinesisClient, times(1)).listShards(any(ListShardsRequest.class));
+    }
+
+    @Test
+    public void shouldRefreshShardsOfStream() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(
+                listShardsResponse(null, someShard("shard1")),
+                listShardsResponse(null, someShard("shard1"), someShard("shard2")));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ZERO);
+        shardDiscovery.getShards("some-stream");
+
+        // when
+        shardDiscovery.refreshShards("some-stream");
+
+        // then
+        assertThat(shardNamesOf(shardDiscovery.getShards("some-stream")), contains("shard1", "shard2"));
+        verify(kinesisClient, times(2)).listShards(any(ListShardsRequest.class));
+    }
+
+    @Test
+    public void shouldRefreshShardsInBackground() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(
+                listShardsResponse(null, someShard("shard1")),
+                listShardsResponse(null, someShard("shard1"), someShard("shard2")));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ofMillis(50));
+
+        // when
+        shardDiscovery.getShards("some-stream");
+
+        // then
+        verify(kinesisClient, timeout(2000).atLeast(2)).listShards(any(ListShardsRequest.class));
+        assertThat(shardNamesOf(shardDiscovery.getShards("some-stream")), contains("shard1", "shard2"));
+    }
+
+    @Test
+    public void shouldKeepShardsIfBackgroundRefreshFails() {
+        // given
+        when(kinesisClient.listShards(any(ListShardsRequest.class)))
+                .thenReturn(listShardsResponse(null, someShard("shard1")))
+                .thenThrow(new KinesisException("forced test exception"));
+        shardDiscovery = new KinesisShardDiscovery(kinesisClient, Duration.ofMillis(50));
+
+        // when
+        shardDiscovery.getShards("some-stream");
+
+        // then
+        verify(kinesisClient, timeout(2000).atLeast(2)).listShards(any(ListShardsRequest.class));
+        assertThat(shardNamesOf(shardDiscovery.getShards("some-stream")), contains("shard1"));
+    }
+
+    private static List<String> shardNamesOf(final List<Shard> shards) {
+        return shards.stream().map(Shard::shardId).collect(toList());
+    }
+
+    private static ListShardsResponse listShardsResponse(final String nextToken, final Shard... shards) {
+        return ListShardsResponse.builder()
+                .shards(shards)
+                .nextToken(nextToken)
+                .build();
+    }
+
+    private static Shard someShard(final String shardId) {
+        return Shard.builder()
+                .shardId(shardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .build())
+                .build();
+    }
+}
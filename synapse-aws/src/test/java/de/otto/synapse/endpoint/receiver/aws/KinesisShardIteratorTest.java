@@ -119,6 +119,42 @@ public class KinesisShardIteratorTest {
         assertThat(shardIterator.getShardPosition(), is(fromPosition("someShard", "42")));
     }
 
+    @Test
+    public void shouldDetectEndOfClosedShard() {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .millisBehindLatest(0L)
+                .nextShardIterator(null)
+                .build();
+        final KinesisClient kinesisClient = someKinesisClient();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenReturn(response);
+        final KinesisShardIterator shardIterator = new KinesisShardIterator(kinesisClient, "", fromPosition("someShard", "42"));
+
+        // when
+        shardIterator.next();
+
+        // then
+        assertThat(shardIterator.isAtShardEnd(), is(true));
+        assertThat(shardIterator.isPoison(), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotReadBeyondEndOfClosedShard() {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .millisBehindLatest(0L)
+                .build();
+        final KinesisClient kinesisClient = someKinesisClient();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenReturn(response);
+        final KinesisShardIterator shardIterator = new KinesisShardIterator(kinesisClient, "", fromPosition("someShard", "42"));
+        shardIterator.next();
+
+        // when
+        shardIterator.next();
+    }
+
     @Test
     public void shouldReturnTrimHorizonShardIteratorWhenStartingAtHorizon() {
 
@@ -273,6 +309,75 @@ public class KinesisShardIteratorTest {
 
     }
 
+    @Test
+    public void shouldRequestNewIteratorIfIteratorExpired() {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .nextShardIterator("nextIteratorId")
+                .millisBehindLatest(42L)
+                .build();
+        final KinesisClient kinesisClient = someKinesisClient();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(new ExpiredIteratorException("forced test exception"))
+                .thenReturn(response);
+        final KinesisShardIterator shardIterator = new KinesisShardIterator(kinesisClient, "", fromPosition("someShard", "42"));
+
+        // when
+        shardIterator.next();
+
+        // then
+        verify(kinesisClient, times(2)).getShardIterator(KinesisShardIterator.buildIteratorShardRequest("", fromPosition("someShard", "42")));
+        verify(kinesisClient, times(2)).getRecords(any(GetRecordsRequest.class));
+        assertThat(shardIterator.getId(), is("nextIteratorId"));
+    }
+
+    @Test
+    public void shouldRetryThrottledRequestsWhenGovernorGrantsNextRead() throws InterruptedException {
+        // given
+        GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .nextShardIterator("nextIteratorId")
+                .millisBehindLatest(42L)
+                .build();
+        final KinesisClient kinesisClient = someKinesisClient();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("forced test exception").build())
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("forced test exception").build())
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("forced test exception").build())
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("forced test exception").build())
+                .thenReturn(response);
+        final KinesisReadGovernor readGovernor = mock(KinesisReadGovernor.class);
+        final KinesisShardIterator shardIterator = new KinesisShardIterator(kinesisClient, "someChannel", fromHorizon("someShard"), 10000, readGovernor);
+
+        // when
+        final long started = System.currentTimeMillis();
+        shardIterator.next();
+
+        // then
+        assertThat(System.currentTimeMillis() - started < 1000, is(true));
+        assertThat(shardIterator.isThrottled(), is(true));
+        assertThat(shardIterator.getId(), is("nextIteratorId"));
+        verify(kinesisClient, times(5)).getRecords(any(GetRecordsRequest.class));
+        verify(readGovernor, times(4)).throttled("someChannel", "someShard");
+        verify(readGovernor, times(5)).acquireRead("someChannel", "someShard");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldThrowExceptionWhenStoppingThrottledIterator() {
+        // given
+        final KinesisClient kinesisClient = someKinesisClient();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class)))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("forced test exception").build());
+        final KinesisShardIterator shardIterator = new KinesisShardIterator(kinesisClient, "", fromHorizon("someShard"));
+
+        // when
+        shardIterator.stop();
+        shardIterator.next();
+
+        // then throw exception
+    }
+
     @Test(expected = RuntimeException.class)
     public void shouldThrowExceptionWhenStoppingInRetry() {
         // given
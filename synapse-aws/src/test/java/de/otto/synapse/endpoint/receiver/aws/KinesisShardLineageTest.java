@@ -0,0 +1,89 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.SequenceNumberRange;
+import software.amazon.awssdk.services.kinesis.model.Shard;
+
+import static com.google.common.collect.ImmutableList.of;
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static de.otto.synapse.channel.ChannelPosition.fromHorizon;
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.channel.ShardPosition.fromTimestamp;
+import static java.time.Instant.now;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class KinesisShardLineageTest {
+
+    @Test
+    public void shouldFindParentsAndChildrenOfSplitShard() {
+        // given
+        final KinesisShardLineage lineage = new KinesisShardLineage(of(
+                closedShard("parent", null, null),
+                openShard("child1", "parent", null),
+                openShard("child2", "parent", null)));
+        // then
+        assertThat(lineage.getOpenShardNames(), contains("child1", "child2"));
+        assertThat(lineage.getParents("child1"), contains("parent"));
+        assertThat(lineage.getChildren("parent"), contains("child1", "child2"));
+    }
+
+    @Test
+    public void shouldFindParentsOfMergedShard() {
+        // given
+        final KinesisShardLineage lineage = new KinesisShardLineage(of(
+                closedShard("parent1", null, null),
+                closedShard("parent2", null, null),
+                openShard("child", "parent1", "parent2")));
+        // then
+        assertThat(lineage.getParents("child"), contains("parent1", "parent2"));
+        assertThat(lineage.getChildren("parent2"), contains("child"));
+    }
+
+    @Test
+    public void shouldIgnoreExpiredParents() {
+        // given
+        final KinesisShardLineage lineage = new KinesisShardLineage(of(
+                openShard("child", "expired-parent", null)));
+        // then
+        assertThat(lineage.getParents("child"), is(empty()));
+    }
+
+    @Test
+    public void shouldDetectDrainedShards() {
+        // given
+        final KinesisShardLineage lineage = new KinesisShardLineage(of(
+                closedShard("grandparent", null, null),
+                closedShard("parent", "grandparent", null),
+                openShard("child", "parent", null)));
+        // then
+        assertThat(lineage.isDrained("grandparent", channelPosition(fromPosition("child", "42"))), is(true));
+        assertThat(lineage.isDrained("parent", channelPosition(fromPosition("child", "42"))), is(true));
+        assertThat(lineage.isDrained("child", channelPosition(fromPosition("child", "42"))), is(false));
+        assertThat(lineage.isDrained("parent", channelPosition(fromPosition("parent", "42"))), is(false));
+        assertThat(lineage.isDrained("parent", channelPosition(fromTimestamp("child", now()))), is(false));
+        assertThat(lineage.isDrained("parent", fromHorizon()), is(false));
+    }
+
+    private Shard openShard(final String shardId, final String parentShardId, final String adjacentParentShardId) {
+        return shard(shardId, parentShardId, adjacentParentShardId, null);
+    }
+
+    private Shard closedShard(final String shardId, final String parentShardId, final String adjacentParentShardId) {
+        return shard(shardId, parentShardId, adjacentParentShardId, "1111");
+    }
+
+    private Shard shard(final String shardId, final String parentShardId, final String adjacentParentShardId, final String endingSequenceNumber) {
+        return Shard.builder()
+                .shardId(shardId)
+                .parentShardId(parentShardId)
+                .adjacentParentShardId(adjacentParentShardId)
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .endingSequenceNumber(endingSequenceNumber)
+                        .build())
+                .build();
+    }
+}
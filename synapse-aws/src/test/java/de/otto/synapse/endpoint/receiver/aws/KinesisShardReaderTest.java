@@ -20,18 +20,21 @@ import java.util.function.Consumer;
 import static de.otto.synapse.channel.ShardPosition.fromHorizon;
 import static de.otto.synapse.channel.ShardPosition.fromPosition;
 import static de.otto.synapse.channel.StartFrom.HORIZON;
+import static de.otto.synapse.endpoint.receiver.aws.KinesisShardIterator.buildIteratorShardRequest;
 import static java.time.Duration.ofMillis;
 import static java.time.Instant.now;
 import static java.time.temporal.ChronoUnit.HOURS;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static java.util.Collections.emptyList;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -49,7 +52,7 @@ public class KinesisShardReaderTest {
 
     @Before
     public void setUp() {
-        executorService = newSingleThreadExecutor();
+        executorService = newCachedThreadPool();
         kinesisShardReader = new KinesisShardReader("someChannel", "someShard", kinesisClient, executorService, clock);
 
         GetShardIteratorResponse fakeResponse = GetShardIteratorResponse.builder()
@@ -192,6 +195,77 @@ public class KinesisShardReaderTest {
         assertThat(shardPosition.position(), is("42"));
     }
 
+    @Test
+    public void shouldPrefetchNextResponseWhileConsuming() throws Exception {
+        // given
+        final GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(1234L)
+                .build();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenReturn(response);
+        final CountDownLatch prefetched = new CountDownLatch(1);
+        final Consumer<KinesisShardResponse> slowConsumer = (shardResponse) -> {
+            try {
+                // the next response is fetched while the first one is consumed:
+                verify(kinesisClient, timeout(2000).times(2)).getRecords(any(GetRecordsRequest.class));
+                prefetched.countDown();
+            } finally {
+                kinesisShardReader.stop();
+            }
+        };
+
+        // when
+        kinesisShardReader.consumeUntil(fromHorizon("someShard"), Instant.MAX, slowConsumer).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertThat(prefetched.getCount(), is(0L));
+    }
+
+    @Test
+    public void shouldConsumePreparedResponses() throws Exception {
+        // given
+        final GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(1234L)
+                .build();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenReturn(response);
+
+        // when
+        kinesisShardReader.prepare(fromHorizon("someShard"));
+        verify(kinesisClient, timeout(2000)).getRecords(any(GetRecordsRequest.class));
+        final ShardPosition shardPosition = kinesisShardReader.consumeUntil(fromHorizon("someShard"), now().minus(1, SECONDS), consumer).get(5, TimeUnit.SECONDS);
+
+        // then
+        verify(consumer).accept(any(KinesisShardResponse.class));
+        verify(kinesisClient, times(1)).getShardIterator(any(GetShardIteratorRequest.class));
+        assertThat(shardPosition, is(fromHorizon("someShard")));
+    }
+
+    @Test
+    public void shouldDiscardResponsesPreparedForDifferentPosition() throws Exception {
+        // given
+        final GetRecordsResponse response = GetRecordsResponse.builder()
+                .records(emptyList())
+                .nextShardIterator("nextShardIterator")
+                .millisBehindLatest(1234L)
+                .build();
+        when(kinesisClient.getRecords(any(GetRecordsRequest.class))).thenReturn(response);
+        final ArgumentCaptor<GetShardIteratorRequest> requestCaptor = ArgumentCaptor.forClass(GetShardIteratorRequest.class);
+
+        // when
+        kinesisShardReader.prepare(fromPosition("someShard", "42"));
+        kinesisShardReader.consumeUntil(fromHorizon("someShard"), now().minus(1, SECONDS), consumer).get(5, TimeUnit.SECONDS);
+
+        // then
+        verify(kinesisClient, timeout(2000).times(2)).getShardIterator(requestCaptor.capture());
+        assertThat(requestCaptor.getAllValues(), containsInAnyOrder(
+                buildIteratorShardRequest("someChannel", fromPosition("someShard", "42")),
+                buildIteratorShardRequest("someChannel", fromHorizon("someShard"))));
+        verify(consumer).accept(argThat(shardResponse -> shardResponse.getShardPosition().equals(fromHorizon("someShard"))));
+    }
+
     @Test(expected = ExecutionException.class)
     public void shouldPropagateException() throws ExecutionException, InterruptedException {
         // given
@@ -0,0 +1,148 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.consumer.KeyPartitionedDispatcher;
+import de.otto.synapse.endpoint.InterceptorChain;
+import org.junit.Test;
+import software.amazon.awssdk.services.kinesis.model.GetRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.Record;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Instant.now;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KinesisShardResponseConsumerTest {
+
+    private final KeyPartitionedDispatcher dispatcher = mock(KeyPartitionedDispatcher.class);
+
+    @Test
+    public void shouldKeepStartPositionUntilFirstResponseIsCompleted() {
+        // given
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        when(dispatcher.dispatchAsync(anyList())).thenReturn(completion);
+        final ChannelPosition startFrom = channelPosition(fromPosition("shard1", "1"), fromPosition("shard2", "2"));
+        final KinesisShardResponseConsumer consumer = someConsumer(startFrom);
+
+        // when
+        consumer.accept(someResponse("shard1", "5"));
+
+        // then
+        assertThat(consumer.getCompletedPosition(), is(channelPosition(fromPosition("shard1", "1"))));
+    }
+
+    @Test
+    public void shouldNotAdvanceCompletedPositionBeyondIncompleteResponse() {
+        // given
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        final CompletableFuture<Void> second = new CompletableFuture<>();
+        when(dispatcher.dispatchAsync(anyList())).thenReturn(first, second);
+        final KinesisShardResponseConsumer consumer = someConsumer(channelPosition(fromPosition("shard1", "1")));
+        consumer.accept(someResponse("shard1", "5"));
+        consumer.accept(someResponse("shard1", "9"));
+
+        // when
+        second.complete(null);
+
+        // then
+        assertThat(consumer.getCompletedPosition(), is(channelPosition(fromPosition("shard1", "1"))));
+
+        // when
+        first.complete(null);
+
+        // then
+        assertThat(consumer.getCompletedPosition(), is(channelPosition(fromPosition("shard1", "9"))));
+    }
+
+    @Test
+    public void shouldReturnCompletedPositionsOfAllShards() {
+        // given
+        when(dispatcher.dispatchAsync(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        final KinesisShardResponseConsumer consumer = someConsumer(channelPosition(fromPosition("shard1", "1"), fromPosition("shard2", "2")));
+        consumer.accept(someResponse("shard1", "5"));
+        consumer.accept(someResponse("shard2", "7"));
+
+        // when
+        final ChannelPosition completedPosition = consumer.awaitCompletion();
+
+        // then
+        assertThat(completedPosition.shard("shard1"), is(fromPosition("shard1", "5")));
+        assertThat(completedPosition.shard("shard2"), is(fromPosition("shard2", "7")));
+    }
+
+    @Test
+    public void shouldNotBlockIfInFlightWindowOfShardIsFull() {
+        // given
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        final CompletableFuture<Void> second = new CompletableFuture<>();
+        when(dispatcher.dispatchAsync(anyList())).thenReturn(first, second);
+        final KinesisShardResponseConsumer consumer = new KinesisShardResponseConsumer(asList("shard1", "shard2"), channelPosition(fromPosition("shard1", "1")), new InterceptorChain(), dispatcher, null, 2);
+
+        // when
+        final CompletableFuture<Void> readyForSecondResponse = consumer.acceptAsync(someResponse("shard1", "5"));
+        final CompletableFuture<Void> readyForThirdResponse = consumer.acceptAsync(someResponse("shard1", "9"));
+
+        // then
+        assertThat(readyForSecondResponse.isDone(), is(true));
+        assertThat(readyForThirdResponse.isDone(), is(false));
+
+        // when
+        first.complete(null);
+
+        // then
+        assertThat(readyForThirdResponse.isDone(), is(true));
+        assertThat(consumer.whenCompleted().isDone(), is(false));
+    }
+
+    @Test
+    public void shouldReportStartPositionUpdatedByCompletedPositions() {
+        // given
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        final CompletableFuture<Void> second = new CompletableFuture<>();
+        when(dispatcher.dispatchAsync(anyList())).thenReturn(first, second);
+        final List<ChannelPosition> reportedPositions = new ArrayList<>();
+        final ChannelPosition startFrom = channelPosition(fromPosition("shard1", "1"), fromPosition("shard2", "2"));
+        final KinesisShardResponseConsumer consumer = new KinesisShardResponseConsumer(asList("shard1", "shard2"), startFrom, new InterceptorChain(), dispatcher, null, 100, reportedPositions::add);
+
+        // when
+        consumer.accept(someResponse("shard1", "5"));
+        first.complete(null);
+        consumer.accept(someResponse("shard1", "9"));
+
+        // then
+        assertThat(reportedPositions, contains(
+                startFrom,
+                channelPosition(fromPosition("shard1", "5"), fromPosition("shard2", "2"))));
+    }
+
+    private KinesisShardResponseConsumer someConsumer(final ChannelPosition startFrom) {
+        return new KinesisShardResponseConsumer(asList("shard1", "shard2"), startFrom, new InterceptorChain(), dispatcher, null, 100);
+    }
+
+    private static KinesisShardResponse someResponse(final String shardName, final String sequenceNumber) {
+        final GetRecordsResponse recordsResponse = GetRecordsResponse
+                .builder()
+                .records(Record.builder()
+                        .sequenceNumber(sequenceNumber)
+                        .approximateArrivalTimestamp(now())
+                        .partitionKey("key")
+                        .data(ByteBuffer.wrap("content".getBytes(UTF_8)))
+                        .build())
+                .nextShardIterator("nextIter")
+                .millisBehindLatest(0L)
+                .build();
+        return new KinesisShardResponse("channel", fromPosition(shardName, sequenceNumber), recordsResponse, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package de.otto.synapse.endpoint.receiver.aws;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+public class KinesisShardResponseQueueTest {
+
+    @Test
+    public void shouldTakeResponsesInOrder() throws Exception {
+        // given
+        final KinesisShardResponseQueue queue = new KinesisShardResponseQueue(2);
+        final KinesisShardResponse first = mock(KinesisShardResponse.class);
+        final KinesisShardResponse second = mock(KinesisShardResponse.class);
+        // when
+        queue.put(first);
+        queue.take();
+        queue.put(second);
+        queue.finish();
+        // then
+        assertThat(queue.take(), is(sameInstance(second)));
+        assertThat(queue.take(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldTakeRemainingResponsesAfterFinish() throws Exception {
+        // given
+        final KinesisShardResponseQueue queue = new KinesisShardResponseQueue(1);
+        final KinesisShardResponse response = mock(KinesisShardResponse.class);
+        // when
+        queue.put(response);
+        queue.finish();
+        // then
+        assertThat(queue.put(mock(KinesisShardResponse.class)), is(false));
+        assertThat(queue.take(), is(sameInstance(response)));
+        assertThat(queue.take(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowFailureAfterRemainingResponses() throws Exception {
+        // given
+        final KinesisShardResponseQueue queue = new KinesisShardResponseQueue(1);
+        queue.put(mock(KinesisShardResponse.class));
+        // when
+        queue.fail(new IllegalStateException("boo!"));
+        // then
+        assertThat(queue.take(), is(notNullValue()));
+        queue.take();
+    }
+
+    @Test
+    public void shouldBlockProducerIfQueueIsFull() throws Exception {
+        // given
+        final KinesisShardResponseQueue queue = new KinesisShardResponseQueue(1);
+        queue.put(mock(KinesisShardResponse.class));
+        // when
+        final CompletableFuture<Void> producer = runAsync(() -> {
+            try {
+                queue.put(mock(KinesisShardResponse.class));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(100);
+        // then
+        assertThat(producer.isDone(), is(false));
+        queue.take();
+        producer.get(1, SECONDS);
+    }
+
+    @Test
+    public void shouldAdaptDepthToConsumerSpeed() throws Exception {
+        // given
+        final KinesisShardResponseQueue queue = new KinesisShardResponseQueue(3);
+        // when the consumer is waiting for responses
+        for (int i = 0; i < 3; ++i) {
+            runAsync(() -> {
+                try {
+                    Thread.sleep(50);
+                    queue.put(mock(KinesisShardResponse.class));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            queue.take();
+        }
+        // then
+        assertThat(queue.getDepth(), is(3));
+
+        // when the producer is waiting for the consumer
+        queue.put(mock(KinesisShardResponse.class));
+        queue.put(mock(KinesisShardResponse.class));
+        queue.put(mock(KinesisShardResponse.class));
+        final CompletableFuture<Void> producer = runAsync(() -> {
+            try {
+                queue.put(mock(KinesisShardResponse.class));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(100);
+        queue.take();
+        queue.take();
+        producer.get(1, SECONDS);
+        // then
+        assertThat(queue.getDepth(), is(2));
+    }
+
+}
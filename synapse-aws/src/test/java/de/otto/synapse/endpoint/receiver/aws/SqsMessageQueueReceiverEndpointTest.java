@@ -21,11 +21,15 @@ import software.amazon.awssdk.services.sqs.model.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 
 import static java.util.Collections.synchronizedList;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -125,7 +129,7 @@ public class SqsMessageQueueReceiverEndpointTest {
                 sqsMessage(PAYLOAD_2),
                 sqsMessage(PAYLOAD_3));
 
-        ArgumentCaptor<DeleteMessageRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageRequest.class);
+        ArgumentCaptor<DeleteMessageBatchRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
 
         // when: consumption is started
         sqsQueueReceiver.consume();
@@ -137,14 +141,130 @@ public class SqsMessageQueueReceiverEndpointTest {
                 .until(() -> messages.size() >= EXPECTED_NUMBER_OF_ENTRIES);
 
         // and:
-        // expect delete message to be executed
-        verify(sqsAsyncClient, times(3)).deleteMessage(deleteRequestCaptor.capture());
+        // expect the messages to be deleted using a single batch request
+        verify(sqsAsyncClient, timeout(1000).times(1)).deleteMessageBatch(deleteRequestCaptor.capture());
 
         //and: the request should contain the queue url
-        List<DeleteMessageRequest> deleteMessageRequests = deleteRequestCaptor.getAllValues();
-        deleteMessageRequests.forEach(req -> {
-            assertThat(req.queueUrl(), is(QUEUE_URL));
-        });
+        DeleteMessageBatchRequest deleteMessageBatchRequest = deleteRequestCaptor.getValue();
+        assertThat(deleteMessageBatchRequest.queueUrl(), is(QUEUE_URL));
+        assertThat(deleteMessageBatchRequest.entries(), hasSize(3));
+    }
+
+    @Test
+    public void shouldReceiveUpToTenMessagesPerRequest() {
+        //given
+        addSqsMessagesToQueue(sqsMessage(PAYLOAD_1));
+
+        ArgumentCaptor<ReceiveMessageRequest> receiveRequestCaptor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+
+        // when: consumption is started
+        sqsQueueReceiver.consume();
+
+        // then:
+        await()
+                .atMost(Duration.FIVE_SECONDS)
+                .until(() -> messages.size() == 1);
+        verify(sqsAsyncClient, atLeastOnce()).receiveMessage(receiveRequestCaptor.capture());
+        assertThat(receiveRequestCaptor.getAllValues().get(0).maxNumberOfMessages(), is(10));
+        assertThat(receiveRequestCaptor.getAllValues().get(0).visibilityTimeout(), is(SqsMessageQueueReceiverEndpoint.DEFAULT_VISIBILITY_TIMEOUT_SECONDS));
+    }
+
+    @Test
+    public void shouldNotDeleteMessagesFailedByConsumer() {
+        //given
+        addSqsMessagesToQueue(sqsMessage(PAYLOAD_1), sqsMessage(PAYLOAD_2));
+        sqsQueueReceiver = new SqsMessageQueueReceiverEndpoint("channelName", sqsAsyncClient, objectMapper, null);
+        sqsQueueReceiver.register(MessageConsumer.of(".*", String.class, (message) -> {
+            if (message.getPayload().equals(PAYLOAD_1)) {
+                throw new IllegalStateException("forced test exception");
+            }
+            messages.add(message);
+        }));
+
+        ArgumentCaptor<DeleteMessageBatchRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+
+        // when: consumption is started
+        sqsQueueReceiver.consume();
+
+        // then:
+        verify(sqsAsyncClient, timeout(5000).times(1)).deleteMessageBatch(deleteRequestCaptor.capture());
+        assertThat(deleteRequestCaptor.getValue().entries(), hasSize(1));
+        assertThat(deleteRequestCaptor.getValue().entries().get(0).receiptHandle(), is("receipt-" + PAYLOAD_2));
+    }
+
+    @Test
+    public void shouldExtendVisibilityTimeoutOfMessagesInProgress() throws Exception {
+        //given
+        addSqsMessagesToQueue(sqsMessage(PAYLOAD_1));
+        when(sqsAsyncClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(completedFuture(ChangeMessageVisibilityBatchResponse.builder().build()));
+        final CountDownLatch visibilityExtended = new CountDownLatch(1);
+        sqsQueueReceiver = new SqsMessageQueueReceiverEndpoint("channelName", sqsAsyncClient, objectMapper, null, newCachedThreadPool(), 1, 1, 2);
+        sqsQueueReceiver.register(MessageConsumer.of(".*", String.class, (message) -> {
+            try {
+                visibilityExtended.await(5, SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(message);
+        }));
+
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> visibilityRequestCaptor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+
+        // when: consumption is started
+        sqsQueueReceiver.consume();
+
+        // then:
+        verify(sqsAsyncClient, timeout(3000).atLeastOnce()).changeMessageVisibilityBatch(visibilityRequestCaptor.capture());
+        visibilityExtended.countDown();
+        final ChangeMessageVisibilityBatchRequest request = visibilityRequestCaptor.getValue();
+        assertThat(request.queueUrl(), is(QUEUE_URL));
+        assertThat(request.entries(), hasSize(1));
+        assertThat(request.entries().get(0).receiptHandle(), is("receipt-" + PAYLOAD_1));
+        assertThat(request.entries().get(0).visibilityTimeout(), is(2));
+    }
+
+    @Test
+    public void shouldExtendVisibilityTimeoutOfProcessedMessagesWaitingForSlowMessage() throws Exception {
+        //given
+        final List<software.amazon.awssdk.services.sqs.model.Message> sqsMessages = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            sqsMessages.add(sqsMessage("{\"data\":\"" + i + "\"}"));
+        }
+        addSqsMessagesToQueue(sqsMessages.toArray(new software.amazon.awssdk.services.sqs.model.Message[0]));
+        when(sqsAsyncClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(completedFuture(ChangeMessageVisibilityBatchResponse.builder().build()));
+        final CountDownLatch slowMessageReleased = new CountDownLatch(1);
+        sqsQueueReceiver = new SqsMessageQueueReceiverEndpoint("channelName", sqsAsyncClient, objectMapper, null, newCachedThreadPool(), 1, 4, 2);
+        sqsQueueReceiver.register(MessageConsumer.of(".*", String.class, (message) -> {
+            if (message.getPayload().equals(sqsMessages.get(0).body())) {
+                try {
+                    slowMessageReleased.await(10, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            messages.add(message);
+        }));
+
+        // when: consumption is started
+        sqsQueueReceiver.consume();
+        await()
+                .atMost(Duration.FIVE_SECONDS)
+                .until(() -> messages.size() == 9);
+        clearInvocations(sqsAsyncClient);
+
+        // then: the processed messages are still extended while the slow message is processed
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> visibilityRequestCaptor = ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+        verify(sqsAsyncClient, timeout(3000).atLeastOnce()).changeMessageVisibilityBatch(visibilityRequestCaptor.capture());
+        verify(sqsAsyncClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        assertThat(visibilityRequestCaptor.getValue().entries(), hasSize(10));
+
+        // and: all messages are deleted after the slow message is processed
+        slowMessageReleased.countDown();
+        ArgumentCaptor<DeleteMessageBatchRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(sqsAsyncClient, timeout(3000).times(1)).deleteMessageBatch(deleteRequestCaptor.capture());
+        assertThat(deleteRequestCaptor.getValue().entries(), hasSize(10));
     }
 
     @Test
@@ -206,7 +326,7 @@ public class SqsMessageQueueReceiverEndpointTest {
     public void shouldShutdownServiceOnRuntimeExceptionOnDelete() throws Throwable {
         //given
         addSqsMessagesToQueue(sqsMessage(PAYLOAD_1));
-        when(sqsAsyncClient.deleteMessage(any(DeleteMessageRequest.class))).thenThrow(RuntimeException.class); // could be SdkException, SQSException etc.
+        when(sqsAsyncClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class))).thenThrow(RuntimeException.class); // could be SdkException, SQSException etc.
 
         //then
         expectExceptionToBeThrownAndWithDeleteMessage();
@@ -214,29 +334,25 @@ public class SqsMessageQueueReceiverEndpointTest {
     }
 
     private void expectExceptionToBeThrownAndNotDeleteMessage() throws Throwable{
-        ArgumentCaptor<DeleteMessageRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageRequest.class);
-
         try {
             sqsQueueReceiver.consume().get();
             fail();
         } catch (ExecutionException e) {
             // and:
-            // expect delete message to be executed
-            verify(sqsAsyncClient, never()).deleteMessage(deleteRequestCaptor.capture());
+            // expect delete message not to be executed
+            verify(sqsAsyncClient, never()).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
             throw e.getCause();
         }
     }
 
     private void expectExceptionToBeThrownAndWithDeleteMessage() throws Throwable{
-        ArgumentCaptor<DeleteMessageRequest> deleteRequestCaptor = ArgumentCaptor.forClass(DeleteMessageRequest.class);
-
         try {
             sqsQueueReceiver.consume().get();
             fail();
         } catch (ExecutionException e) {
             // and:
             // expect delete message to be executed
-            verify(sqsAsyncClient, times(1)).deleteMessage(deleteRequestCaptor.capture());
+            verify(sqsAsyncClient, times(1)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
             throw e.getCause();
         }
     }
@@ -254,12 +370,15 @@ public class SqsMessageQueueReceiverEndpointTest {
                 .thenReturn(completedFuture(response1))
                 //add empty response to not add messages within loop
                 .thenReturn(CompletableFuture.completedFuture(emptyResponse));
+        when(sqsAsyncClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(completedFuture(DeleteMessageBatchResponse.builder().build()));
     }
 
     private software.amazon.awssdk.services.sqs.model.Message sqsMessage(String body) {
         return software.amazon.awssdk.services.sqs.model.Message
                 .builder()
                 .body(body)
+                .receiptHandle("receipt-" + body)
                 .build();
     }
 }
\ No newline at end of file
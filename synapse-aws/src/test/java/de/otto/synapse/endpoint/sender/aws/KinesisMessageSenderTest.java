@@ -3,8 +3,11 @@ package de.otto.synapse.endpoint.sender.aws;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.base.Strings;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
+import de.otto.synapse.endpoint.receiver.aws.KinesisShardDiscovery;
 import de.otto.synapse.message.Message;
+import de.otto.synapse.message.aws.KinesisAggregatedRecord;
 import de.otto.synapse.translator.JsonStringMessageTranslator;
 import de.otto.synapse.translator.MessageTranslator;
 import org.junit.Before;
@@ -15,20 +18,32 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
-import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
-import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
-import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
-import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+import software.amazon.awssdk.services.kinesis.model.*;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static de.otto.synapse.codec.PayloadCompression.DEFLATE;
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.codec.PayloadCompression.decompress;
+import static de.otto.synapse.codec.PayloadCompression.isCompressed;
 import static de.otto.synapse.endpoint.MessageInterceptorRegistration.allChannelsWith;
+import static de.otto.synapse.endpoint.sender.aws.KinesisHashKeyRanges.hashKeyOf;
+import static de.otto.synapse.message.aws.KinesisAggregatedRecord.deaggregate;
 import static de.otto.synapse.message.Message.message;
 import static java.lang.String.valueOf;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -78,6 +93,32 @@ public class KinesisMessageSenderTest {
 
     }
 
+    @Test
+    public void shouldSendCompressedEvent() throws Exception {
+        // given
+        final KinesisMessageSender compressingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, DEFLATE);
+        final String value = Strings.repeat("banana", 1000);
+        final Message<ExampleJsonObject> message = message("someKey", new ExampleJsonObject(value));
+
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        compressingMessageSender.send(message);
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final ByteBuffer data = putRecordsRequestCaptor.getValue().records().get(0).data();
+        final byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        assertThat(isCompressed(bytes), is(true));
+
+        ExampleJsonObject jsonObject = objectMapper.readValue(decompress(bytes), ExampleJsonObject.class);
+        assertThat(jsonObject.value, is(value));
+    }
+
     @Test
     public void shouldInterceptMessages() throws IOException {
         // given
@@ -221,6 +262,203 @@ public class KinesisMessageSenderTest {
         assertThat(putRecordsRequestCaptor.getValue().records().get(0).data(), is(ByteBuffer.allocateDirect(0)));
     }
 
+    @Test
+    public void shouldAggregateMessagesWrittenToTheSameShard() {
+        // given
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true);
+        listShardsResponse(someShard("shard1", BigInteger.ZERO));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        aggregatingMessageSender.sendBatch(someEvents(100));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final List<PutRecordsRequestEntry> records = putRecordsRequestCaptor.getValue().records();
+        assertThat(records, hasSize(1));
+        assertThat(records.get(0).partitionKey(), is("0"));
+        final List<KinesisAggregatedRecord.UserRecord> userRecords = deaggregate(records.get(0).data());
+        assertThat(userRecords, hasSize(100));
+        assertThat(userRecords.get(42).getPartitionKey(), is("42"));
+        assertThat(new String(userRecords.get(42).getData()), is("\"42\""));
+    }
+
+    @Test
+    public void shouldOnlyAggregateMessagesWrittenToTheSameShard() {
+        // given
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true);
+        final BigInteger middle = BigInteger.ONE.shiftLeft(127);
+        listShardsResponse(someShard("shard1", BigInteger.ZERO), someShard("shard2", middle));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        aggregatingMessageSender.sendBatch(someEvents(100));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final List<PutRecordsRequestEntry> records = putRecordsRequestCaptor.getValue().records();
+        assertThat(records, hasSize(2));
+        records.forEach(record -> {
+            final boolean firstHalf = hashKeyOf(record.partitionKey()).compareTo(middle) < 0;
+            deaggregate(record.data()).forEach(userRecord ->
+                    assertThat(hashKeyOf(userRecord.getPartitionKey()).compareTo(middle) < 0, is(firstHalf)));
+        });
+    }
+
+    @Test
+    public void shouldTakeShardsFromSharedShardDiscovery() {
+        // given
+        final KinesisShardDiscovery shardDiscovery = mock(KinesisShardDiscovery.class);
+        final BigInteger middle = BigInteger.ONE.shiftLeft(127);
+        when(shardDiscovery.getShards("test")).thenReturn(asList(someShard("shard1", BigInteger.ZERO), someShard("shard2", middle)));
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true, null, 1, null, null, shardDiscovery);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        aggregatingMessageSender.sendBatch(someEvents(100));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        assertThat(putRecordsRequestCaptor.getValue().records(), hasSize(2));
+        verify(kinesisClient, never()).listShards(any(ListShardsRequest.class));
+        verify(kinesisClient, never()).describeStream(any(DescribeStreamRequest.class));
+    }
+
+    @Test
+    public void shouldRouteAggregatedRecordsUsingExplicitHashKeyOfShard() {
+        // given
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true);
+        final BigInteger middle = BigInteger.ONE.shiftLeft(127);
+        listShardsResponse(someShard("shard1", BigInteger.ZERO), someShard("shard2", middle));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        aggregatingMessageSender.sendBatch(someEvents(100));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final List<PutRecordsRequestEntry> records = putRecordsRequestCaptor.getValue().records();
+        assertThat(records, hasSize(2));
+        records.forEach(record -> {
+            final String expectedHashKey = hashKeyOf(record.partitionKey()).compareTo(middle) < 0
+                    ? BigInteger.ZERO.toString()
+                    : middle.toString();
+            assertThat(record.explicitHashKey(), is(expectedHashKey));
+        });
+    }
+
+    @Test
+    public void shouldLimitSizeOfAggregatedRecords() {
+        // given
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true);
+        listShardsResponse(someShard("shard1", BigInteger.ZERO));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+        final String payload = Strings.repeat("x", 1000);
+
+        // when
+        aggregatingMessageSender.sendBatch(IntStream.range(0, 200).mapToObj(i -> message(valueOf(i), payload)));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final List<PutRecordsRequestEntry> records = putRecordsRequestCaptor.getValue().records();
+        assertThat(records.size(), is(greaterThan(1)));
+        records.forEach(record -> assertThat(record.data().remaining(), is(lessThanOrEqualTo(KinesisMessageSender.MAX_AGGREGATED_RECORD_SIZE))));
+        assertThat(records.stream().mapToInt(record -> deaggregate(record.data()).size()).sum(), is(200));
+    }
+
+    @Test
+    public void shouldNotAggregateSingleMessage() throws Exception {
+        // given
+        final KinesisMessageSender aggregatingMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, true);
+        listShardsResponse(someShard("shard1", BigInteger.ZERO));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        aggregatingMessageSender.sendBatch(Stream.of(message("someKey", new ExampleJsonObject("banana"))));
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final PutRecordsRequestEntry record = putRecordsRequestCaptor.getValue().records().get(0);
+        assertThat(deaggregate(record.data()), is(nullValue()));
+        assertThat(objectMapper.readValue(new ByteBufferBackedInputStream(record.data()), ExampleJsonObject.class).value, is("banana"));
+    }
+
+    @Test
+    public void shouldSendAsyncMessagesInSingleRequestIfLingerTimeIsConfigured() throws Exception {
+        // given
+        final KinesisMessageSender lingeringMessageSender = new KinesisMessageSender("test", messageTranslator, kinesisClient, NONE, false, Duration.ofMillis(100));
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        final CompletableFuture<Void> first = lingeringMessageSender.sendAsync(message("first", new ExampleJsonObject("apple")));
+        final CompletableFuture<Void> second = lingeringMessageSender.sendAsync(message("second", new ExampleJsonObject("banana")));
+        CompletableFuture.allOf(first, second).get(2, SECONDS);
+        lingeringMessageSender.close();
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequestCaptor.capture());
+        final List<PutRecordsRequestEntry> records = putRecordsRequestCaptor.getValue().records();
+        assertThat(records, hasSize(2));
+        assertThat(records.get(0).partitionKey(), is("first"));
+        assertThat(records.get(1).partitionKey(), is("second"));
+    }
+
+    @Test
+    public void shouldSendAsyncMessageImmediatelyWithoutLingerTime() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build());
+
+        // when
+        final CompletableFuture<Void> future = kinesisMessageSender.sendAsync(message("someKey", new ExampleJsonObject("banana")));
+
+        // then
+        assertThat(future.isDone(), is(true));
+        verify(kinesisClient).putRecords(any(PutRecordsRequest.class));
+    }
+
+    private void listShardsResponse(final Shard... shards) {
+        when(kinesisClient.listShards(any(ListShardsRequest.class))).thenReturn(ListShardsResponse.builder()
+                .shards(shards)
+                .build());
+    }
+
+    private Shard someShard(final String shardId, final BigInteger startingHashKey) {
+        return Shard.builder()
+                .shardId(shardId)
+                .hashKeyRange(HashKeyRange.builder()
+                        .startingHashKey(startingHashKey.toString())
+                        .endingHashKey("340282366920938463463374607431768211455")
+                        .build())
+                .sequenceNumberRange(SequenceNumberRange.builder()
+                        .startingSequenceNumber("0000")
+                        .build())
+                .build();
+    }
+
     private Stream<Message<String>> someEvents(int n) {
         return IntStream.range(0, n)
                 .mapToObj(i -> message(valueOf(i), Integer.toString(i)));
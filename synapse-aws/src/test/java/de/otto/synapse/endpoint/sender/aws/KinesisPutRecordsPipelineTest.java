@@ -0,0 +1,163 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.KinesisException;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class KinesisPutRecordsPipelineTest {
+
+    private final KinesisClient kinesisClient = mock(KinesisClient.class);
+    private final RetryPutRecordsKinesisClient retryClient = new RetryPutRecordsKinesisClient(kinesisClient, false);
+    private final ExecutorService executor = newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldSplitRequestsByNumberOfRecords() {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline("test", retryClient);
+
+        // when
+        for (int i = 0; i < 2 * KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST + 1; ++i) {
+            pipeline.add(someEntry("key-" + i, "payload"), "key-" + i);
+        }
+        pipeline.finish();
+
+        // then
+        final List<PutRecordsRequest> requests = capturedRequests(3);
+        assertThat(requests.get(0).records(), hasSize(KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST));
+        assertThat(requests.get(1).records(), hasSize(KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST));
+        assertThat(requests.get(2).records(), hasSize(1));
+        assertThat(requests.get(2).streamName(), is("test"));
+    }
+
+    @Test
+    public void shouldSplitRequestsBySize() {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline("test", retryClient);
+
+        // when
+        for (int i = 0; i < 11; ++i) {
+            pipeline.add(PutRecordsRequestEntry.builder()
+                    .partitionKey("key-" + i)
+                    .data(ByteBuffer.allocate(512 * 1024))
+                    .build(), "key-" + i);
+        }
+        pipeline.finish();
+
+        // then
+        final List<PutRecordsRequest> requests = capturedRequests(2);
+        assertThat(requests.get(0).records(), hasSize(9));
+        assertThat(requests.get(1).records(), hasSize(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRecordsExceedingMaxRecordSize() {
+        // given
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline("test", retryClient);
+
+        // when
+        pipeline.add(PutRecordsRequestEntry.builder()
+                .partitionKey("key")
+                .data(ByteBuffer.allocate((int) KinesisPutRecordsPipeline.MAX_BYTES_PER_RECORD))
+                .build(), "key");
+    }
+
+    @Test
+    public void shouldSendRequestsInParallelKeepingOrderOfKeys() {
+        // given
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<PutRecordsRequest> requests = new ArrayList<>();
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            synchronized (requests) {
+                requests.add(invocation.getArgument(0));
+            }
+            inFlight.decrementAndGet();
+            return successfulResponse();
+        });
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline("test", retryClient, 4, executor);
+
+        // when
+        for (int i = 0; i < 10000; ++i) {
+            final String key = "key-" + (i % 20);
+            pipeline.add(someEntry(key, String.valueOf(i)), key);
+        }
+        pipeline.finish();
+
+        // then
+        assertThat(maxInFlight.get(), is(greaterThan(1)));
+        final Map<String, Integer> lastSequencePerKey = new HashMap<>();
+        final AtomicInteger numberOfRecords = new AtomicInteger();
+        requests.forEach(request -> request.records().forEach(record -> {
+            final int sequence = Integer.parseInt(UTF_8.decode(record.data().duplicate()).toString());
+            final Integer previous = lastSequencePerKey.put(record.partitionKey(), sequence);
+            if (previous != null) {
+                assertThat(sequence, is(greaterThan(previous)));
+            }
+            numberOfRecords.incrementAndGet();
+        }));
+        assertThat(numberOfRecords.get(), is(10000));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowExceptionOfFailedRequestOnFinish() {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenThrow(new KinesisException("forced test exception"));
+        final KinesisPutRecordsPipeline pipeline = new KinesisPutRecordsPipeline("test", retryClient, 4, executor);
+        pipeline.add(someEntry("key", "payload"), "key");
+
+        // when
+        pipeline.finish();
+    }
+
+    private List<PutRecordsRequest> capturedRequests(final int expectedNumberOfRequests) {
+        final ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient, times(expectedNumberOfRequests)).putRecords(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static PutRecordsRequestEntry someEntry(final String key, final String payload) {
+        return PutRecordsRequestEntry.builder()
+                .partitionKey(key)
+                .data(ByteBuffer.wrap(payload.getBytes(UTF_8)))
+                .build();
+    }
+
+    private static PutRecordsResponse successfulResponse() {
+        return PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.KinesisException;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
+import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class KinesisRecordBatcherTest {
+
+    private final KinesisClient kinesisClient = mock(KinesisClient.class);
+    private KinesisRecordBatcher recordBatcher;
+
+    @After
+    public void tearDown() {
+        if (recordBatcher != null) {
+            recordBatcher.close();
+        }
+    }
+
+    @Test
+    public void shouldSendRecordsAddedDuringLingerTimeInSingleRequest() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofMillis(100));
+
+        // when
+        final CompletableFuture<Void> first = recordBatcher.add(someEntry("first"));
+        final CompletableFuture<Void> second = recordBatcher.add(someEntry("second"));
+        final CompletableFuture<Void> third = recordBatcher.add(someEntry("third"));
+        CompletableFuture.allOf(first, second, third).get(2, SECONDS);
+
+        // then
+        final List<PutRecordsRequest> requests = capturedRequests(1);
+        assertThat(requests.get(0).streamName(), is("test"));
+        assertThat(partitionKeysOf(requests.get(0)), contains("first", "second", "third"));
+    }
+
+    @Test
+    public void shouldSendFullBatchWithoutWaitingForLingerTime() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofHours(1));
+
+        // when
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST + 1; ++i) {
+            futures.add(recordBatcher.add(someEntry("key-" + i)));
+        }
+        futures.get(0).get(2, SECONDS);
+
+        // then
+        assertThat(capturedRequests(1).get(0).records(), hasSize(KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST));
+        assertThat(futures.get(KinesisPutRecordsPipeline.MAX_RECORDS_PER_REQUEST).isDone(), is(false));
+    }
+
+    @Test
+    public void shouldSplitBatchesExceedingMaxBytesPerRequest() {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofHours(1));
+
+        // when
+        for (int i = 0; i < 6; ++i) {
+            recordBatcher.add(PutRecordsRequestEntry.builder()
+                    .partitionKey("key-" + i)
+                    .data(ByteBuffer.allocate(1024 * 1024))
+                    .build());
+        }
+        recordBatcher.close();
+
+        // then
+        final List<PutRecordsRequest> requests = capturedRequests(2);
+        assertThat(requests.get(0).records(), hasSize(4));
+        assertThat(requests.get(1).records(), hasSize(2));
+    }
+
+    @Test
+    public void shouldSendPendingRecordsOnClose() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(successfulResponse());
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofHours(1));
+        final CompletableFuture<Void> future = recordBatcher.add(someEntry("first"));
+
+        // when
+        recordBatcher.close();
+
+        // then
+        future.get(2, SECONDS);
+        assertThat(partitionKeysOf(capturedRequests(1).get(0)), contains("first"));
+    }
+
+    @Test
+    public void shouldFailAllRecordsOfBatchIfSendingFails() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenThrow(new KinesisException("forced test exception"));
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofMillis(10));
+
+        // when
+        final CompletableFuture<Void> first = recordBatcher.add(someEntry("first"));
+        final CompletableFuture<Void> second = recordBatcher.add(someEntry("second"));
+
+        // then
+        assertThat(first.handle((v, t) -> t).get(2, SECONDS), instanceOf(IllegalStateException.class));
+        assertThat(second.handle((v, t) -> t).get(2, SECONDS), instanceOf(IllegalStateException.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectRecordsAfterClose() {
+        // given
+        recordBatcher = new KinesisRecordBatcher("test", new RetryPutRecordsKinesisClient(kinesisClient, false), Duration.ofMillis(10));
+        recordBatcher.close();
+
+        // when
+        recordBatcher.add(someEntry("first"));
+    }
+
+    private List<PutRecordsRequest> capturedRequests(final int expectedNumberOfRequests) {
+        final ArgumentCaptor<PutRecordsRequest> captor = ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesisClient, timeout(2000).times(expectedNumberOfRequests)).putRecords(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static List<String> partitionKeysOf(final PutRecordsRequest request) {
+        final List<String> keys = new ArrayList<>();
+        request.records().forEach(entry -> keys.add(entry.partitionKey()));
+        return keys;
+    }
+
+    private static PutRecordsRequestEntry someEntry(final String key) {
+        return PutRecordsRequestEntry.builder()
+                .partitionKey(key)
+                .data(ByteBuffer.wrap(("payload of " + key).getBytes(UTF_8)))
+                .build();
+    }
+
+    private static PutRecordsResponse successfulResponse() {
+        return PutRecordsResponse.builder()
+                .failedRecordCount(0)
+                .records(PutRecordsResultEntry.builder().build())
+                .build();
+    }
+}
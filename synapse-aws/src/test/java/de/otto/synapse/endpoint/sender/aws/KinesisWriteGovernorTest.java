@@ -0,0 +1,97 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import de.otto.synapse.testsupport.TestClock;
+import org.junit.Test;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KinesisWriteGovernorTest {
+
+    private final TestClock clock = TestClock.now();
+    private final KinesisWriteGovernor writeGovernor = new KinesisWriteGovernor(100, 50, 0.5, clock);
+
+    @Test
+    public void shouldNotLimitWritesBeforeRecordsAreThrottled() {
+        // when
+        for (int i = 0; i < 100; ++i) {
+            // then
+            assertThat(writeGovernor.reserveWrite("some-stream", 500), is(0L));
+        }
+        assertThat(writeGovernor.getRecordsPerSecond("some-stream"), is(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void shouldLimitWritesToHalfOfObservedRateAfterThrottling() {
+        // given
+        writeGovernor.reserveWrite("some-stream", 2000);
+        clock.proceed(1000, MILLIS);
+
+        // when
+        writeGovernor.recordResponse("some-stream", 10);
+
+        // then
+        assertThat(writeGovernor.getRecordsPerSecond("some-stream"), is(1000.0));
+        assertThat(writeGovernor.reserveWrite("some-stream", 500), is(500L));
+        assertThat(writeGovernor.reserveWrite("some-stream", 500), is(1000L));
+    }
+
+    @Test
+    public void shouldIncreaseRateAdditivelyAfterSuccessfulWrites() {
+        // given
+        writeGovernor.reserveWrite("some-stream", 2000);
+        clock.proceed(1000, MILLIS);
+        writeGovernor.throttled("some-stream");
+
+        // when
+        writeGovernor.recordResponse("some-stream", 0);
+        writeGovernor.recordResponse("some-stream", 0);
+
+        // then
+        assertThat(writeGovernor.getRecordsPerSecond("some-stream"), is(1100.0));
+    }
+
+    @Test
+    public void shouldDecreaseRateMultiplicativelyAtMostOncePerInterval() {
+        // given
+        writeGovernor.reserveWrite("some-stream", 2000);
+        clock.proceed(1000, MILLIS);
+        writeGovernor.throttled("some-stream");
+
+        // when
+        writeGovernor.throttled("some-stream");
+        clock.proceed(KinesisWriteGovernor.DECREASE_INTERVAL_MILLIS, MILLIS);
+        writeGovernor.throttled("some-stream");
+
+        // then
+        assertThat(writeGovernor.getRecordsPerSecond("some-stream"), is(500.0));
+    }
+
+    @Test
+    public void shouldNotDecreaseRateBelowMinimum() {
+        // given
+        writeGovernor.reserveWrite("some-stream", 10);
+        clock.proceed(1000, MILLIS);
+
+        // when
+        writeGovernor.throttled("some-stream");
+
+        // then
+        assertThat(writeGovernor.getRecordsPerSecond("some-stream"), is(100.0));
+    }
+
+    @Test
+    public void shouldAdaptRatesOfStreamsIndependently() {
+        // given
+        writeGovernor.reserveWrite("some-stream", 2000);
+        clock.proceed(1000, MILLIS);
+
+        // when
+        writeGovernor.throttled("some-stream");
+
+        // then
+        assertThat(writeGovernor.getRecordsPerSecond("other-stream"), is(Double.POSITIVE_INFINITY));
+        assertThat(writeGovernor.reserveWrite("other-stream", 500), is(0L));
+    }
+}
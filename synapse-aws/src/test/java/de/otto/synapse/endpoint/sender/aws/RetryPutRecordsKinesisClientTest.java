@@ -1,17 +1,34 @@
 package de.otto.synapse.endpoint.sender.aws;
 
+import de.otto.synapse.testsupport.TestClock;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.kinesis.KinesisClient;
+import software.amazon.awssdk.services.kinesis.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequest;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsRequestEntry;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsResponse;
 import software.amazon.awssdk.services.kinesis.model.PutRecordsResultEntry;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -147,4 +164,212 @@ public class RetryPutRecordsKinesisClientTest {
         }
         fail();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldRetryRecordsFailingWithInternalFailure() throws Exception {
+        // given
+        PutRecordsRequest putRecordsRequest = PutRecordsRequest.builder().streamName("test-stream").records(asList(
+                PutRecordsRequestEntry.builder().partitionKey("1").build(),
+                PutRecordsRequestEntry.builder().partitionKey("2").build()
+        )).build();
+        when(kinesisClient.putRecords(putRecordsRequest)).thenReturn(PutRecordsResponse.builder().failedRecordCount(1).records(asList(
+                PutRecordsResultEntry.builder().errorCode(null).build(),
+                PutRecordsResultEntry.builder().errorCode("InternalFailure").build()
+        )).build());
+        PutRecordsRequest expectedRetriedPutRecordsRequest = PutRecordsRequest.builder().streamName("test-stream").records(
+                PutRecordsRequestEntry.builder().partitionKey("2").build()
+        ).build();
+        when(kinesisClient.putRecords(expectedRetriedPutRecordsRequest)).thenReturn(PutRecordsResponse.builder().failedRecordCount(0).records(
+                PutRecordsResultEntry.builder().errorCode(null).build()
+        ).build());
+
+        // when
+        retryPutRecordsKinesisClient.putRecords(() -> putRecordsRequest);
+
+        // then
+        verify(kinesisClient).putRecords(putRecordsRequest);
+        verify(kinesisClient).putRecords(expectedRetriedPutRecordsRequest);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotRetryRecordsFailingWithNonRetryableErrorCode() throws Exception {
+        // given
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenReturn(PutRecordsResponse.builder().failedRecordCount(1).records(asList(
+                PutRecordsResultEntry.builder().errorCode(null).build(),
+                PutRecordsResultEntry.builder().errorCode("KMSAccessDeniedException").build()
+        )).build());
+
+        // when
+        PutRecordsRequest putRecordsRequest = PutRecordsRequest.builder().records(asList(
+                PutRecordsRequestEntry.builder().partitionKey("1").build(),
+                PutRecordsRequestEntry.builder().partitionKey("2").build()
+        )).build();
+        try {
+            retryPutRecordsKinesisClient.putRecords(() -> putRecordsRequest);
+        } catch (Exception e) {
+            // then
+            verify(kinesisClient, times(1)).putRecords(putRecordsRequest);
+            throw e;
+        }
+        fail();
+    }
+
+    @Test
+    public void shouldScheduleRetryWithoutBlockingCaller() throws Exception {
+        // given
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient, true, scheduler, null, Runnable::run);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class)))
+                .thenThrow(new SdkClientException("Unable to execute HTTP request: The target server failed to respond"))
+                .thenReturn(PutRecordsResponse.builder().failedRecordCount(0).records(emptyList()).build());
+        PutRecordsRequest putRecordsRequest = PutRecordsRequest.builder().records(emptyList()).build();
+
+        // when
+        final CompletableFuture<Void> result = retryPutRecordsKinesisClient.putRecordsAsync(() -> putRecordsRequest);
+
+        // then
+        assertThat(result.isDone(), is(false));
+        final ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler).schedule(retry.capture(), delay.capture(), eq(MILLISECONDS));
+        assertThat(delay.getValue(), is(both(greaterThanOrEqualTo(RetryPutRecordsKinesisClient.BASE_DELAY_MILLIS)).and(lessThanOrEqualTo(3 * RetryPutRecordsKinesisClient.BASE_DELAY_MILLIS))));
+
+        // when
+        retry.getValue().run();
+
+        // then
+        assertThat(result.isDone(), is(true));
+        assertThat(result.isCompletedExceptionally(), is(false));
+        verify(kinesisClient, times(2)).putRecords(putRecordsRequest);
+    }
+
+    @Test
+    public void shouldDelayRequestIfStreamIsLimitedByWriteGovernor() throws Exception {
+        // given
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        final KinesisWriteGovernor writeGovernor = new KinesisWriteGovernor(100, 50, 0.5, TestClock.now());
+        writeGovernor.throttled("test-stream");
+        retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient, true, scheduler, writeGovernor);
+        PutRecordsRequest putRecordsRequest = PutRecordsRequest.builder().streamName("test-stream").records(
+                PutRecordsRequestEntry.builder().partitionKey("1").build()
+        ).build();
+
+        // when
+        final CompletableFuture<Void> result = retryPutRecordsKinesisClient.putRecordsAsync(() -> putRecordsRequest);
+
+        // then
+        assertThat(result.isDone(), is(false));
+        verify(scheduler).schedule(any(Runnable.class), eq(10L), eq(MILLISECONDS));
+        verifyZeroInteractions(kinesisClient);
+    }
+
+    @Test
+    public void shouldReportThrottledRecordsToWriteGovernor() throws Exception {
+        // given
+        final KinesisWriteGovernor writeGovernor = mock(KinesisWriteGovernor.class);
+        retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient, false, mock(ScheduledExecutorService.class), writeGovernor);
+        PutRecordsRequest putRecordsRequest = PutRecordsRequest.builder().streamName("test-stream").records(asList(
+                PutRecordsRequestEntry.builder().partitionKey("1").build(),
+                PutRecordsRequestEntry.builder().partitionKey("2").build()
+        )).build();
+        when(kinesisClient.putRecords(putRecordsRequest)).thenReturn(PutRecordsResponse.builder().failedRecordCount(1).records(asList(
+                PutRecordsResultEntry.builder().errorCode(null).build(),
+                PutRecordsResultEntry.builder().errorCode("ProvisionedThroughputExceededException").build()
+        )).build());
+
+        // when
+        retryPutRecordsKinesisClient.putRecordsAsync(() -> putRecordsRequest);
+
+        // then
+        verify(writeGovernor).reserveWrite("test-stream", 2);
+        verify(writeGovernor).recordResponse("test-stream", 1);
+    }
+
+    @Test
+    public void shouldNotDelayRetriesOfOtherStreamsWhileRetryIsBlocked() throws Exception {
+        // given
+        final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor();
+        final ExecutorService requestExecutor = newCachedThreadPool();
+        final CountDownLatch slowStreamLatch = new CountDownLatch(1);
+        final PutRecordsRequest slowRequest = PutRecordsRequest.builder().streamName("slow-stream").records(emptyList()).build();
+        final PutRecordsRequest fastRequest = PutRecordsRequest.builder().streamName("fast-stream").records(emptyList()).build();
+        final PutRecordsResponse success = PutRecordsResponse.builder().failedRecordCount(0).records(emptyList()).build();
+        when(kinesisClient.putRecords(slowRequest))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build())
+                .thenAnswer(invocation -> {
+                    slowStreamLatch.await();
+                    return success;
+                });
+        when(kinesisClient.putRecords(fastRequest))
+                .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build())
+                .thenReturn(success);
+        final RetryPutRecordsKinesisClient slowStreamClient = new RetryPutRecordsKinesisClient(kinesisClient, true, scheduler, null, requestExecutor);
+        final RetryPutRecordsKinesisClient fastStreamClient = new RetryPutRecordsKinesisClient(kinesisClient, true, scheduler, null, requestExecutor);
+        try {
+            // when
+            final CompletableFuture<Void> slowResult = slowStreamClient.putRecordsAsync(() -> slowRequest);
+            final CompletableFuture<Void> fastResult = fastStreamClient.putRecordsAsync(() -> fastRequest);
+
+            // then
+            fastResult.get(2, SECONDS);
+            assertThat(slowResult.isDone(), is(false));
+
+            // when
+            slowStreamLatch.countDown();
+
+            // then
+            slowResult.get(2, SECONDS);
+            verify(kinesisClient, times(2)).putRecords(slowRequest);
+            verify(kinesisClient, times(2)).putRecords(fastRequest);
+        } finally {
+            slowStreamLatch.countDown();
+            scheduler.shutdownNow();
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotDelayPacedAttemptsOfOtherThrottledStreamsWhileAttemptIsBlocked() throws Exception {
+        // given
+        final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor();
+        final ExecutorService requestExecutor = newCachedThreadPool();
+        final KinesisWriteGovernor writeGovernor = new KinesisWriteGovernor(100, 50, 0.5, TestClock.now());
+        writeGovernor.throttled("slow-stream");
+        writeGovernor.throttled("fast-stream");
+        final CountDownLatch slowStreamLatch = new CountDownLatch(1);
+        final PutRecordsRequest slowRequest = PutRecordsRequest.builder().streamName("slow-stream").records(
+                PutRecordsRequestEntry.builder().partitionKey("1").build()
+        ).build();
+        final PutRecordsRequest fastRequest = PutRecordsRequest.builder().streamName("fast-stream").records(
+                PutRecordsRequestEntry.builder().partitionKey("1").build()
+        ).build();
+        final PutRecordsResponse success = PutRecordsResponse.builder().failedRecordCount(0).records(
+                PutRecordsResultEntry.builder().build()
+        ).build();
+        when(kinesisClient.putRecords(slowRequest)).thenAnswer(invocation -> {
+            slowStreamLatch.await();
+            return success;
+        });
+        when(kinesisClient.putRecords(fastRequest)).thenReturn(success);
+        retryPutRecordsKinesisClient = new RetryPutRecordsKinesisClient(kinesisClient, true, scheduler, writeGovernor, requestExecutor);
+        try {
+            // when
+            final CompletableFuture<Void> slowResult = retryPutRecordsKinesisClient.putRecordsAsync(() -> slowRequest);
+            final CompletableFuture<Void> fastResult = retryPutRecordsKinesisClient.putRecordsAsync(() -> fastRequest);
+
+            // then
+            fastResult.get(2, SECONDS);
+            assertThat(slowResult.isDone(), is(false));
+
+            // when
+            slowStreamLatch.countDown();
+
+            // then
+            slowResult.get(2, SECONDS);
+        } finally {
+            slowStreamLatch.countDown();
+            scheduler.shutdownNow();
+            requestExecutor.shutdownNow();
+        }
+    }
+}
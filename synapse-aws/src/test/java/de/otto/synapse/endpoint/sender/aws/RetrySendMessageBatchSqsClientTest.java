@@ -0,0 +1,131 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SQSAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RetrySendMessageBatchSqsClientTest {
+
+    private final SQSAsyncClient sqsAsyncClient = mock(SQSAsyncClient.class);
+    private final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor();
+    private final RetrySendMessageBatchSqsClient retryClient = new RetrySendMessageBatchSqsClient(sqsAsyncClient, 2, false, scheduler);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldRetryEntriesFailedWithoutSenderFault() throws Exception {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder()
+                        .failed(errorEntry("1", false))
+                        .build()))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder().build()));
+
+        // when
+        final List<BatchResultErrorEntry> failedEntries = retryClient
+                .sendMessageBatch("https://example.com/test", asList(someEntry("0"), someEntry("1"), someEntry("2")))
+                .get(2, SECONDS);
+
+        // then
+        assertThat(failedEntries, is(empty()));
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsAsyncClient, times(2)).sendMessageBatch(captor.capture());
+        assertThat(idsOf(captor.getAllValues().get(1)), contains("1"));
+        assertThat(captor.getAllValues().get(1).queueUrl(), is("https://example.com/test"));
+    }
+
+    @Test
+    public void shouldNotRetryEntriesFailedWithSenderFault() throws Exception {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder()
+                        .failed(errorEntry("0", true))
+                        .build()));
+
+        // when
+        final List<BatchResultErrorEntry> failedEntries = retryClient
+                .sendMessageBatch("https://example.com/test", asList(someEntry("0"), someEntry("1")))
+                .get(2, SECONDS);
+
+        // then
+        assertThat(RetrySendMessageBatchSqsClient.idsOf(failedEntries), contains("0"));
+        verify(sqsAsyncClient, times(1)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    public void shouldFailAfterMaxRetriesOfFailedRequests() throws Exception {
+        // given
+        final CompletableFuture<SendMessageBatchResponse> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new SdkClientException("forced test exception"));
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(failedRequest);
+
+        // when
+        try {
+            retryClient.sendMessageBatch("https://example.com/test", singletonList(someEntry("0"))).get(2, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            // then
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        verify(sqsAsyncClient, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectBatchesExceedingMaxEntries() {
+        // given
+        final List<SendMessageBatchRequestEntry> entries = asList(
+                someEntry("0"), someEntry("1"), someEntry("2"), someEntry("3"), someEntry("4"), someEntry("5"),
+                someEntry("6"), someEntry("7"), someEntry("8"), someEntry("9"), someEntry("10"));
+
+        // when
+        retryClient.sendMessageBatch("https://example.com/test", entries);
+    }
+
+    private static List<String> idsOf(final SendMessageBatchRequest request) {
+        return request.entries().stream().map(SendMessageBatchRequestEntry::id).collect(toList());
+    }
+
+    private static SendMessageBatchRequestEntry someEntry(final String id) {
+        return SendMessageBatchRequestEntry.builder()
+                .id(id)
+                .messageBody("{\"value\":\"" + id + "\"}")
+                .build();
+    }
+
+    private static BatchResultErrorEntry errorEntry(final String id, final boolean senderFault) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .senderFault(senderFault)
+                .code(senderFault ? "InvalidMessageContents" : "InternalError")
+                .build();
+    }
+}
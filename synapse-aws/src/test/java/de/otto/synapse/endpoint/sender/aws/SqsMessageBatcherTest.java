@@ -0,0 +1,134 @@
+package de.otto.synapse.endpoint.sender.aws;
+
+import de.otto.synapse.message.aws.SqsMessageBody;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.sqs.SQSAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.message.Message.message;
+import static de.otto.synapse.message.aws.SqsMessage.sqsMessageBody;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SqsMessageBatcherTest {
+
+    private final SQSAsyncClient sqsAsyncClient = mock(SQSAsyncClient.class);
+    private final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor();
+    private final RetrySendMessageBatchSqsClient retryClient = new RetrySendMessageBatchSqsClient(sqsAsyncClient, 4, false, scheduler);
+    private SqsMessageBatcher messageBatcher;
+
+    @After
+    public void tearDown() {
+        if (messageBatcher != null) {
+            messageBatcher.close();
+        }
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldSendMessagesAddedDuringLingerTimeInSingleRequest() throws Exception {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder().build()));
+        messageBatcher = new SqsMessageBatcher("test", "https://example.com/test", retryClient, Duration.ofMillis(100));
+
+        // when
+        final CompletableFuture<Void> first = messageBatcher.add(body("first"));
+        final CompletableFuture<Void> second = messageBatcher.add(body("second"));
+        CompletableFuture.allOf(first, second).get(2, SECONDS);
+
+        // then
+        final List<SendMessageBatchRequest> requests = capturedRequests(1);
+        assertThat(requests.get(0).queueUrl(), is("https://example.com/test"));
+        assertThat(messageBodiesOf(requests.get(0)), contains("first", "second"));
+    }
+
+    @Test
+    public void shouldSendFullBatchWithoutWaitingForLingerTime() throws Exception {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder().build()));
+        messageBatcher = new SqsMessageBatcher("test", "https://example.com/test", retryClient, Duration.ofHours(1));
+
+        // when
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < RetrySendMessageBatchSqsClient.MAX_ENTRIES_PER_BATCH + 1; ++i) {
+            futures.add(messageBatcher.add(body("message-" + i)));
+        }
+        futures.get(0).get(2, SECONDS);
+
+        // then
+        assertThat(capturedRequests(1).get(0).entries(), hasSize(RetrySendMessageBatchSqsClient.MAX_ENTRIES_PER_BATCH));
+        assertThat(futures.get(RetrySendMessageBatchSqsClient.MAX_ENTRIES_PER_BATCH).isDone(), is(false));
+    }
+
+    @Test
+    public void shouldFailOnlyMessagesThatCouldNotBeSent() throws Exception {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(completedFuture(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("1").senderFault(true).code("InvalidMessageContents").build())
+                        .build()));
+        messageBatcher = new SqsMessageBatcher("test", "https://example.com/test", retryClient, Duration.ofMillis(10));
+
+        // when
+        final CompletableFuture<Void> first = messageBatcher.add(body("first"));
+        final CompletableFuture<Void> second = messageBatcher.add(body("second"));
+
+        // then
+        first.get(2, SECONDS);
+        try {
+            second.get(2, SECONDS);
+            fail("expected exception");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectMessagesAfterClose() {
+        // given
+        messageBatcher = new SqsMessageBatcher("test", "https://example.com/test", retryClient, Duration.ofMillis(10));
+        messageBatcher.close();
+
+        // when
+        messageBatcher.add(body("message"));
+    }
+
+    private List<SendMessageBatchRequest> capturedRequests(final int expectedNumberOfRequests) {
+        final ArgumentCaptor<SendMessageBatchRequest> captor = ArgumentCaptor.forClass(SendMessageBatchRequest.class);
+        verify(sqsAsyncClient, times(expectedNumberOfRequests)).sendMessageBatch(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static List<String> messageBodiesOf(final SendMessageBatchRequest request) {
+        return request.entries().stream().map(SendMessageBatchRequestEntry::messageBody).collect(toList());
+    }
+
+    private static SqsMessageBody body(final String body) {
+        return sqsMessageBody(message("", body), NONE);
+    }
+}
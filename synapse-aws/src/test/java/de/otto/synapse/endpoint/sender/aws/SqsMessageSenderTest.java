@@ -16,10 +16,13 @@ import org.mockito.junit.MockitoJUnitRunner;
 import software.amazon.awssdk.services.sqs.SQSAsyncClient;
 import software.amazon.awssdk.services.sqs.model.*;
 
+import java.util.List;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static de.otto.synapse.endpoint.MessageInterceptorRegistration.allChannelsWith;
 import static de.otto.synapse.message.Message.message;
+import static java.lang.String.valueOf;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.hamcrest.Matchers.*;
@@ -170,6 +173,43 @@ public class SqsMessageSenderTest {
         assertThat(capturedRequest.entries().get(1).messageBody(), is("{\"value\" : \"Lovely day for a Guinness\"}"));
     }
 
+    @Test
+    public void shouldSplitBatchIntoRequestsOfMaxEntries() {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(completedFuture(SendMessageBatchResponse.builder()
+                .build()));
+
+        // when
+        sqsMessageSender.sendBatch(IntStream.range(0, 25)
+                .mapToObj(i -> message(valueOf(i), new ExampleJsonObject("banana-" + i))));
+
+        // then
+        verify(sqsAsyncClient, times(3)).sendMessageBatch(batchRequestArgumentCaptor.capture());
+        final List<SendMessageBatchRequest> capturedRequests = batchRequestArgumentCaptor.getAllValues();
+        assertThat(capturedRequests.get(0).entries(), hasSize(10));
+        assertThat(capturedRequests.get(1).entries(), hasSize(10));
+        assertThat(capturedRequests.get(2).entries(), hasSize(5));
+        assertThat(capturedRequests.get(2).entries().get(4).messageBody(), is("{\"value\":\"banana-24\"}"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowExceptionIfMessagesOfBatchCouldNotBeSent() {
+        // given
+        when(sqsAsyncClient.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(completedFuture(SendMessageBatchResponse.builder()
+                .failed(BatchResultErrorEntry.builder()
+                        .id("1")
+                        .senderFault(true)
+                        .code("InvalidMessageContents")
+                        .build())
+                .build()));
+
+        // when
+        sqsMessageSender.sendBatch(Stream.of(
+                message("b", new ExampleJsonObject("banana")),
+                message("a", new ExampleJsonObject("apple"))
+        ));
+    }
+
     @Test
     public void shouldSendDeleteEventWithEmptyByteBuffer() {
         // given
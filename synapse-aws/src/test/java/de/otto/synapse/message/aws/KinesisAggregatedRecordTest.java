@@ -0,0 +1,97 @@
+package de.otto.synapse.message.aws;
+
+import com.google.common.io.BaseEncoding;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static de.otto.synapse.message.aws.KinesisAggregatedRecord.builder;
+import static de.otto.synapse.message.aws.KinesisAggregatedRecord.deaggregate;
+import static de.otto.synapse.message.aws.KinesisAggregatedRecord.isAggregated;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class KinesisAggregatedRecordTest {
+
+    @Test
+    public void shouldDeaggregateAggregatedRecord() {
+        // given
+        final KinesisAggregatedRecord.Builder builder = builder()
+                .add("first", "some data".getBytes(UTF_8))
+                .add("second", "more data".getBytes(UTF_8))
+                .add("first", new byte[0]);
+
+        // when
+        final List<KinesisAggregatedRecord.UserRecord> userRecords = deaggregate(ByteBuffer.wrap(builder.build()));
+
+        // then
+        assertThat(userRecords, hasSize(3));
+        assertThat(userRecords.get(0).getPartitionKey(), is("first"));
+        assertThat(new String(userRecords.get(0).getData(), UTF_8), is("some data"));
+        assertThat(userRecords.get(1).getPartitionKey(), is("second"));
+        assertThat(new String(userRecords.get(1).getData(), UTF_8), is("more data"));
+        assertThat(userRecords.get(2).getPartitionKey(), is("first"));
+        assertThat(userRecords.get(2).getData().length, is(0));
+    }
+
+    @Test
+    public void shouldBuildKplCompatibleRecord() {
+        // given
+        final KinesisAggregatedRecord.Builder builder = builder()
+                .add("a", "b".getBytes(UTF_8));
+
+        // when
+        final byte[] data = builder.build();
+
+        // then
+        final String hex = BaseEncoding.base16().lowerCase().encode(data);
+        assertThat(hex.substring(0, hex.length() - 32), is("f3899ac2" + "0a0161" + "1a0508001a0162"));
+    }
+
+    @Test
+    public void shouldCalculateSizeOfAggregatedRecord() {
+        // given
+        final KinesisAggregatedRecord.Builder builder = builder()
+                .add("first", new byte[200]);
+
+        // when
+        final int expectedSize = builder.sizeWith("second", 300);
+        builder.add("second", new byte[300]);
+
+        // then
+        assertThat(builder.size(), is(expectedSize));
+        assertThat(builder.build().length, is(expectedSize));
+    }
+
+    @Test
+    public void shouldNotDeaggregateRecordWithInvalidChecksum() {
+        // given
+        final byte[] data = builder()
+                .add("first", "some data".getBytes(UTF_8))
+                .build();
+        data[data.length - 1] ^= 1;
+
+        // when
+        final List<KinesisAggregatedRecord.UserRecord> userRecords = deaggregate(ByteBuffer.wrap(data));
+
+        // then
+        assertThat(userRecords, is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotDeaggregatePlainRecord() {
+        // given
+        final ByteBuffer data = ByteBuffer.wrap("{\"some\":\"json\"}".getBytes(UTF_8));
+
+        // when
+        final List<KinesisAggregatedRecord.UserRecord> userRecords = deaggregate(data);
+
+        // then
+        assertThat(isAggregated(data), is(false));
+        assertThat(userRecords, is(nullValue()));
+    }
+}
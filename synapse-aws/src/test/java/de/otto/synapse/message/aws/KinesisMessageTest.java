@@ -1,18 +1,24 @@
 package de.otto.synapse.message.aws;
 
+import com.google.common.base.Strings;
 import de.otto.synapse.message.Message;
 import org.junit.Test;
 import software.amazon.awssdk.services.kinesis.model.Record;
 
 import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.codec.PayloadCompression.DEFLATE;
 import static de.otto.synapse.message.aws.KinesisMessage.kinesisMessage;
+import static de.otto.synapse.message.aws.KinesisMessage.kinesisMessages;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class KinesisMessageTest {
 
@@ -34,4 +40,74 @@ public class KinesisMessageTest {
         assertThat(message.getHeader().getShardPosition(), is(Optional.of(fromPosition("some-shard", "00001"))));
     }
 
+    @Test
+    public void shouldBuildKinesisMessageWithNullPayloadFromEmptyRecord() {
+        final Record record = Record.builder()
+                .partitionKey("42")
+                .data(ByteBuffer.allocateDirect(0))
+                .approximateArrivalTimestamp(Instant.now())
+                .sequenceNumber("00001")
+                .build();
+        final Message<String> message = kinesisMessage(
+                "some-shard",
+                record);
+        assertThat(message.getKey(), is("42"));
+        assertThat(message.getPayload(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDecompressCompressedRecord() {
+        final String payload = "{\"values\":[" + Strings.repeat("\"some value\",", 1000) + "\"last value\"]}";
+        final Record record = Record.builder()
+                .partitionKey("42")
+                .data(ByteBuffer.wrap(DEFLATE.compress(payload.getBytes(UTF_8))))
+                .approximateArrivalTimestamp(Instant.now())
+                .sequenceNumber("00001")
+                .build();
+        final Message<String> message = kinesisMessage(
+                "some-shard",
+                record);
+        assertThat(message.getPayload(), is(payload));
+    }
+
+    @Test
+    public void shouldDeaggregateAggregatedRecord() {
+        final Record record = Record.builder()
+                .partitionKey("1")
+                .data(ByteBuffer.wrap(KinesisAggregatedRecord.builder()
+                        .add("1", "first".getBytes(UTF_8))
+                        .add("2", new byte[0])
+                        .add("3", "third".getBytes(UTF_8))
+                        .build()))
+                .approximateArrivalTimestamp(Instant.now())
+                .sequenceNumber("00001")
+                .build();
+        final List<Message<String>> messages = kinesisMessages(
+                "some-shard",
+                record);
+        assertThat(messages, hasSize(3));
+        assertThat(messages.get(0).getKey(), is("1"));
+        assertThat(messages.get(0).getPayload(), is("first"));
+        assertThat(messages.get(1).getKey(), is("2"));
+        assertThat(messages.get(1).getPayload(), is(nullValue()));
+        assertThat(messages.get(2).getKey(), is("3"));
+        assertThat(messages.get(2).getPayload(), is("third"));
+        messages.forEach(message -> assertThat(message.getHeader().getShardPosition(), is(Optional.of(fromPosition("some-shard", "00001")))));
+    }
+
+    @Test
+    public void shouldNotDeaggregatePlainRecord() {
+        final Record record = Record.builder()
+                .partitionKey("42")
+                .data(ByteBuffer.wrap("some data".getBytes(UTF_8)))
+                .approximateArrivalTimestamp(Instant.now())
+                .sequenceNumber("00001")
+                .build();
+        final List<Message<String>> messages = kinesisMessages(
+                "some-shard",
+                record);
+        assertThat(messages, hasSize(1));
+        assertThat(messages.get(0).getPayload(), is("some data"));
+    }
+
 }
@@ -0,0 +1,85 @@
+package de.otto.synapse.message.aws;
+
+import com.google.common.base.Strings;
+import de.otto.synapse.message.Message;
+import org.junit.Test;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+import java.util.Base64;
+
+import static de.otto.synapse.codec.PayloadCompression.DEFLATE;
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.codec.PayloadCompression.MAGIC_BYTE;
+import static de.otto.synapse.message.Message.message;
+import static de.otto.synapse.message.aws.SqsMessage.COMPRESSION_ATTRIBUTE;
+import static de.otto.synapse.message.aws.SqsMessage.sqsMessage;
+import static de.otto.synapse.message.aws.SqsMessage.sqsMessageBody;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+public class SqsMessageTest {
+
+    private static final String LARGE_PAYLOAD = "{\"values\":[" + Strings.repeat("\"some value\",", 1000) + "\"last value\"]}";
+
+    @Test
+    public void shouldBuildSqsMessage() {
+        final Message<String> message = sqsMessage("", "{\"foo\":\"bar\"}");
+        assertThat(message.getKey(), is(""));
+        assertThat(message.getPayload(), is("{\"foo\":\"bar\"}"));
+    }
+
+    @Test
+    public void shouldBuildSqsMessageWithoutBody() {
+        final Message<String> message = sqsMessage("", null);
+        assertThat(message.getPayload(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotDecodeBodyWithoutCompressionAttribute() {
+        // given
+        final String body = Base64.getEncoder().encodeToString(new byte[] {MAGIC_BYTE, DEFLATE.getId(), 1, 2, 3});
+        // when
+        final Message<String> message = sqsMessage("", body);
+        // then
+        assertThat(message.getPayload(), is(body));
+    }
+
+    @Test
+    public void shouldSendUncompressedBody() {
+        final SqsMessageBody body = sqsMessageBody(message("", LARGE_PAYLOAD), NONE);
+        assertThat(body.getBody(), is(LARGE_PAYLOAD));
+        assertThat(body.getMessageAttributes().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldCompressAndDecompressBody() {
+        // when
+        final SqsMessageBody body = sqsMessageBody(message("", LARGE_PAYLOAD), DEFLATE);
+        final Message<String> message = sqsMessage("", body.getBody(), body.getMessageAttributes());
+        // then
+        assertThat(body.getBody(), startsWith("AA"));
+        assertThat(body.getBody().length(), is(not(LARGE_PAYLOAD.length())));
+        assertThat(body.getMessageAttributes(), hasKey(COMPRESSION_ATTRIBUTE));
+        assertThat(message.getPayload(), is(LARGE_PAYLOAD));
+    }
+
+    @Test
+    public void shouldNotCompressSmallBody() {
+        final SqsMessageBody body = sqsMessageBody(message("", "{}"), DEFLATE);
+        assertThat(body.getBody(), is("{}"));
+        assertThat(body.getMessageAttributes().isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecodeMarkedBodyThatIsNotCompressed() {
+        sqsMessage("", "{\"foo\":\"bar\"}", singletonMap(COMPRESSION_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(DEFLATE.name())
+                .build()));
+    }
+}
@@ -0,0 +1,76 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static de.otto.synapse.message.Message.message;
+
+/**
+ * Compares the invocation of {@link de.otto.synapse.annotation.EventSourceConsumer} methods using
+ * {@link MethodInvokingMessageConsumer} with plain reflective calls using {@link Method#invoke(Object, Object...)}.
+ * <p>
+ *     Run using {@code ./gradlew :synapse-core:jmh}
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MethodInvokingMessageConsumerBenchmark {
+
+    public static class TestConsumer {
+        private int count;
+
+        public void consume(final Message<String> message) {
+            count += message.getKey().length();
+        }
+
+        void consumePackagePrivate(final Message<String> message) {
+            count += message.getKey().length();
+        }
+    }
+
+    private final Message<String> message = message("some-key", "{}");
+    private final TestConsumer testConsumer = new TestConsumer();
+
+    private Method reflectiveMethod;
+    private MethodInvokingMessageConsumer<String> lambdaConsumer;
+    private MethodInvokingMessageConsumer<String> methodHandleConsumer;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        reflectiveMethod = TestConsumer.class.getMethod("consume", Message.class);
+        lambdaConsumer = new MethodInvokingMessageConsumer<>(".*", String.class, testConsumer, reflectiveMethod);
+        methodHandleConsumer = new MethodInvokingMessageConsumer<>(".*", String.class, testConsumer,
+                TestConsumer.class.getDeclaredMethod("consumePackagePrivate", Message.class));
+    }
+
+    @Benchmark
+    public int reflection() throws Exception {
+        reflectiveMethod.invoke(testConsumer, message);
+        return testConsumer.count;
+    }
+
+    @Benchmark
+    public int lambdaMetafactory() {
+        lambdaConsumer.accept(message);
+        return testConsumer.count;
+    }
+
+    @Benchmark
+    public int methodHandle() {
+        methodHandleConsumer.accept(message);
+        return testConsumer.count;
+    }
+
+    @Benchmark
+    public int directCall() {
+        testConsumer.consume(message);
+        return testConsumer.count;
+    }
+}
@@ -137,6 +137,7 @@ public class EventSourceBeanRegistrar implements ImportBeanDefinitionRegistrar,
         registry.registerBeanDefinition(
                 beanName,
                 genericBeanDefinition(DelegateEventSource.class)
+                        .addConstructorArgValue(beanName)
                         .addConstructorArgValue(messageLogBeanName)
                         .setDependencyCheck(DEPENDENCY_CHECK_ALL)
                         .getBeanDefinition()
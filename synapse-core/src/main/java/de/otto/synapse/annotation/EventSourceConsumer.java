@@ -5,6 +5,15 @@ import de.otto.synapse.message.Message;
 
 import java.lang.annotation.*;
 
+/**
+ * Annotates methods that are consuming messages from an {@link EventSource}.
+ * <p>
+ *     Annotated methods must accept a single parameter of type {@code Message<T>}. Methods returning a
+ *     {@link java.util.concurrent.CompletionStage} are registered as
+ *     {@link de.otto.synapse.consumer.AsyncMessageConsumer async consumers}: the message is treated as processed
+ *     when the returned stage is completed.
+ * </p>
+ */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
@@ -32,4 +41,16 @@ public @interface EventSourceConsumer {
      */
     Class<?> payloadType();
 
+    /**
+     * Selects whether the annotated method is consuming batches of messages instead of single messages.
+     * <p>
+     *     Batch consumers must accept a single parameter of type {@code List<Message<T>>}. The list is
+     *     containing all matching messages of a single read operation, for example the messages of a Kinesis
+     *     shard response or a chunk of messages from the snapshot.
+     * </p>
+     *
+     * @return true, if the annotated method is a batch consumer; defaults to <code>false</code>
+     */
+    boolean batch() default false;
+
 }
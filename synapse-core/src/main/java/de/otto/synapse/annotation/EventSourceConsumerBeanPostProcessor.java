@@ -1,5 +1,8 @@
 package de.otto.synapse.annotation;
 
+import de.otto.synapse.consumer.MessageConsumer;
+import de.otto.synapse.consumer.MethodInvokingAsyncMessageConsumer;
+import de.otto.synapse.consumer.MethodInvokingBatchMessageConsumer;
 import de.otto.synapse.consumer.MethodInvokingMessageConsumer;
 import de.otto.synapse.eventsource.EventSource;
 import org.slf4j.Logger;
@@ -18,6 +21,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -98,10 +102,16 @@ public class EventSourceConsumerBeanPostProcessor implements BeanPostProcessor,
         return listeners;
     }
 
-    private MethodInvokingMessageConsumer<?> eventConsumerFor(final EventSourceConsumer annotation,
-                                                              final Method annotatedMethod,
-                                                              final Object bean) {
-        return new MethodInvokingMessageConsumer<>(annotation.keyPattern(), annotation.payloadType(), bean, annotatedMethod);
+    private MessageConsumer<?> eventConsumerFor(final EventSourceConsumer annotation,
+                                                final Method annotatedMethod,
+                                                final Object bean) {
+        if (annotation.batch()) {
+            return new MethodInvokingBatchMessageConsumer<>(annotation.keyPattern(), annotation.payloadType(), bean, annotatedMethod);
+        } else if (CompletionStage.class.isAssignableFrom(annotatedMethod.getReturnType())) {
+            return new MethodInvokingAsyncMessageConsumer<>(annotation.keyPattern(), annotation.payloadType(), bean, annotatedMethod);
+        } else {
+            return new MethodInvokingMessageConsumer<>(annotation.keyPattern(), annotation.payloadType(), bean, annotatedMethod);
+        }
     }
 
     private EventSource matchingEventSourceFor(final EventSourceConsumer annotation) {
@@ -14,11 +14,13 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static de.otto.synapse.channel.ChannelDurationBehind.channelDurationBehind;
 import static de.otto.synapse.channel.ChannelPosition.channelPosition;
 import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.executor.SynapseExecutors.defaultExecutorFor;
 import static de.otto.synapse.message.Header.responseHeader;
 import static de.otto.synapse.message.Message.message;
 import static java.lang.Integer.valueOf;
@@ -32,17 +34,33 @@ public class InMemoryChannel extends AbstractMessageLogReceiverEndpoint {
     private static final Logger LOG = getLogger(InMemoryChannel.class);
     private final List<Message<String>> eventQueue;
     private final AtomicBoolean stopSignal = new AtomicBoolean(false);
+    private final Executor executor;
 
     public InMemoryChannel(final String channelName) {
-        super(channelName, new ObjectMapper().registerModule(new JavaTimeModule()), null);
-        this.eventQueue = synchronizedList(new ArrayList<>());
+        this(channelName, new ObjectMapper().registerModule(new JavaTimeModule()), null);
     }
 
     public InMemoryChannel(final String channelName,
                            final ObjectMapper objectMapper,
                            final ApplicationEventPublisher eventPublisher) {
+        this(channelName, objectMapper, eventPublisher, defaultExecutorFor(channelName));
+    }
+
+    /**
+     * Creates an InMemoryChannel.
+     *
+     * @param channelName the name of the channel
+     * @param objectMapper the ObjectMapper used to deserialize message payloads
+     * @param eventPublisher the publisher used to publish notifications
+     * @param executor the executor used to consume the messages of the channel
+     */
+    public InMemoryChannel(final String channelName,
+                           final ObjectMapper objectMapper,
+                           final ApplicationEventPublisher eventPublisher,
+                           final Executor executor) {
         super(channelName, objectMapper, eventPublisher);
         this.eventQueue = synchronizedList(new ArrayList<>());
+        this.executor = executor;
     }
 
     public void send(final Message<String> message) {
@@ -91,7 +109,7 @@ public class InMemoryChannel extends AbstractMessageLogReceiverEndpoint {
             } while (!shouldStop && !stopSignal.get());
             publishEvent(MessageReceiverStatus.FINISHED, "Finished InMemoryChannel " + getChannelName(), durationBehind);
             return channelPosition(fromPosition(getChannelName(), String.valueOf(pos)));
-        });
+        }, executor);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package de.otto.synapse.channel;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.executor.SynapseExecutors;
 import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,15 +12,24 @@ public class InMemoryChannels {
     private final ConcurrentMap<String,InMemoryChannel> channels = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
     private final ApplicationEventPublisher eventPublisher;
+    private final SynapseExecutors synapseExecutors;
 
     public InMemoryChannels(final ObjectMapper objectMapper, final ApplicationEventPublisher eventPublisher) {
+        this(objectMapper, eventPublisher, null);
+    }
+
+    public InMemoryChannels(final ObjectMapper objectMapper,
+                            final ApplicationEventPublisher eventPublisher,
+                            final SynapseExecutors synapseExecutors) {
         this.objectMapper = objectMapper;
         this.eventPublisher = eventPublisher;
+        this.synapseExecutors = synapseExecutors;
     }
 
     public InMemoryChannel getChannel(final String channelName) {
-        channels.putIfAbsent(channelName, new InMemoryChannel(channelName, objectMapper, eventPublisher));
-        return channels.get(channelName);
+        return channels.computeIfAbsent(channelName, name -> synapseExecutors != null
+                ? new InMemoryChannel(name, objectMapper, eventPublisher, synapseExecutors.executorFor(name))
+                : new InMemoryChannel(name, objectMapper, eventPublisher));
     }
 
 }
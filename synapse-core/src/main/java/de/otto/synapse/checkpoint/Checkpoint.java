@@ -0,0 +1,96 @@
+package de.otto.synapse.checkpoint;
+
+import de.otto.synapse.channel.ChannelPosition;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The {@link ChannelPosition} of a channel, up to which all messages of the channel were processed by the
+ * consumers of an {@link de.otto.synapse.eventsource.EventSource event source} at a point in time.
+ * <p>
+ *     Checkpoints are identified by the name of the event source and the name of the channel, so several event
+ *     sources consuming the same channel are keeping checkpoints of their own.
+ * </p>
+ */
+@Immutable
+public final class Checkpoint {
+
+    private final String eventSourceName;
+    private final String channelName;
+    private final ChannelPosition channelPosition;
+    private final Instant timestamp;
+
+    public Checkpoint(final @Nonnull String eventSourceName,
+                      final @Nonnull String channelName,
+                      final @Nonnull ChannelPosition channelPosition,
+                      final @Nonnull Instant timestamp) {
+        this.eventSourceName = requireNonNull(eventSourceName);
+        this.channelName = requireNonNull(channelName);
+        this.channelPosition = requireNonNull(channelPosition);
+        this.timestamp = requireNonNull(timestamp);
+    }
+
+    @Nonnull
+    public String getEventSourceName() {
+        return eventSourceName;
+    }
+
+    @Nonnull
+    public String getChannelName() {
+        return channelName;
+    }
+
+    @Nonnull
+    public ChannelPosition getChannelPosition() {
+        return channelPosition;
+    }
+
+    @Nonnull
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns true, if the checkpoint was taken less than {@code maxAge} before {@code now}.
+     *
+     * @param now the current point in time
+     * @param maxAge the maximum age of the checkpoint
+     * @return boolean
+     */
+    public boolean isFresh(final @Nonnull Instant now,
+                           final @Nonnull Duration maxAge) {
+        return timestamp.plus(maxAge).isAfter(now);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Checkpoint that = (Checkpoint) o;
+        return Objects.equals(eventSourceName, that.eventSourceName) &&
+                Objects.equals(channelName, that.channelName) &&
+                Objects.equals(channelPosition, that.channelPosition) &&
+                Objects.equals(timestamp, that.timestamp);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eventSourceName, channelName, channelPosition, timestamp);
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" +
+                "eventSourceName='" + eventSourceName + '\'' +
+                ", channelName='" + channelName + '\'' +
+                ", channelPosition=" + channelPosition +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
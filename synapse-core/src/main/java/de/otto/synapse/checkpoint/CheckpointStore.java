@@ -0,0 +1,36 @@
+package de.otto.synapse.checkpoint;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+
+/**
+ * A store for the {@link Checkpoint checkpoints} of the channels consumed by an application.
+ * <p>
+ *     Checkpoints are used by {@link de.otto.synapse.eventsource.EventSource event sources} to resume consumption
+ *     after a restart, without replaying the snapshot of the channel. This requires the consumers to keep their
+ *     state in a durable {@link de.otto.synapse.state.StateRepository}, for example a
+ *     {@link de.otto.synapse.state.ChronicleMapStateRepository} that is persisted to a file.
+ * </p>
+ */
+public interface CheckpointStore {
+
+    /**
+     * Returns the latest checkpoint of a channel that was saved by an event source.
+     *
+     * @param eventSourceName the name of the event source
+     * @param channelName the name of the channel
+     * @return the checkpoint, or Optional.empty(), if there is no checkpoint of the event source for the channel
+     */
+    @Nonnull
+    Optional<Checkpoint> load(@Nonnull String eventSourceName, @Nonnull String channelName);
+
+    /**
+     * Atomically replaces the checkpoint of the {@link Checkpoint#getEventSourceName() event source} for the
+     * {@link Checkpoint#getChannelName() channel}. Checkpoints of other event sources consuming the same channel
+     * are not affected.
+     *
+     * @param checkpoint the new checkpoint
+     */
+    void save(@Nonnull Checkpoint checkpoint);
+
+}
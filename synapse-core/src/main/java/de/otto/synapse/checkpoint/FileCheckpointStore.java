@@ -0,0 +1,160 @@
+package de.otto.synapse.checkpoint;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.channel.ShardPosition;
+import de.otto.synapse.channel.StartFrom;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A {@link CheckpointStore} that is keeping the checkpoint of every event source and channel as a JSON file in a
+ * local directory.
+ * <p>
+ *     Checkpoints are written to a temporary file first, that is synced to the disk and atomically moved to
+ *     {@code <directory>/<eventSourceName>.<channelName>.checkpoint.json} afterwards. A checkpoint is therefore either completely
+ *     written, or not at all. After the move, the directory is synced as well, so a saved checkpoint survives a
+ *     crash of the operating system, if the file system supports syncing directories.
+ * </p>
+ */
+@ThreadSafe
+public class FileCheckpointStore implements CheckpointStore {
+
+    private static final Logger LOG = getLogger(FileCheckpointStore.class);
+
+    private static final String FILE_SUFFIX = ".checkpoint.json";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a FileCheckpointStore.
+     *
+     * @param directory the directory containing the checkpoint files. The directory is created, if it does not exist.
+     * @param objectMapper the ObjectMapper used to read and write the checkpoint files
+     */
+    public FileCheckpointStore(final @Nonnull Path directory,
+                               final @Nonnull ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    @Nonnull
+    @Override
+    public Optional<Checkpoint> load(final @Nonnull String eventSourceName,
+                                     final @Nonnull String channelName) {
+        final Path file = fileOf(eventSourceName, channelName);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(checkpointFrom(objectMapper.readTree(file.toFile())));
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("Unable to read checkpoint of event source {} for channel {} from {}: {}", eventSourceName, channelName, file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void save(final @Nonnull Checkpoint checkpoint) {
+        final Path file = fileOf(checkpoint.getEventSourceName(), checkpoint.getChannelName());
+        try {
+            Files.createDirectories(directory);
+            final Path tempFile = Files.createTempFile(directory, checkpoint.getEventSourceName() + "." + checkpoint.getChannelName(), ".tmp");
+            try {
+                objectMapper.writeValue(tempFile.toFile(), jsonOf(checkpoint));
+                try (final FileChannel channel = FileChannel.open(tempFile, WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(tempFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+                syncDirectory();
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            LOG.debug("Saved {}", checkpoint);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to save checkpoint of channel " + checkpoint.getChannelName(), e);
+        }
+    }
+
+    private void syncDirectory() {
+        try (final FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (final IOException e) {
+            // some platforms, like Windows, are not able to open directories:
+            LOG.debug("Unable to sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private Path fileOf(final String eventSourceName,
+                        final String channelName) {
+        return directory.resolve(eventSourceName + "." + channelName + FILE_SUFFIX);
+    }
+
+    private ObjectNode jsonOf(final Checkpoint checkpoint) {
+        final ObjectNode json = objectMapper.createObjectNode();
+        json.put("eventSourceName", checkpoint.getEventSourceName());
+        json.put("channelName", checkpoint.getChannelName());
+        json.put("timestamp", checkpoint.getTimestamp().toString());
+        final ArrayNode shards = json.putArray("shards");
+        final ChannelPosition channelPosition = checkpoint.getChannelPosition();
+        channelPosition.shards().forEach(shardName -> {
+            final ShardPosition shardPosition = channelPosition.shard(shardName);
+            final ObjectNode shard = shards.addObject();
+            shard.put("shardName", shardName);
+            shard.put("startFrom", shardPosition.startFrom().name());
+            shard.put("position", shardPosition.position());
+            if (shardPosition.timestamp() != null) {
+                shard.put("timestamp", shardPosition.timestamp().toString());
+            }
+        });
+        return json;
+    }
+
+    private static Checkpoint checkpointFrom(final JsonNode json) {
+        final List<ShardPosition> shardPositions = new ArrayList<>();
+        json.get("shards").forEach(shard -> shardPositions.add(shardPositionFrom(shard)));
+        return new Checkpoint(
+                json.get("eventSourceName").asText(),
+                json.get("channelName").asText(),
+                channelPosition(shardPositions),
+                Instant.parse(json.get("timestamp").asText()));
+    }
+
+    private static ShardPosition shardPositionFrom(final JsonNode shard) {
+        final String shardName = shard.get("shardName").asText();
+        switch (StartFrom.valueOf(shard.get("startFrom").asText())) {
+            case HORIZON:
+                return ShardPosition.fromHorizon(shardName);
+            case POSITION:
+                return ShardPosition.fromPosition(shardName, shard.get("position").asText());
+            case AT_POSITION:
+                return ShardPosition.atPosition(shardName, shard.get("position").asText());
+            case TIMESTAMP:
+                return ShardPosition.fromTimestamp(shardName, Instant.parse(shard.get("timestamp").asText()));
+            default:
+                throw new IllegalArgumentException("Unsupported startFrom of shard " + shardName);
+        }
+    }
+}
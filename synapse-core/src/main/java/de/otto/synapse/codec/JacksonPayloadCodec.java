@@ -0,0 +1,67 @@
+package de.otto.synapse.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link PayloadCodec} using a Jackson {@link JsonFactory} and a fixed signature written by the factory's
+ * generators.
+ */
+@Immutable
+public class JacksonPayloadCodec implements PayloadCodec {
+
+    private final String name;
+    private final JsonFactory jsonFactory;
+    private final byte[] signature;
+
+    /**
+     * Creates a JacksonPayloadCodec.
+     *
+     * @param name the unique name of the codec
+     * @param jsonFactory the JsonFactory of the data format
+     * @param signature the bytes written at the beginning of every encoded payload
+     */
+    public JacksonPayloadCodec(final @Nonnull String name,
+                               final @Nonnull JsonFactory jsonFactory,
+                               final @Nonnull byte[] signature) {
+        this.name = requireNonNull(name, "name must not be null");
+        this.jsonFactory = requireNonNull(jsonFactory, "jsonFactory must not be null");
+        this.signature = signature.clone();
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    @Override
+    public JsonFactory getJsonFactory() {
+        return jsonFactory;
+    }
+
+    @Override
+    public boolean isEncoded(final @Nonnull byte[] payload) {
+        if (payload.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; ++i) {
+            if (payload[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "JacksonPayloadCodec{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+package de.otto.synapse.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A codec used to encode message payloads into bytes, and to decode the bytes back into payloads.
+ * <p>
+ *     Codecs are based on a Jackson {@link JsonFactory}, so payloads are serialized and deserialized using the
+ *     configuration of the application's {@link com.fasterxml.jackson.databind.ObjectMapper}, only the data format
+ *     is different.
+ * </p>
+ * <p>
+ *     Every codec except {@link PayloadCodecs#JSON JSON} is writing a signature at the beginning of the encoded
+ *     payload. Receivers are using the signature to {@link PayloadCodecs#codecOf(byte[]) find the codec} of a
+ *     message, so channels may contain messages encoded by different codecs.
+ * </p>
+ * <p>
+ *     Additional codecs are registered using the {@link java.util.ServiceLoader} mechanism, by adding the name of the
+ *     implementing class to {@code META-INF/services/de.otto.synapse.codec.PayloadCodec}.
+ * </p>
+ */
+public interface PayloadCodec {
+
+    /**
+     * Returns the unique name of the codec, for example {@code smile}.
+     *
+     * @return name
+     */
+    @Nonnull
+    String getName();
+
+    /**
+     * Returns the JsonFactory used to create parsers and generators for the data format of the codec.
+     *
+     * @return JsonFactory
+     */
+    @Nonnull
+    JsonFactory getJsonFactory();
+
+    /**
+     * Returns true, if the payload starts with the signature of this codec.
+     *
+     * @param payload the encoded payload
+     * @return true if the payload is encoded by this codec, false otherwise
+     */
+    boolean isEncoded(@Nonnull byte[] payload);
+
+}
@@ -0,0 +1,121 @@
+package de.otto.synapse.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ServiceLoader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The {@link PayloadCodec codecs} supported by Synapse.
+ * <p>
+ *     Besides the built-in codecs {@link #JSON}, {@link #SMILE} and {@link #CBOR}, all codecs registered using the
+ *     {@link ServiceLoader} are supported.
+ * </p>
+ */
+public final class PayloadCodecs {
+
+    /**
+     * Textual, UTF-8 encoded JSON. JSON payloads do not have a signature: all payloads that are not encoded by
+     * some other codec are JSON payloads.
+     */
+    public static final PayloadCodec JSON = new JacksonPayloadCodec("json", new JsonFactory(), new byte[0]);
+
+    /**
+     * Binary JSON using the <a href="https://github.com/FasterXML/smile-format-specification">Smile</a> format.
+     * The signature is the Smile header {@code :)\n}.
+     */
+    public static final PayloadCodec SMILE = new JacksonPayloadCodec(
+            "smile",
+            new SmileFactory(),
+            new byte[] {':', ')', '\n'});
+
+    /**
+     * <a href="https://tools.ietf.org/html/rfc7049">CBOR</a> format. The signature is the self-describe tag 55799.
+     */
+    public static final PayloadCodec CBOR = new JacksonPayloadCodec(
+            "cbor",
+            new CBORFactory().enable(CBORGenerator.Feature.WRITE_TYPE_HEADER),
+            new byte[] {(byte) 0xD9, (byte) 0xD9, (byte) 0xF7});
+
+    private static final ImmutableList<PayloadCodec> CODECS = ImmutableList.<PayloadCodec>builder()
+            .add(SMILE, CBOR)
+            .addAll(ServiceLoader.load(PayloadCodec.class))
+            .build();
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * Returns the codec having the specified name.
+     *
+     * @param name the name of the codec
+     * @return PayloadCodec
+     * @throws IllegalArgumentException if there is no such codec
+     */
+    @Nonnull
+    public static PayloadCodec codecFor(final @Nonnull String name) {
+        if (JSON.getName().equals(name)) {
+            return JSON;
+        }
+        return CODECS
+                .stream()
+                .filter(codec -> codec.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown payload codec " + name));
+    }
+
+    /**
+     * Returns the codec used to encode the payload, identified by the signature of the payload. Payloads
+     * without a known signature are JSON payloads.
+     *
+     * @param payload the encoded payload, or null
+     * @return PayloadCodec
+     */
+    @Nonnull
+    public static PayloadCodec codecOf(final @Nullable byte[] payload) {
+        if (payload != null && payload.length > 0) {
+            for (final PayloadCodec codec : CODECS) {
+                if (codec.isEncoded(payload)) {
+                    return codec;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Decodes an encoded payload into a JSON String.
+     *
+     * @param payload the payload encoded by any of the supported codecs
+     * @return JSON String
+     * @throws IllegalStateException if the payload can not be transcoded
+     */
+    @Nonnull
+    public static String toJson(final @Nonnull byte[] payload) {
+        final PayloadCodec codec = codecOf(payload);
+        if (codec == JSON) {
+            return new String(payload, UTF_8);
+        }
+        final StringWriter writer = new StringWriter(payload.length * 2);
+        try (final JsonParser parser = codec.getJsonFactory().createParser(payload);
+             final JsonGenerator generator = JSON.getJsonFactory().createGenerator(writer)) {
+            if (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to transcode " + codec.getName() + " payload into JSON: " + e.getMessage(), e);
+        }
+        return writer.toString();
+    }
+}
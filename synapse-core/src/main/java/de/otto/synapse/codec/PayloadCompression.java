@@ -0,0 +1,226 @@
+package de.otto.synapse.codec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of encoded message payloads.
+ * <p>
+ *     Compressed payloads are framed using a {@link #MAGIC_BYTE magic byte}, followed by the id of the compression
+ *     and the compressed bytes. The magic byte can not be the first byte of a payload encoded by one of the
+ *     {@link PayloadCodecs codecs}, so receivers are able to detect and {@link #decompress(byte[]) decompress}
+ *     framed payloads, while uncompressed payloads are passed as-is. Compressing and non-compressing senders
+ *     are therefore able to share a channel.
+ * </p>
+ * <p>
+ *     Payloads are only framed, if the compressed payload is smaller than the original payload.
+ * </p>
+ * <p>
+ *     Decompressed payloads are limited to {@link #getMaxPayloadBytes()} bytes, so a small, corrupted or malicious
+ *     frame is not able to inflate into an arbitrarily large payload.
+ * </p>
+ */
+public enum PayloadCompression {
+
+    /**
+     * Payloads are not compressed.
+     */
+    NONE((byte) 0) {
+        @Nonnull
+        @Override
+        public byte[] compress(final @Nonnull byte[] payload) {
+            return payload;
+        }
+    },
+
+    /**
+     * Payloads are compressed using the DEFLATE algorithm.
+     */
+    DEFLATE((byte) 1) {
+        @Nonnull
+        @Override
+        public byte[] compress(final @Nonnull byte[] payload) {
+            if (payload.length == 0) {
+                return payload;
+            }
+            final Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(payload);
+                deflater.finish();
+                final ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length / 2 + HEADER_LENGTH);
+                frame.write(MAGIC_BYTE);
+                frame.write(getId());
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    frame.write(buffer, 0, deflater.deflate(buffer));
+                    if (frame.size() >= payload.length) {
+                        return payload;
+                    }
+                }
+                return frame.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        byte[] inflate(final byte[] compressed, final int offset, final int maxPayloadBytes) throws DataFormatException {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed, offset, compressed.length - offset);
+                final ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(BUFFER_SIZE, maxPayloadBytes));
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (!inflater.finished()) {
+                    final int length = inflater.inflate(buffer);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated payload");
+                    }
+                    if (length > maxPayloadBytes - payload.size()) {
+                        throw new IllegalStateException("Unable to decompress payload: decompressed payload exceeds the limit of " + maxPayloadBytes + " bytes");
+                    }
+                    payload.write(buffer, 0, length);
+                }
+                return payload.toByteArray();
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    /**
+     * The first byte of framed, compressed payloads. Neither JSON, nor Smile or CBOR payloads are starting with a
+     * zero byte.
+     */
+    public static final byte MAGIC_BYTE = 0;
+
+    /**
+     * The default limit of decompressed payloads: four times the maximum size of a Kinesis record.
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 4 * 1024 * 1024;
+
+    private static volatile int maxPayloadBytes = DEFAULT_MAX_PAYLOAD_BYTES;
+
+    private static final int HEADER_LENGTH = 2;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte id;
+
+    PayloadCompression(final byte id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the id of the compression that is written into the frame of compressed payloads.
+     *
+     * @return id
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * Compresses an encoded payload. The result is either the framed, compressed payload, or the original
+     * payload, if compression does not reduce the size of the payload.
+     *
+     * @param payload the encoded payload
+     * @return compressed or original payload
+     */
+    @Nonnull
+    public abstract byte[] compress(@Nonnull byte[] payload);
+
+    /**
+     * Inflates the compressed bytes of a framed payload. Only compressions that are framing payloads are able to
+     * inflate them, so this is failing for all other compressions.
+     *
+     * @param compressed the framed payload
+     * @param offset the offset of the compressed bytes in the frame
+     * @param maxPayloadBytes the maximum size of the decompressed payload
+     * @return decompressed payload
+     * @throws DataFormatException if the payload is corrupted
+     * @throws IllegalStateException if the decompressed payload is larger than {@code maxPayloadBytes}
+     */
+    byte[] inflate(final byte[] compressed, final int offset, final int maxPayloadBytes) throws DataFormatException {
+        throw new IllegalStateException("Unable to decompress payload: compression " + name() + " is not framing payloads");
+    }
+
+    /**
+     * Returns the maximum size of payloads decompressed by {@link #decompress(byte[])}.
+     *
+     * @return maximum number of bytes
+     */
+    public static int getMaxPayloadBytes() {
+        return maxPayloadBytes;
+    }
+
+    /**
+     * Configures the maximum size of payloads decompressed by {@link #decompress(byte[])}. Defaults to
+     * {@value #DEFAULT_MAX_PAYLOAD_BYTES} bytes.
+     *
+     * @param maxPayloadBytes maximum number of bytes
+     */
+    public static void setMaxPayloadBytes(final int maxPayloadBytes) {
+        if (maxPayloadBytes < 1) {
+            throw new IllegalArgumentException("maxPayloadBytes must be greater than 0");
+        }
+        PayloadCompression.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    /**
+     * Returns true, if the payload is a framed, compressed payload.
+     *
+     * @param payload the payload, or null
+     * @return true if the payload is compressed, false otherwise
+     */
+    public static boolean isCompressed(final @Nullable byte[] payload) {
+        return payload != null && payload.length >= HEADER_LENGTH && payload[0] == MAGIC_BYTE;
+    }
+
+    /**
+     * Decompresses a framed, compressed payload, limited to {@link #getMaxPayloadBytes()} bytes. Payloads that are
+     * not compressed are returned as-is.
+     *
+     * @param payload the possibly compressed payload, or null
+     * @return decompressed payload
+     * @throws IllegalStateException if the payload is compressed using an unknown compression, if the payload
+     * is corrupted, or if the decompressed payload exceeds the limit.
+     */
+    @Nullable
+    public static byte[] decompress(final @Nullable byte[] payload) {
+        return decompress(payload, maxPayloadBytes);
+    }
+
+    /**
+     * Decompresses a framed, compressed payload. Payloads that are not compressed are returned as-is.
+     *
+     * @param payload the possibly compressed payload, or null
+     * @param maxPayloadBytes the maximum size of the decompressed payload
+     * @return decompressed payload
+     * @throws IllegalStateException if the payload is compressed using an unknown compression, if the payload
+     * is corrupted, or if the decompressed payload is larger than {@code maxPayloadBytes}.
+     */
+    @Nullable
+    public static byte[] decompress(final @Nullable byte[] payload, final int maxPayloadBytes) {
+        if (!isCompressed(payload)) {
+            return payload;
+        }
+        final PayloadCompression compression = compressionOf(payload[1]);
+        try {
+            return compression.inflate(payload, HEADER_LENGTH, maxPayloadBytes);
+        } catch (final DataFormatException e) {
+            throw new IllegalStateException("Unable to decompress payload: " + e.getMessage(), e);
+        }
+    }
+
+    private static PayloadCompression compressionOf(final byte id) {
+        for (final PayloadCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IllegalStateException("Unable to decompress payload: unknown compression " + id);
+    }
+}
@@ -0,0 +1,33 @@
+package de.otto.synapse.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.checkpoint.CheckpointStore;
+import de.otto.synapse.checkpoint.FileCheckpointStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Configures the {@link CheckpointStore} used by the event sources of the application, if
+ * {@code synapse.checkpoint.enabled=true}.
+ * <p>
+ *     The configuration is imported by the {@link SynapseAutoConfiguration}.
+ * </p>
+ */
+@Configuration
+@EnableConfigurationProperties(CheckpointProperties.class)
+public class CheckpointConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "synapse.checkpoint", name = "enabled", havingValue = "true")
+    public CheckpointStore checkpointStore(final CheckpointProperties checkpointProperties,
+                                           final ObjectMapper objectMapper) {
+        return new FileCheckpointStore(Paths.get(checkpointProperties.getDirectory()), objectMapper);
+    }
+
+}
@@ -0,0 +1,60 @@
+package de.otto.synapse.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "synapse.checkpoint")
+public class CheckpointProperties {
+
+    /**
+     * Save checkpoints of the consumed channels, and resume consumption from the latest checkpoint after a restart,
+     * instead of replaying the snapshot of the channel. Requires the consumers to use durable state repositories:
+     * checkpoints are only enabled for channels having a persisted ChronicleMapStateRepository that is built
+     * {@code withChannelName(channelName)}.
+     */
+    private boolean enabled = false;
+    /**
+     * The directory containing the checkpoint files.
+     */
+    private String directory = "./checkpoints";
+    /**
+     * The number of seconds between two checkpoints of a channel.
+     */
+    private long intervalSeconds = 60;
+    /**
+     * The maximum age of a checkpoint in seconds. Older checkpoints are ignored and the snapshot is replayed
+     * instead. Must be lower than the retention period of the channels.
+     */
+    private long maxAgeSeconds = 12 * 60 * 60;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public void setIntervalSeconds(final long intervalSeconds) {
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(final long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+}
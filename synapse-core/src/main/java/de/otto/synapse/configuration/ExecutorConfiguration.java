@@ -0,0 +1,26 @@
+package de.otto.synapse.configuration;
+
+import de.otto.synapse.executor.SynapseExecutors;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures the {@link SynapseExecutors} shared by all channels of the application.
+ * <p>
+ *     The configuration is imported by the {@link SynapseAutoConfiguration} and by the auto-configurations of
+ *     receiver endpoints.
+ * </p>
+ */
+@Configuration
+@EnableConfigurationProperties(ExecutorProperties.class)
+public class ExecutorConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public SynapseExecutors synapseExecutors(final ExecutorProperties executorProperties) {
+        return new SynapseExecutors(executorProperties.getMaxThreadsPerChannel(), executorProperties.isVirtualThreads());
+    }
+
+}
@@ -0,0 +1,35 @@
+package de.otto.synapse.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import static de.otto.synapse.executor.SynapseExecutors.DEFAULT_MAX_THREADS_PER_CHANNEL;
+
+@ConfigurationProperties(prefix = "synapse.executor")
+public class ExecutorProperties {
+
+    /**
+     * The maximum number of threads per channel, shared by the receiver endpoint, the event source and the
+     * snapshot loading of the channel.
+     */
+    private int maxThreadsPerChannel = DEFAULT_MAX_THREADS_PER_CHANNEL;
+    /**
+     * Use virtual threads instead of platform threads, if supported by the JDK.
+     */
+    private boolean virtualThreads = false;
+
+    public int getMaxThreadsPerChannel() {
+        return maxThreadsPerChannel;
+    }
+
+    public void setMaxThreadsPerChannel(final int maxThreadsPerChannel) {
+        this.maxThreadsPerChannel = maxThreadsPerChannel;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
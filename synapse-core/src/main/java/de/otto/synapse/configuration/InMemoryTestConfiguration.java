@@ -7,6 +7,7 @@ import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpointFactory;
 import de.otto.synapse.endpoint.sender.InMemoryMessageSenderFactory;
 import de.otto.synapse.endpoint.sender.MessageSenderEndpointFactory;
 import de.otto.synapse.eventsource.InMemoryMessageLogReceiverEndpointFactory;
+import de.otto.synapse.executor.SynapseExecutors;
 import de.otto.synapse.messagestore.CompactingInMemoryMessageStore;
 import de.otto.synapse.messagestore.DelegatingSnapshotMessageStore;
 import de.otto.synapse.messagestore.MessageStoreFactory;
@@ -14,6 +15,7 @@ import de.otto.synapse.messagestore.SnapshotMessageStore;
 import org.slf4j.Logger;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -32,6 +34,7 @@ import static org.slf4j.LoggerFactory.getLogger;
  * }
  * </code></pre>
  */
+@Import(ExecutorConfiguration.class)
 public class InMemoryTestConfiguration {
 
     // TODO: in eine testsupport lib verschieben
@@ -39,8 +42,10 @@ public class InMemoryTestConfiguration {
     private static final Logger LOG = getLogger(InMemoryTestConfiguration.class);
 
     @Bean
-    public InMemoryChannels inMemoryChannels(final ObjectMapper objectMapper, final ApplicationEventPublisher eventPublisher) {
-        return new InMemoryChannels(objectMapper, eventPublisher);
+    public InMemoryChannels inMemoryChannels(final ObjectMapper objectMapper,
+                                             final ApplicationEventPublisher eventPublisher,
+                                             final SynapseExecutors synapseExecutors) {
+        return new InMemoryChannels(objectMapper, eventPublisher, synapseExecutors);
     }
 
     @Bean
@@ -3,14 +3,19 @@ package de.otto.synapse.configuration;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import de.otto.synapse.annotation.EventSourceConsumerBeanPostProcessor;
+import de.otto.synapse.checkpoint.CheckpointStore;
 import de.otto.synapse.endpoint.MessageInterceptorRegistry;
+import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint;
 import de.otto.synapse.eventsource.DefaultEventSource;
 import de.otto.synapse.eventsource.EventSource;
 import de.otto.synapse.eventsource.EventSourceBuilder;
 import de.otto.synapse.eventsource.EventSourceConsumerProcess;
+import de.otto.synapse.executor.SynapseExecutors;
 import de.otto.synapse.messagestore.MessageStoreFactory;
 import de.otto.synapse.messagestore.SnapshotMessageStore;
+import de.otto.synapse.state.StateRepository;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -18,16 +23,23 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Role;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
+import static de.otto.synapse.annotation.BeanNameHelper.beanNameForEventSource;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.beans.factory.config.BeanDefinition.ROLE_INFRASTRUCTURE;
 
 @Configuration
 @EnableConfigurationProperties(ConsumerProcessProperties.class)
+@Import({ExecutorConfiguration.class, CheckpointConfiguration.class})
 public class SynapseAutoConfiguration {
 
     private static final Logger LOG = getLogger(SynapseAutoConfiguration.class);
@@ -38,13 +50,53 @@ public class SynapseAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public EventSourceBuilder eventSourceBuilder(final MessageStoreFactory<SnapshotMessageStore> snapshotMessageStoreFactory) {
-        return (messageLog) -> {
-            final SnapshotMessageStore messageStore = snapshotMessageStoreFactory.createMessageStoreFor(messageLog.getChannelName());
-            return new DefaultEventSource(messageStore, messageLog);
+    public EventSourceBuilder eventSourceBuilder(final MessageStoreFactory<SnapshotMessageStore> snapshotMessageStoreFactory,
+                                                 final SynapseExecutors synapseExecutors,
+                                                 final CheckpointProperties checkpointProperties,
+                                                 final ObjectProvider<CheckpointStore> checkpointStore,
+                                                 final ObjectProvider<List<StateRepository<?>>> stateRepositories) {
+        return new EventSourceBuilder() {
+            @Override
+            public EventSource buildEventSource(final MessageLogReceiverEndpoint messageLog) {
+                return buildEventSource(beanNameForEventSource(messageLog.getChannelName()), messageLog);
+            }
+
+            @Override
+            public EventSource buildEventSource(final String eventSourceName,
+                                                final MessageLogReceiverEndpoint messageLog) {
+                final String channelName = messageLog.getChannelName();
+                final List<StateRepository<?>> durableStateRepositories = durableStateRepositoriesOf(channelName, stateRepositories.getIfAvailable());
+                CheckpointStore eventSourceCheckpointStore = checkpointStore.getIfAvailable();
+                if (eventSourceCheckpointStore != null && durableStateRepositories.isEmpty()) {
+                    // without clearing the durable state, a fallback to the snapshot would keep entries deleted in the meantime:
+                    LOG.warn("Disabled checkpoints of EventSource {}: there is no durable StateRepository of channel {}", eventSourceName, channelName);
+                    eventSourceCheckpointStore = null;
+                }
+                return new DefaultEventSource(
+                        eventSourceName,
+                        () -> snapshotMessageStoreFactory.createMessageStoreFor(channelName),
+                        messageLog,
+                        synapseExecutors.executorFor(channelName),
+                        eventSourceCheckpointStore,
+                        Duration.ofSeconds(checkpointProperties.getIntervalSeconds()),
+                        Duration.ofSeconds(checkpointProperties.getMaxAgeSeconds()),
+                        Clock.systemDefaultZone(),
+                        durableStateRepositories);
+            }
         };
     }
 
+    private static List<StateRepository<?>> durableStateRepositoriesOf(final String channelName,
+                                                                       final List<StateRepository<?>> stateRepositories) {
+        if (stateRepositories == null) {
+            return emptyList();
+        }
+        return stateRepositories
+                .stream()
+                .filter(stateRepository -> stateRepository.isDurableStateOf(channelName))
+                .collect(toList());
+    }
+
     @Bean
     @ConditionalOnProperty(
             prefix = "synapse",
@@ -0,0 +1,45 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link MessageConsumer} that is processing {@link Message messages} asynchronously.
+ * <p>
+ *     Async consumers are useful for I/O-bound consumers, for example consumers calling some remote system:
+ *     instead of blocking the thread that is reading from the channel, {@link #acceptAsync(Message)} returns
+ *     a {@link CompletionStage} that is completed after the message was processed. Message log receivers are
+ *     able to keep multiple messages in flight, so the latency of the processing is overlapping.
+ * </p>
+ * <p>
+ *     The consumer is called in the order the messages were received, but the processing of messages may
+ *     overlap - even for messages having the same key.
+ * </p>
+ * <p>
+ *     Messages that are dispatched synchronously are consumed using {@link #accept(Message)}, which is
+ *     waiting for the completion of {@link #acceptAsync(Message)} by default.
+ * </p>
+ *
+ * @param <T> the type of the messages's payload
+ */
+@ThreadSafe
+public interface AsyncMessageConsumer<T> extends MessageConsumer<T> {
+
+    /**
+     * Starts to process a message.
+     *
+     * @param message the message
+     * @return CompletionStage that is completed after the message was processed
+     */
+    @Nonnull
+    CompletionStage<Void> acceptAsync(Message<T> message);
+
+    @Override
+    default void accept(final Message<T> message) {
+        acceptAsync(message).toCompletableFuture().join();
+    }
+
+}
@@ -0,0 +1,50 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * A {@link MessageConsumer} that is able to consume multiple {@link Message messages} at once.
+ * <p>
+ *     Batch consumers are receiving all matching messages of a single read operation - for example, all
+ *     messages of a Kinesis shard response, or a chunk of messages from a snapshot - as a single list.
+ *     This makes it possible to apply bulk updates to some state, instead of updating the state for every
+ *     single message.
+ * </p>
+ * <p>
+ *     The messages are passed to the consumer in the order they were read from the channel. The payloads of
+ *     the messages are already translated into the expected {@link #payloadType()}.
+ * </p>
+ * <p>
+ *     If the messages of a channel are dispatched in parallel by a {@link KeyPartitionedDispatcher}, every lane
+ *     passes its part of a read operation as a separate batch, and the batches of different lanes are consumed
+ *     concurrently. Only the messages having the same key are guaranteed to be part of the same batch.
+ * </p>
+ * <p>
+ *     Messages that are dispatched one by one are consumed using {@link #accept(Message)}, which is
+ *     calling {@link #acceptAll(List)} with a single-element list by default.
+ * </p>
+ *
+ * @param <T> the type of the messages's payload
+ */
+@ThreadSafe
+public interface BatchMessageConsumer<T> extends MessageConsumer<T> {
+
+    /**
+     * Consumes a batch of messages.
+     *
+     * @param messages the non-empty list of messages, in the order they were received.
+     */
+    void acceptAll(@Nonnull List<Message<T>> messages);
+
+    @Override
+    default void accept(final Message<T> message) {
+        acceptAll(singletonList(message));
+    }
+
+}
@@ -0,0 +1,194 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Dispatches batches of {@link Message messages} to a {@link MessageConsumer} using a fixed number of
+ * worker lanes.
+ * <p>
+ *     Messages are assigned to lanes by hashing their {@link Message#getKey() key}, so all messages having the
+ *     same key are processed by the same lane in the order of the batch. Messages with different keys may be
+ *     processed in parallel.
+ * </p>
+ * <p>
+ *     {@link #dispatch(List)} returns after all lanes have processed their part of the batch. Callers are
+ *     therefore able to advance their read position after a batch was dispatched, just like in the
+ *     single-threaded case. {@link #dispatchAsync(List)} returns after all lanes have dispatched their part of the
+ *     batch, together with a future that is completed when {@link AsyncMessageConsumer async consumers} have
+ *     finished processing.
+ * </p>
+ * <p>
+ *     The dispatcher does not start any threads: the lanes are executed by the {@link Executor} of the caller,
+ *     typically the {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of the channel}.
+ *     Lanes that were not yet started by the executor - because all threads are busy, or because the executor
+ *     rejected the lane - are processed by the calling thread, so dispatching never waits for a thread that might
+ *     never become available. A dispatcher with only one lane dispatches all messages in the calling thread.
+ * </p>
+ * <p>
+ *     If the consumer is a {@link BatchMessageConsumer}, or a {@link MessageDispatcher} having batch consumers,
+ *     every lane is passing its part of the batch to {@link BatchMessageConsumer#acceptAll(List)} instead of
+ *     dispatching the messages one by one. With more than one lane, a batch consumer is therefore receiving up to
+ *     {@code parallelism} partial batches per dispatched batch, and the partial batches are consumed concurrently.
+ *     Batch consumers must be thread-safe, and must not expect a batch to contain all messages of a response.
+ * </p>
+ */
+@ThreadSafe
+public class KeyPartitionedDispatcher {
+
+    private static final Logger LOG = getLogger(KeyPartitionedDispatcher.class);
+
+    private final int parallelism;
+    private final Executor executor;
+    private final Consumer<Message<String>> messageConsumer;
+
+    /**
+     * Creates a KeyPartitionedDispatcher.
+     *
+     * @param parallelism the number of lanes
+     * @param executor the executor used to run the lanes in parallel. The executor is not required to have a thread
+     *                 per lane: lanes that are not started by the executor are processed by the calling thread.
+     * @param messageConsumer the consumer that is called for every dispatched message
+     */
+    public KeyPartitionedDispatcher(final int parallelism,
+                                    final @Nonnull Executor executor,
+                                    final @Nonnull Consumer<Message<String>> messageConsumer) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be greater than zero");
+        }
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.messageConsumer = messageConsumer;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Dispatches a batch of messages and waits until all messages are processed.
+     * <p>
+     *     Exceptions thrown by the consumer are logged and do not stop the processing of the remaining messages.
+     * </p>
+     *
+     * @param messages the batch of messages
+     */
+    public void dispatch(final @Nonnull List<Message<String>> messages) {
+        dispatchAsync(messages).join();
+    }
+
+    /**
+     * Dispatches a batch of messages and waits until all messages are dispatched, without waiting for
+     * {@link AsyncMessageConsumer async consumers} to complete.
+     * <p>
+     *     Async consumers are only supported, if the consumer of the dispatcher is a {@link MessageDispatcher}.
+     *     Exceptions thrown by the consumer are logged and do not stop the processing of the remaining messages.
+     * </p>
+     *
+     * @param messages the batch of messages
+     * @return CompletableFuture that is completed after all async consumers have processed the messages
+     */
+    public CompletableFuture<Void> dispatchAsync(final @Nonnull List<Message<String>> messages) {
+        if (messages.isEmpty()) {
+            return completedFuture(null);
+        }
+        if (parallelism == 1) {
+            return dispatchPartition(messages);
+        } else {
+            final List<List<Message<String>>> partitions = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; ++i) {
+                partitions.add(new ArrayList<>());
+            }
+            messages.forEach(message -> partitions.get(laneOf(message.getKey())).add(message));
+            final List<Lane> lanes = partitions
+                    .stream()
+                    .filter(partition -> !partition.isEmpty())
+                    .map(Lane::new)
+                    .collect(toList());
+            for (final Lane lane : lanes.subList(1, lanes.size())) {
+                try {
+                    executor.execute(lane);
+                } catch (final RejectedExecutionException e) {
+                    LOG.debug("Lane rejected by executor, dispatching in calling thread: {}", e.getMessage());
+                }
+            }
+            // lanes not yet started by the executor are processed by the calling thread:
+            lanes.forEach(Lane::run);
+            final CompletableFuture<?>[] completions = lanes
+                    .stream()
+                    .map(lane -> lane.dispatched.join())
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(completions);
+        }
+    }
+
+    private int laneOf(final String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % parallelism;
+    }
+
+    private CompletableFuture<Void> dispatchPartition(final List<Message<String>> partition) {
+        if (messageConsumer instanceof MessageDispatcher) {
+            try {
+                return ((MessageDispatcher) messageConsumer).acceptAllAsync(partition);
+            } catch (final Exception e) {
+                LOG.error("Error processing messages: " + e.getMessage(), e);
+            }
+        } else if (messageConsumer instanceof BatchMessageConsumer) {
+            try {
+                ((BatchMessageConsumer<String>) messageConsumer).acceptAll(partition);
+            } catch (final Exception e) {
+                LOG.error("Error processing messages: " + e.getMessage(), e);
+            }
+        } else {
+            partition.forEach(this::dispatchMessage);
+        }
+        return completedFuture(null);
+    }
+
+    private void dispatchMessage(final Message<String> message) {
+        try {
+            messageConsumer.accept(message);
+        } catch (final Exception e) {
+            LOG.error("Error processing message: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The part of a batch that is dispatched by a single lane. A lane is processed exactly once, either by the
+     * executor or by the calling thread - whichever is first.
+     */
+    private class Lane implements Runnable {
+        private final List<Message<String>> partition;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<CompletableFuture<Void>> dispatched = new CompletableFuture<>();
+
+        Lane(final List<Message<String>> partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                try {
+                    dispatched.complete(dispatchPartition(partition));
+                } catch (final RuntimeException e) {
+                    dispatched.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
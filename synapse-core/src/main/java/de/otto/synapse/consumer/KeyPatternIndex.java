@@ -0,0 +1,185 @@
+package de.otto.synapse.consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * An index of {@link MessageConsumer#keyPattern() key patterns} used to find the patterns matching a message key
+ * without evaluating every regular expression.
+ * <p>
+ *     The patterns are classified when the index is created:
+ * </p>
+ * <ul>
+ *     <li>match-all patterns like {@code .*} are matching every key;</li>
+ *     <li>literal patterns like {@code apple.123} - consisting of characters without special meaning, or
+ *     escaped special characters - are looked up in a hash index;</li>
+ *     <li>prefix patterns like {@code apple.*} are stored in a trie, so all matching prefixes are found by
+ *     walking the key once;</li>
+ *     <li>all other patterns are matched using the regular expression.</li>
+ * </ul>
+ * <p>
+ *     Keys containing line terminators are always matched using the regular expressions, because {@code .}
+ *     is not matching line terminators.
+ * </p>
+ */
+@Immutable
+final class KeyPatternIndex {
+
+    private static final String SPECIAL_CHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String MATCH_ALL = ".*";
+
+    private final Pattern[] patterns;
+    private final int[] matchAllPatterns;
+    private final Map<String, int[]> literalPatterns;
+    private final TrieNode prefixPatterns;
+    private final int[] regexPatterns;
+
+    /**
+     * Creates an index for a list of patterns. The patterns are identified by their position in the list.
+     *
+     * @param patterns the list of patterns
+     */
+    KeyPatternIndex(final @Nonnull List<Pattern> patterns) {
+        this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+        final List<Integer> matchAll = new ArrayList<>();
+        final List<Integer> regex = new ArrayList<>();
+        final Map<String, List<Integer>> literals = new HashMap<>();
+        final TrieNode prefixes = new TrieNode();
+        for (int i = 0; i < this.patterns.length; ++i) {
+            final Pattern pattern = this.patterns[i];
+            final String expression = pattern.pattern();
+            final String literal = pattern.flags() == 0 ? literalOf(expression) : null;
+            final String prefix = pattern.flags() == 0 && expression.endsWith(MATCH_ALL)
+                    ? literalOf(expression.substring(0, expression.length() - MATCH_ALL.length()))
+                    : null;
+            if (literal != null) {
+                literals.computeIfAbsent(literal, (key) -> new ArrayList<>()).add(i);
+            } else if (prefix != null && prefix.isEmpty()) {
+                matchAll.add(i);
+            } else if (prefix != null) {
+                prefixes.add(prefix, i);
+            } else {
+                regex.add(i);
+            }
+        }
+        this.matchAllPatterns = toArray(matchAll);
+        this.regexPatterns = toArray(regex);
+        this.literalPatterns = new HashMap<>();
+        literals.forEach((literal, indexes) -> literalPatterns.put(literal, toArray(indexes)));
+        this.prefixPatterns = prefixes;
+    }
+
+    /**
+     * Calls {@code action} with the position of every pattern matching the key, in ascending order.
+     *
+     * @param key the message key
+     * @param action the action called for every matching pattern
+     */
+    void forEachMatch(final @Nonnull String key, final @Nonnull IntConsumer action) {
+        if (!isSingleLine(key)) {
+            for (int i = 0; i < patterns.length; ++i) {
+                if (patterns[i].matcher(key).matches()) {
+                    action.accept(i);
+                }
+            }
+            return;
+        }
+        if (matchAllPatterns.length == patterns.length) {
+            for (int i = 0; i < patterns.length; ++i) {
+                action.accept(i);
+            }
+            return;
+        }
+        final BitSet matches = new BitSet(patterns.length);
+        set(matches, matchAllPatterns);
+        set(matches, literalPatterns.get(key));
+        TrieNode node = prefixPatterns;
+        set(matches, node.patterns);
+        for (int i = 0; i < key.length() && node != null; ++i) {
+            node = node.children.get(key.charAt(i));
+            if (node != null) {
+                set(matches, node.patterns);
+            }
+        }
+        for (final int i : regexPatterns) {
+            if (patterns[i].matcher(key).matches()) {
+                matches.set(i);
+            }
+        }
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            action.accept(i);
+        }
+    }
+
+    /**
+     * Returns the literal represented by the expression, or null if the expression contains unescaped special
+     * characters or escape sequences other than escaped special characters.
+     */
+    private static String literalOf(final String expression) {
+        final StringBuilder literal = new StringBuilder(expression.length());
+        for (int i = 0; i < expression.length(); ++i) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < expression.length() && SPECIAL_CHARACTERS.indexOf(expression.charAt(i + 1)) >= 0) {
+                    literal.append(expression.charAt(++i));
+                } else {
+                    return null;
+                }
+            } else if (SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    private static boolean isSingleLine(final String key) {
+        for (int i = 0; i < key.length(); ++i) {
+            final char c = key.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void set(final BitSet bitSet, final int[] positions) {
+        if (positions != null) {
+            for (final int position : positions) {
+                bitSet.set(position);
+            }
+        }
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private int[] patterns;
+
+        private void add(final String prefix, final int pattern) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length(); ++i) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), (c) -> new TrieNode());
+            }
+            node.patterns = node.patterns == null ? new int[] {pattern} : append(node.patterns, pattern);
+        }
+
+        private static int[] append(final int[] patterns, final int pattern) {
+            final int[] result = new int[patterns.length + 1];
+            System.arraycopy(patterns, 0, result, 0, patterns.length);
+            result[patterns.length] = pattern;
+            return result;
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package de.otto.synapse.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableList;
+import de.otto.synapse.codec.PayloadCodec;
+import de.otto.synapse.message.BinaryMessage;
 import de.otto.synapse.message.Message;
 import org.slf4j.Logger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
+import static de.otto.synapse.codec.PayloadCodecs.JSON;
 import static de.otto.synapse.message.Message.message;
-import static java.util.Collections.synchronizedList;
-import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.regex.Pattern.compile;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -27,34 +42,64 @@ import static org.slf4j.LoggerFactory.getLogger;
  * <p>
  *     Messages are translated by the dispatcher using to the format expected by the registered consumers.
  * </p>
+ * <p>
+ *     The registered consumers are kept in an immutable routing table that is rebuilt whenever a consumer is
+ *     {@link #add(MessageConsumer) added}. Messages are dispatched to the matching consumers in the order of
+ *     their registration.
+ * </p>
+ * <p>
+ *     The payload of a message is only deserialized once per {@link MessageConsumer#payloadType() payload type},
+ *     no matter how many consumers are expecting this type: all consumers of the same payload type are receiving
+ *     the same payload instance, so consumers must not modify the payload of a message. Payloads of
+ *     {@link BinaryMessage binary messages} are parsed directly from their bytes, using the
+ *     {@link BinaryMessage#getPayloadCodec() codec} of the message.
+ * </p>
+ * <p>
+ *     Batches of messages that are {@link #acceptAll(List) accepted} by the dispatcher are passed as a
+ *     single list to all registered {@link BatchMessageConsumer batch consumers}. Because the list is only complete
+ *     after the whole batch was dispatched, batch consumers are called after all other consumers of a batch.
+ *     Single messages that are {@link #accept(Message) accepted} by the dispatcher are passed to batch consumers
+ *     in the order of their registration.
+ * </p>
+ * <p>
+ *     {@link AsyncMessageConsumer Async consumers} are supported using {@link #acceptAllAsync(List)}. All other
+ *     methods are waiting until the async consumers have processed the messages.
+ * </p>
  * @see  <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/MessageDispatcher.html">EIP: Message Dispatcher</a>
  * @see <a href="https://en.wikipedia.org/wiki/Composite_pattern">Composite Pattern</a>
  */
-public class MessageDispatcher implements MessageConsumer<String> {
+@ThreadSafe
+public class MessageDispatcher implements BatchMessageConsumer<String> {
 
     private static final Logger LOG = getLogger(MessageDispatcher.class);
     private static final Pattern ACCEPT_ALL = compile(".*");
 
-    private final List<MessageConsumer<?>> messageConsumers;
     private final ObjectMapper objectMapper;
+    private volatile ImmutableList<MessageConsumer<?>> messageConsumers;
+    private volatile RoutingTable routingTable;
 
     public MessageDispatcher(final ObjectMapper objectMapper) {
-        this.messageConsumers = synchronizedList(new ArrayList<>());
-        this.objectMapper = objectMapper;
+        this(objectMapper, ImmutableList.of());
     }
 
     public MessageDispatcher(final ObjectMapper objectMapper,
                              final List<MessageConsumer<?>> messageConsumers) {
-        this.messageConsumers = synchronizedList(new ArrayList<>(messageConsumers));
         this.objectMapper = objectMapper;
+        this.messageConsumers = ImmutableList.copyOf(messageConsumers);
+        this.routingTable = new RoutingTable(objectMapper, this.messageConsumers);
     }
 
-    public void add(final MessageConsumer<?> messageConsumer) {
-        this.messageConsumers.add(messageConsumer);
+    public synchronized void add(final MessageConsumer<?> messageConsumer) {
+        final ImmutableList<MessageConsumer<?>> consumers = ImmutableList.<MessageConsumer<?>>builder()
+                .addAll(messageConsumers)
+                .add(messageConsumer)
+                .build();
+        this.routingTable = new RoutingTable(objectMapper, consumers);
+        this.messageConsumers = consumers;
     }
 
     public List<MessageConsumer<?>> getAll() {
-        return unmodifiableList(messageConsumers);
+        return messageConsumers;
     }
 
     /**
@@ -84,38 +129,270 @@ public class MessageDispatcher implements MessageConsumer<String> {
      * {@link MessageConsumer consumers} if their {@link MessageConsumer#keyPattern()} matches, and
      * translates the JSON payload into the expected {@link MessageConsumer#payloadType()} of the receiving
      * MessageConsumer.
+     * <p>
+     *     Matching consumers are called in the order of their registration. The payload is deserialized at
+     *     most once per payload type, and only if at least one consumer of this type is matching the key of
+     *     the message; consumers of the same payload type are sharing the deserialized payload. Matching
+     *     consumers are selected using a
+     *     {@link KeyPatternIndex}, so literal, prefix and match-all key patterns are not evaluated as regular
+     *     expressions.
+     * </p>
      *
      * @param message the input argument
      */
     @Override
-    @SuppressWarnings({"unchecked", "raw"})
     public void accept(final Message<String> message) {
         LOG.debug("Accepting message={}", message);
-        messageConsumers
-                .stream()
-                .filter(consumer -> matchesKeyPattern(message, consumer.keyPattern()))
-                .forEach((MessageConsumer consumer) -> {
+        acceptAllAsync(singletonList(message)).join();
+    }
+
+    /**
+     * Accepts a batch of messages with JSON String payload and dispatches these messages to the registered
+     * {@link MessageConsumer consumers}.
+     * <p>
+     *     {@link BatchMessageConsumer Batch consumers} are receiving a single list containing all messages of the
+     *     batch that are matching the consumer's {@link MessageConsumer#keyPattern()}. Other consumers are
+     *     receiving the messages one by one, just like they were accepted using {@link #accept(Message)}. The
+     *     batch consumers are called after all messages are dispatched to the other consumers. Within each
+     *     group, consumers are called in the order of their registration.
+     * </p>
+     * <p>
+     *     Every payload is deserialized at most once per payload type. Messages that can not be deserialized
+     *     are logged and skipped.
+     * </p>
+     *
+     * @param messages the batch of messages
+     */
+    @Override
+    public void acceptAll(final @Nonnull List<Message<String>> messages) {
+        acceptAllAsync(messages).join();
+    }
+
+    /**
+     * Accepts a batch of messages just like {@link #acceptAll(List)}, but does not wait for the completion of
+     * {@link AsyncMessageConsumer async consumers}.
+     * <p>
+     *     Synchronous consumers and batch consumers have processed the messages when this method returns.
+     *     Async consumers have been called for all matching messages, but may still be processing the messages.
+     * </p>
+     *
+     * @param messages the batch of messages
+     * @return CompletableFuture that is completed after all async consumers have processed the messages. Failures
+     *         of the consumers are logged; the returned future is always completed normally.
+     */
+    @Nonnull
+    public CompletableFuture<Void> acceptAllAsync(final @Nonnull List<Message<String>> messages) {
+        LOG.debug("Accepting {} messages", messages.size());
+        if (messages.isEmpty()) {
+            return completedFuture(null);
+        }
+        final RoutingTable.Batch batch = routingTable.new Batch(messages);
+        for (int i = 0; i < messages.size(); ++i) {
+            batch.dispatch(i);
+        }
+        batch.dispatchAll();
+        return batch.completions.isEmpty()
+                ? completedFuture(null)
+                : allOf(batch.completions.toArray(new CompletableFuture[batch.completions.size()]));
+    }
+
+    /**
+     * The routing table of the dispatcher: all registered consumers in the order of their registration, a
+     * {@link KeyPatternIndex} used to select the consumers matching the key of a message, and the
+     * {@link PayloadTypeRoute} of every consumer.
+     */
+    private static final class RoutingTable {
+
+        private final ImmutableList<MessageConsumer<?>> consumers;
+        private final ImmutableList<PayloadTypeRoute> payloadTypeRoutes;
+        private final int[] payloadTypeRouteOfConsumer;
+        private final boolean[] batchConsumers;
+        private final boolean[] asyncConsumers;
+        private final KeyPatternIndex keyPatternIndex;
+
+        private RoutingTable(final ObjectMapper objectMapper,
+                             final ImmutableList<MessageConsumer<?>> consumers) {
+            this.consumers = consumers;
+            this.payloadTypeRouteOfConsumer = new int[consumers.size()];
+            this.batchConsumers = new boolean[consumers.size()];
+            this.asyncConsumers = new boolean[consumers.size()];
+            final Map<Class<?>, Integer> routesByPayloadType = new HashMap<>();
+            final ImmutableList.Builder<PayloadTypeRoute> routes = ImmutableList.builder();
+            for (int i = 0; i < consumers.size(); ++i) {
+                final MessageConsumer<?> consumer = consumers.get(i);
+                final Class<?> payloadType = consumer.payloadType();
+                if (!routesByPayloadType.containsKey(payloadType)) {
+                    routesByPayloadType.put(payloadType, routesByPayloadType.size());
+                    routes.add(new PayloadTypeRoute(payloadType, readerFor(objectMapper, payloadType)));
+                }
+                payloadTypeRouteOfConsumer[i] = routesByPayloadType.get(payloadType);
+                batchConsumers[i] = consumer instanceof BatchMessageConsumer;
+                asyncConsumers[i] = !batchConsumers[i] && consumer instanceof AsyncMessageConsumer;
+            }
+            this.payloadTypeRoutes = routes.build();
+            this.keyPatternIndex = new KeyPatternIndex(consumers
+                    .stream()
+                    .map(MessageConsumer::keyPattern)
+                    .collect(toList()));
+        }
+
+        private static ObjectReader readerFor(final ObjectMapper objectMapper, final Class<?> payloadType) {
+            return payloadType.equals(String.class)
+                    ? null
+                    : objectMapper.readerFor(payloadType);
+        }
+
+        /**
+         * A batch of messages dispatched using this routing table. Translated messages are cached, so every
+         * message is translated at most once per payload type.
+         */
+        private final class Batch {
+
+            private final List<Message<String>> messages;
+            private final Message<?>[][] translatedMessages;
+            private final boolean[][] failedMessages;
+            private final List<CompletableFuture<Void>> completions = new ArrayList<>();
+            private List<Message<?>>[] batchConsumerMessages;
+
+            private Batch(final List<Message<String>> messages) {
+                this.messages = messages;
+                this.translatedMessages = new Message<?>[payloadTypeRoutes.size()][];
+                this.failedMessages = new boolean[payloadTypeRoutes.size()][];
+            }
+
+            /**
+             * Dispatches a single message of the batch to the matching consumers, in the order of their
+             * registration. If the batch contains more than one message, the message is collected for the
+             * matching batch consumers. The completions of async consumers are collected in {@link #completions}.
+             */
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private void dispatch(final int index) {
+                keyPatternIndex.forEachMatch(messages.get(index).getKey(), (position) -> {
+                    final Message<?> translatedMessage = translated(payloadTypeRouteOfConsumer[position], index);
+                    if (translatedMessage == null) {
+                        return;
+                    }
                     try {
-                        final Class<?> payloadType = consumer.payloadType();
-                        if (payloadType.equals(String.class)) {
-                            consumer.accept(message);
-                        } else {
-                            Object payload = null;
-                            if (message.getPayload() != null) {
-                                payload = objectMapper.readValue(message.getPayload(), payloadType);
+                        if (batchConsumers[position] && messages.size() > 1) {
+                            if (batchConsumerMessages == null) {
+                                batchConsumerMessages = new List[consumers.size()];
+                            }
+                            if (batchConsumerMessages[position] == null) {
+                                batchConsumerMessages[position] = new ArrayList<>();
                             }
-                            final Message<?> tMessage = message(message.getKey(), message.getHeader(), payload);
-                            consumer.accept(tMessage);
+                            batchConsumerMessages[position].add(translatedMessage);
+                        } else if (batchConsumers[position]) {
+                            ((BatchMessageConsumer) consumers.get(position)).acceptAll(singletonList(translatedMessage));
+                        } else if (asyncConsumers[position]) {
+                            final CompletionStage<?> completion = ((AsyncMessageConsumer) consumers.get(position))
+                                    .acceptAsync(translatedMessage);
+                            completions.add(completion.toCompletableFuture().handle((result, throwable) -> {
+                                if (throwable != null) {
+                                    LOG.error(throwable.getMessage(), throwable);
+                                }
+                                return null;
+                            }));
+                        } else {
+                            ((MessageConsumer) consumers.get(position)).accept(translatedMessage);
                         }
                     } catch (final Exception e) {
                         LOG.error(e.getMessage(), e);
                     }
                 });
+            }
+
+            /**
+             * Dispatches the collected messages to the batch consumers, in the order of their registration.
+             */
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private void dispatchAll() {
+                if (batchConsumerMessages == null) {
+                    return;
+                }
+                for (int position = 0; position < consumers.size(); ++position) {
+                    final List<Message<?>> matchingMessages = batchConsumerMessages[position];
+                    if (matchingMessages != null) {
+                        try {
+                            ((BatchMessageConsumer) consumers.get(position)).acceptAll(matchingMessages);
+                        } catch (final Exception e) {
+                            LOG.error(e.getMessage(), e);
+                        }
+                    }
+                }
+            }
+
+            private Message<?> translated(final int route, final int index) {
+                if (translatedMessages[route] == null) {
+                    translatedMessages[route] = new Message<?>[messages.size()];
+                    failedMessages[route] = new boolean[messages.size()];
+                }
+                if (translatedMessages[route][index] == null && !failedMessages[route][index]) {
+                    try {
+                        translatedMessages[route][index] = payloadTypeRoutes.get(route).translate(messages.get(index));
+                    } catch (final Exception e) {
+                        LOG.error(e.getMessage(), e);
+                        failedMessages[route][index] = true;
+                    }
+                }
+                return translatedMessages[route][index];
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "RoutingTable{" +
+                    "consumers=" + consumers +
+                    ", payloadTypeRoutes=" + payloadTypeRoutes +
+                    '}';
+        }
     }
 
-    private boolean matchesKeyPattern(final Message<String> message,
-                                      final Pattern keyPattern) {
-        return keyPattern.matcher(message.getKey()).matches();
+    /**
+     * The translation of messages into a single payload type, shared by all consumers expecting this type,
+     * together with the {@link ObjectReader} used to deserialize payloads of this type.
+     */
+    private static final class PayloadTypeRoute {
+
+        private final Class<?> payloadType;
+        private final ObjectReader objectReader;
+        private final ConcurrentMap<PayloadCodec, ObjectReader> codecReaders = new ConcurrentHashMap<>();
+
+        private PayloadTypeRoute(final Class<?> payloadType,
+                                 final ObjectReader objectReader) {
+            this.payloadType = payloadType;
+            this.objectReader = objectReader;
+        }
+
+        private Message<?> translate(final Message<String> message) throws IOException {
+            if (objectReader == null) {
+                return message;
+            }
+            Object payload = null;
+            if (message instanceof BinaryMessage) {
+                final BinaryMessage binaryMessage = (BinaryMessage) message;
+                final byte[] payloadBytes = binaryMessage.getPayloadBytes();
+                if (payloadBytes != null) {
+                    payload = readerFor(binaryMessage.getPayloadCodec()).readValue(payloadBytes);
+                }
+            } else if (message.getPayload() != null) {
+                payload = objectReader.readValue(message.getPayload());
+            }
+            return message(message.getKey(), message.getHeader(), payload);
+        }
+
+        private ObjectReader readerFor(final PayloadCodec payloadCodec) {
+            if (payloadCodec == JSON) {
+                return objectReader;
+            }
+            return codecReaders.computeIfAbsent(payloadCodec, (codec) -> objectReader.with(codec.getJsonFactory()));
+        }
+
+        @Override
+        public String toString() {
+            return "PayloadTypeRoute{" +
+                    "payloadType=" + payloadType +
+                    '}';
+        }
     }
 
 }
@@ -0,0 +1,154 @@
+package de.otto.synapse.consumer;
+
+import org.slf4j.Logger;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.lang.reflect.Modifier.isPublic;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Creates {@link Consumer consumers} and {@link Function functions} that are calling a single-argument method of
+ * some instance without using reflection.
+ * <p>
+ *     Public methods of public classes are called using a {@code Consumer} or {@code Function} that is generated by the
+ *     {@link LambdaMetafactory}, all other methods are called using a {@link MethodHandle} that is bound to
+ *     the instance.
+ * </p>
+ */
+final class MethodInvokers {
+
+    private static final Logger LOG = getLogger(MethodInvokers.class);
+
+    private MethodInvokers() {
+    }
+
+    /**
+     * Creates a Consumer that is calling the given method of the instance. The return value of the method
+     * is ignored.
+     *
+     * @param instance the instance used to call the method
+     * @param method the method, expecting a single argument of type {@code parameterType}
+     * @param parameterType the parameter type of the method
+     * @param <P> the parameter type of the method
+     * @return Consumer
+     * @throws IllegalArgumentException if the method can not be accessed
+     */
+    @SuppressWarnings("unchecked")
+    static <P> Consumer<P> invokerFor(final Object instance,
+                                      final Method method,
+                                      final Class<? super P> parameterType) {
+        return (Consumer<P>) implementationOf(Consumer.class, "accept", methodType(void.class, parameterType), instance, method, () -> {
+            final MethodHandle methodHandle = methodHandleFor(instance, method, methodType(void.class, Object.class));
+            return argument -> {
+                try {
+                    methodHandle.invokeExact((Object) argument);
+                } catch (final RuntimeException | Error e) {
+                    throw e;
+                } catch (final Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        });
+    }
+
+    /**
+     * Creates a Function that is calling the given method of the instance and returns the result of the method.
+     *
+     * @param instance the instance used to call the method
+     * @param method the method, expecting a single argument of type {@code parameterType}
+     * @param parameterType the parameter type of the method
+     * @param <P> the parameter type of the method
+     * @param <R> the return type of the method
+     * @return Function
+     * @throws IllegalArgumentException if the method can not be accessed
+     */
+    @SuppressWarnings("unchecked")
+    static <P, R> Function<P, R> functionFor(final Object instance,
+                                             final Method method,
+                                             final Class<? super P> parameterType) {
+        return (Function<P, R>) implementationOf(Function.class, "apply", methodType(method.getReturnType(), parameterType), instance, method, () -> {
+            final MethodHandle methodHandle = methodHandleFor(instance, method, methodType(Object.class, Object.class));
+            return argument -> {
+                try {
+                    return (R) methodHandle.invokeExact((Object) argument);
+                } catch (final RuntimeException | Error e) {
+                    throw e;
+                } catch (final Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        });
+    }
+
+    /**
+     * Returns an implementation of the functional interface that is generated by the LambdaMetafactory, or the
+     * fallback implementation, if no lambda can be generated for the method.
+     */
+    private static <F> F implementationOf(final Class<F> functionalInterface,
+                                          final String methodName,
+                                          final MethodType instantiatedMethodType,
+                                          final Object instance,
+                                          final Method method,
+                                          final Supplier<F> fallback) {
+        if (isLambdaCompatible(method)) {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                final CallSite callSite = LambdaMetafactory.metafactory(
+                        lookup,
+                        methodName,
+                        methodType(functionalInterface, method.getDeclaringClass()),
+                        instantiatedMethodType.erase(),
+                        lookup.unreflect(method),
+                        instantiatedMethodType);
+                return functionalInterface.cast(callSite.getTarget().invoke(instance));
+            } catch (final Throwable t) {
+                LOG.debug("Unable to create lambda for method {}, falling back to MethodHandle: {}", method, t.getMessage());
+            }
+        }
+        return fallback.get();
+    }
+
+    /**
+     * Returns a MethodHandle that is bound to the instance and adapted to the given type.
+     */
+    private static MethodHandle methodHandleFor(final Object instance,
+                                                final Method method,
+                                                final MethodType type) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup()
+                    .unreflect(method)
+                    .bindTo(instance)
+                    .asType(type);
+        } catch (final IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Unable to build invoker for method " + method.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lambdas can only be generated for public methods of public classes that are visible from the
+     * ClassLoader of Synapse. Otherwise, linkage of the generated class might fail.
+     */
+    private static boolean isLambdaCompatible(final Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        if (!isPublic(method.getModifiers()) || !isPublic(declaringClass.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(declaringClass.getName(), false, MethodInvokers.class.getClassLoader()) == declaringClass;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+}
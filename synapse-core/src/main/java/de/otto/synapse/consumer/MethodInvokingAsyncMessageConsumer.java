@@ -0,0 +1,88 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static de.otto.synapse.consumer.MethodInvokers.functionFor;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * An {@link AsyncMessageConsumer} that is calling a method of a class instance for every accepted
+ * {@link Message}.
+ * <p>
+ *     The method must accept a single parameter of type {@code Message<T>} and return a {@link CompletionStage}
+ *     that is completed after the message was processed. Just like the {@link MethodInvokingMessageConsumer},
+ *     the method is not called using reflection.
+ * </p>
+ *
+ * @param <T> The expected type of the message's payload
+ */
+public class MethodInvokingAsyncMessageConsumer<T> implements AsyncMessageConsumer<T> {
+
+    private final Pattern keyPattern;
+    private final Class<T> payloadType;
+    private final Function<Message<?>, CompletionStage<?>> invoker;
+
+    public MethodInvokingAsyncMessageConsumer(final String keyPattern,
+                                              final Class<T> payloadType,
+                                              final Object instance,
+                                              final Method method) {
+        Objects.requireNonNull(keyPattern, "keyPattern must not be null");
+        Objects.requireNonNull(payloadType, "payloadType must not be null");
+        Objects.requireNonNull(instance, "Unable to build MethodInvokingAsyncMessageConsumer: instance parameter is null");
+        Objects.requireNonNull(method, "Unable to build MethodInvokingAsyncMessageConsumer: method parameter is null");
+
+        if (method.getParameterCount() != 1) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingAsyncMessageConsumer: illegal number of arguments ");
+        }
+        final Class<?> paramType = method.getParameterTypes()[0];
+        if (!paramType.equals(Message.class)) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingAsyncMessageConsumer: expected parameter type is Message, not " + paramType.getName());
+        }
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingAsyncMessageConsumer: expected return type is CompletionStage, not " + method.getReturnType().getName());
+        }
+
+        this.keyPattern = Pattern.compile(keyPattern);
+        this.payloadType = payloadType;
+        this.invoker = functionFor(instance, method, Message.class);
+    }
+
+    /**
+     * Returns the expected payload type of {@link Message events} consumed by this EventConsumer.
+     *
+     * @return payload type
+     */
+    @Nonnull
+    @Override
+    public Class<T> payloadType() {
+        return payloadType;
+    }
+
+    /**
+     * Returns the pattern of {@link Message#getKey() event keys} accepted by this consumer.
+     *
+     * @return Pattern
+     */
+    @Nonnull
+    @Override
+    public Pattern keyPattern() {
+        return keyPattern;
+    }
+
+    @Nonnull
+    @Override
+    public CompletionStage<Void> acceptAsync(final Message<T> message) {
+        final CompletionStage<?> completion = invoker.apply(message);
+        return completion != null
+                ? completion.thenApply(result -> null)
+                : completedFuture(null);
+    }
+
+}
@@ -0,0 +1,79 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import static de.otto.synapse.consumer.MethodInvokers.invokerFor;
+
+/**
+ * A {@link BatchMessageConsumer} that is calling a method of a class instance for every accepted batch of
+ * {@link Message messages}.
+ * <p>
+ *     The method must accept a single parameter of type {@code List<Message<T>>}. Just like the
+ *     {@link MethodInvokingMessageConsumer}, the method is not called using reflection.
+ * </p>
+ *
+ * @param <T> The expected type of the message's payload
+ */
+public class MethodInvokingBatchMessageConsumer<T> implements BatchMessageConsumer<T> {
+
+    private final Pattern keyPattern;
+    private final Class<T> payloadType;
+    private final Consumer<List<?>> invoker;
+
+    public MethodInvokingBatchMessageConsumer(final String keyPattern,
+                                              final Class<T> payloadType,
+                                              final Object instance,
+                                              final Method method) {
+        Objects.requireNonNull(keyPattern, "keyPattern must not be null");
+        Objects.requireNonNull(payloadType, "payloadType must not be null");
+        Objects.requireNonNull(instance, "Unable to build MethodInvokingBatchMessageConsumer: instance parameter is null");
+        Objects.requireNonNull(method, "Unable to build MethodInvokingBatchMessageConsumer: method parameter is null");
+
+        if (method.getParameterCount() != 1) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingBatchMessageConsumer: illegal number of arguments ");
+        }
+        final Class<?> paramType = method.getParameterTypes()[0];
+        if (!paramType.equals(List.class)) {
+            throw new IllegalArgumentException("Unable to build MethodInvokingBatchMessageConsumer: expected parameter type is List, not " + paramType.getName());
+        }
+
+        this.keyPattern = Pattern.compile(keyPattern);
+        this.payloadType = payloadType;
+        this.invoker = invokerFor(instance, method, List.class);
+    }
+
+    /**
+     * Returns the expected payload type of {@link Message events} consumed by this EventConsumer.
+     *
+     * @return payload type
+     */
+    @Nonnull
+    @Override
+    public Class<T> payloadType() {
+        return payloadType;
+    }
+
+    /**
+     * Returns the pattern of {@link Message#getKey() event keys} accepted by this consumer.
+     *
+     * @return Pattern
+     */
+    @Nonnull
+    @Override
+    public Pattern keyPattern() {
+        return keyPattern;
+    }
+
+    @Override
+    public void acceptAll(final @Nonnull List<Message<T>> messages) {
+        invoker.accept(messages);
+    }
+
+}
@@ -3,16 +3,26 @@ package de.otto.synapse.consumer;
 import de.otto.synapse.message.Message;
 
 import javax.annotation.Nonnull;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
+import static de.otto.synapse.consumer.MethodInvokers.invokerFor;
+
 /**
  * A {@link MessageConsumer} that is calling a method of a class instance for every accepted {@link Message}
  * <p>
  *     <img src="http://www.enterpriseintegrationpatterns.com/img/MessageEndpointSolution.gif" alt="MesageConsumer">
  * </p>
+ * <p>
+ *     The method is not called using reflection. Instead, an invoker is created once when the consumer is
+ *     constructed: public methods of public classes are called using a {@link Consumer} that is generated by the
+ *     {@link LambdaMetafactory}, all other methods are called using a {@link MethodHandle} that is bound to
+ *     the instance.
+ * </p>
 
  * @param <T> The expected type of the message's payload
  */
@@ -20,8 +30,7 @@ public class MethodInvokingMessageConsumer<T> implements MessageConsumer<T> {
 
     private final Pattern keyPattern;
     private final Class<T> payloadType;
-    private final Object instance;
-    private final Method method;
+    private final Consumer<Message<?>> invoker;
 
     public MethodInvokingMessageConsumer(final String keyPattern,
                                          final Class<T> payloadType,
@@ -42,8 +51,7 @@ public class MethodInvokingMessageConsumer<T> implements MessageConsumer<T> {
 
         this.keyPattern = Pattern.compile(keyPattern);
         this.payloadType = payloadType;
-        this.method = method;
-        this.instance = instance;
+        this.invoker = invokerFor(instance, method, Message.class);
     }
 
     /**
@@ -70,11 +78,7 @@ public class MethodInvokingMessageConsumer<T> implements MessageConsumer<T> {
 
     @Override
     public void accept(final Message<T> message) {
-        try {
-            method.invoke(instance, message);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalStateException(e);
-        }
+        invoker.accept(message);
     }
 
 }
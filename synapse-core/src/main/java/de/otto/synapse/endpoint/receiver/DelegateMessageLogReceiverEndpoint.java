@@ -12,6 +12,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class DelegateMessageLogReceiverEndpoint implements MessageLogReceiverEndpoint {
 
@@ -29,6 +30,19 @@ public class DelegateMessageLogReceiverEndpoint implements MessageLogReceiverEnd
         return delegate.consumeUntil(startFrom, until);
     }
 
+    @Nonnull
+    @Override
+    public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull ChannelPosition startFrom,
+                                                           final @Nonnull Instant until,
+                                                           final @Nonnull Consumer<ChannelPosition> positionListener) {
+        return delegate.consumeUntil(startFrom, until, positionListener);
+    }
+
+    @Override
+    public void prepare(final @Nonnull ChannelPosition startFrom) {
+        delegate.prepare(startFrom);
+    }
+
     @Override
     public void stop() {
         delegate.stop();
@@ -0,0 +1,220 @@
+package de.otto.synapse.endpoint.receiver;
+
+import de.otto.synapse.channel.ShardPosition;
+import de.otto.synapse.consumer.AsyncMessageConsumer;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps track of the messages of a single shard that are still processed by
+ * {@link AsyncMessageConsumer async consumers}.
+ * <p>
+ *     Every batch of dispatched messages is {@link #add(CompletableFuture, int, ShardPosition) added} to the window,
+ *     together with the shard position of the last message of the batch. If the number of in-flight messages
+ *     would exceed the limit of the window, the calling thread is blocked until earlier batches are completed.
+ *     This is applying back-pressure to the thread reading from the shard.
+ * </p>
+ * <p>
+ *     Readers that must not block, because they are running on a shared scheduler, are
+ *     {@link #addWithoutWaiting(CompletableFuture, int, ShardPosition) adding} batches without waiting and are
+ *     parking the shard instead: the next batch is only read, after the future returned by
+ *     {@link #whenAvailable()} is completed.
+ * </p>
+ * <p>
+ *     The {@link #getCompletedPosition() completed position} of the window is only advanced, if all
+ *     earlier batches are completed as well, so a completed position can always be used to continue reading
+ *     without losing messages.
+ * </p>
+ * <p>
+ *     A single batch is always accepted, even if it contains more messages than the limit of the window.
+ * </p>
+ */
+@ThreadSafe
+public class InFlightWindow {
+
+    private static final Logger LOG = getLogger(InFlightWindow.class);
+
+    private final int maxInFlightMessages;
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private final List<CompletableFuture<Void>> waitingForCapacity = new ArrayList<>();
+    private final List<CompletableFuture<ShardPosition>> waitingForCompletion = new ArrayList<>();
+    private int inFlightMessages;
+    private ShardPosition completedPosition;
+
+    /**
+     * Creates an InFlightWindow.
+     *
+     * @param maxInFlightMessages the maximum number of messages that are in flight at the same time
+     * @param startPosition the initial completed position, or null if unknown
+     */
+    public InFlightWindow(final int maxInFlightMessages,
+                          final @Nullable ShardPosition startPosition) {
+        if (maxInFlightMessages < 1) {
+            throw new IllegalArgumentException("maxInFlightMessages must be greater than zero");
+        }
+        this.maxInFlightMessages = maxInFlightMessages;
+        this.completedPosition = startPosition;
+    }
+
+    /**
+     * Adds a batch of dispatched messages to the window. If the window is full, the method blocks until enough
+     * in-flight messages are completed.
+     *
+     * @param completion the future that is completed after the messages of the batch are processed
+     * @param numberOfMessages the number of messages in the batch
+     * @param position the shard position of the last message of the batch
+     */
+    public void add(final @Nonnull CompletableFuture<?> completion,
+                    final int numberOfMessages,
+                    final @Nonnull ShardPosition position) {
+        final Batch batch = new Batch(numberOfMessages, position);
+        synchronized (this) {
+            awaitCapacityFor(numberOfMessages);
+            batches.addLast(batch);
+            inFlightMessages += numberOfMessages;
+        }
+        completion.whenComplete((result, throwable) -> complete(batch));
+    }
+
+    /**
+     * Adds a batch of dispatched messages to the window without blocking, even if the window is full.
+     *
+     * @param completion the future that is completed after the messages of the batch are processed
+     * @param numberOfMessages the number of messages in the batch
+     * @param position the shard position of the last message of the batch
+     */
+    public void addWithoutWaiting(final @Nonnull CompletableFuture<?> completion,
+                                  final int numberOfMessages,
+                                  final @Nonnull ShardPosition position) {
+        final Batch batch = new Batch(numberOfMessages, position);
+        synchronized (this) {
+            batches.addLast(batch);
+            inFlightMessages += numberOfMessages;
+        }
+        completion.whenComplete((result, throwable) -> complete(batch));
+    }
+
+    /**
+     * Returns a future that is completed as soon as fewer than {@code maxInFlightMessages} messages are in flight.
+     *
+     * @return future that is already completed, if the window is not full
+     */
+    public synchronized CompletableFuture<Void> whenAvailable() {
+        if (inFlightMessages < maxInFlightMessages) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> available = new CompletableFuture<>();
+        waitingForCapacity.add(available);
+        return available;
+    }
+
+    /**
+     * Returns a future that is completed with the completed position, as soon as all in-flight messages are
+     * completed.
+     *
+     * @return future that is already completed, if no messages are in flight
+     */
+    public synchronized CompletableFuture<ShardPosition> whenCompleted() {
+        if (batches.isEmpty()) {
+            return CompletableFuture.completedFuture(completedPosition);
+        }
+        final CompletableFuture<ShardPosition> completed = new CompletableFuture<>();
+        waitingForCompletion.add(completed);
+        return completed;
+    }
+
+    /**
+     * Blocks until all in-flight messages are completed.
+     *
+     * @return the completed position
+     */
+    public synchronized ShardPosition awaitCompletion() {
+        while (!batches.isEmpty()) {
+            if (!await()) {
+                break;
+            }
+        }
+        return completedPosition;
+    }
+
+    /**
+     * Returns the shard position of the latest batch that was completed, such that all earlier batches
+     * are completed, too.
+     *
+     * @return completed position, or null if no batch was completed yet and no start position was given
+     */
+    @Nullable
+    public synchronized ShardPosition getCompletedPosition() {
+        return completedPosition;
+    }
+
+    public synchronized int getInFlightMessages() {
+        return inFlightMessages;
+    }
+
+    private void awaitCapacityFor(final int numberOfMessages) {
+        while (inFlightMessages > 0 && inFlightMessages + numberOfMessages > maxInFlightMessages) {
+            if (!await()) {
+                return;
+            }
+        }
+    }
+
+    private boolean await() {
+        try {
+            wait();
+            return true;
+        } catch (final InterruptedException e) {
+            LOG.warn("Thread got interrupted while waiting for in-flight messages");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void complete(final Batch batch) {
+        final List<CompletableFuture<Void>> available = new ArrayList<>();
+        final List<CompletableFuture<ShardPosition>> completed = new ArrayList<>();
+        final ShardPosition position;
+        synchronized (this) {
+            batch.completed = true;
+            inFlightMessages -= batch.numberOfMessages;
+            while (!batches.isEmpty() && batches.peekFirst().completed) {
+                completedPosition = batches.removeFirst().position;
+            }
+            position = completedPosition;
+            if (inFlightMessages < maxInFlightMessages) {
+                available.addAll(waitingForCapacity);
+                waitingForCapacity.clear();
+            }
+            if (batches.isEmpty()) {
+                completed.addAll(waitingForCompletion);
+                waitingForCompletion.clear();
+            }
+            notifyAll();
+        }
+        // the waiting readers are continued outside of the lock:
+        available.forEach(future -> future.complete(null));
+        completed.forEach(future -> future.complete(position));
+    }
+
+    private static final class Batch {
+        private final int numberOfMessages;
+        private final ShardPosition position;
+        private boolean completed;
+
+        private Batch(final int numberOfMessages, final ShardPosition position) {
+            this.numberOfMessages = numberOfMessages;
+            this.position = position;
+        }
+    }
+}
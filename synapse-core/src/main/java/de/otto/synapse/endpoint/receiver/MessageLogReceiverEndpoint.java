@@ -8,6 +8,7 @@ import de.otto.synapse.message.Message;
 import javax.annotation.Nonnull;
 import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Receiver-side {@code MessageEndpoint endpoint} of a Message Channel that supports random-access like reading of
@@ -79,6 +80,50 @@ public interface MessageLogReceiverEndpoint extends MessageReceiverEndpoint {
     CompletableFuture<ChannelPosition> consumeUntil(@Nonnull ChannelPosition startFrom,
                                                     @Nonnull Instant until);
 
+    /**
+     * Consumes messages like {@link #consumeUntil(ChannelPosition, Instant)}, and reports the progress of the
+     * consumption to the {@code positionListener} while the messages are consumed.
+     *
+     * <p>
+     *     A reported position only contains shard positions whose messages, and all earlier messages of the shard,
+     *     have been processed by the consumers. The listener may be called concurrently by the threads consuming
+     *     the shards of the channel, so it must be thread-safe.
+     * </p>
+     * <p>
+     *     The default implementation is not reporting any positions: only the returned position is available
+     *     after consumption is finished.
+     * </p>
+     *
+     * @param startFrom the start position used to proceed message consumption
+     * @param until     the arrival timestamp until the messages should be consumed
+     * @param positionListener the listener that is called with the positions of the running consumption
+     * @return ChannelPosition
+     */
+    @Nonnull
+    public default CompletableFuture<ChannelPosition> consumeUntil(@Nonnull ChannelPosition startFrom,
+                                                                   @Nonnull Instant until,
+                                                                   @Nonnull Consumer<ChannelPosition> positionListener) {
+        return consumeUntil(startFrom, until);
+    }
+
+    /**
+     * Prepares the consumption of messages starting at {@code startFrom}, so a following call of
+     * {@link #consumeUntil(ChannelPosition, Instant)} using the same position is able to start without delay.
+     *
+     * <p>
+     *     Implementations may use this to set up connections or to prefetch messages in the background, for
+     *     example while the snapshot of the channel is loaded by an {@link de.otto.synapse.eventsource.EventSource}.
+     *     Prepared messages are not dispatched to the consumers before {@code consumeUntil} is called.
+     * </p>
+     * <p>
+     *     The default implementation is doing nothing.
+     * </p>
+     *
+     * @param startFrom the start position of the following message consumption
+     */
+    public default void prepare(@Nonnull ChannelPosition startFrom) {
+    }
+
     /**
      * Stops consumption of messages and shuts down the {@code MessageLogReceiverEndpoint}.
      */
@@ -7,6 +7,7 @@ import de.otto.synapse.translator.MessageTranslator;
 
 import javax.annotation.Nonnull;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import static de.otto.synapse.endpoint.EndpointType.SENDER;
@@ -54,6 +55,29 @@ public abstract class AbstractMessageSenderEndpoint extends AbstractMessageEndpo
         }
     }
 
+    /**
+     * Sends a {@link Message} to the message channel, without waiting for the message to be sent, if this is
+     * supported by the endpoint.
+     *
+     * @param message the message to send
+     * @param <T> type of the message's payload
+     * @return future that is completed after the message was sent, or dropped by an interceptor
+     */
+    @Override
+    public final <T> CompletableFuture<Void> sendAsync(@Nonnull final Message<T> message) {
+        try {
+            final Message<String> translatedMessage = messageTranslator.translate(message);
+            final Message<String> interceptedMessage = intercept(translatedMessage);
+            return interceptedMessage != null
+                    ? doSendAsync(interceptedMessage)
+                    : CompletableFuture.completedFuture(null);
+        } catch (final RuntimeException e) {
+            final CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
     /**
      * Sends a stream of messages to the message channel as one or more batches, if
      * batches are supported by the infrastructure. If not, the messages are send one by one.
@@ -79,6 +103,24 @@ public abstract class AbstractMessageSenderEndpoint extends AbstractMessageEndpo
         batch.forEach(this::doSend);
     }
 
+    /**
+     * Sends a translated and intercepted message without waiting for the message to be sent. The default
+     * implementation is calling {@link #doSend(Message)} and returns a completed future.
+     *
+     * @param message the message to send
+     * @return future that is completed after the message was sent
+     */
+    protected CompletableFuture<Void> doSendAsync(final @Nonnull Message<String> message) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            doSend(message);
+            result.complete(null);
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     protected abstract void doSend(final @Nonnull Message<String> message);
 
 }
@@ -4,6 +4,7 @@ import de.otto.synapse.endpoint.MessageEndpoint;
 import de.otto.synapse.message.Message;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +27,29 @@ public interface MessageSenderEndpoint extends MessageEndpoint {
      */
     <T> void send(@Nonnull Message<T> message);
 
+    /**
+     * Send a single {@link Message} to the channel, without waiting for the message to be sent, if this is
+     * supported by the endpoint.
+     * <p>
+     *     The default implementation is sending the message synchronously.
+     * </p>
+     *
+     * @param message the message
+     * @param <T> the type of the message payload
+     * @return future that is completed after the message was sent, or completed exceptionally, if sending the
+     * message failed
+     */
+    default <T> CompletableFuture<Void> sendAsync(@Nonnull Message<T> message) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            send(message);
+            result.complete(null);
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Send a batch of {@link Message messages} to the channel.
      *
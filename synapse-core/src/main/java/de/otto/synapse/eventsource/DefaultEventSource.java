@@ -1,43 +1,204 @@
 package de.otto.synapse.eventsource;
 
+import com.google.common.collect.Iterators;
 import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.checkpoint.Checkpoint;
+import de.otto.synapse.checkpoint.CheckpointStore;
+import de.otto.synapse.consumer.BatchMessageConsumer;
 import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint;
 import de.otto.synapse.message.Message;
 import de.otto.synapse.messagestore.MessageStore;
+import de.otto.synapse.state.StateRepository;
 import org.slf4j.Logger;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+import static de.otto.synapse.annotation.BeanNameHelper.beanNameForEventSource;
+import static java.util.Collections.emptyList;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * The default {@link EventSource}: the messages of the {@link MessageStore snapshot} of the channel are consumed
+ * first, followed by the messages of the {@link MessageLogReceiverEndpoint message log}, starting at the latest
+ * position of the snapshot.
+ * <p>
+ *     As soon as the snapshot is available, and before its messages are consumed, the message log is
+ *     {@link MessageLogReceiverEndpoint#prepare(ChannelPosition) prepared} to start at the position of the
+ *     snapshot. Depending on the implementation of the message log, the first messages of the log are fetched while
+ *     the snapshot is replayed.
+ * </p>
+ * <p>
+ *     If a {@link CheckpointStore} is configured, the message log
+ *     {@link MessageLogReceiverEndpoint#consumeUntil(ChannelPosition, Instant, java.util.function.Consumer) reports}
+ *     the positions up to which all messages have been processed by the consumers while it is running. Every
+ *     {@code checkpointInterval}, the latest reported position is saved as a {@link Checkpoint}, and the final
+ *     position is saved after consumption is finished. After a restart, consumption is resumed at the checkpoint,
+ *     if it is younger than {@code maxCheckpointAge}, and the snapshot is skipped. Because the snapshot is skipped,
+ *     checkpoints require consumers to keep their state in a durable {@link de.otto.synapse.state.StateRepository}.
+ *     Messages after the checkpoint may be consumed twice, if the application was stopped between two checkpoints.
+ * </p>
+ * <p>
+ *     Checkpoints and state are not saved atomically: a checkpoint is only saved after the state of all messages up
+ *     to its position has been written to the state repositories, but the repositories may already contain the
+ *     state of later messages. After a restart, these messages are consumed again, so consumption is
+ *     <em>at-least-once</em>, and consumers must be idempotent. Persisted
+ *     {@link de.otto.synapse.state.ChronicleMapStateRepository ChronicleMapStateRepositories} survive a crash of
+ *     the application, but not necessarily a crash of the operating system.
+ * </p>
+ * <p>
+ *     If consumption can not be resumed from a checkpoint, the durable state repositories of the channel may
+ *     contain entries that were deleted from the channel in the meantime. The state repositories passed to the
+ *     EventSource are therefore cleared before the snapshot is replayed.
+ * </p>
+ */
 public class DefaultEventSource extends AbstractEventSource {
 
     private static final Logger LOG = getLogger(DefaultEventSource.class);
 
-    private final MessageStore messageStore;
+    /**
+     * The maximum number of messages from the {@link MessageStore} that are dispatched as a single chunk
+     * to {@link BatchMessageConsumer batch consumers}.
+     */
+    static final int SNAPSHOT_CHUNK_SIZE = 1000;
 
+    private final String eventSourceName;
+    private final Supplier<? extends MessageStore> messageStoreSupplier;
+    private final Executor executor;
+    private final CheckpointStore checkpointStore;
+    private final Duration checkpointInterval;
+    private final Duration maxCheckpointAge;
+    private final Clock clock;
+    private final Collection<? extends StateRepository<?>> durableStateRepositories;
+
+    /**
+     * Creates a DefaultEventSource that is loading the {@link MessageStore} using a new thread for every call
+     * of {@link #consumeUntil(Instant)}.
+     *
+     * @param messageStore the MessageStore containing the snapshot of the channel
+     * @param messageLog the receiver endpoint of the channel
+     */
     public DefaultEventSource(final @Nonnull MessageStore messageStore,
                               final @Nonnull MessageLogReceiverEndpoint messageLog) {
+        this(messageStore, messageLog, null);
+    }
+
+    /**
+     * Creates a DefaultEventSource that is loading the {@link MessageStore} using the given executor.
+     *
+     * @param messageStore the MessageStore containing the snapshot of the channel
+     * @param messageLog the receiver endpoint of the channel
+     * @param executor the executor used to load the MessageStore, typically the
+     *                 {@link de.otto.synapse.executor.SynapseExecutors#executorFor(String) executor of the channel}.
+     *                 If null, a new thread is started and terminated after the MessageStore is loaded.
+     */
+    public DefaultEventSource(final @Nonnull MessageStore messageStore,
+                              final @Nonnull MessageLogReceiverEndpoint messageLog,
+                              final Executor executor) {
+        this(() -> messageStore, messageLog, executor, null, Duration.ZERO, Duration.ZERO, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Creates a DefaultEventSource that is saving checkpoints of the consumed messages.
+     *
+     * @param messageStoreSupplier supplies the MessageStore containing the snapshot of the channel. The supplier
+     *                             is only called, if consumption can not be resumed from a checkpoint.
+     * @param messageLog the receiver endpoint of the channel
+     * @param executor the executor used to load the MessageStore. If null, a new thread is started and terminated
+     *                 after the MessageStore is loaded.
+     * @param checkpointStore the store used to load and save checkpoints, or null, if no checkpoints should be used.
+     * @param checkpointInterval the minimum interval between two checkpoints
+     * @param maxCheckpointAge the maximum age of a checkpoint that is used to resume consumption. Older
+     *                         checkpoints are ignored, and the snapshot is consumed instead.
+     * @param clock the clock used to determine the interval and the age of checkpoints
+     */
+    public DefaultEventSource(final @Nonnull Supplier<? extends MessageStore> messageStoreSupplier,
+                              final @Nonnull MessageLogReceiverEndpoint messageLog,
+                              final Executor executor,
+                              final CheckpointStore checkpointStore,
+                              final @Nonnull Duration checkpointInterval,
+                              final @Nonnull Duration maxCheckpointAge,
+                              final @Nonnull Clock clock) {
+        this(null, messageStoreSupplier, messageLog, executor, checkpointStore, checkpointInterval, maxCheckpointAge, clock, emptyList());
+    }
+
+    /**
+     * Creates a named DefaultEventSource that is saving checkpoints of the consumed messages, and clearing the
+     * durable state of its consumers before the snapshot is replayed.
+     *
+     * @param eventSourceName the name of the event source used to identify its checkpoints, or null, if the
+     *                        {@link de.otto.synapse.annotation.BeanNameHelper#beanNameForEventSource(String) default
+     *                        name} of an EventSource for the channel should be used.
+     * @param messageStoreSupplier supplies the MessageStore containing the snapshot of the channel. The supplier
+     *                             is only called, if consumption can not be resumed from a checkpoint.
+     * @param messageLog the receiver endpoint of the channel
+     * @param executor the executor used to load the MessageStore. If null, a new thread is started and terminated
+     *                 after the MessageStore is loaded.
+     * @param checkpointStore the store used to load and save checkpoints, or null, if no checkpoints should be used.
+     * @param checkpointInterval the minimum interval between two checkpoints
+     * @param maxCheckpointAge the maximum age of a checkpoint that is used to resume consumption. Older
+     *                         checkpoints are ignored, and the snapshot is consumed instead.
+     * @param clock the clock used to determine the interval and the age of checkpoints
+     * @param durableStateRepositories the state repositories that are only updated by the consumers of this
+     *                                 channel, and that are surviving a restart. The repositories are cleared
+     *                                 before the snapshot is replayed.
+     */
+    public DefaultEventSource(final String eventSourceName,
+                              final @Nonnull Supplier<? extends MessageStore> messageStoreSupplier,
+                              final @Nonnull MessageLogReceiverEndpoint messageLog,
+                              final Executor executor,
+                              final CheckpointStore checkpointStore,
+                              final @Nonnull Duration checkpointInterval,
+                              final @Nonnull Duration maxCheckpointAge,
+                              final @Nonnull Clock clock,
+                              final @Nonnull Collection<? extends StateRepository<?>> durableStateRepositories) {
         super(messageLog);
-        this.messageStore = messageStore;
+        if (checkpointStore != null && (checkpointInterval.isZero() || checkpointInterval.isNegative())) {
+            throw new IllegalArgumentException("checkpointInterval must be positive");
+        }
+        this.eventSourceName = eventSourceName;
+        this.messageStoreSupplier = messageStoreSupplier;
+        this.executor = executor;
+        this.checkpointStore = checkpointStore;
+        this.checkpointInterval = checkpointInterval;
+        this.maxCheckpointAge = maxCheckpointAge;
+        this.clock = clock;
+        this.durableStateRepositories = durableStateRepositories;
     }
 
     @Nonnull
     @Override
     public CompletableFuture<ChannelPosition> consumeUntil(final @Nonnull Instant until) {
-        return consumeMessageStore()
-                .thenCompose(messageLogStartPosition -> getMessageLogReceiverEndpoint().consumeUntil(messageLogStartPosition, until))
+        final AtomicReference<MessageStore> messageStore = new AtomicReference<>();
+        final Optional<Checkpoint> checkpoint = freshCheckpoint();
+        final CompletableFuture<ChannelPosition> messageLogStartPosition = checkpoint.isPresent()
+                ? CompletableFuture.completedFuture(checkpoint.get().getChannelPosition())
+                : consumeMessageStore(messageStore);
+        return messageLogStartPosition
+                .thenCompose(startFrom -> consumeMessageLog(startFrom, until))
                 .handle((channelPosition, throwable) -> {
                     if (throwable != null) {
                         LOG.error("Failed to start consuming from EventSource {}: {}. Closing MessageStore.", getChannelName(), throwable.getMessage(), throwable);
                     }
                     try {
-                        messageStore.close();
+                        if (messageStore.get() != null) {
+                            messageStore.get().close();
+                        }
                     } catch (final Exception e) {
                         LOG.error("Unable to close() MessageStore: " + e.getMessage(), e);
                     }
@@ -45,17 +206,122 @@ public class DefaultEventSource extends AbstractEventSource {
                 });
     }
 
-    private CompletableFuture<ChannelPosition> consumeMessageStore() {
-        final ThreadFactory threadFactory = new CustomizableThreadFactory("kinesis-eventsource-");
-        return CompletableFuture.supplyAsync(() -> {
-            messageStore.stream().forEach(message -> {
+    /**
+     * Returns the name of the event source that is used to identify its checkpoints.
+     *
+     * @return name
+     */
+    @Nonnull
+    public String getEventSourceName() {
+        return eventSourceName != null ? eventSourceName : beanNameForEventSource(getChannelName());
+    }
+
+    private Optional<Checkpoint> freshCheckpoint() {
+        if (checkpointStore == null) {
+            return Optional.empty();
+        }
+        final Optional<Checkpoint> checkpoint = checkpointStore.load(getEventSourceName(), getChannelName());
+        if (checkpoint.isPresent() && checkpoint.get().isFresh(Instant.now(clock), maxCheckpointAge)) {
+            LOG.info("Resuming EventSource {} from {}, skipping snapshot.", getChannelName(), checkpoint.get());
+            return checkpoint;
+        }
+        checkpoint.ifPresent(c -> LOG.info("Ignoring outdated {} of EventSource {}.", c, getChannelName()));
+        return Optional.empty();
+    }
+
+    private CompletableFuture<ChannelPosition> consumeMessageLog(final ChannelPosition startFrom,
+                                                                 final Instant until) {
+        if (checkpointStore == null) {
+            return getMessageLogReceiverEndpoint().consumeUntil(startFrom, until);
+        }
+        final AtomicReference<Instant> nextCheckpoint = new AtomicReference<>(Instant.now(clock).plus(checkpointInterval));
+        return getMessageLogReceiverEndpoint()
+                .consumeUntil(startFrom, until, (channelPosition) -> saveCheckpointIfDue(channelPosition, nextCheckpoint))
+                .thenApply((channelPosition) -> {
+                    saveCheckpoint(channelPosition);
+                    return channelPosition;
+                });
+    }
+
+    /**
+     * Saves a checkpoint of a position reported by the running consumption of the message log, if at least
+     * {@code checkpointInterval} has elapsed since the previous checkpoint.
+     */
+    private void saveCheckpointIfDue(final ChannelPosition channelPosition,
+                                     final AtomicReference<Instant> nextCheckpoint) {
+        final Instant now = Instant.now(clock);
+        final Instant due = nextCheckpoint.get();
+        // positions are reported by the threads of all shards, but only one of them is saving the checkpoint:
+        if (!now.isBefore(due) && nextCheckpoint.compareAndSet(due, now.plus(checkpointInterval))) {
+            saveCheckpoint(channelPosition);
+        }
+    }
+
+    private void saveCheckpoint(final ChannelPosition channelPosition) {
+        try {
+            checkpointStore.save(new Checkpoint(getEventSourceName(), getChannelName(), channelPosition, Instant.now(clock)));
+        } catch (final RuntimeException e) {
+            LOG.error("Failed to save checkpoint of EventSource {}: {}", getChannelName(), e.getMessage(), e);
+        }
+    }
+
+    private CompletableFuture<ChannelPosition> consumeMessageStore(final AtomicReference<MessageStore> messageStore) {
+        if (executor != null) {
+            try {
+                return CompletableFuture.supplyAsync(() -> loadMessageStore(messageStore), executor);
+            } catch (final RejectedExecutionException e) {
+                // the thread budget of the channel is exhausted: the consumption fails instead of the caller
+                final CompletableFuture<ChannelPosition> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        // without an executor of the channel, a short-lived thread is used for every snapshot:
+        final ExecutorService singleThreadExecutor = newSingleThreadExecutor(new CustomizableThreadFactory("kinesis-eventsource-"));
+        return CompletableFuture
+                .supplyAsync(() -> loadMessageStore(messageStore), singleThreadExecutor)
+                .whenComplete((channelPosition, throwable) -> singleThreadExecutor.shutdown());
+    }
+
+    private ChannelPosition loadMessageStore(final AtomicReference<MessageStore> messageStoreRef) {
+        final MessageStore messageStore = messageStoreSupplier.get();
+        messageStoreRef.set(messageStore);
+        clearDurableState();
+        // The position of a snapshot is known before the messages are streamed, so the message log is
+        // able to prepare consumption while the snapshot is replayed:
+        prepareMessageLog(messageStore.getLatestChannelPosition());
+        final Iterator<List<Message<String>>> chunks = Iterators.partition(messageStore.stream().iterator(), SNAPSHOT_CHUNK_SIZE);
+        chunks.forEachRemaining(chunk -> {
+            final List<Message<String>> interceptedMessages = new ArrayList<>(chunk.size());
+            chunk.forEach(message -> {
                 final Message<String> interceptedMessage = getMessageLogReceiverEndpoint().getInterceptorChain().intercept(message);
                 if (interceptedMessage != null) {
-                    getMessageLogReceiverEndpoint().getMessageDispatcher().accept(interceptedMessage);
+                    interceptedMessages.add(interceptedMessage);
                 }
             });
-            return messageStore.getLatestChannelPosition();
-        }, newSingleThreadExecutor(threadFactory));
+            if (!interceptedMessages.isEmpty()) {
+                getMessageLogReceiverEndpoint().getMessageDispatcher().acceptAll(interceptedMessages);
+            }
+        });
+        return messageStore.getLatestChannelPosition();
+    }
+
+    private void clearDurableState() {
+        durableStateRepositories.forEach(stateRepository -> {
+            final long size = stateRepository.size();
+            if (size > 0) {
+                LOG.warn("Clearing {} entries of durable state of EventSource {} before replaying the snapshot.", size, getChannelName());
+                stateRepository.clear();
+            }
+        });
+    }
+
+    private void prepareMessageLog(final ChannelPosition startFrom) {
+        try {
+            getMessageLogReceiverEndpoint().prepare(startFrom);
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to prepare message log of EventSource {}: {}", getChannelName(), e.getMessage());
+        }
     }
 
 }
@@ -14,11 +14,12 @@ public class DelegateEventSource implements EventSource {
 
     private final EventSource delegate;
 
-    public DelegateEventSource(final String messageLogBeanName,
+    public DelegateEventSource(final String eventSourceName,
+                               final String messageLogBeanName,
                                final EventSourceBuilder eventSourceBuilder,
                                final ApplicationContext applicationContext) {
         final MessageLogReceiverEndpoint messageLogReceiverEndpoint = applicationContext.getBean(messageLogBeanName, MessageLogReceiverEndpoint.class);
-        this.delegate = eventSourceBuilder.buildEventSource(messageLogReceiverEndpoint);
+        this.delegate = eventSourceBuilder.buildEventSource(eventSourceName, messageLogReceiverEndpoint);
     }
 
     public EventSource getDelegate() {
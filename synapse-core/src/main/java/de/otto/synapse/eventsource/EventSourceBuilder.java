@@ -16,4 +16,21 @@ public interface EventSourceBuilder {
      */
     EventSource buildEventSource(final MessageLogReceiverEndpoint messageLogReceiverEndpoint);
 
+    /**
+     * Builds a named event source for a given stream name.
+     * <p>
+     *     The name is used to tell apart event sources consuming the same channel, for example to keep their
+     *     {@link de.otto.synapse.checkpoint.Checkpoint checkpoints} separated. The default implementation is
+     *     ignoring the name.
+     * </p>
+     *
+     * @param eventSourceName the name of the event source, typically the name of the EventSource bean
+     * @param messageLogReceiverEndpoint the MessageLogReceiverEndpoint used to consume
+     * @return EventSource implementation for this specific technology
+     */
+    default EventSource buildEventSource(final String eventSourceName,
+                                         final MessageLogReceiverEndpoint messageLogReceiverEndpoint) {
+        return buildEventSource(messageLogReceiverEndpoint);
+    }
+
 }
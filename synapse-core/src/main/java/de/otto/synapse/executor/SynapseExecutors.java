@@ -0,0 +1,174 @@
+package de.otto.synapse.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The execution layer of Synapse, providing named and bounded executors for the channels of an application.
+ * <p>
+ *     Every channel gets a single executor that is shared by the receiver endpoint, the event source and the
+ *     snapshot loading of the channel. Threads are named {@code synapse-<channelName>-<n>}, they are created on
+ *     demand, up to the budget of {@code maxThreadsPerChannel} threads, and terminated after being idle for one
+ *     minute.
+ * </p>
+ * <p>
+ *     Most tasks of a channel are long-running loops, so tasks are not queued if all threads of the channel are
+ *     busy: a queued task might never be started. Instead, a {@link RejectedExecutionException} is thrown.
+ * </p>
+ * <p>
+ *     Some threads are intentionally not taken from the executors of the channels, because the executors are not
+ *     able to schedule delayed tasks, and the threads never run consumer code:
+ * </p>
+ * <ul>
+ *     <li>the linger timers of the Kinesis and SQS senders, one daemon thread per sender with a linger time,</li>
+ *     <li>the retry schedulers of {@code PutRecords} and {@code SendMessageBatch} requests, a fixed number of daemon
+ *     threads shared by all senders of the application,</li>
+ *     <li>the thread used by a {@code DefaultEventSource} to load the snapshot, if the event source was created
+ *     without an executor.</li>
+ * </ul>
+ * <p>
+ *     Endpoints that are created without an executor are using the {@link #defaultExecutorFor(String) default
+ *     executors}, a single instance of SynapseExecutors shared by all of them, using daemon threads.
+ * </p>
+ * <p>
+ *     If {@code virtualThreads} is enabled and the JDK supports virtual threads, the executors are using virtual
+ *     threads instead of platform threads. On older JDKs, platform threads are used.
+ * </p>
+ */
+@ThreadSafe
+public class SynapseExecutors implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(SynapseExecutors.class);
+
+    public static final int DEFAULT_MAX_THREADS_PER_CHANNEL = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int maxThreadsPerChannel;
+    private final boolean virtualThreads;
+    private final boolean daemonThreads;
+    private final ConcurrentMap<String, ExecutorService> channelExecutors = new ConcurrentHashMap<>();
+
+    public SynapseExecutors() {
+        this(DEFAULT_MAX_THREADS_PER_CHANNEL, false);
+    }
+
+    /**
+     * Creates SynapseExecutors.
+     *
+     * @param maxThreadsPerChannel the maximum number of threads per channel
+     * @param virtualThreads use virtual threads, if supported by the JDK
+     */
+    public SynapseExecutors(final int maxThreadsPerChannel,
+                            final boolean virtualThreads) {
+        this(maxThreadsPerChannel, virtualThreads, false);
+    }
+
+    private SynapseExecutors(final int maxThreadsPerChannel,
+                             final boolean virtualThreads,
+                             final boolean daemonThreads) {
+        if (maxThreadsPerChannel < 1) {
+            throw new IllegalArgumentException("maxThreadsPerChannel must be at least 1");
+        }
+        this.maxThreadsPerChannel = maxThreadsPerChannel;
+        this.daemonThreads = daemonThreads;
+        this.virtualThreads = virtualThreads && virtualThreadFactory("synapse-") != null;
+        if (virtualThreads && !this.virtualThreads) {
+            LOG.warn("Virtual threads are not supported by this JDK, using platform threads instead.");
+        }
+    }
+
+    /**
+     * Returns the executor of a channel. The executor is created on first access.
+     *
+     * @param channelName the name of the channel
+     * @return ExecutorService
+     */
+    @Nonnull
+    public ExecutorService executorFor(final @Nonnull String channelName) {
+        return channelExecutors.computeIfAbsent(channelName, this::newChannelExecutor);
+    }
+
+    /**
+     * Returns the executor of a channel, taken from the default executors that are shared by all endpoints created
+     * without an executor. The executor is created on first access, and its idle threads are terminated after one
+     * minute, so the executor does not need to be shut down.
+     *
+     * @param channelName the name of the channel
+     * @return ExecutorService
+     */
+    @Nonnull
+    public static ExecutorService defaultExecutorFor(final @Nonnull String channelName) {
+        return DefaultExecutors.INSTANCE.executorFor(channelName);
+    }
+
+    public int getMaxThreadsPerChannel() {
+        return maxThreadsPerChannel;
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Shuts down the executors of all channels.
+     */
+    @Override
+    public void close() {
+        channelExecutors.values().forEach(ExecutorService::shutdownNow);
+        channelExecutors.clear();
+    }
+
+    private ExecutorService newChannelExecutor(final String channelName) {
+        final String prefix = "synapse-" + channelName + "-";
+        final ThreadFactory threadFactory = virtualThreads
+                ? virtualThreadFactory(prefix)
+                : new ThreadFactoryBuilder().setNameFormat(prefix + "%d").setDaemon(daemonThreads).build();
+        return new ThreadPoolExecutor(
+                0, maxThreadsPerChannel,
+                KEEP_ALIVE_SECONDS, SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory,
+                (task, executor) -> {
+                    throw new RejectedExecutionException("Thread budget of channel " + channelName + " exhausted: all " + maxThreadsPerChannel + " threads are busy");
+                });
+    }
+
+    /**
+     * Creates a factory for virtual threads using {@code Thread.ofVirtual()}. The method is called by reflection,
+     * so Synapse is still running on JDKs without virtual threads.
+     *
+     * @param prefix the prefix of the thread names
+     * @return ThreadFactory, or null if virtual threads are not supported
+     */
+    private static ThreadFactory virtualThreadFactory(final String prefix) {
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The executors of endpoints that are created without an executor.
+     */
+    private static class DefaultExecutors {
+        private static final SynapseExecutors INSTANCE = new SynapseExecutors(DEFAULT_MAX_THREADS_PER_CHANNEL, false, true);
+    }
+}
@@ -0,0 +1,141 @@
+package de.otto.synapse.message;
+
+import de.otto.synapse.codec.PayloadCodec;
+import de.otto.synapse.codec.PayloadCodecs;
+import de.otto.synapse.codec.PayloadCompression;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+import static de.otto.synapse.codec.PayloadCodecs.codecOf;
+import static de.otto.synapse.codec.PayloadCodecs.toJson;
+import static de.otto.synapse.codec.PayloadCompression.decompress;
+
+/**
+ * A {@link Message} with a String payload that is backed by the encoded bytes of the payload.
+ * <p>
+ *     The bytes are either UTF-8 encoded JSON, or the payload is encoded by some other {@link PayloadCodec},
+ *     identified by the {@link PayloadCodecs#codecOf(byte[]) signature} of the bytes. In both cases,
+ *     {@link #getPayload()} is returning the payload as JSON String.
+ * </p>
+ * <p>
+ *     Payloads that are {@link PayloadCompression compressed} by the sender are decompressed when
+ *     {@link #getPayloadBytes()} or {@link #getPayload()} is called for the first time.
+ * </p>
+ * <p>
+ *     The payload is only decoded into a String if {@link #getPayload()} is called. Messages that are dropped
+ *     by a {@link de.otto.synapse.endpoint.MessageFilter} or that are not matching any consumer do not need to
+ *     be decoded at all, and translators are able to parse the payload directly from
+ *     {@link #getPayloadBytes() the bytes} of the message.
+ * </p>
+ * <p>
+ *     BinaryMessages are equal to other messages having the same key, header and payload.
+ * </p>
+ */
+public final class BinaryMessage extends Message<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] encodedBytes;
+    private transient volatile byte[] payloadBytes;
+    private transient volatile String payload;
+
+    private BinaryMessage(final @Nonnull String key,
+                          final @Nonnull Header header,
+                          final @Nullable byte[] encodedBytes) {
+        super(key, header, null);
+        this.encodedBytes = encodedBytes;
+    }
+
+    /**
+     * Creates a BinaryMessage from encoded bytes. The array is not copied and must not be modified
+     * after the message was created.
+     *
+     * @param key the message key
+     * @param header the message header
+     * @param payloadBytes the encoded and possibly compressed payload, or null
+     * @return BinaryMessage
+     */
+    public static BinaryMessage binaryMessage(final @Nonnull String key,
+                                              final @Nonnull Header header,
+                                              final @Nullable byte[] payloadBytes) {
+        return new BinaryMessage(key, header, payloadBytes);
+    }
+
+    /**
+     * Creates a BinaryMessage from a buffer containing encoded bytes. The buffer's backing array is used
+     * without copying, if it is accessible and is exactly containing the remaining bytes of the buffer.
+     * Otherwise, the remaining bytes are copied. The position of the buffer is not changed.
+     * <p>
+     *     Empty buffers are treated as {@code null} payload.
+     * </p>
+     *
+     * @param key the message key
+     * @param header the message header
+     * @param payloadBuffer the encoded and possibly compressed payload, or null
+     * @return BinaryMessage
+     */
+    public static BinaryMessage binaryMessage(final @Nonnull String key,
+                                              final @Nonnull Header header,
+                                              final @Nullable ByteBuffer payloadBuffer) {
+        return new BinaryMessage(key, header, bytesOf(payloadBuffer));
+    }
+
+    /**
+     * Returns the payload of the message as JSON String. The payload is decoded on first access.
+     *
+     * @return String payload, or null
+     */
+    @Nullable
+    @Override
+    public String getPayload() {
+        String result = payload;
+        if (result == null && encodedBytes != null) {
+            result = toJson(getPayloadBytes());
+            payload = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the encoded payload of the message. Compressed payloads are decompressed on first access.
+     * The returned array must not be modified.
+     *
+     * @return encoded payload, or null
+     */
+    @Nullable
+    public byte[] getPayloadBytes() {
+        byte[] result = payloadBytes;
+        if (result == null && encodedBytes != null) {
+            result = decompress(encodedBytes);
+            payloadBytes = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the codec used to encode the payload of the message.
+     *
+     * @return PayloadCodec
+     */
+    @Nonnull
+    public PayloadCodec getPayloadCodec() {
+        return codecOf(getPayloadBytes());
+    }
+
+    private static byte[] bytesOf(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasRemaining()) {
+            return null;
+        }
+        if (buffer.hasArray()
+                && buffer.arrayOffset() == 0
+                && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
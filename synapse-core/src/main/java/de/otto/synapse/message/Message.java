@@ -75,23 +75,23 @@ public class Message<T> implements Serializable {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Message)) return false;
         Message<?> message = (Message<?>) o;
         return Objects.equals(key, message.key) &&
-                Objects.equals(payload, message.payload) &&
+                Objects.equals(getPayload(), message.getPayload()) &&
                 Objects.equals(header, message.header);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, payload, header);
+        return Objects.hash(key, getPayload(), header);
     }
 
     @Override
     public String toString() {
         return "Message{" +
                 "key='" + key + '\'' +
-                ", payload=" + payload +
+                ", payload=" + getPayload() +
                 ", header=" + header +
                 '}';
     }
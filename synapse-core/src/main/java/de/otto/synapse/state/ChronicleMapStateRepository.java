@@ -7,6 +7,9 @@ import net.openhft.chronicle.map.ChronicleMapBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 
 public class ChronicleMapStateRepository<V> extends StateRepository<V> {
@@ -17,8 +20,24 @@ public class ChronicleMapStateRepository<V> extends StateRepository<V> {
     private static final double DEFAULT_VALUE_SIZE_BYTES = 512;
     private static final long DEFAULT_ENTRY_COUNT = 1_000_00;
 
-    private ChronicleMapStateRepository(ChronicleMap<String, V> chronicleMap) {
+    private final String durableChannelName;
+
+    private ChronicleMapStateRepository(ChronicleMap<String, V> chronicleMap,
+                                        String durableChannelName) {
         super(chronicleMap);
+        this.durableChannelName = durableChannelName;
+    }
+
+    /**
+     * Returns true, if the repository is {@link Builder#withPersistenceFile(File) persisted to a file}, and
+     * {@link Builder#withChannelName(String) holds the state} of the given channel.
+     *
+     * @param channelName the name of the channel
+     * @return boolean
+     */
+    @Override
+    public boolean isDurableStateOf(String channelName) {
+        return durableChannelName != null && durableChannelName.equals(channelName);
     }
 
     @Override
@@ -63,6 +82,8 @@ public class ChronicleMapStateRepository<V> extends StateRepository<V> {
 
         private final Class<V> clazz;
         private ChronicleMapBuilder<String, V> chronicleMapBuilder;
+        private File persistenceFile;
+        private String channelName;
 
         private Builder(Class<V> clazz) {
             this.clazz = clazz;
@@ -78,6 +99,35 @@ public class ChronicleMapStateRepository<V> extends StateRepository<V> {
             return this;
         }
 
+        /**
+         * Persists the state to a file, so the state is surviving restarts of the application. If the file
+         * already exists, the state is recovered from the file.
+         * <p>
+         *     Together with a {@link de.otto.synapse.checkpoint.CheckpointStore}, this is used to resume the
+         *     consumption of event sources without replaying the snapshot of the channel.
+         * </p>
+         *
+         * @param val the file containing the state
+         * @return this
+         */
+        public Builder<V> withPersistenceFile(File val) {
+            persistenceFile = val;
+            return this;
+        }
+
+        /**
+         * Declares the channel whose messages are the only source of the state. If the repository is also
+         * {@link #withPersistenceFile(File) persisted}, it is cleared by the event source of the channel before the
+         * snapshot is replayed, and checkpoints may be used to resume consumption of the channel.
+         *
+         * @param val the name of the channel
+         * @return this
+         */
+        public Builder<V> withChannelName(String val) {
+            channelName = val;
+            return this;
+        }
+
         public ChronicleMapStateRepository<V> build() {
 
             if (chronicleMapBuilder == null) {
@@ -95,7 +145,14 @@ public class ChronicleMapStateRepository<V> extends StateRepository<V> {
                 chronicleMapBuilder.valueMarshaller(new ChronicleMapBytesMarshaller<>(objectMapper, clazz));
             }
 
-            return new ChronicleMapStateRepository<>(chronicleMapBuilder.create());
+            if (persistenceFile != null) {
+                try {
+                    return new ChronicleMapStateRepository<>(chronicleMapBuilder.createOrRecoverPersistedTo(persistenceFile), channelName);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException("Unable to create state repository persisted to " + persistenceFile, e);
+                }
+            }
+            return new ChronicleMapStateRepository<>(chronicleMapBuilder.create(), null);
         }
     }
 }
@@ -43,4 +43,19 @@ public class StateRepository<V> {
     public long size() {
         return concurrentMap.size();
     }
+
+    /**
+     * Returns true, if the repository is surviving restarts of the application, and is only holding state
+     * derived from the messages of the given channel.
+     * <p>
+     *     Durable state repositories of a channel are cleared by the event source, before the snapshot of the
+     *     channel is replayed. In-memory repositories are never durable.
+     * </p>
+     *
+     * @param channelName the name of the channel
+     * @return boolean
+     */
+    public boolean isDurableStateOf(final String channelName) {
+        return false;
+    }
 }
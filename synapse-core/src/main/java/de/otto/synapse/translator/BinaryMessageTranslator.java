@@ -0,0 +1,57 @@
+package de.otto.synapse.translator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import de.otto.synapse.codec.PayloadCodec;
+import de.otto.synapse.message.BinaryMessage;
+import de.otto.synapse.message.Message;
+
+import javax.annotation.Nonnull;
+
+import static de.otto.synapse.message.BinaryMessage.binaryMessage;
+
+/**
+ * A MessageTranslator that converts messages into {@link BinaryMessage binary messages} having payloads encoded
+ * by a {@link PayloadCodec}.
+ * <p>
+ *     Payloads are serialized using the configuration of the {@link ObjectMapper}, but using the data format of
+ *     the codec.
+ * </p>
+ * <p>
+ *     The Message Translator is the messaging equivalent of the Adapter pattern described in
+ *     [GoF]. An adapter converts the interface of a component into a another interface so it
+ *     can be used in a different context.
+ * </p>
+ * <p>
+ *     <img src="http://www.enterpriseintegrationpatterns.com/img/MessageTranslator.gif" alt="MessageTranslator">
+ * </p>
+ */
+public class BinaryMessageTranslator implements MessageTranslator<String> {
+
+    private final ObjectWriter objectWriter;
+
+    public BinaryMessageTranslator(final @Nonnull ObjectMapper objectMapper,
+                                   final @Nonnull PayloadCodec payloadCodec) {
+        this.objectWriter = objectMapper.writer().with(payloadCodec.getJsonFactory());
+    }
+
+    /**
+     * Translates a Message into a BinaryMessage and encodes the payload using the codec of the translator.
+     *
+     * @param message Message&lt;?&gt;
+     * @return BinaryMessage
+     */
+    @Override
+    @Nonnull
+    public Message<String> translate(final @Nonnull Message<?> message) {
+        try {
+            final byte[] payload = message.getPayload() != null
+                    ? objectWriter.writeValueAsBytes(message.getPayload())
+                    : null;
+            return binaryMessage(message.getKey(), message.getHeader(), payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -88,6 +88,22 @@ public class EventSourceBeanRegistrarTest {
         assertThat(testEventSource.getDelegate()).isInstanceOf(DefaultEventSource.class);
     }
 
+    @Test
+    public void shouldNameEventSourcesByBeanName() {
+        context.register(RepeatableMultiEventSourceTestConfig.class);
+        context.register(InMemoryTestConfiguration.class);
+        context.register(SynapseAutoConfiguration.class);
+        addEnvironment(this.context,
+                "test.stream-name=second-stream"
+        );
+        context.refresh();
+
+        final DefaultEventSource first = (DefaultEventSource) context.getBean("firstEventSource", DelegateEventSource.class).getDelegate();
+        assertThat(first.getEventSourceName()).isEqualTo("firstEventSource");
+        final DefaultEventSource second = (DefaultEventSource) context.getBean("secondEventSource", DelegateEventSource.class).getDelegate();
+        assertThat(second.getEventSourceName()).isEqualTo("secondEventSource");
+    }
+
     @Test
     public void shouldRegisterMultipleEventSources() {
         context.register(RepeatableMultiEventSourceTestConfig.class);
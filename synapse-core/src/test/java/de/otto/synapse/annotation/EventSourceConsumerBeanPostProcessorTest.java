@@ -3,6 +3,8 @@ package de.otto.synapse.annotation;
 import de.otto.synapse.configuration.InMemoryTestConfiguration;
 import de.otto.synapse.configuration.SynapseAutoConfiguration;
 import de.otto.synapse.consumer.MessageConsumer;
+import de.otto.synapse.consumer.MethodInvokingAsyncMessageConsumer;
+import de.otto.synapse.consumer.MethodInvokingBatchMessageConsumer;
 import de.otto.synapse.consumer.MethodInvokingMessageConsumer;
 import de.otto.synapse.eventsource.DelegateEventSource;
 import de.otto.synapse.message.Message;
@@ -15,6 +17,7 @@ import org.springframework.context.annotation.Bean;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -91,6 +94,32 @@ public class EventSourceConsumerBeanPostProcessorTest {
         assertThat(pattern).containsExactlyInAnyOrder("apple.*", "banana.*");
     }
 
+    @Test
+    public void shouldRegisterBatchEventConsumer() {
+        context.register(SynapseAutoConfiguration.class);
+        context.register(TestConfigurationWithBatchConsumer.class);
+        context.register(InMemoryTestConfiguration.class);
+        context.refresh();
+
+        final DelegateEventSource someStreamEventSource = context.getBean("testEventSource", DelegateEventSource.class);
+        final List<MessageConsumer<?>> messageConsumers = someStreamEventSource.getMessageDispatcher().getAll();
+        assertThat(messageConsumers).hasSize(1);
+        assertThat(messageConsumers.get(0)).isInstanceOf(MethodInvokingBatchMessageConsumer.class);
+    }
+
+    @Test
+    public void shouldRegisterAsyncEventConsumer() {
+        context.register(SynapseAutoConfiguration.class);
+        context.register(TestConfigurationWithAsyncConsumer.class);
+        context.register(InMemoryTestConfiguration.class);
+        context.refresh();
+
+        final DelegateEventSource someStreamEventSource = context.getBean("testEventSource", DelegateEventSource.class);
+        final List<MessageConsumer<?>> messageConsumers = someStreamEventSource.getMessageDispatcher().getAll();
+        assertThat(messageConsumers).hasSize(1);
+        assertThat(messageConsumers.get(0)).isInstanceOf(MethodInvokingAsyncMessageConsumer.class);
+    }
+
     @EnableEventSource(name = "testEventSource", channelName = "some-stream")
     @EnableEventSource(name = "otherStreamTestSource", channelName = "other-stream")
     static class ThreeConsumersAtTwoEventSourcesConfiguration {
@@ -117,6 +146,22 @@ public class EventSourceConsumerBeanPostProcessorTest {
         }
     }
 
+    @EnableEventSource(name = "testEventSource", channelName = "some-stream")
+    static class TestConfigurationWithBatchConsumer {
+        @Bean
+        public TestBatchConsumer test() {
+            return new TestBatchConsumer();
+        }
+    }
+
+    @EnableEventSource(name = "testEventSource", channelName = "some-stream")
+    static class TestConfigurationWithAsyncConsumer {
+        @Bean
+        public TestAsyncConsumer test() {
+            return new TestAsyncConsumer();
+        }
+    }
+
     static class TestConfigurationWithMissingEventSource{
         @Bean
         public TestConsumerWithSnapshotEventSource test() {
@@ -179,6 +224,24 @@ public class EventSourceConsumerBeanPostProcessorTest {
 
     }
 
+    static class TestBatchConsumer {
+        @EventSourceConsumer(
+                eventSource = "testEventSource",
+                payloadType = String.class,
+                batch = true)
+        public void first(List<Message<String>> messages) {
+        }
+    }
+
+    static class TestAsyncConsumer {
+        @EventSourceConsumer(
+                eventSource = "testEventSource",
+                payloadType = String.class)
+        public CompletableFuture<Void> first(Message<String> message) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
     static class TestConsumerWithSnapshotEventSource {
         @EventSourceConsumer(
                 eventSource = "someTestEventSource",
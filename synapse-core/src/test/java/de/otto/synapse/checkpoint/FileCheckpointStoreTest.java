@@ -0,0 +1,110 @@
+package de.otto.synapse.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+import static de.otto.synapse.channel.ChannelPosition.channelPosition;
+import static de.otto.synapse.channel.ChannelPosition.fromHorizon;
+import static de.otto.synapse.channel.ShardPosition.atPosition;
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.channel.ShardPosition.fromTimestamp;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class FileCheckpointStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldLoadSavedCheckpoint() throws Exception {
+        // given
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath(), new ObjectMapper());
+        final Checkpoint checkpoint = new Checkpoint(
+                "someEventSource",
+                "some-channel",
+                channelPosition(
+                        fromPosition("shard1", "42"),
+                        atPosition("shard2", "4711"),
+                        fromTimestamp("shard3", Instant.parse("2018-01-01T00:00:00Z"))),
+                Instant.parse("2018-01-02T00:00:00Z"));
+
+        // when
+        checkpointStore.save(checkpoint);
+
+        // then
+        assertThat(checkpointStore.load("someEventSource", "some-channel"), is(Optional.of(checkpoint)));
+    }
+
+    @Test
+    public void shouldReplaceCheckpoint() throws Exception {
+        // given
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath(), new ObjectMapper());
+        checkpointStore.save(new Checkpoint("someEventSource", "some-channel", fromHorizon(), Instant.now()));
+        final Checkpoint checkpoint = new Checkpoint("someEventSource", "some-channel", channelPosition(fromPosition("shard1", "42")), Instant.now());
+
+        // when
+        checkpointStore.save(checkpoint);
+
+        // then
+        assertThat(checkpointStore.load("someEventSource", "some-channel"), is(Optional.of(checkpoint)));
+        assertThat(temporaryFolder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void shouldKeepCheckpointsOfEventSourcesConsumingSameChannelApart() throws Exception {
+        // given
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath(), new ObjectMapper());
+        final Checkpoint firstCheckpoint = new Checkpoint("firstEventSource", "some-channel", channelPosition(fromPosition("shard1", "42")), Instant.now());
+        final Checkpoint secondCheckpoint = new Checkpoint("secondEventSource", "some-channel", channelPosition(fromPosition("shard1", "4711")), Instant.now());
+
+        // when
+        checkpointStore.save(firstCheckpoint);
+        checkpointStore.save(secondCheckpoint);
+
+        // then
+        assertThat(checkpointStore.load("firstEventSource", "some-channel"), is(Optional.of(firstCheckpoint)));
+        assertThat(checkpointStore.load("secondEventSource", "some-channel"), is(Optional.of(secondCheckpoint)));
+    }
+
+    @Test
+    public void shouldCreateMissingDirectory() throws Exception {
+        // given
+        final Path directory = temporaryFolder.getRoot().toPath().resolve("checkpoints");
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(directory, new ObjectMapper());
+
+        // when
+        checkpointStore.save(new Checkpoint("someEventSource", "some-channel", fromHorizon(), Instant.now()));
+
+        // then
+        assertThat(Files.exists(directory.resolve("someEventSource.some-channel.checkpoint.json")), is(true));
+    }
+
+    @Test
+    public void shouldReturnEmptyCheckpointForUnknownChannel() {
+        // given
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(temporaryFolder.getRoot().toPath(), new ObjectMapper());
+
+        // then
+        assertThat(checkpointStore.load("someEventSource", "some-channel"), is(Optional.empty()));
+    }
+
+    @Test
+    public void shouldIgnoreCorruptCheckpoint() throws Exception {
+        // given
+        final Path directory = temporaryFolder.getRoot().toPath();
+        Files.write(directory.resolve("someEventSource.some-channel.checkpoint.json"), "{\"channelName\":".getBytes(UTF_8));
+        final FileCheckpointStore checkpointStore = new FileCheckpointStore(directory, new ObjectMapper());
+
+        // then
+        assertThat(checkpointStore.load("someEventSource", "some-channel"), is(Optional.empty()));
+    }
+}
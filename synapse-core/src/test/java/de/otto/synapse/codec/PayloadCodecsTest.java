@@ -0,0 +1,67 @@
+package de.otto.synapse.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static de.otto.synapse.codec.PayloadCodecs.CBOR;
+import static de.otto.synapse.codec.PayloadCodecs.JSON;
+import static de.otto.synapse.codec.PayloadCodecs.SMILE;
+import static de.otto.synapse.codec.PayloadCodecs.codecFor;
+import static de.otto.synapse.codec.PayloadCodecs.codecOf;
+import static de.otto.synapse.codec.PayloadCodecs.toJson;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PayloadCodecsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldFindCodecsByName() {
+        assertThat(codecFor("json"), is(JSON));
+        assertThat(codecFor("smile"), is(SMILE));
+        assertThat(codecFor("cbor"), is(CBOR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToFindUnknownCodec() {
+        codecFor("unknown");
+    }
+
+    @Test
+    public void shouldIdentifyCodecBySignature() throws Exception {
+        // given
+        final Object payload = singletonMap("foo", "bar");
+        // when
+        final byte[] json = objectMapper.writeValueAsBytes(payload);
+        final byte[] smile = objectMapper.writer().with(SMILE.getJsonFactory()).writeValueAsBytes(payload);
+        final byte[] cbor = objectMapper.writer().with(CBOR.getJsonFactory()).writeValueAsBytes(payload);
+        // then
+        assertThat(codecOf(json), is(JSON));
+        assertThat(codecOf(smile), is(SMILE));
+        assertThat(codecOf(cbor), is(CBOR));
+    }
+
+    @Test
+    public void shouldTreatMissingPayloadAsJson() {
+        assertThat(codecOf(null), is(JSON));
+        assertThat(codecOf(new byte[0]), is(JSON));
+    }
+
+    @Test
+    public void shouldTranscodePayloadsIntoJson() throws Exception {
+        // given
+        final Object payload = singletonMap("foo", "bär");
+        final byte[] smile = objectMapper.writer().with(SMILE.getJsonFactory()).writeValueAsBytes(payload);
+        final byte[] cbor = objectMapper.writer().with(CBOR.getJsonFactory()).writeValueAsBytes(payload);
+        // when
+        final String jsonFromSmile = toJson(smile);
+        final String jsonFromCbor = toJson(cbor);
+        // then
+        assertThat(jsonFromSmile, is("{\"foo\":\"bär\"}"));
+        assertThat(jsonFromCbor, is("{\"foo\":\"bär\"}"));
+        assertThat(toJson("{\"foo\":\"bär\"}".getBytes(UTF_8)), is("{\"foo\":\"bär\"}"));
+    }
+}
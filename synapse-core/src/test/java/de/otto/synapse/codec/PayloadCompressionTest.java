@@ -0,0 +1,101 @@
+package de.otto.synapse.codec;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import static de.otto.synapse.codec.PayloadCompression.DEFAULT_MAX_PAYLOAD_BYTES;
+import static de.otto.synapse.codec.PayloadCompression.DEFLATE;
+import static de.otto.synapse.codec.PayloadCompression.MAGIC_BYTE;
+import static de.otto.synapse.codec.PayloadCompression.NONE;
+import static de.otto.synapse.codec.PayloadCompression.decompress;
+import static de.otto.synapse.codec.PayloadCompression.isCompressed;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class PayloadCompressionTest {
+
+    private static final byte[] LARGE_PAYLOAD = ("{\"values\":[" + Strings.repeat("\"some value\",", 1000) + "\"last value\"]}").getBytes(UTF_8);
+
+    @Test
+    public void shouldCompressAndDecompressPayload() {
+        // when
+        final byte[] compressed = DEFLATE.compress(LARGE_PAYLOAD);
+        // then
+        assertThat(compressed[0], is(MAGIC_BYTE));
+        assertThat(compressed[1], is(DEFLATE.getId()));
+        assertThat(compressed.length, is(lessThan(LARGE_PAYLOAD.length)));
+        assertThat(isCompressed(compressed), is(true));
+        assertThat(decompress(compressed), is(LARGE_PAYLOAD));
+    }
+
+    @Test
+    public void shouldNotCompressPayloadIfCompressionIsNotReducingSize() {
+        // given
+        final byte[] payload = "{}".getBytes(UTF_8);
+        // when
+        final byte[] compressed = DEFLATE.compress(payload);
+        // then
+        assertThat(compressed, is(sameInstance(payload)));
+    }
+
+    @Test
+    public void shouldNotCompressPayloadWithoutCompression() {
+        assertThat(NONE.compress(LARGE_PAYLOAD), is(sameInstance(LARGE_PAYLOAD)));
+    }
+
+    @Test
+    public void shouldPassUncompressedPayloads() {
+        // given
+        final byte[] payload = "{\"foo\":\"bar\"}".getBytes(UTF_8);
+        // then
+        assertThat(isCompressed(payload), is(false));
+        assertThat(decompress(payload), is(sameInstance(payload)));
+        assertThat(decompress(null), is(nullValue()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressUnknownCompression() {
+        decompress(new byte[] {MAGIC_BYTE, 42, 1, 2, 3});
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressPayloadFramedWithoutCompression() {
+        decompress(new byte[] {MAGIC_BYTE, NONE.getId(), 1, 2, 3});
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressTruncatedPayload() {
+        final byte[] compressed = DEFLATE.compress(LARGE_PAYLOAD);
+        final byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        decompress(truncated);
+    }
+
+    @Test
+    public void shouldDecompressPayloadWithinLimit() {
+        // given
+        final byte[] compressed = DEFLATE.compress(LARGE_PAYLOAD);
+        // then
+        assertThat(decompress(compressed, LARGE_PAYLOAD.length), is(LARGE_PAYLOAD));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressPayloadExceedingLimit() {
+        // given
+        final byte[] compressed = DEFLATE.compress(LARGE_PAYLOAD);
+        // when
+        decompress(compressed, LARGE_PAYLOAD.length - 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailToDecompressPayloadExceedingDefaultLimit() {
+        // given
+        final byte[] bomb = DEFLATE.compress(new byte[DEFAULT_MAX_PAYLOAD_BYTES + 1]);
+        // when
+        decompress(bomb);
+    }
+}
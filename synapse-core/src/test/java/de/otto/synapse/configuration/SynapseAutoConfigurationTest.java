@@ -0,0 +1,98 @@
+package de.otto.synapse.configuration;
+
+import de.otto.synapse.annotation.EnableEventSource;
+import de.otto.synapse.eventsource.EventSource;
+import de.otto.synapse.state.StateRepository;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static de.otto.synapse.state.ChronicleMapStateRepository.chronicleMapConcurrentMapStateRepositoryBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.util.EnvironmentTestUtils.addEnvironment;
+
+public class SynapseAutoConfigurationTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+
+    @After
+    public void close() {
+        if (this.context != null) {
+            this.context.close();
+        }
+    }
+
+    @EnableEventSource(name = "testEventSource", channelName = "test-stream")
+    static class EventSourceTestConfig {
+    }
+
+    static class DurableStateTestConfig {
+        @Bean
+        public StateRepository<String> durableStateRepository(final Environment environment) {
+            return chronicleMapConcurrentMapStateRepositoryBuilder(String.class)
+                    .withPersistenceFile(new File(environment.getProperty("test.state-file")))
+                    .withChannelName("test-stream")
+                    .build();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldClearDurableStateOfChannelBeforeReplayingSnapshot() throws Exception {
+        // given
+        final Path checkpointDirectory = temporaryFolder.getRoot().toPath().resolve("checkpoints");
+        context.register(SynapseAutoConfiguration.class);
+        context.register(InMemoryTestConfiguration.class);
+        context.register(EventSourceTestConfig.class);
+        context.register(DurableStateTestConfig.class);
+        addEnvironment(this.context,
+                "synapse.consumer-process.enabled=false",
+                "synapse.checkpoint.enabled=true",
+                "synapse.checkpoint.directory=" + checkpointDirectory,
+                "test.state-file=" + new File(temporaryFolder.getRoot(), "state.dat")
+        );
+        context.refresh();
+        final StateRepository<String> stateRepository = context.getBean(StateRepository.class);
+        stateRepository.put("deleted-key", "stale");
+
+        // when
+        context.getBean("testEventSource", EventSource.class).consumeUntil(Instant.now()).get();
+
+        // then
+        assertThat(stateRepository.size()).isEqualTo(0L);
+        assertThat(Files.exists(checkpointDirectory.resolve("testEventSource.test-stream.checkpoint.json"))).isTrue();
+    }
+
+    @Test
+    public void shouldDisableCheckpointsWithoutDurableStateOfChannel() throws Exception {
+        // given
+        final Path checkpointDirectory = temporaryFolder.getRoot().toPath().resolve("checkpoints");
+        context.register(SynapseAutoConfiguration.class);
+        context.register(InMemoryTestConfiguration.class);
+        context.register(EventSourceTestConfig.class);
+        addEnvironment(this.context,
+                "synapse.consumer-process.enabled=false",
+                "synapse.checkpoint.enabled=true",
+                "synapse.checkpoint.directory=" + checkpointDirectory
+        );
+        context.refresh();
+
+        // when
+        context.getBean("testEventSource", EventSource.class).consumeUntil(Instant.now()).get();
+
+        // then
+        assertThat(Files.exists(checkpointDirectory.resolve("testEventSource.test-stream.checkpoint.json"))).isFalse();
+    }
+}
@@ -0,0 +1,147 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static de.otto.synapse.message.Message.message;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class KeyPartitionedDispatcherTest {
+
+    private final ExecutorService executor = newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDispatchInCallingThreadWithoutParallelism() {
+        // given
+        final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        final List<Message<String>> consumed = new CopyOnWriteArrayList<>();
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(1, executor, message -> {
+            threadNames.add(Thread.currentThread().getName());
+            consumed.add(message);
+        });
+        // when
+        dispatcher.dispatch(someMessages(10, 100));
+        // then
+        assertThat(consumed, hasSize(100));
+        assertThat(threadNames, contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldDispatchAllMessagesBeforeReturning() {
+        // given
+        final List<Message<String>> consumed = new CopyOnWriteArrayList<>();
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(4, executor, consumed::add);
+        // when
+        dispatcher.dispatch(someMessages(10, 1000));
+        // then
+        assertThat(consumed, hasSize(1000));
+    }
+
+    @Test
+    public void shouldRetainOrderOfMessagesWithSameKey() {
+        // given
+        final Map<String, List<String>> consumedPayloadsByKey = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> threadNamesByKey = new ConcurrentHashMap<>();
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(8, executor, message -> {
+            consumedPayloadsByKey.computeIfAbsent(message.getKey(), k -> new CopyOnWriteArrayList<>()).add(message.getPayload());
+            threadNamesByKey.computeIfAbsent(message.getKey(), k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+        });
+        // when
+        final List<Message<String>> messages = someMessages(20, 2000);
+        dispatcher.dispatch(messages);
+
+        // then
+        consumedPayloadsByKey.forEach((key, payloads) -> {
+            final List<String> expected = messages.stream()
+                    .filter(m -> m.getKey().equals(key))
+                    .map(Message::getPayload)
+                    .collect(toList());
+            assertThat(payloads, is(expected));
+        });
+        threadNamesByKey.forEach((key, threadNames) -> assertThat(threadNames, hasSize(1)));
+    }
+
+    @Test
+    public void shouldContinueDispatchingAfterConsumerFailure() {
+        // given
+        final List<Message<String>> consumed = new CopyOnWriteArrayList<>();
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(2, executor, message -> {
+            if (message.getPayload().equals("3")) {
+                throw new IllegalStateException("Kaputt");
+            }
+            consumed.add(message);
+        });
+        // when
+        dispatcher.dispatch(someMessages(2, 10));
+        // then
+        assertThat(consumed, hasSize(9));
+    }
+
+    @Test
+    public void shouldDispatchInCallingThreadIfExecutorRejectsLanes() {
+        // given
+        final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        final List<Message<String>> consumed = new CopyOnWriteArrayList<>();
+        final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(4, task -> {
+            throw new RejectedExecutionException("no threads left");
+        }, message -> {
+            threadNames.add(Thread.currentThread().getName());
+            consumed.add(message);
+        });
+        // when
+        dispatcher.dispatch(someMessages(10, 100));
+        // then
+        assertThat(consumed, hasSize(100));
+        assertThat(threadNames, contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldNotWaitForBusyExecutor() throws Exception {
+        // given
+        final ExecutorService singleThreadExecutor = newSingleThreadExecutor();
+        try {
+            final List<Message<String>> consumed = new CopyOnWriteArrayList<>();
+            final KeyPartitionedDispatcher dispatcher = new KeyPartitionedDispatcher(4, singleThreadExecutor, consumed::add);
+            // when
+            // the only thread of the executor is busy dispatching, so the lanes are never started by the executor:
+            singleThreadExecutor.submit(() -> dispatcher.dispatch(someMessages(10, 100))).get(5, SECONDS);
+            // then
+            assertThat(consumed, hasSize(100));
+        } finally {
+            singleThreadExecutor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectIllegalParallelism() {
+        new KeyPartitionedDispatcher(0, executor, message -> {});
+    }
+
+    private List<Message<String>> someMessages(final int numKeys, final int numMessages) {
+        final List<Message<String>> messages = new ArrayList<>();
+        for (int i = 0; i < numMessages; ++i) {
+            messages.add(message("key-" + (i % numKeys), String.valueOf(i)));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,83 @@
+package de.otto.synapse.consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static java.util.regex.Pattern.compile;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class KeyPatternIndexTest {
+
+    @Test
+    public void shouldMatchAllKeys() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(compile(".*"), compile(".*")));
+        assertThat(matchesOf(index, "apple.1"), contains(0, 1));
+        assertThat(matchesOf(index, ""), contains(0, 1));
+    }
+
+    @Test
+    public void shouldMatchLiteralKeys() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(compile("apple"), compile("banana"), compile("apple")));
+        assertThat(matchesOf(index, "apple"), contains(0, 2));
+        assertThat(matchesOf(index, "banana"), contains(1));
+        assertThat(matchesOf(index, "apple.1"), is(empty()));
+    }
+
+    @Test
+    public void shouldMatchLiteralKeysWithEscapedCharacters() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(compile("apple\\.1"), compile("apple\\..*")));
+        assertThat(matchesOf(index, "apple.1"), contains(0, 1));
+        assertThat(matchesOf(index, "apple.2"), contains(1));
+        assertThat(matchesOf(index, "appleX1"), is(empty()));
+    }
+
+    @Test
+    public void shouldMatchPrefixes() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(compile("apple.*"), compile("app.*"), compile("banana.*")));
+        assertThat(matchesOf(index, "apple.1"), contains(0, 1));
+        assertThat(matchesOf(index, "apple"), contains(0, 1));
+        assertThat(matchesOf(index, "app"), contains(1));
+        assertThat(matchesOf(index, "ap"), is(empty()));
+        assertThat(matchesOf(index, "banana"), contains(2));
+    }
+
+    @Test
+    public void shouldMatchRegularExpressions() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(
+                compile("apple\\.[0-9]+"),
+                compile("a\\.*"),
+                compile("apple", CASE_INSENSITIVE)));
+        assertThat(matchesOf(index, "apple.42"), contains(0));
+        assertThat(matchesOf(index, "a..."), contains(1));
+        assertThat(matchesOf(index, "APPLE"), contains(2));
+    }
+
+    @Test
+    public void shouldReturnMatchesInOrderOfPatterns() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(
+                compile("apple.*"),
+                compile(".*"),
+                compile("apple\\.[0-9]"),
+                compile("apple.1")));
+        assertThat(matchesOf(index, "apple.1"), contains(0, 1, 2, 3));
+    }
+
+    @Test
+    public void shouldNotMatchKeysWithLineTerminatorsUsingDot() {
+        final KeyPatternIndex index = new KeyPatternIndex(asList(compile(".*"), compile("apple.*"), compile("apple\n1")));
+        assertThat(matchesOf(index, "apple\n1"), contains(2));
+    }
+
+    private static List<Integer> matchesOf(final KeyPatternIndex index, final String key) {
+        final List<Integer> matches = new ArrayList<>();
+        index.forEachMatch(key, matches::add);
+        return matches;
+    }
+}
@@ -1,23 +1,38 @@
 package de.otto.synapse.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.message.Header;
 import de.otto.synapse.message.Message;
 import org.junit.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 import static de.otto.synapse.channel.ShardPosition.fromHorizon;
+import static de.otto.synapse.codec.PayloadCodecs.SMILE;
 import static de.otto.synapse.consumer.TestMessageConsumer.testEventConsumer;
+import static de.otto.synapse.message.BinaryMessage.binaryMessage;
 import static de.otto.synapse.message.Header.responseHeader;
 import static de.otto.synapse.message.Message.message;
 import static java.util.Arrays.asList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 public class MessageDispatcherTest {
 
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Header HEADER = responseHeader(fromHorizon("test"), Instant.now());
 
     @Test
     @SuppressWarnings("unchecked")
@@ -78,6 +93,257 @@ public class MessageDispatcherTest {
         verify(eventConsumerCherry, never()).accept(any(Message.class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDeserializePayloadOnlyOncePerPayloadType() {
+        // given
+        TestMessageConsumer<Apple> firstAppleConsumer = testEventConsumer(".*", Apple.class);
+        TestMessageConsumer<Apple> secondAppleConsumer = testEventConsumer("apple.*", Apple.class);
+        TestMessageConsumer<Banana> bananaConsumer = testEventConsumer(".*", Banana.class);
+
+        MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(firstAppleConsumer, bananaConsumer, secondAppleConsumer));
+
+        // when
+        messageDispatcher.accept(message("apple.123", responseHeader(fromHorizon("test"), Instant.now()), "{}"));
+
+        // then
+        assertThat(firstAppleConsumer.getConsumedMessages(), hasSize(1));
+        assertThat(secondAppleConsumer.getConsumedMessages(), hasSize(1));
+        assertThat(bananaConsumer.getConsumedMessages(), hasSize(1));
+        assertThat(firstAppleConsumer.getConsumedMessages().get(0).getPayload(), is(sameInstance(secondAppleConsumer.getConsumedMessages().get(0).getPayload())));
+    }
+
+    @Test
+    public void shouldDispatchMessagesToConsumersInOrderOfRegistration() {
+        // given
+        final List<String> calls = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(
+                MessageConsumer.of("apple.*", Apple.class, (message) -> calls.add("apple-1")),
+                batchConsumerOf(".*", Banana.class, (messages) -> calls.add("banana-batch")),
+                MessageConsumer.of(".*", String.class, (message) -> calls.add("string")),
+                MessageConsumer.of(".*", Apple.class, (message) -> calls.add("apple-2"))));
+
+        // when
+        messageDispatcher.accept(message("apple.1", HEADER, "{}"));
+
+        // then
+        assertThat(calls, contains("apple-1", "banana-batch", "string", "apple-2"));
+    }
+
+    @Test
+    public void shouldDispatchBatchesToBatchConsumersAfterOtherConsumers() {
+        // given
+        final List<String> calls = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(
+                batchConsumerOf(".*", Banana.class, (messages) -> calls.add("banana-batch")),
+                MessageConsumer.of(".*", Apple.class, (message) -> calls.add("apple-" + message.getKey())),
+                batchConsumerOf(".*", Apple.class, (messages) -> calls.add("apple-batch")),
+                MessageConsumer.of(".*", String.class, (message) -> calls.add("string-" + message.getKey()))));
+
+        // when
+        messageDispatcher.acceptAll(asList(message("1", HEADER, "{}"), message("2", HEADER, "{}")));
+
+        // then
+        assertThat(calls, contains("apple-1", "string-1", "apple-2", "string-2", "banana-batch", "apple-batch"));
+    }
+
+    @Test
+    public void shouldAddConsumersToExistingRoutingTable() {
+        // given
+        TestMessageConsumer<Apple> appleConsumer = testEventConsumer(".*", Apple.class);
+        TestMessageConsumer<String> stringConsumer = testEventConsumer(".*", String.class);
+        MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+
+        // when
+        messageDispatcher.add(appleConsumer);
+        messageDispatcher.accept(message("apple.1", HEADER, "{}"));
+        messageDispatcher.add(stringConsumer);
+        messageDispatcher.accept(message("apple.2", HEADER, "{}"));
+
+        // then
+        assertThat(messageDispatcher.getAll(), contains(appleConsumer, stringConsumer));
+        assertThat(appleConsumer.getConsumedMessages(), hasSize(2));
+        assertThat(stringConsumer.getConsumedMessages(), contains(message("apple.2", HEADER, "{}")));
+    }
+
+    @Test
+    public void shouldDispatchBatchOfMatchingMessagesToBatchConsumers() {
+        // given
+        final List<List<Message<Apple>>> appleBatches = new ArrayList<>();
+        final BatchMessageConsumer<Apple> appleBatchConsumer = batchConsumerOf("apple.*", Apple.class, appleBatches::add);
+        final TestMessageConsumer<Apple> appleConsumer = testEventConsumer("apple.*", Apple.class);
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(appleBatchConsumer, appleConsumer));
+
+        // when
+        messageDispatcher.acceptAll(asList(
+                message("apple.1", HEADER, "{}"),
+                message("banana.1", HEADER, "{}"),
+                message("apple.2", HEADER, "{}")));
+
+        // then
+        assertThat(appleBatches, hasSize(1));
+        assertThat(appleBatches.get(0), contains(message("apple.1", HEADER, new Apple()), message("apple.2", HEADER, new Apple())));
+        assertThat(appleConsumer.getConsumedMessages(), contains(message("apple.1", HEADER, new Apple()), message("apple.2", HEADER, new Apple())));
+        assertThat(appleBatches.get(0).get(0).getPayload(), is(sameInstance(appleConsumer.getConsumedMessages().get(0).getPayload())));
+    }
+
+    @Test
+    public void shouldNotCallBatchConsumerWithoutMatchingMessages() {
+        // given
+        final List<List<Message<Apple>>> appleBatches = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+        messageDispatcher.add(batchConsumerOf("apple.*", Apple.class, appleBatches::add));
+
+        // when
+        messageDispatcher.acceptAll(asList(message("banana.1", HEADER, "{}"), message("banana.2", HEADER, "{}")));
+
+        // then
+        assertThat(appleBatches, is(empty()));
+    }
+
+    @Test
+    public void shouldSkipMessagesThatCanNotBeTranslated() {
+        // given
+        final List<List<Message<Apple>>> appleBatches = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+        messageDispatcher.add(batchConsumerOf(".*", Apple.class, appleBatches::add));
+
+        // when
+        messageDispatcher.acceptAll(asList(message("apple.1", HEADER, "{}"), message("apple.2", HEADER, "no json"), message("apple.3", HEADER, "{}")));
+
+        // then
+        assertThat(appleBatches, hasSize(1));
+        assertThat(appleBatches.get(0), contains(message("apple.1", HEADER, new Apple()), message("apple.3", HEADER, new Apple())));
+    }
+
+    @Test
+    public void shouldDispatchSingleMessageToBatchConsumer() {
+        // given
+        final List<List<Message<Apple>>> appleBatches = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+        messageDispatcher.add(batchConsumerOf(".*", Apple.class, appleBatches::add));
+
+        // when
+        messageDispatcher.accept(message("apple.1", HEADER, "{}"));
+
+        // then
+        assertThat(appleBatches, contains(singletonList(message("apple.1", HEADER, new Apple()))));
+    }
+
+    @Test
+    public void shouldTranslateBinaryMessages() {
+        // given
+        final TestMessageConsumer<Apple> appleConsumer = testEventConsumer(".*", Apple.class);
+        final TestMessageConsumer<String> stringConsumer = testEventConsumer(".*", String.class);
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(appleConsumer, stringConsumer));
+
+        // when
+        messageDispatcher.accept(binaryMessage("apple.1", HEADER, "{}".getBytes(UTF_8)));
+
+        // then
+        assertThat(appleConsumer.getConsumedMessages(), contains(message("apple.1", HEADER, new Apple())));
+        assertThat(stringConsumer.getConsumedMessages().get(0).getPayload(), is("{}"));
+    }
+
+    @Test
+    public void shouldTranslateSmileEncodedMessages() throws Exception {
+        // given
+        final TestMessageConsumer<Apple> appleConsumer = testEventConsumer(".*", Apple.class);
+        final TestMessageConsumer<String> stringConsumer = testEventConsumer(".*", String.class);
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER, asList(appleConsumer, stringConsumer));
+        final byte[] smile = OBJECT_MAPPER.writer().with(SMILE.getJsonFactory()).writeValueAsBytes(new Apple());
+
+        // when
+        messageDispatcher.accept(binaryMessage("apple.1", HEADER, smile));
+
+        // then
+        assertThat(appleConsumer.getConsumedMessages(), contains(message("apple.1", HEADER, new Apple())));
+        assertThat(stringConsumer.getConsumedMessages().get(0).getPayload(), is("{}"));
+    }
+
+    @Test
+    public void shouldNotWaitForAsyncConsumersInAcceptAllAsync() {
+        // given
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        final List<Message<Apple>> appleMessages = new ArrayList<>();
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+        messageDispatcher.add(asyncConsumerOf("apple.*", Apple.class, (message) -> {
+            appleMessages.add(message);
+            return completion;
+        }));
+
+        // when
+        final CompletableFuture<Void> result = messageDispatcher.acceptAllAsync(asList(message("apple.1", HEADER, "{}"), message("banana.1", HEADER, "{}")));
+
+        // then
+        assertThat(appleMessages, contains(message("apple.1", HEADER, new Apple())));
+        assertThat(result.isDone(), is(false));
+
+        // when
+        completion.complete(null);
+
+        // then
+        assertThat(result.isDone(), is(true));
+    }
+
+    @Test
+    public void shouldCompleteNormallyIfAsyncConsumerFails() {
+        // given
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        completion.completeExceptionally(new IllegalStateException("kaputt"));
+        final MessageDispatcher messageDispatcher = new MessageDispatcher(OBJECT_MAPPER);
+        messageDispatcher.add(asyncConsumerOf(".*", Apple.class, (message) -> completion));
+
+        // when
+        final CompletableFuture<Void> result = messageDispatcher.acceptAllAsync(singletonList(message("apple.1", HEADER, "{}")));
+
+        // then
+        assertThat(result.isDone(), is(true));
+        assertThat(result.isCompletedExceptionally(), is(false));
+    }
+
+    private static <T> AsyncMessageConsumer<T> asyncConsumerOf(final String keyPattern,
+                                                               final Class<T> payloadType,
+                                                               final Function<Message<T>, CompletionStage<Void>> consumer) {
+        return new AsyncMessageConsumer<T>() {
+            @Override
+            public CompletionStage<Void> acceptAsync(final Message<T> message) {
+                return consumer.apply(message);
+            }
+
+            @Override
+            public Class<T> payloadType() {
+                return payloadType;
+            }
+
+            @Override
+            public Pattern keyPattern() {
+                return Pattern.compile(keyPattern);
+            }
+        };
+    }
+
+    private static <T> BatchMessageConsumer<T> batchConsumerOf(final String keyPattern,
+                                                               final Class<T> payloadType,
+                                                               final Consumer<List<Message<T>>> consumer) {
+        return new BatchMessageConsumer<T>() {
+            @Override
+            public void acceptAll(final List<Message<T>> messages) {
+                consumer.accept(new ArrayList<>(messages));
+            }
+
+            @Override
+            public Class<T> payloadType() {
+                return payloadType;
+            }
+
+            @Override
+            public Pattern keyPattern() {
+                return Pattern.compile(keyPattern);
+            }
+        };
+    }
+
     static class Apple {
         public boolean equals(Object o) {
             return o instanceof Apple;
@@ -0,0 +1,61 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static de.otto.synapse.message.Message.message;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MethodInvokingAsyncMessageConsumerTest {
+
+    private final CompletableFuture<String> completion = new CompletableFuture<>();
+    private Message<String> receivedMessage;
+
+    public CompletableFuture<String> validMethod(final Message<String> message) {
+        receivedMessage = message;
+        return completion;
+    }
+
+    CompletionStage<Void> packagePrivateMethod(final Message<String> message) {
+        receivedMessage = message;
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public void methodWithoutCompletionStage(final Message<String> message) {
+    }
+
+    @Test
+    public void shouldCompleteAfterMethodCompletes() throws NoSuchMethodException {
+        final Method method = MethodInvokingAsyncMessageConsumerTest.class.getMethod("validMethod", Message.class);
+        final MethodInvokingAsyncMessageConsumer<String> consumer = new MethodInvokingAsyncMessageConsumer<>(".*", String.class, this, method);
+        final Message<String> message = message("1", "foo");
+
+        final CompletableFuture<Void> result = consumer.acceptAsync(message).toCompletableFuture();
+
+        assertThat(receivedMessage).isSameAs(message);
+        assertThat(result.isDone()).isFalse();
+        completion.complete("done");
+        assertThat(result.isDone()).isTrue();
+    }
+
+    @Test
+    public void shouldBuildAsyncConsumerForPackagePrivateMethod() throws NoSuchMethodException {
+        final Method method = MethodInvokingAsyncMessageConsumerTest.class.getDeclaredMethod("packagePrivateMethod", Message.class);
+        final MethodInvokingAsyncMessageConsumer<String> consumer = new MethodInvokingAsyncMessageConsumer<>(".*", String.class, this, method);
+        final Message<String> message = message("1", "foo");
+
+        consumer.accept(message);
+
+        assertThat(receivedMessage).isSameAs(message);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToBuildAsyncConsumerForMethodWithoutCompletionStage() throws NoSuchMethodException {
+        final Method method = MethodInvokingAsyncMessageConsumerTest.class.getMethod("methodWithoutCompletionStage", Message.class);
+        new MethodInvokingAsyncMessageConsumer<>(".*", String.class, this, method);
+    }
+}
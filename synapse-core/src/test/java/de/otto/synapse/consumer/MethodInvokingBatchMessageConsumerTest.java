@@ -0,0 +1,48 @@
+package de.otto.synapse.consumer;
+
+import de.otto.synapse.message.Message;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static de.otto.synapse.message.Message.message;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MethodInvokingBatchMessageConsumerTest {
+
+    private List<Message<String>> receivedMessages;
+
+    public void validMethod(final List<Message<String>> messages) {
+        receivedMessages = messages;
+    }
+
+    public void methodWithMessageParam(final Message<String> message) {
+    }
+
+    @Test
+    public void shouldBuildBatchConsumerForValidMethod() throws NoSuchMethodException {
+        final Method method = MethodInvokingBatchMessageConsumerTest.class.getMethod("validMethod", List.class);
+        final MethodInvokingBatchMessageConsumer<String> consumer = new MethodInvokingBatchMessageConsumer<>(".*", String.class, this, method);
+        final Message<String> first = message("1", "foo");
+        final Message<String> second = message("2", "bar");
+        consumer.acceptAll(asList(first, second));
+        assertThat(receivedMessages).containsExactly(first, second);
+    }
+
+    @Test
+    public void shouldAcceptSingleMessageAsBatch() throws NoSuchMethodException {
+        final Method method = MethodInvokingBatchMessageConsumerTest.class.getMethod("validMethod", List.class);
+        final MethodInvokingBatchMessageConsumer<String> consumer = new MethodInvokingBatchMessageConsumer<>(".*", String.class, this, method);
+        final Message<String> message = message("1", "foo");
+        consumer.accept(message);
+        assertThat(receivedMessages).containsExactly(message);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToBuildBatchConsumerForMethodWithMessageParam() throws NoSuchMethodException {
+        final Method method = MethodInvokingBatchMessageConsumerTest.class.getMethod("methodWithMessageParam", Message.class);
+        new MethodInvokingBatchMessageConsumer<>(".*", String.class, this, method);
+    }
+}
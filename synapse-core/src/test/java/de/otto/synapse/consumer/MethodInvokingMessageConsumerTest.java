@@ -23,6 +23,14 @@ public class MethodInvokingMessageConsumerTest {
         return "";
     }
 
+    void packagePrivateMethod(final Message<String> message) {
+        eventReceived = true;
+    }
+
+    public void failingMethod(final Message<String> message) {
+        throw new IllegalArgumentException("Kaputt");
+    }
+
     public void methodWithTooManyParameters(final Message<String> message, final String foo) {
         eventReceived = true;
     }
@@ -55,6 +63,23 @@ public class MethodInvokingMessageConsumerTest {
         assertThat(eventReceived).isTrue();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldBuildEventConsumerForPackagePrivateMethod() throws NoSuchMethodException {
+        final Method method = MethodInvokingMessageConsumerTest.class.getDeclaredMethod("packagePrivateMethod", Message.class);
+        final MethodInvokingMessageConsumer eventConsumer = new MethodInvokingMessageConsumer(".*", String.class, this, method);
+        eventConsumer.accept(mock(Message.class));
+        assertThat(eventReceived).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void shouldPropagateExceptionsThrownByMethod() throws NoSuchMethodException {
+        final Method method = MethodInvokingMessageConsumerTest.class.getMethod("failingMethod", Message.class);
+        final MethodInvokingMessageConsumer eventConsumer = new MethodInvokingMessageConsumer(".*", String.class, this, method);
+        eventConsumer.accept(mock(Message.class));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     @SuppressWarnings("unchecked")
     public void shouldFailBuildingEventConsumerWithTooManyArgs() throws NoSuchMethodException {
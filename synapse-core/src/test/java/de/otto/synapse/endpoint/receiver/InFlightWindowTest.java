@@ -0,0 +1,168 @@
+package de.otto.synapse.endpoint.receiver;
+
+import de.otto.synapse.channel.ShardPosition;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void shouldAdvanceCompletedPositionForCompletedBatches() {
+        // given
+        final InFlightWindow window = new InFlightWindow(10, fromPosition("shard", "0"));
+
+        // when
+        window.add(completedFuture(null), 2, fromPosition("shard", "1"));
+        window.add(completedFuture(null), 2, fromPosition("shard", "2"));
+
+        // then
+        assertThat(window.getCompletedPosition(), is(fromPosition("shard", "2")));
+        assertThat(window.getInFlightMessages(), is(0));
+    }
+
+    @Test
+    public void shouldNotAdvanceCompletedPositionBeforeEarlierBatchesAreCompleted() {
+        // given
+        final InFlightWindow window = new InFlightWindow(10, null);
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        final CompletableFuture<Void> second = new CompletableFuture<>();
+        window.add(first, 1, fromPosition("shard", "1"));
+        window.add(second, 1, fromPosition("shard", "2"));
+
+        // when
+        second.complete(null);
+
+        // then
+        assertThat(window.getCompletedPosition(), is(nullValue()));
+        assertThat(window.getInFlightMessages(), is(1));
+
+        // when
+        first.complete(null);
+
+        // then
+        assertThat(window.getCompletedPosition(), is(fromPosition("shard", "2")));
+    }
+
+    @Test
+    public void shouldBlockUntilEnoughMessagesAreCompleted() throws InterruptedException {
+        // given
+        final InFlightWindow window = new InFlightWindow(3, null);
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        window.add(first, 2, fromPosition("shard", "1"));
+        final AtomicBoolean added = new AtomicBoolean(false);
+
+        // when
+        final Thread thread = new Thread(() -> {
+            window.add(completedFuture(null), 2, fromPosition("shard", "2"));
+            added.set(true);
+        });
+        thread.start();
+        thread.join(100);
+
+        // then
+        assertThat(added.get(), is(false));
+
+        // when
+        first.complete(null);
+        thread.join(1000);
+
+        // then
+        assertThat(added.get(), is(true));
+        assertThat(window.getCompletedPosition(), is(fromPosition("shard", "2")));
+    }
+
+    @Test
+    public void shouldAcceptBatchesLargerThanTheWindow() {
+        // given
+        final InFlightWindow window = new InFlightWindow(3, null);
+
+        // when
+        window.add(new CompletableFuture<>(), 5, fromPosition("shard", "1"));
+
+        // then
+        assertThat(window.getInFlightMessages(), is(5));
+    }
+
+    @Test
+    public void shouldAwaitCompletionOfAllBatches() {
+        // given
+        final InFlightWindow window = new InFlightWindow(10, null);
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        window.add(completion, 1, fromPosition("shard", "1"));
+
+        // when
+        new Thread(() -> completion.complete(null)).start();
+
+        // then
+        assertThat(window.awaitCompletion(), is(fromPosition("shard", "1")));
+    }
+
+    @Test
+    public void shouldAddBatchWithoutWaitingIfWindowIsFull() {
+        // given
+        final InFlightWindow window = new InFlightWindow(3, null);
+        window.addWithoutWaiting(new CompletableFuture<>(), 2, fromPosition("shard", "1"));
+
+        // when
+        window.addWithoutWaiting(new CompletableFuture<>(), 2, fromPosition("shard", "2"));
+
+        // then
+        assertThat(window.getInFlightMessages(), is(4));
+    }
+
+    @Test
+    public void shouldCompleteWhenAvailableAfterEnoughMessagesAreCompleted() {
+        // given
+        final InFlightWindow window = new InFlightWindow(3, null);
+        final CompletableFuture<Void> first = new CompletableFuture<>();
+        final CompletableFuture<Void> second = new CompletableFuture<>();
+        window.addWithoutWaiting(first, 2, fromPosition("shard", "1"));
+        window.addWithoutWaiting(second, 2, fromPosition("shard", "2"));
+
+        // when
+        final CompletableFuture<Void> available = window.whenAvailable();
+
+        // then
+        assertThat(available.isDone(), is(false));
+
+        // when
+        first.complete(null);
+
+        // then
+        assertThat(available.isDone(), is(true));
+        assertThat(window.whenAvailable().isDone(), is(true));
+    }
+
+    @Test
+    public void shouldCompleteWhenCompletedWithCompletedPosition() {
+        // given
+        final InFlightWindow window = new InFlightWindow(10, fromPosition("shard", "0"));
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        window.addWithoutWaiting(completion, 1, fromPosition("shard", "1"));
+
+        // when
+        final CompletableFuture<ShardPosition> completed = window.whenCompleted();
+
+        // then
+        assertThat(completed.isDone(), is(false));
+
+        // when
+        completion.complete(null);
+
+        // then
+        assertThat(completed.join(), is(fromPosition("shard", "1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectIllegalLimit() {
+        new InFlightWindow(0, null);
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.Test;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
@@ -193,4 +194,47 @@ public class MessageSenderEndpointTest {
         assertThat(sentMessages.get(1).getPayload(), is("translated and intercepted"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldSendTranslatedAndInterceptedMessageAsync() throws Exception {
+        // given
+        final MessageTranslator<String> messageTranslator = (m) -> message(m.getKey(), "translated ");
+        final MessageInterceptor interceptor = (m) -> message(m.getKey(), m.getPayload() + "and intercepted");
+        final MessageInterceptorRegistry registry = new MessageInterceptorRegistry();
+        registry.register(matchingChannelsWith("foo-channel", interceptor));
+
+        final AtomicReference<Message<String>> sentMessage = new AtomicReference<>(null);
+        final MessageSenderEndpoint senderEndpoint = new AbstractMessageSenderEndpoint("foo-channel", messageTranslator) {
+            @Override
+            protected void doSend(@Nonnull Message<String> message) {
+                sentMessage.set(message);
+            }
+        };
+        senderEndpoint.registerInterceptorsFrom(registry);
+
+        // when
+        final CompletableFuture<Void> future = senderEndpoint.sendAsync(message("foo", ""));
+
+        // then
+        assertThat(future.isDone(), is(true));
+        assertThat(sentMessage.get().getPayload(), is("translated and intercepted"));
+    }
+
+    @Test
+    public void shouldCompleteAsyncSendExceptionallyIfSendingFails() {
+        // given
+        final MessageTranslator<String> messageTranslator = (m) -> message(m.getKey(), "translated");
+        final MessageSenderEndpoint senderEndpoint = new AbstractMessageSenderEndpoint("foo-channel", messageTranslator) {
+            @Override
+            protected void doSend(@Nonnull Message<String> message) {
+                throw new IllegalStateException("forced test exception");
+            }
+        };
+
+        // when
+        final CompletableFuture<Void> future = senderEndpoint.sendAsync(message("foo", ""));
+
+        // then
+        assertThat(future.isCompletedExceptionally(), is(true));
+    }
+
+}
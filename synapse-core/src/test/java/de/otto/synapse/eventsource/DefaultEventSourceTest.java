@@ -1,27 +1,52 @@
 package de.otto.synapse.eventsource;
 
 import de.otto.synapse.channel.ChannelPosition;
+import de.otto.synapse.checkpoint.Checkpoint;
+import de.otto.synapse.checkpoint.CheckpointStore;
 import de.otto.synapse.consumer.MessageDispatcher;
 import de.otto.synapse.endpoint.InterceptorChain;
 import de.otto.synapse.endpoint.receiver.MessageLogReceiverEndpoint;
 import de.otto.synapse.message.Message;
 import de.otto.synapse.messagestore.MessageStore;
+import de.otto.synapse.state.StateRepository;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static de.otto.synapse.channel.ChannelPosition.channelPosition;
 import static de.otto.synapse.channel.ChannelPosition.fromHorizon;
 import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.eventsource.DefaultEventSource.SNAPSHOT_CHUNK_SIZE;
 import static de.otto.synapse.message.Header.responseHeader;
 import static de.otto.synapse.message.Message.message;
 import static de.otto.synapse.messagestore.MessageStores.emptyMessageStore;
+import static java.time.ZoneOffset.UTC;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 public class DefaultEventSourceTest {
@@ -105,6 +130,7 @@ public class DefaultEventSourceTest {
 
         // then
         verify(messageDispatcher, never()).accept(any(Message.class));
+        verify(messageDispatcher, never()).acceptAll(anyList());
     }
 
     @Test
@@ -128,7 +154,37 @@ public class DefaultEventSourceTest {
         eventSource.consume().get();
 
         // then
-        verify(messageDispatcher).accept(message("1", responseHeader(null, arrivalTimestamp), null));
+        verify(messageDispatcher).acceptAll(singletonList(message("1", responseHeader(null, arrivalTimestamp), null)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldDispatchMessagesFromMessageStoreInChunks() throws ExecutionException, InterruptedException {
+        // given
+        final int numberOfMessages = 2 * SNAPSHOT_CHUNK_SIZE + 1;
+        // and some message store having more messages than fitting into a single chunk
+        final MessageStore messageStore = mock(MessageStore.class);
+        when(messageStore.stream()).thenReturn(IntStream.range(0, numberOfMessages).mapToObj(i -> Message.<String>message(String.valueOf(i), null)));
+        when(messageStore.getLatestChannelPosition()).thenReturn(fromHorizon());
+        // and some MessageLogReceiverEndpoint:
+        final MessageLogReceiverEndpoint messageLog = mock(MessageLogReceiverEndpoint.class);
+        when(messageLog.getInterceptorChain()).thenReturn(new InterceptorChain());
+        when(messageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class))).thenReturn(completedFuture(fromHorizon()));
+        final MessageDispatcher messageDispatcher = mock(MessageDispatcher.class);
+        when(messageLog.getMessageDispatcher()).thenReturn(messageDispatcher);
+        // and our famous DefaultEventSource:
+        final DefaultEventSource eventSource = new DefaultEventSource(messageStore, messageLog);
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        final ArgumentCaptor<List<Message<String>>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(messageDispatcher, times(3)).acceptAll(chunks.capture());
+        assertThat(chunks.getAllValues().get(0), hasSize(SNAPSHOT_CHUNK_SIZE));
+        assertThat(chunks.getAllValues().get(1), hasSize(SNAPSHOT_CHUNK_SIZE));
+        assertThat(chunks.getAllValues().get(2), hasSize(1));
+        assertThat(chunks.getAllValues().get(2).get(0).getKey(), is(String.valueOf(numberOfMessages - 1)));
     }
 
     @Test
@@ -149,6 +205,40 @@ public class DefaultEventSourceTest {
         verify(messageLog).consumeUntil(expectedChannelPosition, Instant.MAX);
     }
 
+    @Test
+    public void shouldPrepareMessageLogBeforeConsumingMessageStore() throws ExecutionException, InterruptedException {
+        // given
+        final ChannelPosition expectedChannelPosition = channelPosition(fromPosition("bar", "42"));
+        final MessageStore messageStore = mockMessageStore(expectedChannelPosition);
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        final DefaultEventSource eventSource = new DefaultEventSource(messageStore, messageLog);
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        final InOrder inOrder = inOrder(messageStore, messageLog);
+        inOrder.verify(messageLog).prepare(expectedChannelPosition);
+        inOrder.verify(messageStore).stream();
+        inOrder.verify(messageLog).consumeUntil(expectedChannelPosition, Instant.MAX);
+    }
+
+    @Test
+    public void shouldConsumeMessageLogIfPreparingFailed() throws ExecutionException, InterruptedException {
+        // given
+        final MessageStore messageStore = mockMessageStore(fromHorizon());
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        doThrow(IllegalStateException.class).when(messageLog).prepare(any(ChannelPosition.class));
+        final DefaultEventSource eventSource = new DefaultEventSource(messageStore, messageLog);
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        verify(messageStore).stream();
+        verify(messageLog).consumeUntil(fromHorizon(), Instant.MAX);
+    }
+
     @Test
     public void shouldCloseMessageStore() throws Exception {
         // given
@@ -163,6 +253,23 @@ public class DefaultEventSourceTest {
         verify(messageStore).close();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotThrowIfExecutorRejectsLoadingOfMessageStore() throws Exception {
+        // given
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        final DefaultEventSource eventSource = new DefaultEventSource(emptyMessageStore(), messageLog, task -> {
+            throw new RejectedExecutionException("forced test exception");
+        });
+
+        // when
+        final CompletableFuture<ChannelPosition> result = eventSource.consume();
+
+        // then
+        assertThat(result.get(), is(nullValue()));
+        verify(messageLog, never()).consumeUntil(any(ChannelPosition.class), any(Instant.class), any(Consumer.class));
+    }
+
     @Test
     public void shouldStopMessageLogReceiverEndpoint() throws Exception {
         // given
@@ -177,9 +284,223 @@ public class DefaultEventSourceTest {
         assertThat(eventSource.isStopping(), is(true));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldResumeFromFreshCheckpointWithoutReadingMessageStore() throws Exception {
+        // given
+        final Instant now = Instant.now();
+        final ChannelPosition checkpointPosition = channelPosition(fromPosition("shard", "42"));
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.of(new Checkpoint("someChannelEventSource", "some-channel", checkpointPosition, now.minusSeconds(60))));
+        final Supplier<MessageStore> messageStoreSupplier = mock(Supplier.class);
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final DefaultEventSource eventSource = new DefaultEventSource(messageStoreSupplier, messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.fixed(now, UTC));
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        verify(messageStoreSupplier, never()).get();
+        verify(messageLog).consumeUntil(eq(checkpointPosition), any(Instant.class), any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldIgnoreOutdatedCheckpoint() throws Exception {
+        // given
+        final Instant now = Instant.now();
+        final ChannelPosition snapshotPosition = channelPosition(fromPosition("shard", "42"));
+        final MessageStore messageStore = mockMessageStore(snapshotPosition);
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.of(new Checkpoint("someChannelEventSource", "some-channel", fromHorizon(), now.minus(Duration.ofHours(2)))));
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final DefaultEventSource eventSource = new DefaultEventSource(() -> messageStore, messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.fixed(now, UTC));
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        verify(messageStore).stream();
+        verify(messageLog).consumeUntil(eq(snapshotPosition), any(Instant.class), any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldSaveCheckpointsOfRunningConsumptionWithoutRestartingMessageLog() throws Exception {
+        // given
+        final Instant start = Instant.now();
+        final AtomicReference<Instant> now = new AtomicReference<>(start);
+        final Clock clock = mock(Clock.class);
+        when(clock.instant()).thenAnswer(invocation -> now.get());
+        final ChannelPosition firstPosition = channelPosition(fromPosition("shard", "1"));
+        final ChannelPosition secondPosition = channelPosition(fromPosition("shard", "2"));
+        final ChannelPosition thirdPosition = channelPosition(fromPosition("shard", "3"));
+        final ChannelPosition finalPosition = channelPosition(fromPosition("shard", "4"));
+        final MessageLogReceiverEndpoint messageLog = mock(MessageLogReceiverEndpoint.class);
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        when(messageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class), any(Consumer.class))).thenAnswer(invocation -> {
+            final Consumer<ChannelPosition> positionListener = invocation.getArgument(2);
+            positionListener.accept(firstPosition);
+            now.set(start.plusSeconds(60));
+            positionListener.accept(secondPosition);
+            now.set(start.plusSeconds(90));
+            positionListener.accept(thirdPosition);
+            now.set(start.plusSeconds(100));
+            return completedFuture(finalPosition);
+        });
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.empty());
+        final DefaultEventSource eventSource = new DefaultEventSource(() -> mockMessageStore(fromHorizon()), messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), clock);
+
+        // when
+        final ChannelPosition channelPosition = eventSource.consumeUntil(start.plusSeconds(100)).get();
+
+        // then
+        verify(messageLog).consumeUntil(eq(fromHorizon()), eq(start.plusSeconds(100)), any(Consumer.class));
+        verify(messageLog, never()).consumeUntil(any(ChannelPosition.class), any(Instant.class));
+        final ArgumentCaptor<Checkpoint> checkpoints = ArgumentCaptor.forClass(Checkpoint.class);
+        verify(checkpointStore, times(2)).save(checkpoints.capture());
+        assertThat(checkpoints.getAllValues(), contains(
+                new Checkpoint("someChannelEventSource", "some-channel", secondPosition, start.plusSeconds(60)),
+                new Checkpoint("someChannelEventSource", "some-channel", finalPosition, start.plusSeconds(100))));
+        assertThat(channelPosition, is(finalPosition));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotSaveCheckpointIfMessageLogFailed() throws Exception {
+        // given
+        final MessageLogReceiverEndpoint messageLog = mock(MessageLogReceiverEndpoint.class);
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final CompletableFuture<ChannelPosition> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("forced test exception"));
+        when(messageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class), any(Consumer.class))).thenReturn(failed);
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.empty());
+        final DefaultEventSource eventSource = new DefaultEventSource(() -> mockMessageStore(fromHorizon()), messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.systemUTC());
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        verify(checkpointStore, never()).save(any(Checkpoint.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldResumeFromLastCheckpointAndConsumeLaterMessagesAgainAfterCrash() throws Exception {
+        // given
+        final Instant start = Instant.now();
+        final AtomicReference<Instant> now = new AtomicReference<>(start);
+        final Clock clock = mock(Clock.class);
+        when(clock.instant()).thenAnswer(invocation -> now.get());
+        final ChannelPosition checkpointPosition = channelPosition(fromPosition("shard", "2"));
+        final AtomicReference<Checkpoint> savedCheckpoint = new AtomicReference<>();
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenAnswer(invocation -> Optional.ofNullable(savedCheckpoint.get()));
+        doAnswer(invocation -> {
+            savedCheckpoint.set(invocation.getArgument(0));
+            return null;
+        }).when(checkpointStore).save(any(Checkpoint.class));
+        final MessageLogReceiverEndpoint crashingMessageLog = mock(MessageLogReceiverEndpoint.class);
+        when(crashingMessageLog.getChannelName()).thenReturn("some-channel");
+        when(crashingMessageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class), any(Consumer.class))).thenAnswer(invocation -> {
+            final Consumer<ChannelPosition> positionListener = invocation.getArgument(2);
+            now.set(start.plusSeconds(60));
+            positionListener.accept(checkpointPosition);
+            now.set(start.plusSeconds(90));
+            positionListener.accept(channelPosition(fromPosition("shard", "3")));
+            // the application crashes before consumption is finished:
+            return new CompletableFuture<>();
+        });
+        // the snapshot is replayed by the calling thread, so the checkpoint is saved before consume() returns:
+        new DefaultEventSource(() -> mockMessageStore(fromHorizon()), crashingMessageLog, Runnable::run,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), clock).consume();
+        final Supplier<MessageStore> messageStoreSupplier = mock(Supplier.class);
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+
+        // when
+        new DefaultEventSource(messageStoreSupplier, messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), clock).consume().get();
+
+        // then
+        verify(messageStoreSupplier, never()).get();
+        verify(messageLog).consumeUntil(eq(checkpointPosition), any(Instant.class), any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldClearDurableStateBeforeReplayingSnapshot() throws Exception {
+        // given
+        final MessageStore messageStore = mockMessageStore(fromHorizon());
+        final StateRepository<String> stateRepository = new StateRepository<>(new ConcurrentHashMap<>());
+        stateRepository.put("deleted-key", "stale");
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.empty());
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final DefaultEventSource eventSource = new DefaultEventSource(null, () -> messageStore, messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.systemUTC(), singletonList(stateRepository));
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        assertThat(stateRepository.size(), is(0L));
+        verify(messageStore).stream();
+    }
+
+    @Test
+    public void shouldKeepDurableStateWhenResumingFromCheckpoint() throws Exception {
+        // given
+        final Instant now = Instant.now();
+        final StateRepository<String> stateRepository = new StateRepository<>(new ConcurrentHashMap<>());
+        stateRepository.put("some-key", "some-value");
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("someChannelEventSource", "some-channel")).thenReturn(Optional.of(new Checkpoint("someChannelEventSource", "some-channel", fromHorizon(), now)));
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final DefaultEventSource eventSource = new DefaultEventSource(null, () -> mockMessageStore(fromHorizon()), messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.fixed(now, UTC), singletonList(stateRepository));
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        assertThat(stateRepository.get("some-key"), is(Optional.of("some-value")));
+    }
+
+    @Test
+    public void shouldUseNameOfEventSourceToLoadAndSaveCheckpoints() throws Exception {
+        // given
+        final Instant now = Instant.now();
+        final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load("secondEventSource", "some-channel")).thenReturn(Optional.empty());
+        final MessageLogReceiverEndpoint messageLog = mockMessageLogReceiverEndpoint();
+        when(messageLog.getChannelName()).thenReturn("some-channel");
+        final DefaultEventSource eventSource = new DefaultEventSource("secondEventSource", () -> mockMessageStore(fromHorizon()), messageLog, null,
+                checkpointStore, Duration.ofMinutes(1), Duration.ofHours(1), Clock.fixed(now, UTC), emptyList());
+
+        // when
+        eventSource.consume().get();
+
+        // then
+        verify(checkpointStore).load("secondEventSource", "some-channel");
+        verify(checkpointStore).save(new Checkpoint("secondEventSource", "some-channel", fromHorizon(), now));
+    }
+
+    @SuppressWarnings("unchecked")
     private MessageLogReceiverEndpoint mockMessageLogReceiverEndpoint() {
         final MessageLogReceiverEndpoint messageLog = mock(MessageLogReceiverEndpoint.class);
         when(messageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class))).thenReturn(completedFuture(fromHorizon()));
+        when(messageLog.consumeUntil(any(ChannelPosition.class), any(Instant.class), any(Consumer.class))).thenReturn(completedFuture(fromHorizon()));
         return messageLog;
     }
 
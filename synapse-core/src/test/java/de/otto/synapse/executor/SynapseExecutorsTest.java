@@ -0,0 +1,100 @@
+package de.otto.synapse.executor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class SynapseExecutorsTest {
+
+    private SynapseExecutors synapseExecutors;
+
+    @After
+    public void tearDown() {
+        if (synapseExecutors != null) {
+            synapseExecutors.close();
+        }
+    }
+
+    @Test
+    public void shouldReturnSameExecutorForChannel() {
+        // given
+        synapseExecutors = new SynapseExecutors();
+        // when
+        final ExecutorService first = synapseExecutors.executorFor("some-channel");
+        final ExecutorService second = synapseExecutors.executorFor("some-channel");
+        // then
+        assertThat(first, is(sameInstance(second)));
+        assertThat(first, is(not(sameInstance(synapseExecutors.executorFor("other-channel")))));
+    }
+
+    @Test
+    public void shouldNameThreadsByChannel() {
+        // given
+        synapseExecutors = new SynapseExecutors();
+        // when
+        final String threadName = supplyAsync(() -> Thread.currentThread().getName(), synapseExecutors.executorFor("some-channel")).join();
+        // then
+        assertThat(threadName, startsWith("synapse-some-channel-"));
+    }
+
+    @Test
+    public void shouldShareDefaultExecutorOfChannelUsingDaemonThreads() {
+        // when
+        final ExecutorService executor = SynapseExecutors.defaultExecutorFor("some-channel");
+        final boolean daemon = supplyAsync(() -> Thread.currentThread().isDaemon(), executor).join();
+        // then
+        assertThat(executor, is(sameInstance(SynapseExecutors.defaultExecutorFor("some-channel"))));
+        assertThat(daemon, is(true));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shouldRejectTasksIfThreadBudgetIsExhausted() {
+        // given
+        synapseExecutors = new SynapseExecutors(1, false);
+        final ExecutorService executor = synapseExecutors.executorFor("some-channel");
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            // when
+            executor.execute(() -> {});
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void shouldKeepBudgetsOfChannelsSeparate() {
+        // given
+        synapseExecutors = new SynapseExecutors(1, false);
+        final CountDownLatch latch = new CountDownLatch(1);
+        synapseExecutors.executorFor("some-channel").execute(() -> {
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // when
+        final CompletableFuture<String> result = supplyAsync(() -> "done", synapseExecutors.executorFor("other-channel"));
+        // then
+        assertThat(result.join(), is("done"));
+        latch.countDown();
+    }
+}
@@ -0,0 +1,64 @@
+package de.otto.synapse.message;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static de.otto.synapse.channel.ShardPosition.fromPosition;
+import static de.otto.synapse.message.BinaryMessage.binaryMessage;
+import static de.otto.synapse.message.Header.emptyHeader;
+import static de.otto.synapse.message.Header.responseHeader;
+import static de.otto.synapse.message.Message.message;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BinaryMessageTest {
+
+    @Test
+    public void shouldDecodePayloadFromBytes() {
+        final Instant now = Instant.now();
+        final BinaryMessage message = binaryMessage(
+                "42",
+                responseHeader(fromPosition("some-channel", "00001"), now),
+                "ßome dätä".getBytes(UTF_8)
+        );
+        assertThat(message.getKey(), is("42"));
+        assertThat(message.getPayload(), is("ßome dätä"));
+        assertThat(message.getPayload(), is(sameInstance(message.getPayload())));
+        assertThat(message.getHeader().getArrivalTimestamp(), is(now));
+    }
+
+    @Test
+    public void shouldUseBackingArrayOfByteBuffer() {
+        final byte[] bytes = "some data".getBytes(UTF_8);
+        final BinaryMessage message = binaryMessage("42", emptyHeader(), ByteBuffer.wrap(bytes));
+        assertThat(message.getPayloadBytes(), is(sameInstance(bytes)));
+    }
+
+    @Test
+    public void shouldCopyRemainingBytesOfReadOnlyByteBuffer() {
+        final ByteBuffer buffer = ByteBuffer.wrap("some data".getBytes(UTF_8)).asReadOnlyBuffer();
+        final BinaryMessage message = binaryMessage("42", emptyHeader(), buffer);
+        assertThat(message.getPayload(), is("some data"));
+        assertThat(buffer.remaining(), is(9));
+    }
+
+    @Test
+    public void shouldHaveNullPayloadForEmptyByteBuffer() {
+        final BinaryMessage message = binaryMessage("42", emptyHeader(), ByteBuffer.allocateDirect(0));
+        assertThat(message.getPayload(), is(nullValue()));
+        assertThat(message.getPayloadBytes(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldBeEqualToMessageWithSamePayload() {
+        final Header header = emptyHeader();
+        final Message<String> message = message("42", header, "some data");
+        final BinaryMessage binaryMessage = binaryMessage("42", header, "some data".getBytes(UTF_8));
+        assertThat(binaryMessage, is(message));
+        assertThat(message, is(binaryMessage));
+        assertThat(binaryMessage.hashCode(), is(message.hashCode()));
+    }
+}
@@ -1,8 +1,11 @@
 package de.otto.synapse.state;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -15,6 +18,9 @@ import static org.junit.Assert.assertThat;
 
 public class ChronicleMapStateRepositoryTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void shouldRetrieveValueAfterPut() {
         // given
@@ -75,6 +81,28 @@ public class ChronicleMapStateRepositoryTest {
         assertThat(resultKeys, containsInAnyOrder("someKeyA", "someKeyB", "someKeyC"));
     }
 
+    @Test
+    public void shouldBeDurableStateOfChannelIfPersisted() {
+        // given
+        ChronicleMapStateRepository<SomePojo> repository = chronicleMapConcurrentMapStateRepositoryBuilder(SomePojo.class)
+                .withPersistenceFile(new File(temporaryFolder.getRoot(), "state.dat"))
+                .withChannelName("some-channel")
+                .build();
+        // then
+        assertThat(repository.isDurableStateOf("some-channel"), is(true));
+        assertThat(repository.isDurableStateOf("other-channel"), is(false));
+    }
+
+    @Test
+    public void shouldNotBeDurableStateIfNotPersisted() {
+        // given
+        ChronicleMapStateRepository<SomePojo> repository = chronicleMapConcurrentMapStateRepositoryBuilder(SomePojo.class)
+                .withChannelName("some-channel")
+                .build();
+        // then
+        assertThat(repository.isDurableStateOf("some-channel"), is(false));
+    }
+
     public static class SomePojo {
 
         public String someString;
@@ -0,0 +1,46 @@
+package de.otto.synapse.translator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.otto.synapse.message.BinaryMessage;
+import de.otto.synapse.message.Message;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static de.otto.synapse.codec.PayloadCodecs.SMILE;
+import static de.otto.synapse.message.Header.responseHeader;
+import static de.otto.synapse.message.Message.message;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class BinaryMessageTranslatorTest {
+
+    private static final Instant NOW = Instant.now();
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldTranslateMessage() {
+        final MessageTranslator<String> messageTranslator = new BinaryMessageTranslator(objectMapper, SMILE);
+        final Message<String> message = messageTranslator.translate(
+                message("test", responseHeader(null, NOW), singletonMap("foo", "bar"))
+        );
+        assertThat(message, is(instanceOf(BinaryMessage.class)));
+        assertThat(((BinaryMessage) message).getPayloadCodec(), is(SMILE));
+        assertThat(message.getKey(), is("test"));
+        assertThat(message.getHeader().getArrivalTimestamp(), is(NOW));
+        assertThat(message.getPayload(), is("{\"foo\":\"bar\"}"));
+    }
+
+    @Test
+    public void shouldTranslateDeleteMessage() {
+        final MessageTranslator<String> messageTranslator = new BinaryMessageTranslator(objectMapper, SMILE);
+        final Message<String> message = messageTranslator.translate(
+                message("test", null)
+        );
+        assertThat(message.getKey(), is("test"));
+        assertThat(message.getPayload(), is(nullValue()));
+    }
+}